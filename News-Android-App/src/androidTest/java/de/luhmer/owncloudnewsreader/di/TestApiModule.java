@@ -21,6 +21,7 @@ import de.luhmer.owncloudnewsreader.SettingsActivity;
 import de.luhmer.owncloudnewsreader.helper.ThemeChooser;
 import de.luhmer.owncloudnewsreader.model.UserInfo;
 import de.luhmer.owncloudnewsreader.ssl.MemorizingTrustManager;
+import okhttp3.OkHttpClient;
 
 import static com.nextcloud.android.sso.Constants.ACCOUNT_TYPE_PROD;
 
@@ -115,8 +116,8 @@ public class TestApiModule extends ApiModule {
     }
 
     @Override
-    protected ApiProvider provideAPI(MemorizingTrustManager mtm, SharedPreferences sp) {
-        ApiProvider apiProvider = new TestApiProvider(mtm, sp, application);
+    protected ApiProvider provideAPI(MemorizingTrustManager mtm, SharedPreferences sp, OkHttpClient client) {
+        ApiProvider apiProvider = new TestApiProvider(mtm, sp, application, client);
         return apiProvider;
     }
 
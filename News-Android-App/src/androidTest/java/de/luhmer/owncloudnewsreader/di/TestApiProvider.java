@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import de.luhmer.owncloudnewsreader.helper.GsonConfig;
 import de.luhmer.owncloudnewsreader.reader.nextcloud.API;
 import de.luhmer.owncloudnewsreader.ssl.MemorizingTrustManager;
+import okhttp3.OkHttpClient;
 import retrofit2.NextcloudRetrofitApiBuilder;
 
 import static com.nextcloud.android.sso.Constants.ACCOUNT_TYPE_PROD;
@@ -42,8 +43,8 @@ public class TestApiProvider extends ApiProvider {
 
     public NewsTestNetworkRequest networkRequestSpy;
 
-    TestApiProvider(MemorizingTrustManager mtm, SharedPreferences sp, Context context) {
-        super(mtm, sp, context);
+    TestApiProvider(MemorizingTrustManager mtm, SharedPreferences sp, Context context, OkHttpClient client) {
+        super(mtm, sp, context, client);
     }
 
     @Override
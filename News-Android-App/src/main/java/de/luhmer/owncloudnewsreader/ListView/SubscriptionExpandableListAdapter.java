@@ -28,6 +28,7 @@ import android.os.AsyncTask;
 import android.preference.PreferenceManager;
 import android.util.Log;
 import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -51,6 +52,7 @@ import de.luhmer.owncloudnewsreader.SettingsActivity;
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
 import de.luhmer.owncloudnewsreader.database.model.Feed;
 import de.luhmer.owncloudnewsreader.database.model.Folder;
+import de.luhmer.owncloudnewsreader.events.RssItemCountChangedEvent;
 import de.luhmer.owncloudnewsreader.helper.FavIconHandler;
 import de.luhmer.owncloudnewsreader.helper.StopWatch;
 import de.luhmer.owncloudnewsreader.helper.ThemeChooser;
@@ -59,6 +61,7 @@ import de.luhmer.owncloudnewsreader.model.AbstractItem;
 import de.luhmer.owncloudnewsreader.model.ConcreteFeedItem;
 import de.luhmer.owncloudnewsreader.model.FolderSubscribtionItem;
 import de.luhmer.owncloudnewsreader.model.Tuple;
+import de.luhmer.owncloudnewsreader.reader.SubscriptionChanges;
 
 import static de.luhmer.owncloudnewsreader.ListView.SubscriptionExpandableListAdapter.SPECIAL_FOLDERS.ALL_STARRED_ITEMS;
 import static de.luhmer.owncloudnewsreader.ListView.SubscriptionExpandableListAdapter.SPECIAL_FOLDERS.ALL_UNREAD_ITEMS;
@@ -82,9 +85,9 @@ public class SubscriptionExpandableListAdapter extends BaseExpandableListAdapter
     private boolean showOnlyUnread = false;
     private Integer btn_rating_star_off_normal_holo_light;
 
-    private SparseArray<String> starredCountFeeds;
-    private SparseArray<String> unreadCountFolders;
-    private SparseArray<String> unreadCountFeeds;
+    private SparseIntArray starredCountFeeds;
+    private SparseIntArray unreadCountFolders;
+    private SparseIntArray unreadCountFeeds;
 
     private SharedPreferences mPrefs;
 
@@ -119,9 +122,9 @@ public class SubscriptionExpandableListAdapter extends BaseExpandableListAdapter
     	this.mContext = mContext;
     	this.dbConn = dbConn;
 
-        unreadCountFeeds = new SparseArray<>();
-        unreadCountFolders = new SparseArray<>();
-        starredCountFeeds = new SparseArray<>();
+        unreadCountFeeds = new SparseIntArray();
+        unreadCountFolders = new SparseIntArray();
+        starredCountFeeds = new SparseIntArray();
 
         mCategoriesArrayList = new ArrayList<>();
         mItemsArrayList = new SparseArray<>();
@@ -162,15 +165,15 @@ public class SubscriptionExpandableListAdapter extends BaseExpandableListAdapter
 	        viewHolder.tV_HeaderText.setText(headerText);
 
 
-            String unreadCount;
+            int unreadCount;
             if(item.idFolder == ALL_STARRED_ITEMS.getValue()) {
                 unreadCount = starredCountFeeds.get((int) item.id_database);
             } else {
                 unreadCount = unreadCountFeeds.get((int) item.id_database);
             }
 
-            if(unreadCount != null)
-                viewHolder.tV_UnreadCount.setText(unreadCount);
+            if(unreadCount > 0)
+                viewHolder.tV_UnreadCount.setText(String.valueOf(unreadCount));
             else
                 viewHolder.tV_UnreadCount.setText("");
 
@@ -289,18 +292,18 @@ public class SubscriptionExpandableListAdapter extends BaseExpandableListAdapter
         viewHolder.txt_UnreadCount.setText("");
         boolean skipGetUnread = false;
         if(group.idFolder != null && group.idFolder == ITEMS_WITHOUT_FOLDER.getValue()) {
-            String unreadCount = unreadCountFeeds.get((int) group.id_database);
-            if(unreadCount != null) {
-                viewHolder.txt_UnreadCount.setText(unreadCount);
+            int unreadCount = unreadCountFeeds.get((int) group.id_database);
+            if(unreadCount > 0) {
+                viewHolder.txt_UnreadCount.setText(String.valueOf(unreadCount));
             }
 
             skipGetUnread = true;
         }
 
         if(!skipGetUnread) {
-            String unreadCount = unreadCountFolders.get((int) group.id_database);
-            if(unreadCount != null)
-                viewHolder.txt_UnreadCount.setText(unreadCount);
+            int unreadCount = unreadCountFolders.get((int) group.id_database);
+            if(unreadCount > 0)
+                viewHolder.txt_UnreadCount.setText(String.valueOf(unreadCount));
         }
 
 
@@ -401,9 +404,9 @@ public class SubscriptionExpandableListAdapter extends BaseExpandableListAdapter
 
 
     private class NotifyDataSetChangedAsyncTask extends AsyncTask<Void, Void, Void> {
-        SparseArray<String> starredCountFeedsTemp;
-        SparseArray<String> unreadCountFoldersTemp;
-        SparseArray<String> unreadCountFeedsTemp;
+        SparseIntArray starredCountFeedsTemp;
+        SparseIntArray unreadCountFoldersTemp;
+        SparseIntArray unreadCountFeedsTemp;
         SparseArray<String> urlsToFavIconsTemp;
 
         @Override
@@ -411,7 +414,7 @@ public class SubscriptionExpandableListAdapter extends BaseExpandableListAdapter
             StopWatch stopwatch = new StopWatch();
             stopwatch.start();
 
-            SparseArray<String>[] temp = dbConn.getUnreadItemCountFeedFolder();
+            SparseIntArray[] temp = dbConn.getUnreadItemCountFeedFolder();
 
             unreadCountFoldersTemp = temp[0];// dbConn.getUnreadItemCountForFolder();
             unreadCountFeedsTemp = temp[1]; // dbConn.getUnreadItemCountForFeed();
@@ -431,12 +434,13 @@ public class SubscriptionExpandableListAdapter extends BaseExpandableListAdapter
                     AbstractItem item = mCategoriesArrayList.get(i);
 
                     if(item instanceof FolderSubscribtionItem &&
-                            unreadCountFoldersTemp.get(((Long) item.id_database).intValue()) == null) {
+                            unreadCountFoldersTemp.indexOfKey(((Long) item.id_database).intValue()) < 0) {
+                        // Only folders with unread items are contained (and the special folders, always)
                         Log.v(TAG, "Remove folder item!!!");
                         mCategoriesArrayList.remove(i);
                         i--;
                     } else if(item instanceof ConcreteFeedItem &&
-                            unreadCountFeedsTemp.get(((Long) item.id_database).intValue()) == null) {
+                            unreadCountFeedsTemp.indexOfKey(((Long) item.id_database).intValue()) < 0) {
                         Log.v(TAG, "Remove feed item!!!");
                         mCategoriesArrayList.remove(i);
                         i--;
@@ -448,7 +452,7 @@ public class SubscriptionExpandableListAdapter extends BaseExpandableListAdapter
                 for (int i = 0; i < mItemsArrayList.size(); i++) {
                     ArrayList<ConcreteFeedItem> item = mItemsArrayList.valueAt(i);
                     for (int x = 0; x < item.size(); x++) {
-                        if (unreadCountFeedsTemp.get((int) item.get(x).id_database) == null) {
+                        if (unreadCountFeedsTemp.indexOfKey((int) item.get(x).id_database) < 0) {
                             item.remove(x);
                             x--;
                             Log.v(TAG, "Remove sub feed!!");
@@ -566,7 +570,7 @@ public class SubscriptionExpandableListAdapter extends BaseExpandableListAdapter
 
 
     @SuppressLint("NewApi") // wrongly reports setSelectionFromTop is only available in lollipop
-    public void notifyCountDataSetChanged(SparseArray<String> unreadCountFolders, SparseArray<String> unreadCountFeeds, SparseArray<String> urlsToFavIcons, SparseArray<String> starredCountFeeds) {
+    public void notifyCountDataSetChanged(SparseIntArray unreadCountFolders, SparseIntArray unreadCountFeeds, SparseArray<String> urlsToFavIcons, SparseIntArray starredCountFeeds) {
         this.unreadCountFolders = unreadCountFolders;
         this.unreadCountFeeds = unreadCountFeeds;
         this.starredCountFeeds = starredCountFeeds;
@@ -590,6 +594,67 @@ public class SubscriptionExpandableListAdapter extends BaseExpandableListAdapter
     }
 
 
+    /**
+     * Updates the counts without reading them from the database again
+     */
+    public void applyCountChanges(RssItemCountChangedEvent event) {
+        SparseIntArray unreadCountFolders = addDeltas(this.unreadCountFolders, event.getUnreadCountFolderDeltas());
+        SparseIntArray unreadCountFeeds = addDeltas(this.unreadCountFeeds, event.getUnreadCountFeedDeltas());
+        SparseIntArray starredCountFeeds = addDeltas(this.starredCountFeeds, event.getStarredCountFeedDeltas());
+        notifyCountDataSetChanged(unreadCountFolders, unreadCountFeeds, null, starredCountFeeds);
+    }
+
+    /**
+     * Applies the folder / feed changes of a sync. The list is only rebuilt if subscriptions have
+     * been added, removed or moved. Otherwise the changed titles / favicons are updated in place and
+     * the counts are refreshed.
+     *
+     * @param changes null if the changes are unknown
+     */
+    public void applySubscriptionChanges(SubscriptionChanges changes) {
+        if(changes == null || changes.hasStructuralChanges()) {
+            ReloadAdapterAsync();
+            return;
+        }
+
+        for(Folder folder : changes.renamedFolders) {
+            for(AbstractItem item : mCategoriesArrayList) {
+                if(item instanceof FolderSubscribtionItem && item.id_database == folder.getId()) {
+                    item.header = folder.getLabel();
+                }
+            }
+        }
+
+        for(Feed feed : changes.updatedFeeds) {
+            for(AbstractItem item : mCategoriesArrayList) {
+                updateFeedItem(item, feed);
+            }
+            for(int i = 0; i < mItemsArrayList.size(); i++) {
+                for(ConcreteFeedItem item : mItemsArrayList.valueAt(i)) {
+                    updateFeedItem(item, feed);
+                }
+            }
+        }
+
+        NotifyDataSetChangedAsync();
+    }
+
+    private static void updateFeedItem(AbstractItem item, Feed feed) {
+        if(item instanceof ConcreteFeedItem && ((ConcreteFeedItem) item).feedId == feed.getId()) {
+            item.header = feed.getFeedTitle();
+            ((ConcreteFeedItem) item).favIcon = feed.getFaviconUrl();
+        }
+    }
+
+    private static SparseIntArray addDeltas(SparseIntArray counts, SparseIntArray deltas) {
+        SparseIntArray result = counts.clone();
+        for (int i = 0; i < deltas.size(); i++) {
+            int key = deltas.keyAt(i);
+            result.put(key, Math.max(0, result.get(key) + deltas.valueAt(i)));
+        }
+        return result;
+    }
+
     public void setHandlerListener(ExpListTextClicked listener)
 	{
 		eListTextClickHandler = listener;
@@ -70,6 +70,7 @@ import butterknife.ButterKnife;
 import butterknife.OnClick;
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
 import de.luhmer.owncloudnewsreader.di.ApiProvider;
+import de.luhmer.owncloudnewsreader.helper.RenderedPageCache;
 import de.luhmer.owncloudnewsreader.model.NextcloudNewsVersion;
 import de.luhmer.owncloudnewsreader.ssl.MemorizingTrustManager;
 import de.luhmer.owncloudnewsreader.ssl.OkHttpSSLClient;
@@ -374,6 +375,7 @@ public class LoginDialogActivity extends AppCompatActivity {
         //Reset Database
         DatabaseConnectionOrm dbConn = new DatabaseConnectionOrm(LoginDialogActivity.this);
         dbConn.resetDatabase();
+        RenderedPageCache.getInstance(this).clear();
     }
 
     private void finishLogin(final ProgressDialog dialogLogin) {
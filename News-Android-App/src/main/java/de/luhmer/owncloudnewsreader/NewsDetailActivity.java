@@ -28,6 +28,7 @@ import android.content.pm.PackageManager;
 import android.content.pm.ResolveInfo;
 import android.graphics.drawable.Animatable;
 import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.text.Html;
@@ -52,6 +53,7 @@ import androidx.viewpager.widget.PagerAdapter;
 import androidx.viewpager.widget.ViewPager;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -60,13 +62,19 @@ import javax.inject.Inject;
 
 import butterknife.BindView;
 import butterknife.ButterKnife;
+import de.luhmer.owncloudnewsreader.async_tasks.RssItemToHtmlTask;
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm.SORT_DIRECTION;
+import de.luhmer.owncloudnewsreader.database.RssItemListRow;
 import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import de.luhmer.owncloudnewsreader.helper.AsyncTaskHelper;
 import de.luhmer.owncloudnewsreader.helper.ThemeUtils;
-import de.luhmer.owncloudnewsreader.model.PodcastItem;
+import de.luhmer.owncloudnewsreader.helper.WebViewPool;
 import de.luhmer.owncloudnewsreader.model.TTSItem;
 import de.luhmer.owncloudnewsreader.widget.WidgetProvider;
+import io.reactivex.Maybe;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.schedulers.Schedulers;
 
 
 public class NewsDetailActivity extends PodcastFragmentActivity {
@@ -107,11 +115,18 @@ public class NewsDetailActivity extends PodcastFragmentActivity {
 	private MenuItem menuItem_Read;
 
 	private DatabaseConnectionOrm dbConn;
-	public List<RssItem> rssItems;
+	public List<RssItemListRow> rssItems = new ArrayList<>();
+	private boolean loadingRssItems = false;
+	private boolean allRssItemsLoaded = false;
+	private boolean destroyed = false;
+	private WebViewPool mWebViewPool;
 
 	protected @Inject SharedPreferences mPrefs;
 
 	//public static final String DATABASE_IDS_OF_ITEMS = "DATABASE_IDS_OF_ITEMS";
+	private static final String CURRENT_POSITION = "CURRENT_POSITION";
+	// Load the next page when the user gets this close to the last loaded item
+	private static final int LOAD_MORE_THRESHOLD = 10;
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
@@ -197,38 +212,128 @@ public class NewsDetailActivity extends PodcastFragmentActivity {
 		//	databaseItemIds = intent.getIntegerArrayListExtra(DATABASE_IDS_OF_ITEMS);
 
 
-        rssItems = dbConn.getCurrentRssItemView(-1);
-
-        //If the Activity gets started from the Widget, read the item id and get the selected index in the cursor.
+        long rss_item_id = -1;
+        //If the Activity gets started from the Widget, read the item id and get the selected index once the items are loaded.
         if(intent.hasExtra(WidgetProvider.RSS_ITEM_ID)) {
-            long rss_item_id = intent.getExtras().getLong(WidgetProvider.RSS_ITEM_ID);
-            for(RssItem rssItem : rssItems) {
-                if(rss_item_id == rssItem.getId()) {
-                    getSupportActionBar().setTitle(rssItem.getTitle());
-                    break;
-                }
-                else {
-                    item_id++;
-                }
-            }
+            rss_item_id = intent.getExtras().getLong(WidgetProvider.RSS_ITEM_ID);
+        }
+        if(savedInstanceState != null) {
+            // Keep the article which has been shown before the activity was recreated
+            item_id = savedInstanceState.getInt(CURRENT_POSITION, item_id);
+            rss_item_id = -1;
         }
 
+		mWebViewPool = WebViewPool.create(this);
+
 		// Create the adapter that will return a fragment for each of the three
 		// primary sections of the app.
 		mSectionsPagerAdapter = new SectionsPagerAdapter(getSupportFragmentManager());
 
-		progressIndicator.setMax(mSectionsPagerAdapter.getCount());
-
 		// Set up the ViewPager with the sections adapter.
 		mViewPager = findViewById(R.id.pager);
-		mViewPager.setAdapter(mSectionsPagerAdapter);
+		// The pages next to the current one are rendered in advance
+		mViewPager.setOffscreenPageLimit(mWebViewPool.getPrefetchDistance());
+
+        // Write the read / starred changes of the list in the background, the items are loaded
+        // page by page (see DatabaseConnectionOrm#getCurrentRssItemView) once they are written
+        dbConn.flushRssItemStatesAsync();
+        loadingRssItems = true;
+        AsyncTaskHelper.StartAsyncTask(new LoadRssItemsAsyncTask(null, item_id + LOAD_MORE_THRESHOLD, rss_item_id, item_id, savedInstanceState == null));
+
+        /*
+		mBtnDisableIncognito.setOnClickListener(v -> {
+			toggleIncognitoMode();
+		});
+		*/
+	}
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putInt(CURRENT_POSITION, currentPosition);
+    }
+
+    /**
+     * Loads the items of the current view page by page in the background
+     */
+    private class LoadRssItemsAsyncTask extends AsyncTask<Void, Void, List<RssItemListRow>> {
+
+        private RssItemListRow lastLoadedItem;
+        private int minItemCount;
+        private long rssItemId;
+        private int position;
+        private boolean firstStart;
+        private boolean complete = false;
+
+        /**
+         * @param lastLoadedItem last item of the pager or null if nothing has been loaded yet
+         * @param minItemCount   pages are loaded until the pager contains at least this many items
+         * @param rssItemId      and contains this item (-1 to ignore, used when started from the widget)
+         * @param position       position shown after the first load
+         * @param firstStart     false if the activity has been recreated (e.g. orientation changes)
+         */
+        LoadRssItemsAsyncTask(RssItemListRow lastLoadedItem, int minItemCount, long rssItemId, int position, boolean firstStart) {
+            this.lastLoadedItem = lastLoadedItem;
+            this.minItemCount = minItemCount;
+            this.rssItemId = rssItemId;
+            this.position = position;
+            this.firstStart = firstStart;
+        }
+
+        @Override
+        protected List<RssItemListRow> doInBackground(Void... params) {
+            List<RssItemListRow> items = new ArrayList<>();
+            int itemCount = rssItems.size();
+            boolean found = rssItemId < 0;
+            RssItemListRow lastItem = lastLoadedItem;
+            do {
+                List<RssItemListRow> page = dbConn.getCurrentRssItemView(lastItem, DatabaseConnectionOrm.PageSize);
+                for(RssItemListRow rssItem : page) {
+                    if(!found) {
+                        found = rssItem.getId() == rssItemId;
+                        position = itemCount + items.size();
+                    }
+                    items.add(rssItem);
+                }
+                complete = page.size() < DatabaseConnectionOrm.PageSize;
+                if(!page.isEmpty()) {
+                    lastItem = page.get(page.size() - 1);
+                }
+            } while(!complete && (!found || itemCount + items.size() < minItemCount));
+            return items;
+        }
+
+        @Override
+        protected void onPostExecute(List<RssItemListRow> items) {
+            if(destroyed) {
+                // e.g. the activity has been recreated in the meantime
+                return;
+            }
+            loadingRssItems = false;
+            allRssItemsLoaded = complete;
+            rssItems.addAll(items);
+            progressIndicator.setMax(rssItems.size());
+
+            if(lastLoadedItem != null) {
+                mSectionsPagerAdapter.notifyDataSetChanged();
+            } else if(!rssItems.isEmpty()) {
+                onFirstRssItemsLoaded(Math.min(position, rssItems.size() - 1), firstStart);
+            }
+        }
+    }
 
+    private void onFirstRssItemsLoaded(int position, boolean firstStart) {
+        mViewPager.setAdapter(mSectionsPagerAdapter);
 
         try {
-            mViewPager.setCurrentItem(item_id, true);
-            if(savedInstanceState == null) {
+            mViewPager.setCurrentItem(position, true);
+            if(firstStart) {
                 // Only do that when activity is started for the first time. Not on orientation changes etc..
-                pageChanged(item_id);
+                pageChanged(position);
+            } else {
+                currentPosition = position;
+                progressIndicator.setProgress(position + 1);
+                updateActionBarIcons();
             }
 		} catch(Exception ex) {
 			ex.printStackTrace();
@@ -236,19 +341,34 @@ public class NewsDetailActivity extends PodcastFragmentActivity {
 
         mViewPager.addOnPageChangeListener(onPageChangeListener);
 		this.initFastActionBar();
+    }
 
-        /*
-		mBtnDisableIncognito.setOnClickListener(v -> {
-			toggleIncognitoMode();
-		});
-		*/
-	}
+    private void loadMoreRssItemsIfNeeded(int position) {
+        if(!loadingRssItems && !allRssItemsLoaded && position >= rssItems.size() - LOAD_MORE_THRESHOLD) {
+            loadingRssItems = true;
+            RssItemListRow lastItem = rssItems.get(rssItems.size() - 1);
+            AsyncTaskHelper.StartAsyncTask(new LoadRssItemsAsyncTask(lastItem, 0, -1, position, true));
+        }
+    }
 
     @Override
     protected void onResume() {
 	    super.onResume();
 
         updateActionBarIcons();
+        mWebViewPool.prefill();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if(level >= TRIM_MEMORY_RUNNING_LOW) {
+            mWebViewPool.trim();
+        }
+    }
+
+    public WebViewPool getWebViewPool() {
+        return mWebViewPool;
     }
 
     /**
@@ -266,7 +386,7 @@ public class NewsDetailActivity extends PodcastFragmentActivity {
 			fastActionShare.setOnClickListener(v -> this.share(currentPosition));
 			fastActionToggle.setOnClickListener(v -> this.toggleFastActionBar());
 
-			RssItem rssItem = rssItems.get(currentPosition);
+			RssItemListRow rssItem = rssItems.get(currentPosition);
 			boolean isStarred = rssItem.getStarred_temp();
 			boolean isRead = rssItem.getRead_temp();
 
@@ -333,6 +453,8 @@ public class NewsDetailActivity extends PodcastFragmentActivity {
 	@Override
 	protected void onDestroy() {
 		super.onDestroy();
+		destroyed = true;
+		mWebViewPool.destroy();
 	}
 
     private ViewPager.OnPageChangeListener onPageChangeListener = new ViewPager.OnPageChangeListener() {
@@ -411,15 +533,17 @@ public class NewsDetailActivity extends PodcastFragmentActivity {
 		currentPosition = position;
 		resumeVideoPlayersOnCurrentPage();
 		progressIndicator.setProgress(position + 1);
+		prerenderNeighbours(position);
+		loadMoreRssItemsIfNeeded(position);
 
-        if(rssItems.get(position).getFeed() != null) {
+        if(rssItems.get(position).getFeedTitle() != null) {
         	// Try getting the feed title and use it for the action bar title
-			getSupportActionBar().setTitle(rssItems.get(position).getFeed().getFeedTitle());
+			getSupportActionBar().setTitle(rssItems.get(position).getFeedTitle());
 		} else {
 			getSupportActionBar().setTitle(rssItems.get(position).getTitle());
 		}
 
-        RssItem rssItem = rssItems.get(position);
+        RssItemListRow rssItem = rssItems.get(position);
         if(!rssItem.getRead_temp()) {
             if (!NewsReaderListActivity.stayUnreadItems.contains(rssItem.getId())) {
                 markItemAsReadOrUnread(rssItems.get(position), true);
@@ -434,6 +558,19 @@ public class NewsDetailActivity extends PodcastFragmentActivity {
 	}
 
 
+    /**
+     * The view pager renders the pages within the prefetch distance, prepare the html of the pages
+     * after them (see {@link de.luhmer.owncloudnewsreader.helper.RenderedPageCache})
+     */
+    private void prerenderNeighbours(int position) {
+        int distance = mWebViewPool.getPrefetchDistance() + 1;
+        for(int pos : new int[] { position + distance, position - distance }) {
+            if(pos >= 0 && pos < rssItems.size()) {
+                AsyncTaskHelper.StartAsyncTask(new RssItemToHtmlTask(this, rssItems.get(pos).getId(), htmlPage -> { }, mPrefs));
+            }
+        }
+    }
+
     private NewsDetailFragment getNewsDetailFragmentAtPosition(int position) {
 		if(mSectionsPagerAdapter.items.get(position) != null)
 			return mSectionsPagerAdapter.items.get(position).get();
@@ -456,13 +593,17 @@ public class NewsDetailActivity extends PodcastFragmentActivity {
 	}
 
 	public void updateActionBarIcons() {
-        RssItem rssItem = rssItems.get(currentPosition);
+        if(rssItems.isEmpty()) {
+            // Items are still being loaded
+            return;
+        }
+        RssItemListRow rssItem = rssItems.get(currentPosition);
 
         boolean isStarred = rssItem.getStarred_temp();
         boolean isRead = rssItem.getRead_temp();
 
-        PodcastItem podcastItem =  DatabaseConnectionOrm.ParsePodcastItemFromRssItem(this, rssItem);
-        boolean podcastAvailable = !"".equals(podcastItem.link);
+        // Same check as in DatabaseConnectionOrm.ParsePodcastItemFromRssItem (enclosed images are no podcasts)
+        boolean podcastAvailable = !"".equals(rssItem.getEnclosureLink()) && !"image/jpeg".equals(rssItem.getEnclosureMime());
 
         if(menuItem_PlayPodcast != null) {
 			menuItem_PlayPodcast.setVisible(podcastAvailable);
@@ -535,13 +676,18 @@ public class NewsDetailActivity extends PodcastFragmentActivity {
 
 	@Override
 	public boolean onOptionsItemSelected(MenuItem item) {
-		RssItem rssItem = rssItems.get(currentPosition);
-
 		switch (item.getItemId()) {
 			case android.R.id.home:
 				onBackPressed();
 				return true;
+		}
 
+		if(rssItems.isEmpty()) {
+			// Items are still being loaded
+			return super.onOptionsItemSelected(item);
+		}
+
+		switch (item.getItemId()) {
             case R.id.action_read:
 				this.markRead(currentPosition);
                 break;
@@ -555,7 +701,7 @@ public class NewsDetailActivity extends PodcastFragmentActivity {
 				break;
 
             case R.id.action_playPodcast:
-                openPodcast(rssItem);
+                loadAndOpenPodcast(rssItems.get(currentPosition).getId());
                 break;
 
             case R.id.action_tts:
@@ -580,7 +726,7 @@ public class NewsDetailActivity extends PodcastFragmentActivity {
 	 * @param currentPosition currently viewed article
 	 */
 	private void openInBrowser(int currentPosition) {
-		RssItem rssItem = rssItems.get(currentPosition);
+		RssItemListRow rssItem = rssItems.get(currentPosition);
 		NewsDetailFragment newsDetailFragment = getNewsDetailFragmentAtPosition(currentPosition);
 		String link = "about:blank";
 
@@ -604,12 +750,12 @@ public class NewsDetailActivity extends PodcastFragmentActivity {
 	 * @param currentPosition currently viewed article
 	 */
 	private void share(int currentPosition) {
-		RssItem rssItem = rssItems.get(currentPosition);
+		RssItemListRow rssItem = rssItems.get(currentPosition);
 		String title = rssItem.getTitle();
 		String content = rssItem.getLink();
 
 		NewsDetailFragment fragment = getNewsDetailFragmentAtPosition(currentPosition);
-		if(fragment != null) { // could be null if not instantiated yet
+		if(fragment != null && fragment.mWebView != null) { // could be null if not instantiated yet
 			if(!fragment.mWebView.getUrl().equals("about:blank") && !fragment.mWebView.getUrl().trim().equals("")) {
 				content = fragment.mWebView.getUrl();
 				title = fragment.mWebView.getTitle();
@@ -633,11 +779,30 @@ public class NewsDetailActivity extends PodcastFragmentActivity {
 	 * @param currentPosition currently viewed article
 	 */
 	private void startTTS(int currentPosition) {
-		RssItem rssItem = rssItems.get(currentPosition);
-		String text = rssItem.getTitle() + "\n\n " + Html.fromHtml(rssItem.getBody()).toString();
-		// Log.d(TAG, text);
-		TTSItem ttsItem = new TTSItem(rssItem.getId(), rssItem.getAuthor(), rssItem.getTitle(), text, rssItem.getFeed().getFaviconUrl());
-		openMediaItem(ttsItem);
+		final long rssItemId = rssItems.get(currentPosition).getId();
+		// The body isn't part of the row, it's loaded in the background
+		Maybe.fromCallable(() -> {
+					RssItem rssItem = dbConn.getRssItemById(rssItemId);
+					if(rssItem == null) {
+						return null;
+					}
+					String text = rssItem.getTitle() + "\n\n " + Html.fromHtml(rssItem.getBody()).toString();
+					// Log.d(TAG, text);
+					return new TTSItem(rssItem.getId(), rssItem.getAuthor(), rssItem.getTitle(), text, rssItem.getFeed().getFaviconUrl());
+				})
+				.subscribeOn(Schedulers.io())
+				.observeOn(AndroidSchedulers.mainThread())
+				.subscribe(this::openMediaItem, throwable -> Log.e(TAG, "Failed to load item for TTS", throwable));
+	}
+
+	/**
+	 * Loads the complete item of the podcast in the background and opens it
+	 */
+	private void loadAndOpenPodcast(long rssItemId) {
+		Maybe.fromCallable(() -> dbConn.getRssItemById(rssItemId))
+				.subscribeOn(Schedulers.io())
+				.observeOn(AndroidSchedulers.mainThread())
+				.subscribe(this::openPodcast, throwable -> Log.e(TAG, "Failed to load podcast item", throwable));
 	}
 
 	/**
@@ -646,7 +811,7 @@ public class NewsDetailActivity extends PodcastFragmentActivity {
 	 * @param currentPosition currently viewed article
 	 */
 	private void markRead(int currentPosition) {
-		RssItem rssItem = rssItems.get(currentPosition);
+		RssItemListRow rssItem = rssItems.get(currentPosition);
 		markItemAsReadOrUnread(rssItem, !menuItem_Read.isChecked());
 		updateActionBarIcons();
 		mPostDelayHandler.delayTimer();
@@ -654,8 +819,8 @@ public class NewsDetailActivity extends PodcastFragmentActivity {
 
 
 	public void toggleRssItemStarredState() {
-        RssItem rssItem = rssItems.get(currentPosition);
-		Boolean curState = rssItem.getStarred_temp();
+        RssItemListRow rssItem = rssItems.get(currentPosition);
+		boolean curState = rssItem.getStarred_temp();
 		rssItem.setStarred_temp(!curState);
 		dbConn.updateRssItem(rssItem);
 
@@ -672,7 +837,7 @@ public class NewsDetailActivity extends PodcastFragmentActivity {
 		return (resolveInfo.loadLabel(getPackageManager()).toString().contains("Chrome"));
 	}
 
-	private void markItemAsReadOrUnread(RssItem item, boolean read) {
+	private void markItemAsReadOrUnread(RssItemListRow item, boolean read) {
         NewsReaderListActivity.stayUnreadItems.add(item.getId());
 
         item.setRead_temp(read);
@@ -23,6 +23,7 @@ package de.luhmer.owncloudnewsreader;
 
 import android.animation.ObjectAnimator;
 import android.annotation.SuppressLint;
+import android.annotation.TargetApi;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
@@ -37,10 +38,12 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.webkit.WebBackForwardList;
 import android.webkit.WebHistoryItem;
+import android.webkit.WebResourceRequest;
 import android.webkit.WebResourceResponse;
 import android.webkit.WebSettings;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
+import android.widget.FrameLayout;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
@@ -58,8 +61,6 @@ import org.jsoup.select.Elements;
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.HashMap;
-import java.util.Map;
 
 import javax.inject.Inject;
 
@@ -67,10 +68,11 @@ import butterknife.BindView;
 import butterknife.ButterKnife;
 import de.luhmer.owncloudnewsreader.adapter.ProgressBarWebChromeClient;
 import de.luhmer.owncloudnewsreader.async_tasks.RssItemToHtmlTask;
-import de.luhmer.owncloudnewsreader.database.model.RssItem;
-import de.luhmer.owncloudnewsreader.helper.AdBlocker;
+import de.luhmer.owncloudnewsreader.database.RssItemListRow;
 import de.luhmer.owncloudnewsreader.helper.AsyncTaskHelper;
 import de.luhmer.owncloudnewsreader.helper.ColorHelper;
+import de.luhmer.owncloudnewsreader.helper.WebViewPool;
+import de.luhmer.owncloudnewsreader.helper.WebViewRequestInterceptor;
 import de.luhmer.owncloudnewsreader.services.DownloadWebPageService;
 
 public class NewsDetailFragment extends Fragment implements RssItemToHtmlTask.Listener {
@@ -80,16 +82,20 @@ public class NewsDetailFragment extends Fragment implements RssItemToHtmlTask.Li
 
 	public final String TAG = getClass().getCanonicalName();
 
-    protected @BindView(R.id.webview) WebView mWebView;
+    protected @BindView(R.id.webview_container) FrameLayout mWebViewContainer;
     protected @BindView(R.id.progressBarLoading) ProgressBar mProgressBarLoading;
     protected @BindView(R.id.progressbar_webview) ProgressBar mProgressbarWebView;
     protected @BindView(R.id.tv_offline_version) TextView mTvOfflineVersion;
 
     protected @Inject SharedPreferences mPrefs;
 
+    protected WebView mWebView;
+    private WebViewPool mWebViewPool;
     private int section_number;
     protected String html;
     private GestureDetector mGestureDetector;
+    private boolean mClearHistory = false;
+    private WebViewRequestInterceptor mRequestInterceptor;
 
 
     public NewsDetailFragment() { }
@@ -102,6 +108,7 @@ public class NewsDetailFragment extends Fragment implements RssItemToHtmlTask.Li
     public void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         ((NewsReaderApplication) getActivity().getApplication()).getAppComponent().injectFragment(this);
+        mRequestInterceptor = new WebViewRequestInterceptor(mPrefs);
 
         // Retain this fragment across configuration changes.
         setRetainInstance(true);
@@ -121,10 +128,12 @@ public class NewsDetailFragment extends Fragment implements RssItemToHtmlTask.Li
 	}
 
     @Override
-    public void onDestroy() {
-        super.onDestroy();
+    public void onDestroyView() {
+        super.onDestroyView();
         if(mWebView != null) {
-            mWebView.destroy();
+            unregisterForContextMenu(mWebView);
+            mWebViewPool.release(mWebView);
+            mWebView = null;
         }
     }
 
@@ -174,6 +183,11 @@ public class NewsDetailFragment extends Fragment implements RssItemToHtmlTask.Li
 
         ButterKnife.bind(this, rootView);
 
+        mWebViewPool = ((NewsDetailActivity) getActivity()).getWebViewPool();
+        // Restoring the state only works with new web views
+        mWebView = savedInstanceState == null ? mWebViewPool.acquire() : mWebViewPool.create();
+        mWebViewContainer.addView(mWebView, new FrameLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+
         // Do not reload webview if retained
         if(savedInstanceState == null) {
             startLoadRssItemToWebViewTask();
@@ -199,7 +213,9 @@ public class NewsDetailFragment extends Fragment implements RssItemToHtmlTask.Li
 
 	@Override
     public void onSaveInstanceState(Bundle outState) {
-        mWebView.saveState(outState);
+        if(mWebView != null) {
+            mWebView.saveState(outState);
+        }
     }
 
 	private void setUpGestureDetector() {
@@ -247,19 +263,26 @@ public class NewsDetailFragment extends Fragment implements RssItemToHtmlTask.Li
         ndActivity.setBackgroundColorOfViewPager(backgroundColor);
 
         init_webView();
-        RssItem rssItem = ndActivity.rssItems.get(section_number);
-        RssItemToHtmlTask task = new RssItemToHtmlTask(ndActivity, rssItem, this, mPrefs);
+        RssItemListRow rssItem = ndActivity.rssItems.get(section_number);
+        RssItemToHtmlTask task = new RssItemToHtmlTask(ndActivity, rssItem.getId(), this, mPrefs);
         AsyncTaskHelper.StartAsyncTask(task);
     }
 
     @Override
     public void onRssItemParsed(String htmlPage) {
+        if(mWebView == null) {
+            // View has been destroyed in the meantime
+            return;
+        }
         mWebView.setVisibility(View.VISIBLE);
         mProgressBarLoading.setVisibility(View.GONE);
 
         setSoftwareRenderModeForWebView(htmlPage, mWebView);
 
         html = htmlPage;
+        // The web view might have shown another article before (see WebViewPool)
+        mClearHistory = true;
+        mRequestInterceptor.setDownloadMissingImages(true);
         mWebView.loadDataWithBaseURL("file:///android_asset/", htmlPage, "text/html", "UTF-8", RSS_ITEM_PAGE_URL);
     }
 
@@ -313,20 +336,15 @@ public class NewsDetailFragment extends Fragment implements RssItemToHtmlTask.Li
 
         mWebView.setWebViewClient(new WebViewClient() {
 
-            private Map<String, Boolean> loadedUrls = new HashMap<>();
-
             @Override
             public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
-                //Log.d(TAG, "shouldInterceptRequest: " + url);
-
-                boolean isAd;
-                if (!loadedUrls.containsKey(url)) {
-                    isAd = AdBlocker.isAd(url);
-                    loadedUrls.put(url, isAd);
-                } else {
-                    isAd = loadedUrls.get(url);
-                }
-                return isAd ? AdBlocker.createEmptyResource() : super.shouldInterceptRequest(view, url);
+                return mRequestInterceptor.intercept(url);
+            }
+
+            @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                return mRequestInterceptor.intercept(request);
             }
 
             @Override
@@ -338,6 +356,10 @@ public class NewsDetailFragment extends Fragment implements RssItemToHtmlTask.Li
             @Override
             public void onPageFinished(WebView view, String url) {
                 super.onPageFinished(view, url);
+                if(mClearHistory) {
+                    view.clearHistory();
+                    mClearHistory = false;
+                }
                 addBottomPaddingForFastActions(view);
             }
         });
@@ -391,6 +413,7 @@ public class NewsDetailFragment extends Fragment implements RssItemToHtmlTask.Li
         File webArchiveFile = DownloadWebPageService.getWebPageArchiveFileForUrl(getActivity(), url);
         if(webArchiveFile.exists()) { // Test if WebArchive exists for url
             mTvOfflineVersion.setVisibility(View.VISIBLE);
+            mRequestInterceptor.setDownloadMissingImages(false);
             mWebView.loadUrl("file://" + webArchiveFile.getAbsolutePath());
         } else {
             mTvOfflineVersion.setVisibility(View.GONE);
@@ -409,6 +432,7 @@ public class NewsDetailFragment extends Fragment implements RssItemToHtmlTask.Li
                     startActivity(browserIntent);
                     break;
                 case 2: // Built in
+                    mRequestInterceptor.setDownloadMissingImages(false);
                     mWebView.loadUrl(url);
                     break;
                 default:
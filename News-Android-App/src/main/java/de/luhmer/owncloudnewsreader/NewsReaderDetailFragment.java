@@ -68,13 +68,16 @@ import de.luhmer.owncloudnewsreader.adapter.NewsListRecyclerAdapter;
 import de.luhmer.owncloudnewsreader.adapter.ViewHolder;
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm.SORT_DIRECTION;
-import de.luhmer.owncloudnewsreader.database.model.RssItem;
-import de.luhmer.owncloudnewsreader.database.model.RssItemDao;
+import de.luhmer.owncloudnewsreader.database.RssItemQuery;
+import de.luhmer.owncloudnewsreader.database.RssItemListRow;
 import de.luhmer.owncloudnewsreader.helper.AsyncTaskHelper;
 import de.luhmer.owncloudnewsreader.helper.PostDelayHandler;
 import de.luhmer.owncloudnewsreader.helper.Search;
 import de.luhmer.owncloudnewsreader.helper.StopWatch;
+import io.reactivex.Completable;
+import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.observers.DisposableObserver;
+import io.reactivex.schedulers.Schedulers;
 
 import static de.luhmer.owncloudnewsreader.ListView.SubscriptionExpandableListAdapter.SPECIAL_FOLDERS.ALL_STARRED_ITEMS;
 import static de.luhmer.owncloudnewsreader.ListView.SubscriptionExpandableListAdapter.SPECIAL_FOLDERS.ALL_UNREAD_ITEMS;
@@ -144,9 +147,9 @@ public class NewsReaderDetailFragment extends Fragment {
         super.onDetach();
     }
 
-    protected DisposableObserver<List<RssItem>> searchResultObserver = new DisposableObserver<List<RssItem>>() {
+    protected DisposableObserver<List<RssItemListRow>> searchResultObserver = new DisposableObserver<List<RssItemListRow>>() {
         @Override
-        public void onNext(List<RssItem> rssItems) {
+        public void onNext(List<RssItemListRow> rssItems) {
             loadRssItemsIntoView(rssItems);
         }
 
@@ -242,6 +245,26 @@ public class NewsReaderDetailFragment extends Fragment {
     /**
      * Refreshes the current RSS-View
      */
+    /**
+     * Marks all items of the current view as read in the background (the update may have to wait
+     * for the writes of a running sync) and refreshes the view and the unread counts afterwards.
+     */
+    protected void markAllAsReadForCurrentView() {
+        final DatabaseConnectionOrm dbConn2 = new DatabaseConnectionOrm(getActivity());
+        Completable.fromAction(dbConn2::markAllItemsAsReadForCurrentView)
+                .subscribeOn(Schedulers.io())
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(() -> {
+                    if (!isAdded()) {
+                        return;
+                    }
+                    if (getActivity() instanceof NewsReaderListActivity) {
+                        ((NewsReaderListActivity) getActivity()).reloadCountNumbersOfSlidingPaneAdapter();
+                    }
+                    refreshCurrentRssView();
+                }, throwable -> Log.e(TAG, "Marking all items as read failed", throwable));
+    }
+
     protected void refreshCurrentRssView() {
         Log.v(TAG, "refreshCurrentRssView");
         NewsListRecyclerAdapter nra = ((NewsListRecyclerAdapter) recyclerView.getAdapter());
@@ -290,7 +313,7 @@ public class NewsReaderDetailFragment extends Fragment {
         return (LinearLayoutManager) recyclerView.getLayoutManager();
     }
 
-    protected List<RssItem> performSearch(String searchString) {
+    protected List<RssItemListRow> performSearch(String searchString) {
         Handler mainHandler = new Handler(mActivity.getMainLooper());
 
         Runnable myRunnable = () -> {
@@ -302,7 +325,7 @@ public class NewsReaderDetailFragment extends Fragment {
         return Search.PerformSearch(mActivity, idFolder, idFeed, searchString, mPrefs);
     }
 
-    void loadRssItemsIntoView(List<RssItem> rssItems) {
+    void loadRssItemsIntoView(List<RssItemListRow> rssItems) {
         previousFirstVisibleItem = -1;
         try {
             NewsListRecyclerAdapter nra = ((NewsListRecyclerAdapter) recyclerView.getAdapter());
@@ -506,7 +529,7 @@ public class NewsReaderDetailFragment extends Fragment {
         return layoutManager.findFirstVisibleItemPosition();
     }
 
-    private class UpdateCurrentRssViewTask extends AsyncTask<Void, Void, List<RssItem>> {
+    private class UpdateCurrentRssViewTask extends AsyncTask<Void, Void, List<RssItemListRow>> {
 
         @Override
         protected void onPreExecute() {
@@ -516,7 +539,7 @@ public class NewsReaderDetailFragment extends Fragment {
         }
 
         @Override
-        protected List<RssItem> doInBackground(Void... voids) {
+        protected List<RssItemListRow> doInBackground(Void... voids) {
             DatabaseConnectionOrm dbConn = new DatabaseConnectionOrm(NewsReaderDetailFragment.this.getContext());
             SORT_DIRECTION sortDirection = getSortDirection(mPrefs);
             boolean onlyUnreadItems = mPrefs.getBoolean(SettingsActivity.CB_SHOWONLYUNREAD_STRING, false);
@@ -524,30 +547,23 @@ public class NewsReaderDetailFragment extends Fragment {
             if (idFolder != null && idFolder == ALL_STARRED_ITEMS.getValue())
                 onlyStarredItems = true;
 
-            String sqlSelectStatement = null;
+            RssItemQuery query = null;
             if (idFeed != null) {
                 if (idFolder != null && idFolder == ALL_UNREAD_ITEMS.getValue()) {
                     onlyUnreadItems = true;
                 }
-                sqlSelectStatement = dbConn.getAllItemsIdsForFeedSQL(idFeed, onlyUnreadItems, onlyStarredItems, sortDirection);
+                query = RssItemQuery.forFeed(idFeed, onlyUnreadItems, onlyStarredItems, sortDirection);
             } else if (idFolder != null) {
-                if (idFolder == ALL_STARRED_ITEMS.getValue())
-                    onlyUnreadItems = false;
-                sqlSelectStatement = dbConn.getAllItemsIdsForFolderSQL(idFolder, onlyUnreadItems, sortDirection);
+                query = RssItemQuery.forFolder(idFolder, onlyUnreadItems, sortDirection);
             }
-            if (sqlSelectStatement != null) {
-                int index = sqlSelectStatement.indexOf("ORDER BY");
-                if (index == -1) {
-                    index = sqlSelectStatement.length();
-                }
-                sqlSelectStatement = new StringBuilder(sqlSelectStatement).insert(index, " GROUP BY " + RssItemDao.Properties.Fingerprint.columnName + " ").toString();
-                dbConn.insertIntoRssCurrentViewTable(sqlSelectStatement);
+            if (query != null) {
+                dbConn.setCurrentRssItemView(query.deduplicate());
             }
 
             StopWatch sw = new StopWatch();
             sw.start();
 
-            List<RssItem> items = dbConn.getCurrentRssItemView(0);
+            List<RssItemListRow> items = dbConn.getCurrentRssItemView(null);
 
             sw.stop();
             Log.v(TAG, "Time needed (init loading): " + sw.toString());
@@ -556,7 +572,7 @@ public class NewsReaderDetailFragment extends Fragment {
         }
 
         @Override
-        protected void onPostExecute(List<RssItem> rssItem) {
+        protected void onPostExecute(List<RssItemListRow> rssItem) {
             loadRssItemsIntoView(rssItem);
 
             if (rssItem.size() < 10) { // Less than 10 items in the list (usually 3-5 items fit on one screen)
@@ -815,21 +831,12 @@ public class NewsReaderDetailFragment extends Fragment {
                     }
                 });
                 this.targetView.startAnimation(anim_success);
-                this.markAllAsReadForCurrentView();
+                NewsReaderDetailFragment.this.markAllAsReadForCurrentView();
             } else {
                 this.targetView.setVisibility(View.INVISIBLE);
                 v.animate().x(this.originX).y(this.originY).setDuration(100).setStartDelay(0).start();
                 ((Animatable)this.targetView.getDrawable()).stop();
             }
         }
-
-        /**
-         * Mark all articles in current view as read.
-         */
-        private void markAllAsReadForCurrentView() {
-            DatabaseConnectionOrm dbConn2 = new DatabaseConnectionOrm(this.fabMarkAllAsRead.getContext());
-            dbConn2.markAllItemsAsReadForCurrentView();
-            NewsReaderDetailFragment.this.refreshCurrentRssView();
-        }
     }
 }
@@ -92,12 +92,15 @@ import de.luhmer.owncloudnewsreader.adapter.RecyclerItemClickListener;
 import de.luhmer.owncloudnewsreader.adapter.ViewHolder;
 import de.luhmer.owncloudnewsreader.authentication.AccountGeneral;
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
+import de.luhmer.owncloudnewsreader.database.RssItemListRow;
 import de.luhmer.owncloudnewsreader.database.model.Feed;
 import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import de.luhmer.owncloudnewsreader.events.RssItemCountChangedEvent;
 import de.luhmer.owncloudnewsreader.events.podcast.FeedPanelSlideEvent;
 import de.luhmer.owncloudnewsreader.helper.DatabaseUtils;
 import de.luhmer.owncloudnewsreader.helper.ThemeChooser;
 import de.luhmer.owncloudnewsreader.helper.ThemeUtils;
+import de.luhmer.owncloudnewsreader.reader.SubscriptionChanges;
 import de.luhmer.owncloudnewsreader.reader.nextcloud.RssItemObservable;
 import de.luhmer.owncloudnewsreader.services.DownloadImagesService;
 import de.luhmer.owncloudnewsreader.services.DownloadWebPageService;
@@ -163,8 +166,7 @@ public class NewsReaderListActivity extends PodcastFragmentActivity implements
     private static final String ID_FEED_STRING = "ID_FEED_STRING";
     private static final String IS_FOLDER_BOOLEAN = "IS_FOLDER_BOOLEAN";
     private static final String OPTIONAL_FOLDER_ID = "OPTIONAL_FOLDER_ID";
-    private static final String LIST_ADAPTER_TOTAL_COUNT = "LIST_ADAPTER_TOTAL_COUNT";
-    private static final String LIST_ADAPTER_PAGE_COUNT = "LIST_ADAPTER_PAGE_COUNT";
+    private static final String LIST_ADAPTER_ITEM_COUNT = "LIST_ADAPTER_ITEM_COUNT";
 
     @Inject @Named("sharedPreferencesFileName") String sharedPreferencesFileName;
 
@@ -311,8 +313,7 @@ public class NewsReaderListActivity extends PodcastFragmentActivity implements
 
             NewsListRecyclerAdapter adapter = (NewsListRecyclerAdapter) ndf.getRecyclerView().getAdapter();
             if (adapter != null) {
-                outState.putInt(LIST_ADAPTER_TOTAL_COUNT, adapter.getTotalItemCount());
-                outState.putInt(LIST_ADAPTER_PAGE_COUNT, adapter.getCachedPages());
+                outState.putInt(LIST_ADAPTER_ITEM_COUNT, adapter.getLoadedItemCount());
             }
         }
         if(mSearchView != null) {
@@ -328,8 +329,7 @@ public class NewsReaderListActivity extends PodcastFragmentActivity implements
 
             NewsListRecyclerAdapter adapter = new NewsListRecyclerAdapter(this, getNewsReaderDetailFragment().recyclerView, this, mPostDelayHandler, mPrefs);
 
-            adapter.setTotalItemCount(savedInstanceState.getInt(LIST_ADAPTER_TOTAL_COUNT));
-            adapter.setCachedPages(savedInstanceState.getInt(LIST_ADAPTER_PAGE_COUNT));
+            adapter.setLoadedItemCount(savedInstanceState.getInt(LIST_ADAPTER_ITEM_COUNT));
 
             getNewsReaderDetailFragment()
                     .getRecyclerView()
@@ -473,7 +473,15 @@ public class NewsReaderListActivity extends PodcastFragmentActivity implements
             Toast.makeText(NewsReaderListActivity.this, exception.getLocalizedMessage(), Toast.LENGTH_LONG).show();
         }
         updateButtonLayout();
-        syncFinishedHandler();
+        syncFinishedHandler(null);
+    }
+
+    @Subscribe(threadMode = ThreadMode.MAIN)
+    public void onEventMainThread(RssItemCountChangedEvent event) {
+        NewsReaderListFragment newsReaderListFragment = getSlidingListFragment();
+        if (newsReaderListFragment != null) {
+            newsReaderListFragment.applyCountChanges(event);
+        }
     }
 
     @Subscribe(threadMode = ThreadMode.MAIN)
@@ -484,13 +492,14 @@ public class NewsReaderListActivity extends PodcastFragmentActivity implements
     @Subscribe(threadMode = ThreadMode.MAIN)
 	public void onEventMainThread(SyncFinishedEvent event) {
         updateButtonLayout();
-        syncFinishedHandler();
+        syncFinishedHandler(event.getSubscriptionChanges());
 	}
 
 	/**
+	 * @param subscriptionChanges folder / feed changes of the sync or null to reload the subscriptions
 	 * @return true if new items count was greater than 0
 	 */
-	private boolean syncFinishedHandler() {
+	private boolean syncFinishedHandler(SubscriptionChanges subscriptionChanges) {
 		ShowcaseConfig config = new ShowcaseConfig();
 		config.setDelay(300); // half second between each showcase view
 		MaterialShowcaseSequence sequence = new MaterialShowcaseSequence(this, "SWIPE_LEFT_RIGHT_AND_PTR");
@@ -501,8 +510,15 @@ public class NewsReaderListActivity extends PodcastFragmentActivity implements
                 "Swipe Left/Right to mark article as read", "GOT IT", true);
 		sequence.start();
 
+		int newItemsCount = mPrefs.getInt(Constants.LAST_UPDATE_NEW_ITEMS_COUNT_STRING, 0);
+
 		NewsReaderListFragment newsReaderListFragment = getSlidingListFragment();
-		newsReaderListFragment.reloadAdapter();
+		if (newItemsCount > 0) {
+			// Feeds with new unread items need to be added to the folders
+			newsReaderListFragment.reloadAdapter();
+		} else {
+			newsReaderListFragment.applySubscriptionChanges(subscriptionChanges);
+		}
 		UpdateItemList();
 		updatePodcastView();
 
@@ -510,8 +526,6 @@ public class NewsReaderListActivity extends PodcastFragmentActivity implements
             getSlidingListFragment().startAsyncTaskGetUserInfo();
         }
 
-		int newItemsCount = mPrefs.getInt(Constants.LAST_UPDATE_NEW_ITEMS_COUNT_STRING, 0);
-
 		if (newItemsCount > 0) {
 			int firstVisiblePosition = getNewsReaderDetailFragment().getFirstVisibleScrollPosition();
 
@@ -816,11 +830,7 @@ public class NewsReaderListActivity extends PodcastFragmentActivity implements
 			case R.id.menu_markAllAsRead:
 				NewsReaderDetailFragment ndf = getNewsReaderDetailFragment();
 				if(ndf != null) {
-					DatabaseConnectionOrm dbConn2 = new DatabaseConnectionOrm(this);
-					dbConn2.markAllItemsAsReadForCurrentView();
-
-					reloadCountNumbersOfSlidingPaneAdapter();
-					ndf.refreshCurrentRssView();
+					ndf.markAllAsReadForCurrentView();
 				}
 				return true;
 
@@ -1069,7 +1079,7 @@ public class NewsReaderListActivity extends PodcastFragmentActivity implements
 
 	@Override
 	public boolean onLongClick(ViewHolder vh, int position) {
-        RssItem rssItem = vh.getRssItem();
+        RssItemListRow rssItem = vh.getRssItem();
         DialogFragment newFragment =
                 NewsDetailImageDialogFragment.newInstanceUrl(rssItem.getTitle(), rssItem.getLink());
         FragmentTransaction ft = getSupportFragmentManager().beginTransaction();
@@ -35,6 +35,7 @@ import de.luhmer.owncloudnewsreader.database.model.Feed;
 import de.luhmer.owncloudnewsreader.database.model.Folder;
 import de.luhmer.owncloudnewsreader.di.ApiProvider;
 import de.luhmer.owncloudnewsreader.helper.FavIconHandler;
+import io.reactivex.Completable;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.annotations.NonNull;
 import io.reactivex.functions.Action;
@@ -230,17 +231,23 @@ public class NewsReaderListDialogFragment extends DialogFragment {
                 getDialog().setCanceledOnTouchOutside(false);
 
 
+                final String newFeedName = mFeedName.getText().toString();
+                final DatabaseConnectionOrm dbConn = new DatabaseConnectionOrm(getContext());
                 Map<String, String> paramMap = new LinkedHashMap<>();
-                paramMap.put("feedTitle", mFeedName.getText().toString());
+                paramMap.put("feedTitle", newFeedName);
                 mApi.getAPI().renameFeed(feedId, paramMap)
+                        // The database write may have to wait for a running sync - not on the main thread
+                        .andThen(Completable.fromAction(new Action() {
+                            @Override
+                            public void run() throws Exception {
+                                dbConn.renameFeedById(mFeedId, newFeedName);
+                            }
+                        }))
                         .subscribeOn(Schedulers.newThread())
                         .observeOn(AndroidSchedulers.mainThread())
                         .subscribe(new Action() {
                             @Override
                             public void run() throws Exception {
-                                DatabaseConnectionOrm dbConn = new DatabaseConnectionOrm(getContext());
-                                dbConn.renameFeedById(mFeedId, mFeedName.getText().toString());
-
                                 parentActivity.getSlidingListFragment().reloadAdapter();
                                 parentActivity.startSync();
 
@@ -275,15 +282,20 @@ public class NewsReaderListDialogFragment extends DialogFragment {
                 getDialog().setCanceledOnTouchOutside(false);
 
 
+                final DatabaseConnectionOrm dbConn = new DatabaseConnectionOrm(getContext());
                 mApi.getAPI().deleteFeed(feedId)
+                        // The database write may have to wait for a running sync - not on the main thread
+                        .andThen(Completable.fromAction(new Action() {
+                            @Override
+                            public void run() throws Exception {
+                                dbConn.removeFeedById(mFeedId);
+                            }
+                        }))
                         .subscribeOn(Schedulers.newThread())
                         .observeOn(AndroidSchedulers.mainThread())
                         .subscribe(new Action() {
                             @Override
                             public void run() throws Exception {
-                                DatabaseConnectionOrm dbConn = new DatabaseConnectionOrm(getContext());
-                                dbConn.removeFeedById(mFeedId);
-
                                 Long currentFeedId = parentActivity.getNewsReaderDetailFragment().getIdFeed();
                                 if(currentFeedId != null && currentFeedId == mFeedId) {
                                     parentActivity.switchToAllUnreadItemsFolder();
@@ -64,10 +64,12 @@ import butterknife.ButterKnife;
 import de.luhmer.owncloudnewsreader.ListView.SubscriptionExpandableListAdapter;
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
 import de.luhmer.owncloudnewsreader.di.ApiProvider;
+import de.luhmer.owncloudnewsreader.events.RssItemCountChangedEvent;
 import de.luhmer.owncloudnewsreader.interfaces.ExpListTextClicked;
 import de.luhmer.owncloudnewsreader.model.AbstractItem;
 import de.luhmer.owncloudnewsreader.model.ConcreteFeedItem;
 import de.luhmer.owncloudnewsreader.model.UserInfo;
+import de.luhmer.owncloudnewsreader.reader.SubscriptionChanges;
 import io.reactivex.Observer;
 import io.reactivex.android.schedulers.AndroidSchedulers;
 import io.reactivex.annotations.NonNull;
@@ -119,6 +121,14 @@ public class NewsReaderListFragment extends Fragment implements OnCreateContextM
         lvAdapter.ReloadAdapterAsync();
     }
 
+    public void applyCountChanges(RssItemCountChangedEvent event) {
+        lvAdapter.applyCountChanges(event);
+    }
+
+    public void applySubscriptionChanges(SubscriptionChanges changes) {
+        lvAdapter.applySubscriptionChanges(changes);
+    }
+
 	public void setRefreshing(boolean isRefreshing) {
 		if(isRefreshing) {
 			//headerLogo.setImageResource(R.drawable.ic_launcher_background);
@@ -147,6 +147,8 @@ public class PodcastFragmentActivity extends AppCompatActivity implements IPlayP
     protected void onPause() {
         eventBus.unregister(this);
 
+        new DatabaseConnectionOrm(this).flushRssItemStatesAsync();
+
         /*
         isVideoViewVisible = false;
         videoViewInitialized = false;
@@ -161,7 +163,7 @@ public class PodcastFragmentActivity extends AppCompatActivity implements IPlayP
 
         if (NextcloudNotificationManager.isUnreadRssCountNotificationVisible(this)) {
             DatabaseConnectionOrm dbConn = new DatabaseConnectionOrm(this);
-            int count = Integer.parseInt(dbConn.getUnreadItemsCountForSpecificFolder(SubscriptionExpandableListAdapter.SPECIAL_FOLDERS.ALL_UNREAD_ITEMS));
+            int count = dbConn.getUnreadItemsCountForSpecificFolder(SubscriptionExpandableListAdapter.SPECIAL_FOLDERS.ALL_UNREAD_ITEMS);
             NextcloudNotificationManager.showUnreadRssItemsNotification(this, count);
 
             if (count == 0) {
@@ -90,6 +90,10 @@ public class SettingsActivity extends AppCompatActivity {
 
     public static final String CACHE_CLEARED = "CACHE_CLEARED";
     public static final String SP_MAX_CACHE_SIZE = "sp_max_cache_size";
+    public static final String SP_MAX_DOWNLOADED_FILES_SIZE = "sp_max_downloaded_files_size";
+    public static final String SP_RETENTION_MAX_ITEMS_PER_FEED = "sp_retention_max_items_per_feed";
+    public static final String SP_RETENTION_MAX_AGE_DAYS = "sp_retention_max_age_days";
+    public static final String SP_RETENTION_MAX_BODY_SIZE = "sp_retention_max_body_size";
     public static final String SP_SORT_ORDER = "sp_sort_order";
     public static final String SP_DISPLAY_BROWSER = "sp_display_browser";
     public static final String SP_SEARCH_IN = "sp_search_in";
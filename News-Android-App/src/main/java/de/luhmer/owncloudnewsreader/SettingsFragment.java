@@ -36,6 +36,7 @@ import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
 import de.luhmer.owncloudnewsreader.helper.ImageHandler;
 import de.luhmer.owncloudnewsreader.helper.NewsFileUtils;
 import de.luhmer.owncloudnewsreader.helper.PostDelayHandler;
+import de.luhmer.owncloudnewsreader.helper.RenderedPageCache;
 
 import static android.app.Activity.RESULT_OK;
 import static de.luhmer.owncloudnewsreader.Constants.USER_INFO_STRING;
@@ -61,6 +62,10 @@ import static de.luhmer.owncloudnewsreader.SettingsActivity.SP_DISPLAY_BROWSER;
 import static de.luhmer.owncloudnewsreader.SettingsActivity.SP_FEED_LIST_LAYOUT;
 import static de.luhmer.owncloudnewsreader.SettingsActivity.SP_FONT_SIZE;
 import static de.luhmer.owncloudnewsreader.SettingsActivity.SP_MAX_CACHE_SIZE;
+import static de.luhmer.owncloudnewsreader.SettingsActivity.SP_MAX_DOWNLOADED_FILES_SIZE;
+import static de.luhmer.owncloudnewsreader.SettingsActivity.SP_RETENTION_MAX_AGE_DAYS;
+import static de.luhmer.owncloudnewsreader.SettingsActivity.SP_RETENTION_MAX_BODY_SIZE;
+import static de.luhmer.owncloudnewsreader.SettingsActivity.SP_RETENTION_MAX_ITEMS_PER_FEED;
 import static de.luhmer.owncloudnewsreader.SettingsActivity.SP_SEARCH_IN;
 import static de.luhmer.owncloudnewsreader.SettingsActivity.SP_SORT_ORDER;
 import static de.luhmer.owncloudnewsreader.SettingsActivity.SP_SWIPE_LEFT_ACTION;
@@ -278,6 +283,10 @@ public class SettingsFragment extends PreferenceFragmentCompat {
         Preference clearCachePref = prefFrag.findPreference(EDT_CLEAR_CACHE);
         bindPreferenceSummaryToValue(prefFrag.findPreference(LV_CACHE_IMAGES_OFFLINE_STRING));
         bindPreferenceSummaryToValue(prefFrag.findPreference(SP_MAX_CACHE_SIZE));
+        bindPreferenceSummaryToValue(prefFrag.findPreference(SP_MAX_DOWNLOADED_FILES_SIZE));
+        bindPreferenceSummaryToValue(prefFrag.findPreference(SP_RETENTION_MAX_ITEMS_PER_FEED));
+        bindPreferenceSummaryToValue(prefFrag.findPreference(SP_RETENTION_MAX_AGE_DAYS));
+        bindPreferenceSummaryToValue(prefFrag.findPreference(SP_RETENTION_MAX_BODY_SIZE));
 
 
         clearCachePref.setOnPreferenceClickListener(preference -> {
@@ -425,6 +434,7 @@ public class SettingsFragment extends PreferenceFragmentCompat {
             DatabaseConnectionOrm dbConn = new DatabaseConnectionOrm(context);
             dbConn.resetDatabase();
             ImageHandler.clearCache();
+            RenderedPageCache.getInstance(context).clear();
             NewsFileUtils.clearWebArchiveCache(context);
             NewsFileUtils.clearPodcastCache(context);
             return null;
@@ -14,20 +14,21 @@ import androidx.recyclerview.widget.RecyclerView;
 import org.greenrobot.eventbus.EventBus;
 import org.greenrobot.eventbus.Subscribe;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import de.luhmer.owncloudnewsreader.NewsReaderListActivity;
 import de.luhmer.owncloudnewsreader.R;
 import de.luhmer.owncloudnewsreader.SettingsActivity;
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
-import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import de.luhmer.owncloudnewsreader.database.RssItemListRow;
 import de.luhmer.owncloudnewsreader.events.podcast.PodcastCompletedEvent;
 import de.luhmer.owncloudnewsreader.helper.AsyncTaskHelper;
 import de.luhmer.owncloudnewsreader.helper.PostDelayHandler;
 import de.luhmer.owncloudnewsreader.helper.StopWatch;
 import de.luhmer.owncloudnewsreader.interfaces.IPlayPausePodcastClicked;
-import de.luhmer.owncloudnewsreader.model.CurrentRssViewDataHolder;
+import io.reactivex.Maybe;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.schedulers.Schedulers;
 
 public class NewsListRecyclerAdapter extends RecyclerView.Adapter {
     private static final String TAG = "NewsListRecyclerAdapter";
@@ -37,13 +38,15 @@ public class NewsListRecyclerAdapter extends RecyclerView.Adapter {
 
     private long idOfCurrentlyPlayedPodcast = -1;
 
-    private List<RssItem> lazyList;
+    private List<RssItemListRow> lazyList;
     private DatabaseConnectionOrm dbConn;
     private PostDelayHandler pDelayHandler;
     private FragmentActivity activity;
 
-    private int totalItemCount = 0;
-    private int cachedPages = 1;
+    // No more pages to load (the last page was incomplete)
+    private boolean reachedEnd = false;
+    // Number of items to load on the next refresh (set when the adapter is restored)
+    private int itemCountToRestore = DatabaseConnectionOrm.PageSize;
 
     private IPlayPausePodcastClicked playPausePodcastClicked;
 
@@ -81,9 +84,8 @@ public class NewsListRecyclerAdapter extends RecyclerView.Adapter {
                             int adapterTotalItemCount = linearLayoutManager.getItemCount();
                             int lastVisibleItem = linearLayoutManager
                                     .findLastVisibleItemPosition();
-                            if (!loading &&
-                                    adapterTotalItemCount <= (lastVisibleItem + visibleThreshold) &&
-                                    adapterTotalItemCount < totalItemCount) {
+                            if (!loading && !reachedEnd &&
+                                    adapterTotalItemCount <= (lastVisibleItem + visibleThreshold)) {
                                 loading = true;
 
                                 Log.v(TAG, "start load more task...");
@@ -91,11 +93,11 @@ public class NewsListRecyclerAdapter extends RecyclerView.Adapter {
                                 recyclerView.post(new Runnable() {
                                     public void run() {
                                         // End has been reached
-                                        // Do something
+                                        RssItemListRow lastLoadedItem = lazyList.get(lazyList.size() - 1);
                                         lazyList.add(null);
                                         notifyItemInserted(lazyList.size() - 1);
 
-                                        AsyncTaskHelper.StartAsyncTask(new LoadMoreItemsAsyncTask());
+                                        AsyncTaskHelper.StartAsyncTask(new LoadMoreItemsAsyncTask(lastLoadedItem));
                                     }
                                 });
                             }
@@ -104,20 +106,27 @@ public class NewsListRecyclerAdapter extends RecyclerView.Adapter {
         }
     }
 
-    public int getTotalItemCount() {
-        return totalItemCount;
-    }
-
-    public int getCachedPages() {
-        return cachedPages;
-    }
-
-    public void setTotalItemCount(int totalItemCount) {
-        this.totalItemCount = totalItemCount;
+    /**
+     * @return number of items loaded so far
+     */
+    public int getLoadedItemCount() {
+        if (lazyList == null) {
+            return itemCountToRestore;
+        }
+        int count = 0;
+        for (RssItemListRow item : lazyList) {
+            if (item != null) {
+                count++;
+            }
+        }
+        return count;
     }
 
-    public void setCachedPages(int cachedPages) {
-        this.cachedPages = cachedPages;
+    /**
+     * Used to load the same number of items again after the adapter has been recreated
+     */
+    public void setLoadedItemCount(int loadedItemCount) {
+        this.itemCountToRestore = Math.max(loadedItemCount, DatabaseConnectionOrm.PageSize);
     }
 
     /*
@@ -192,7 +201,13 @@ public class NewsListRecyclerAdapter extends RecyclerView.Adapter {
                 if (holder.isPlaying()) {
                     playPausePodcastClicked.pausePodcast();
                 } else {
-                    playPausePodcastClicked.openPodcast(holder.getRssItem());
+                    // The row doesn't contain everything needed to play the podcast
+                    final long rssItemId = holder.getRssItem().getId();
+                    Maybe.fromCallable(() -> dbConn.getRssItemById(rssItemId))
+                            .subscribeOn(Schedulers.io())
+                            .observeOn(AndroidSchedulers.mainThread())
+                            .subscribe(playPausePodcastClicked::openPodcast,
+                                    throwable -> Log.e(TAG, "Failed to load podcast item", throwable));
                 }
             });
 
@@ -221,7 +236,7 @@ public class NewsListRecyclerAdapter extends RecyclerView.Adapter {
             ((ProgressViewHolder) viewHolder).progressBar.setIndeterminate(true);
         } else {
             final ViewHolder holder = (ViewHolder) viewHolder;
-            RssItem item = lazyList.get(position);
+            RssItemListRow item = lazyList.get(position);
             holder.setRssItem(item);
             holder.setStayUnread(NewsReaderListActivity.stayUnreadItems.contains(item.getId()));
 
@@ -251,7 +266,7 @@ public class NewsListRecyclerAdapter extends RecyclerView.Adapter {
     }
 
     public void changeReadStateOfItem(ViewHolder viewHolder, boolean isChecked) {
-        RssItem rssItem = viewHolder.getRssItem();
+        RssItemListRow rssItem = viewHolder.getRssItem();
         if (rssItem.getRead_temp() != isChecked) { //Only perform database operations if really needed
             rssItem.setRead_temp(isChecked);
             dbConn.updateRssItem(rssItem);
@@ -266,13 +281,13 @@ public class NewsListRecyclerAdapter extends RecyclerView.Adapter {
     }
 
     public void toggleReadStateOfItem(ViewHolder viewHolder) {
-        RssItem rssItem = viewHolder.getRssItem();
+        RssItemListRow rssItem = viewHolder.getRssItem();
         boolean isRead = !rssItem.getRead_temp();
         changeReadStateOfItem(viewHolder, isRead);
     }
 
     public void toggleStarredStateOfItem(ViewHolder viewHolder) {
-        RssItem rssItem = viewHolder.getRssItem();
+        RssItemListRow rssItem = viewHolder.getRssItem();
         boolean isStarred = !rssItem.getStarred_temp();
         rssItem.setStarred_temp(isStarred);
         if (isStarred) {
@@ -298,7 +313,7 @@ public class NewsListRecyclerAdapter extends RecyclerView.Adapter {
     @Override
     public long getItemId(int position) {
         if (lazyList != null) {
-            RssItem item = lazyList.get(position);
+            RssItemListRow item = lazyList.get(position);
             return item != null ? item.getId() : 0;
         }
         return 0;
@@ -306,28 +321,17 @@ public class NewsListRecyclerAdapter extends RecyclerView.Adapter {
 
 
 
-    private List<RssItem> refreshAdapterData() {
-        List<RssItem> rssItems = new ArrayList<>();
+    private List<RssItemListRow> refreshAdapterData(int itemCount) {
         DatabaseConnectionOrm dbConn = new DatabaseConnectionOrm(activity);
-        for(int i = 0; i < cachedPages; i++) {
-            rssItems.addAll(dbConn.getCurrentRssItemView(i));
-        }
-        return rssItems;
+        return dbConn.getCurrentRssItemView(null, itemCount);
     }
 
 
 
-    public void updateAdapterData(List<RssItem> rssItems) {
+    public void updateAdapterData(List<RssItemListRow> rssItems) {
         NewsReaderListActivity.stayUnreadItems.clear();
 
-        cachedPages = 1;
-
-        //if (this.lazyList != null) {
-            //this.lazyList.close();
-        //}
-        //new ReloadAdapterAsyncTask().execute();
-
-        totalItemCount = ((Long) dbConn.getCurrentRssItemViewCount()).intValue();
+        reachedEnd = rssItems.size() < DatabaseConnectionOrm.PageSize;
 
         lazyList = rssItems;
         notifyDataSetChanged();
@@ -343,9 +347,10 @@ public class NewsListRecyclerAdapter extends RecyclerView.Adapter {
         AsyncTaskHelper.StartAsyncTask(new RefreshDataAsyncTask(listener));
     }
 
-    private class RefreshDataAsyncTask extends AsyncTask<Void, Void, List<RssItem>> {
+    private class RefreshDataAsyncTask extends AsyncTask<Void, Void, List<RssItemListRow>> {
 
         private IOnRefreshFinished listener;
+        private int itemCount;
 
         public RefreshDataAsyncTask(IOnRefreshFinished listener) {
             this.listener = listener;
@@ -354,16 +359,17 @@ public class NewsListRecyclerAdapter extends RecyclerView.Adapter {
         @Override
         protected void onPreExecute() {
             loading = true;
+            itemCount = Math.max(getLoadedItemCount(), DatabaseConnectionOrm.PageSize);
 
             super.onPreExecute();
         }
 
         @Override
-        protected List<RssItem> doInBackground(Void... params) {
+        protected List<RssItemListRow> doInBackground(Void... params) {
             StopWatch sw = new StopWatch();
             sw.start();
 
-            List<RssItem> rssItems = refreshAdapterData();
+            List<RssItemListRow> rssItems = refreshAdapterData(itemCount);
 
             sw.stop();
             Log.v(TAG, "Time needed (refreshing adapter): " + sw.toString());
@@ -372,8 +378,9 @@ public class NewsListRecyclerAdapter extends RecyclerView.Adapter {
         }
 
         @Override
-        protected void onPostExecute(List<RssItem> rssItems) {
+        protected void onPostExecute(List<RssItemListRow> rssItems) {
             lazyList = rssItems;
+            reachedEnd = rssItems.size() < itemCount;
             notifyDataSetChanged();
 
             loading = false;
@@ -385,21 +392,21 @@ public class NewsListRecyclerAdapter extends RecyclerView.Adapter {
     }
 
 
-    private class LoadMoreItemsAsyncTask extends AsyncTask<Void, Void, List<RssItem>> {
+    private class LoadMoreItemsAsyncTask extends AsyncTask<Void, Void, List<RssItemListRow>> {
+
+        private RssItemListRow lastLoadedItem;
+
+        LoadMoreItemsAsyncTask(RssItemListRow lastLoadedItem) {
+            this.lastLoadedItem = lastLoadedItem;
+        }
+
         @Override
-        protected List<RssItem> doInBackground(Void... params) {
+        protected List<RssItemListRow> doInBackground(Void... params) {
             StopWatch sw = new StopWatch();
             sw.start();
 
             DatabaseConnectionOrm dbConn = new DatabaseConnectionOrm(activity);
-            List<RssItem> items = dbConn.getCurrentRssItemView(cachedPages++);
-
-            /*
-            try {
-                Thread.sleep(2000);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }*/
+            List<RssItemListRow> items = dbConn.getCurrentRssItemView(lastLoadedItem);
 
             sw.stop();
             Log.v(TAG, "Time needed (loading more): " + sw.toString());
@@ -408,43 +415,19 @@ public class NewsListRecyclerAdapter extends RecyclerView.Adapter {
         }
 
         @Override
-        protected void onPostExecute(List<RssItem> rssItems) {
-            int prevSize = lazyList.size();
-            lazyList.remove(prevSize - 1);
-            lazyList.addAll(rssItems);
+        protected void onPostExecute(List<RssItemListRow> rssItems) {
+            // Replace the progress item
+            int progressPosition = lazyList.size() - 1;
+            lazyList.remove(progressPosition);
+            notifyItemRemoved(progressPosition);
 
-            notifyItemRangeInserted(prevSize, rssItems.size());
+            lazyList.addAll(rssItems);
+            notifyItemRangeInserted(progressPosition, rssItems.size());
 
+            reachedEnd = rssItems.size() < DatabaseConnectionOrm.PageSize;
             loading = false;
 
             super.onPostExecute(rssItems);
         }
     }
-
-    private class ReloadAdapterAsyncTask extends AsyncTask<Void, Void, CurrentRssViewDataHolder> {
-
-        @Override
-        protected CurrentRssViewDataHolder doInBackground(Void... params) {
-            StopWatch sw = new StopWatch();
-            sw.start();
-
-            List<RssItem> list = dbConn.getCurrentRssItemView(0);
-
-            CurrentRssViewDataHolder holder = new CurrentRssViewDataHolder();
-            holder.maxCount = dbConn.getCurrentRssItemViewCount();
-            holder.rssItems = list;
-
-            sw.stop();
-            Log.v(TAG, "Reloaded CurrentRssView - time taken: " + sw.toString());
-            return holder;
-        }
-
-        @Override
-        protected void onPostExecute(CurrentRssViewDataHolder holder) {
-            lazyList = holder.rssItems;
-            totalItemCount = holder.maxCount.intValue();
-            cachedPages = 1;
-            notifyDataSetChanged();
-        }
-    }
-}
\ No newline at end of file
+}
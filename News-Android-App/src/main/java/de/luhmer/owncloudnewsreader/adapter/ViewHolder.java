@@ -1,10 +1,16 @@
 package de.luhmer.owncloudnewsreader.adapter;
 
+import android.annotation.TargetApi;
+import android.content.ActivityNotFoundException;
+import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.TypedArray;
 import android.graphics.Color;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Build;
 import android.text.Html;
 import android.text.Spannable;
 import android.text.SpannableString;
@@ -14,7 +20,10 @@ import android.util.Log;
 import android.util.SparseArray;
 import android.util.TypedValue;
 import android.view.View;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
+import android.webkit.WebViewClient;
 import android.widget.ImageView;
 import android.widget.ProgressBar;
 import android.widget.TextView;
@@ -29,7 +38,6 @@ import com.nostra13.universalimageloader.core.ImageLoader;
 
 import org.greenrobot.eventbus.Subscribe;
 
-import java.util.List;
 import java.util.regex.Pattern;
 
 import butterknife.BindView;
@@ -38,11 +46,13 @@ import de.luhmer.owncloudnewsreader.R;
 import de.luhmer.owncloudnewsreader.SettingsActivity;
 import de.luhmer.owncloudnewsreader.async_tasks.RssItemToHtmlTask;
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
+import de.luhmer.owncloudnewsreader.database.RssItemListRow;
 import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import de.luhmer.owncloudnewsreader.helper.AsyncTaskHelper;
 import de.luhmer.owncloudnewsreader.helper.ColorHelper;
 import de.luhmer.owncloudnewsreader.helper.FavIconHandler;
-import de.luhmer.owncloudnewsreader.helper.ImageHandler;
 import de.luhmer.owncloudnewsreader.helper.SquareRoundedBitmapDisplayer;
+import de.luhmer.owncloudnewsreader.helper.WebViewRequestInterceptor;
 import de.luhmer.owncloudnewsreader.services.PodcastDownloadService;
 
 import static android.view.View.GONE;
@@ -97,7 +107,7 @@ public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickL
     protected WebView webView_body;
 
     private RecyclerItemClickListener clickListener;
-    private RssItem rssItem;
+    private RssItemListRow rssItem;
     private boolean stayUnread = false;
     private static FavIconHandler favIconHandler = null;
     private final int LengthBody = 400;
@@ -114,6 +124,9 @@ public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickL
     private int textSizeBody = -1;
 
     private SharedPreferences mPrefs;
+    // Only used by the layouts which show the complete body
+    private DatabaseConnectionOrm dbConn;
+    private LoadCompleteBodyTask loadCompleteBodyTask;
 
     public ViewHolder(View itemView, SharedPreferences prefs) {
         super(itemView);
@@ -121,6 +134,9 @@ public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickL
         this.mPrefs = prefs;
 
         selectedListLayout = Integer.parseInt(mPrefs.getString(SettingsActivity.SP_FEED_LIST_LAYOUT, "0"));
+        if(showsCompleteBody()) {
+            dbConn = new DatabaseConnectionOrm(itemView.getContext());
+        }
 
         bodyForegroundColor = new ForegroundColorSpan(ContextCompat.getColor(itemView.getContext(), android.R.color.secondary_text_dark));
 
@@ -147,6 +163,10 @@ public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickL
         itemView.setOnClickListener(this);
         itemView.setOnLongClickListener(this);
 
+        if(webView_body != null) {
+            initWebViewBody();
+        }
+
         Drawable feedIcon = VectorDrawableCompat.create(itemView.getResources(), R.drawable.feed_icon, null) ;
         displayImageOptionsThumbnail = new DisplayImageOptions.Builder()
                 .displayer(new SquareRoundedBitmapDisplayer(30))
@@ -158,6 +178,33 @@ public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickL
                 .build();
     }
 
+    private void initWebViewBody() {
+        final WebViewRequestInterceptor requestInterceptor = new WebViewRequestInterceptor(mPrefs);
+        webView_body.setWebViewClient(new WebViewClient() {
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
+                return requestInterceptor.intercept(url);
+            }
+
+            @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, WebResourceRequest request) {
+                return requestInterceptor.intercept(request);
+            }
+
+            @Override
+            public boolean shouldOverrideUrlLoading(WebView view, String url) {
+                // Open links in the browser (like a web view without WebViewClient does)
+                try {
+                    view.getContext().startActivity(new Intent(Intent.ACTION_VIEW, Uri.parse(url)));
+                } catch (ActivityNotFoundException e) {
+                    Log.e(TAG, "No activity found for " + url, e);
+                }
+                return true;
+            }
+        });
+    }
+
     @Subscribe
     public void onEvent(PodcastDownloadService.DownloadProgressUpdate downloadProgress) {
         downloadProgressList.put((int) downloadProgress.podcast.itemId, downloadProgress.podcast.downloadProgress);
@@ -241,25 +288,27 @@ public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickL
         return playing;
     }
 
-    public RssItem getRssItem() {
+    public RssItemListRow getRssItem() {
         return rssItem;
     }
 
-    public void setRssItem(RssItem rssItem) {
+    public void setRssItem(RssItemListRow rssItem) {
         this.rssItem = rssItem;
-        String title = null;
-        String favIconUrl = null;
-        if(rssItem.getFeed() != null) {
-            title = rssItem.getFeed().getFeedTitle();
-            favIconUrl = rssItem.getFeed().getFaviconUrl();
-        } else {
+        String title = rssItem.getFeedTitle();
+        String favIconUrl = rssItem.getFeedFaviconUrl();
+        if(title == null) {
             Log.v(TAG, "Feed not found!!!");
         }
 
+        if(loadCompleteBodyTask != null) {
+            loadCompleteBodyTask.cancel(false);
+            loadCompleteBodyTask = null;
+        }
+
         setReadState(rssItem.getRead_temp());
         setStarred(rssItem.getStarred_temp());
 
-        setFeedColor(ColorHelper.getFeedColor(itemView.getContext(), rssItem.getFeed()));
+        setFeedColor(ColorHelper.getFeedColor(itemView.getContext(), rssItem.getFeedAvgColour()));
 
         if(textViewSummary != null) {
             try {
@@ -280,21 +329,9 @@ public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickL
         }
 
         if(textViewBody != null) {
-            String body = rssItem.getBody();
-            // Strip html from String
-            if(selectedListLayout == 0) {
-                textViewBody.setMaxLines(scaleTextLines(mPrefs));
-                body = getBodyText(body, false);
-
-            } else if(selectedListLayout == 3) {
-                textViewBody.setMaxLines(200);
-                body = getBodyText(body, false);
-
-            } else {
-                body = getBodyText(body, true);
-            }
-            textViewBody.setText(Html.fromHtml(body));
-            scaleTextSize(textViewBody, textSizeBody, false, mPrefs);
+            // Already plain text (extracted from the body during the sync), the extended layouts
+            // show it until the complete body is loaded
+            setBodyText(rssItem.getPreviewText() != null ? rssItem.getPreviewText() : "");
         }
 
         int height = 0; // used for feed icon vertical offset calculation
@@ -310,12 +347,11 @@ public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickL
 
         if(imgViewThumbnail != null) {
             imgViewThumbnail.setColorFilter(null);
-            String body = rssItem.getBody();
-            List<String> images = ImageHandler.getImageLinksFromText(body);
+            String thumbnail = rssItem.getMediaThumbnail();
 
-            if(images.size() > 0) {
+            if(thumbnail != null) {
                 imgViewThumbnail.setVisibility(View.VISIBLE);
-                ImageLoader.getInstance().displayImage(images.get(0), imgViewThumbnail, displayImageOptionsThumbnail);
+                ImageLoader.getInstance().displayImage(thumbnail, imgViewThumbnail, displayImageOptionsThumbnail);
             } else {
                 // Show Podcast Icon if no thumbnail is available but it is a podcast (otherwise the podcast button will go missing)
                 if (DatabaseConnectionOrm.ALLOWED_PODCASTS_TYPES.contains(rssItem.getEnclosureMime())) {
@@ -330,8 +366,78 @@ public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickL
         }
 
         if(webView_body != null) {
-            String htmlPage = RssItemToHtmlTask.getHtmlPage(rssItem, false, mPrefs, itemView.getContext());
-            webView_body.loadDataWithBaseURL("file:///android_asset/", htmlPage, "text/html", "UTF-8", "");
+            webView_body.loadUrl("about:blank");
+        }
+
+        // The extended layouts show the complete body, which isn't part of the row
+        if(showsCompleteBody()) {
+            loadCompleteBodyTask = new LoadCompleteBodyTask(rssItem.getId());
+            AsyncTaskHelper.StartAsyncTask(loadCompleteBodyTask);
+        }
+    }
+
+    private void setBodyText(String body) {
+        if(selectedListLayout == 0) {
+            textViewBody.setMaxLines(scaleTextLines(mPrefs));
+        } else if(selectedListLayout == 3) {
+            textViewBody.setMaxLines(200);
+        } else if(body.length() > LengthBody) {
+            body = body.substring(0, LengthBody) + "...";
+        }
+
+        if(rssItem.getSearchSnippet() != null) {
+            // Search results show the matching text instead of the beginning of the article
+            textViewBody.setText(Html.fromHtml(rssItem.getSearchSnippet()));
+        } else {
+            textViewBody.setText(body);
+        }
+        scaleTextSize(textViewBody, textSizeBody, false, mPrefs);
+    }
+
+    /**
+     * Loads the body of the item (and renders the html page for the web layout) in the
+     * background, so binding a row doesn't have to wait for the database.
+     */
+    private class LoadCompleteBodyTask extends AsyncTask<Void, Void, String[]> {
+
+        private final long rssItemId;
+
+        LoadCompleteBodyTask(long rssItemId) {
+            this.rssItemId = rssItemId;
+        }
+
+        @Override
+        protected String[] doInBackground(Void... params) {
+            RssItem completeRssItem = dbConn.getRssItemById(rssItemId);
+            if(completeRssItem == null || isCancelled()) {
+                return null;
+            }
+
+            String body = null;
+            if(textViewBody != null) {
+                body = getBodyText(completeRssItem.getBody() != null ? completeRssItem.getBody() : "");
+            }
+            String htmlPage = null;
+            if(webView_body != null) {
+                htmlPage = RssItemToHtmlTask.getHtmlPage(completeRssItem, false, mPrefs, itemView.getContext());
+            }
+            return new String[] { body, htmlPage };
+        }
+
+        @Override
+        protected void onPostExecute(String[] result) {
+            // The view holder may have been bound to another item in the meantime
+            if(result == null || loadCompleteBodyTask != this) {
+                return;
+            }
+            loadCompleteBodyTask = null;
+
+            if(result[0] != null) {
+                setBodyText(result[0]);
+            }
+            if(result[1] != null) {
+                webView_body.loadDataWithBaseURL("file:///android_asset/", result[1], "text/html", "UTF-8", "");
+            }
         }
     }
 
@@ -371,6 +477,11 @@ public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickL
     }
 
 
+    // Web layout and extended text layout
+    private boolean showsCompleteBody() {
+        return selectedListLayout == 2 || selectedListLayout == 3;
+    }
+
     public boolean shouldStayUnread() {
         return stayUnread;
     }
@@ -379,7 +490,7 @@ public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickL
         this.stayUnread = shouldStayUnread;
     }
 
-    private String getBodyText(String body, boolean limitLength)
+    private String getBodyText(String body)
     {
         if (body.startsWith("<![CDATA[")) {
             body = body.replaceFirst( Pattern.quote("<![CDATA["), "");
@@ -392,13 +503,6 @@ public class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickL
         SpannableString bodyStringSpannable = new SpannableString(Html.fromHtml(body));
         bodyStringSpannable.setSpan(bodyForegroundColor, 0, bodyStringSpannable.length(), Spannable.SPAN_INCLUSIVE_INCLUSIVE);
 
-        String bodyString = bodyStringSpannable.toString().trim();
-
-
-        if(limitLength && bodyString.length() > LengthBody) {
-            bodyString = bodyString.substring(0, LengthBody) + "...";
-        }
-
-        return bodyString;
+        return bodyStringSpannable.toString().trim();
     }
 }
@@ -7,21 +7,18 @@ import android.text.Html;
 import android.text.format.DateUtils;
 import android.util.Log;
 
-import com.nostra13.universalimageloader.cache.disc.DiskCache;
-import com.nostra13.universalimageloader.core.ImageLoader;
-
-import java.io.File;
 import java.text.DecimalFormat;
 import java.util.Date;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import de.luhmer.owncloudnewsreader.R;
 import de.luhmer.owncloudnewsreader.SettingsActivity;
+import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
 import de.luhmer.owncloudnewsreader.database.model.Feed;
 import de.luhmer.owncloudnewsreader.database.model.RssItem;
-import de.luhmer.owncloudnewsreader.helper.ImageHandler;
+import de.luhmer.owncloudnewsreader.helper.HtmlRewriteRules;
+import de.luhmer.owncloudnewsreader.helper.HtmlRewriter;
+import de.luhmer.owncloudnewsreader.helper.RenderedPageCache;
 import de.luhmer.owncloudnewsreader.helper.ThemeChooser;
 
 import static de.luhmer.owncloudnewsreader.NewsDetailActivity.INCOGNITO_MODE_ENABLED;
@@ -34,17 +31,16 @@ public class RssItemToHtmlTask extends AsyncTask<Void, Void, String> {
     private static final double HEADING_FONT_SIZE = 1.1;
     private static final double SUBSCRIPT_FONT_SIZE = 0.7;
     private static final String TAG = RssItemToHtmlTask.class.getCanonicalName();
+    // The relative date changes over time, therefore it is inserted after the page has been loaded from the cache
+    private static final String DATE_PLACEHOLDER = "<!--rendered-page-cache:datetime-->";
+    // Increase if the rendered pages change, otherwise the cached pages are used
+    private static final int PAGE_VERSION = 3;
 
-    private static Pattern PATTERN_PRELOAD_VIDEOS_REMOVE = Pattern.compile("(<video[^>]*)(preload=\".*?\")(.*?>)");
-    private static Pattern PATTERN_PRELOAD_VIDEOS_INSERT = Pattern.compile("(<video[^>]*)(.*?)(.*?>)");
-    private static Pattern PATTERN_AUTOPLAY_VIDEOS_1 = Pattern.compile("(<video[^>]*)(autoplay=\".*?\")(.*?>)");
-    private static Pattern PATTERN_AUTOPLAY_VIDEOS_2 = Pattern.compile("(<video[^>]*)(\\sautoplay)(.*?>)");
-    private static Pattern PATTERN_AUTOPLAY_REGEX_CB = Pattern.compile("(.*?)^(Unser Feedsponsor:\\s*<\\/p><p>\\s*.*?\\s*<\\/p>)(.*)", Pattern.MULTILINE);
-
-    private RssItem mRssItem;
+    private long mRssItemId;
+    private DatabaseConnectionOrm mDbConn;
     private Listener mListener;
     private SharedPreferences mPrefs;
-    private boolean isRightToLeft;
+    private Context mContext;
 
 
     public interface Listener {
@@ -56,17 +52,21 @@ public class RssItemToHtmlTask extends AsyncTask<Void, Void, String> {
     }
 
 
-    public RssItemToHtmlTask(Context context, RssItem rssItem, Listener listener, SharedPreferences prefs) {
-        this.mRssItem = rssItem;
+    /**
+     * @param rssItemId the item is loaded in the background (lists only hold the beginning of the body)
+     */
+    public RssItemToHtmlTask(Context context, long rssItemId, Listener listener, SharedPreferences prefs) {
+        this.mRssItemId = rssItemId;
+        this.mDbConn = new DatabaseConnectionOrm(context);
         this.mListener = listener;
         this.mPrefs = prefs;
-
-        this.isRightToLeft = context.getResources().getBoolean(R.bool.is_right_to_left);
+        this.mContext = context.getApplicationContext();
     }
 
     @Override
     protected String doInBackground(Void... params) {
-        return getHtmlPage(mRssItem, true, mPrefs, isRightToLeft);
+        RssItem rssItem = mDbConn.getRssItemById(mRssItemId);
+        return getHtmlPage(rssItem, true, mPrefs, mContext);
     }
 
     @Override
@@ -75,16 +75,54 @@ public class RssItemToHtmlTask extends AsyncTask<Void, Void, String> {
         super.onPostExecute(htmlPage);
     }
 
+    /**
+     * @param rssItem       item to parse
+     * @param showHeader    true if a header with item title, feed title, etc. should be included
+     * @return given RSS item as full HTML page (from the {@link RenderedPageCache} if possible)
+     */
     public static String getHtmlPage(RssItem rssItem, boolean showHeader, SharedPreferences mPrefs, Context context) {
-        return getHtmlPage(rssItem, showHeader, mPrefs, context.getResources().getBoolean(R.bool.is_right_to_left));
+        boolean isRightToLeft = context.getResources().getBoolean(R.bool.is_right_to_left);
+        RenderedPageCache cache = RenderedPageCache.getInstance(context);
+        String key = getCacheKey(rssItem, showHeader, mPrefs, isRightToLeft);
+
+        String htmlPage = cache.get(key);
+        if(htmlPage == null) {
+            htmlPage = renderHtmlPage(rssItem, showHeader, mPrefs, isRightToLeft);
+            // Nothing is written to disk in incognito mode
+            cache.put(key, htmlPage, !mPrefs.getBoolean(INCOGNITO_MODE_ENABLED, false));
+        }
+        return htmlPage.replace(DATE_PLACEHOLDER, getDateString(rssItem));
     }
 
     /**
-     * @param rssItem       item to parse
-     * @param showHeader    true if a header with item title, feed title, etc. should be included
-     * @return given RSS item as full HTML page
+     * Renders the newest unread items so they are in the {@link RenderedPageCache} when the user opens them
+     */
+    public static void prewarmCache(List<RssItem> rssItems, SharedPreferences mPrefs, Context context) {
+        for(RssItem rssItem : rssItems) {
+            getHtmlPage(rssItem, true, mPrefs, context);
+        }
+    }
+
+    /**
+     * @return key which contains everything the rendered page depends on
      */
-    public static String getHtmlPage(RssItem rssItem, boolean showHeader, SharedPreferences mPrefs, boolean isRightToLeft) {
+    static String getCacheKey(RssItem rssItem, boolean showHeader, SharedPreferences mPrefs, boolean isRightToLeft) {
+        Date lastModified = rssItem.getLastModified();
+        // The header shows the favicon of the feed (changes of the feed don't change lastModified)
+        Feed feed = rssItem.getFeed();
+        String feedInfo = feed != null ? feed.getFeedTitle() + "\n" + feed.getFaviconUrl() : "";
+        return "v" + PAGE_VERSION +
+                "_" + rssItem.getId() +
+                "_" + (lastModified != null ? lastModified.getTime() : 0) +
+                "_" + Integer.toHexString(feedInfo.hashCode()) +
+                "_" + getSelectedTheme() +
+                "_" + mPrefs.getString(SettingsActivity.SP_FONT_SIZE, "1.0") +
+                (isRightToLeft ? "_rtl" : "") +
+                (mPrefs.getBoolean(INCOGNITO_MODE_ENABLED, false) ? "_incognito" : "") +
+                (showHeader ? "_header" : "");
+    }
+
+    private static String renderHtmlPage(RssItem rssItem, boolean showHeader, SharedPreferences mPrefs, boolean isRightToLeft) {
         boolean incognitoMode = mPrefs.getBoolean(INCOGNITO_MODE_ENABLED, false);
 
         String favIconUrl = null;
@@ -96,9 +134,8 @@ public class RssItemToHtmlTask extends AsyncTask<Void, Void, String> {
             favIconUrl = feed.getFaviconUrl();
         }
 
-        if (favIconUrl != null) {
-            favIconUrl = getCachedFavIcon(favIconUrl);
-        } else {
+        // Cached favicons / images are served by the WebViewRequestInterceptor
+        if (favIconUrl == null) {
             favIconUrl = "file:///android_res/drawable/default_feed_icon_light.png";
         }
 
@@ -124,29 +161,28 @@ public class RssItemToHtmlTask extends AsyncTask<Void, Void, String> {
             );
         }
 
-        String description = rssItem.getBody();
+        builder.append("<div id=\"content\">");
         if(!incognitoMode) {
-            // If incognito mode is disabled, try getting images from cache
-            description = getDescriptionWithCachedImages(description).trim();
+            new HtmlRewriter(
+                    HtmlRewriteRules.httpsForProtocolRelativeUrls(),
+                    HtmlRewriteRules.imageSrcOnly(),
+                    HtmlRewriteRules.videoPreload(),
+                    HtmlRewriteRules.lazyLoading()
+            ).rewrite(rssItem.getBody().trim(), builder);
         } else {
             // When incognito is on, we need to provide some error handling
-            //description = description.replaceAll("<img", "<img onerror=\"this.style='width: 40px !important; height: 40px !important'\" ");
-            description = description.replaceAll("<img", "<img width=\"40px\" height=\"40px\" ");
+            new HtmlRewriter(
+                    HtmlRewriteRules.httpsForProtocolRelativeUrls(),
+                    HtmlRewriteRules.incognitoImages(),
+                    HtmlRewriteRules.videoPreload(),
+                    HtmlRewriteRules.lazyLoading()
+            ).rewrite(rssItem.getBody().trim(), builder);
         }
-        description = replacePatternInText(PATTERN_PRELOAD_VIDEOS_REMOVE, description, "$1 $3"); // remove whatever preload is there
-        description = replacePatternInText(PATTERN_PRELOAD_VIDEOS_INSERT, description, "$1 preload=\"metadata\" $3"); // add preload attribute
-        description = replacePatternInText(PATTERN_AUTOPLAY_VIDEOS_1, description, "$1 $3");
-        description = replacePatternInText(PATTERN_AUTOPLAY_VIDEOS_2, description, "$1 $3");
-
-        //description = replacePatternInText(PATTERN_AUTOPLAY_REGEX_CB, description, "$1 $3");
-
-        builder.append("<div id=\"content\">");
-        builder.append(description);
         builder.append("</div>");
 
         builder.append("</body></html>");
 
-        return builder.toString().replaceAll("\"//", "\"https://");
+        return builder.toString();
     }
 
     private static String getSelectedTheme() {
@@ -169,7 +205,7 @@ public class RssItemToHtmlTask extends AsyncTask<Void, Void, String> {
         builder.append("<div id=\"top_section\">");
         builder.append(String.format("<div id=\"header\" class=\"%s\">", body_id));
         String feedTitle = Html.escapeHtml(rssItem.getTitle());
-        String linkToFeed = Html.escapeHtml(rssItem.getLink());
+        String linkToFeed = Html.escapeHtml(getHttpsUrl(rssItem.getLink()));
         builder.append(String.format("<a href=\"%s\">%s</a>", linkToFeed, feedTitle));
         builder.append("</div>");
 
@@ -181,15 +217,13 @@ public class RssItemToHtmlTask extends AsyncTask<Void, Void, String> {
         builder.append("<div id=\"header_small_text\">");
 
         builder.append("<div id=\"subscription\">");
-        builder.append(String.format("<img id=\"imgFavicon\" src=\"%s\" />", favIconUrl));
+        builder.append(String.format("<img id=\"imgFavicon\" src=\"%s\" />", getHttpsUrl(favIconUrl)));
         builder.append(feedTitle.trim());
         builder.append("</div>");
 
-        Date date = rssItem.getPubDate();
-        if (date != null) {
-            String dateString = (String) DateUtils.getRelativeTimeSpanString(date.getTime());
+        if (rssItem.getPubDate() != null) {
             builder.append("<div id=\"datetime\">");
-            builder.append(dateString);
+            builder.append(DATE_PLACEHOLDER);
             builder.append("</div>");
         }
 
@@ -199,14 +233,16 @@ public class RssItemToHtmlTask extends AsyncTask<Void, Void, String> {
         return builder.toString();
     }
 
-    private static String getCachedFavIcon(String favIconUrl) {
-        DiskCache diskCache = ImageLoader.getInstance().getDiskCache();
-        File file = diskCache.get(favIconUrl);
-        if(file != null) {
-            return "file://" + file.getAbsolutePath();
-        } else {
-            return favIconUrl; // Return favicon url if not cached
-        }
+    /**
+     * @return url with https for protocol relative urls (see {@link HtmlRewriteRules#httpsForProtocolRelativeUrls()})
+     */
+    private static String getHttpsUrl(String url) {
+        return url != null && url.startsWith("//") ? "https:" + url : url;
+    }
+
+    private static String getDateString(RssItem rssItem) {
+        Date date = rssItem.getPubDate();
+        return date != null ? (String) DateUtils.getRelativeTimeSpanString(date.getTime()) : "";
     }
 
     private static String getFontSizeScalingCss(SharedPreferences mPrefs) {
@@ -224,27 +260,4 @@ public class RssItemToHtmlTask extends AsyncTask<Void, Void, String> {
                 fontFormat.format(scalingFactor*SUBSCRIPT_FONT_SIZE)
         );
     }
-
-    private static String getDescriptionWithCachedImages(String text) {
-        List<String> links = ImageHandler.getImageLinksFromText(text);
-        DiskCache diskCache = ImageLoader.getInstance().getDiskCache();
-
-        for(String link : links) {
-            link = link.trim();
-            try {
-                File file = diskCache.get(link);
-                if(file != null)
-                    text = text.replace(link, "file://" + file.getAbsolutePath());
-            } catch(Exception ex) {
-                ex.printStackTrace();
-            }
-        }
-
-        return text;
-    }
-
-    private static String replacePatternInText(Pattern pattern, String text, String replacement) {
-        Matcher m = pattern.matcher(text);
-        return m.replaceAll(replacement);
-    }
 }
@@ -18,22 +18,31 @@ import org.greenrobot.eventbus.EventBus;
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 
 import de.luhmer.owncloudnewsreader.ListView.SubscriptionExpandableListAdapter;
 import de.luhmer.owncloudnewsreader.NewsReaderApplication;
 import de.luhmer.owncloudnewsreader.R;
 import de.luhmer.owncloudnewsreader.SettingsActivity;
+import de.luhmer.owncloudnewsreader.async_tasks.RssItemToHtmlTask;
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
+import de.luhmer.owncloudnewsreader.database.RetentionPolicy;
+import de.luhmer.owncloudnewsreader.database.RssItemRetention;
 import de.luhmer.owncloudnewsreader.database.model.Feed;
 import de.luhmer.owncloudnewsreader.database.model.Folder;
 import de.luhmer.owncloudnewsreader.di.ApiProvider;
 import de.luhmer.owncloudnewsreader.helper.ForegroundListener;
+import de.luhmer.owncloudnewsreader.helper.NewsFileUtils;
 import de.luhmer.owncloudnewsreader.helper.StopWatch;
 import de.luhmer.owncloudnewsreader.notification.NextcloudNotificationManager;
 import de.luhmer.owncloudnewsreader.reader.InsertIntoDatabase;
+import de.luhmer.owncloudnewsreader.reader.SubscriptionChanges;
+import de.luhmer.owncloudnewsreader.reader.nextcloud.ApiMetrics;
 import de.luhmer.owncloudnewsreader.reader.nextcloud.ItemStateSync;
 import de.luhmer.owncloudnewsreader.reader.nextcloud.RssItemObservable;
 import de.luhmer.owncloudnewsreader.services.DownloadImagesService;
@@ -42,20 +51,25 @@ import de.luhmer.owncloudnewsreader.services.events.SyncFinishedEvent;
 import de.luhmer.owncloudnewsreader.services.events.SyncStartedEvent;
 import de.luhmer.owncloudnewsreader.ssl.OkHttpSSLClient;
 import de.luhmer.owncloudnewsreader.widget.WidgetProvider;
+import io.reactivex.Completable;
 import io.reactivex.Observable;
 import io.reactivex.Observer;
+import io.reactivex.Scheduler;
 import io.reactivex.annotations.NonNull;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Action;
 import io.reactivex.functions.Function3;
-import io.reactivex.schedulers.Schedulers;
 
 public class OwnCloudSyncAdapter extends AbstractThreadedSyncAdapter {
 
     private static final String TAG = OwnCloudSyncAdapter.class.getCanonicalName();
+    private static final int PREWARM_RENDERED_PAGES_COUNT = 50;
     public boolean syncRunning = false;
 
     protected @Inject SharedPreferences mPrefs;
     protected @Inject ApiProvider mApi;
+    protected @Inject ApiMetrics mApiMetrics;
+    protected @Inject @Named("syncScheduler") Scheduler mSyncScheduler;
 
 
     public OwnCloudSyncAdapter(Context context, boolean autoInitialize) {
@@ -77,22 +91,54 @@ public class OwnCloudSyncAdapter extends AbstractThreadedSyncAdapter {
         EventBus.getDefault().post(new SyncStartedEvent());
 
         // run actual sync
-        sync();
+        SubscriptionChanges subscriptionChanges = sync();
 
-        // Update Widget / Notification
-        WidgetProvider.UpdateWidget(getContext());
-        updateNotification();
-
-        // Download Favicons for feeds
-        startFaviconDownload();
+        // Update Widget / Notification, download Favicons for feeds, remove old items and render the newest items (in parallel)
+        try {
+            Completable.mergeArray(
+                    timedStage("updateWidget", new Action() {
+                        @Override
+                        public void run() {
+                            WidgetProvider.UpdateWidget(getContext());
+                        }
+                    }),
+                    timedStage("updateNotification", new Action() {
+                        @Override
+                        public void run() {
+                            updateNotification();
+                        }
+                    }),
+                    timedStage("startFaviconDownload", new Action() {
+                        @Override
+                        public void run() {
+                            startFaviconDownload();
+                        }
+                    }),
+                    timedStage("applyRetentionPolicy", new Action() {
+                        @Override
+                        public void run() {
+                            applyRetentionPolicy();
+                        }
+                    }),
+                    timedStage("prewarmRenderedPages", new Action() {
+                        @Override
+                        public void run() {
+                            prewarmRenderedPages();
+                        }
+                    })
+            ).blockingAwait();
+        } catch(Exception ex) {
+            Log.e(TAG, "Updating widget / notification / favicons failed", ex);
+        }
 
 
         // Send sync finished event
         syncRunning = false;
-        EventBus.getDefault().post(new SyncFinishedEvent());
+        EventBus.getDefault().post(new SyncFinishedEvent(subscriptionChanges));
 
         syncStopWatch.stop();
         Log.v(TAG, "Finished sync - time needed (synchronization): " + syncStopWatch.toString());
+        Log.v(TAG, mApiMetrics.toString());
     }
 
 
@@ -110,12 +156,16 @@ public class OwnCloudSyncAdapter extends AbstractThreadedSyncAdapter {
     }
 
 
-    // Start sync
-    private void sync() {
+    /**
+     * Start sync
+     *
+     * @return the folder / feed changes or null if the sync failed before they were written
+     */
+    private SubscriptionChanges sync() {
         if(mApi.getAPI() == null) {
             throwException(new IllegalStateException("API is NOT initialized"));
             Log.e(TAG, "API is NOT initialized..");
-            return;
+            return null;
         } else {
             Log.v(TAG, "API is initialized..");
         }
@@ -135,18 +185,12 @@ public class OwnCloudSyncAdapter extends AbstractThreadedSyncAdapter {
                             s.onError(ex);
                         }
                     }
-                }).subscribeOn(Schedulers.newThread());
+                });
 
         // First sync Feeds and Folders and rss item states (in parallel)
-        Observable<List<Folder>> folderObservable = mApi
-                .getAPI()
-                .folders()
-                .subscribeOn(Schedulers.newThread());
-
-        Observable<List<Feed>> feedsObservable = mApi
-                .getAPI()
-                .feeds()
-                .subscribeOn(Schedulers.newThread());
+        Observable<List<Folder>> folderObservable = timedStage("folders", mApi.getAPI().folders());
+        Observable<List<Feed>> feedsObservable = timedStage("feeds", mApi.getAPI().feeds());
+        rssStateSync = timedStage("itemStateSync", rssStateSync);
 
         // Wait for results
         Observable<NextcloudSyncResult> combined = Observable.zip(folderObservable, feedsObservable, rssStateSync, new Function3<List<Folder>, List<Feed>, Boolean, NextcloudSyncResult>() {
@@ -160,11 +204,15 @@ public class OwnCloudSyncAdapter extends AbstractThreadedSyncAdapter {
         Log.v(TAG, "subscribing now.. [" + Thread.currentThread().getName() + "]");
 
 
+        SubscriptionChanges subscriptionChanges = null;
         try {
             NextcloudSyncResult syncResult = combined.blockingFirst();
 
-            InsertIntoDatabase.InsertFoldersIntoDatabase(syncResult.folders, dbConn);
-            InsertIntoDatabase.InsertFeedsIntoDatabase(syncResult.feeds, dbConn);
+            SubscriptionChanges changes = new SubscriptionChanges();
+            InsertIntoDatabase.InsertFoldersIntoDatabase(syncResult.folders, dbConn, changes);
+            InsertIntoDatabase.InsertFeedsIntoDatabase(syncResult.feeds, dbConn, changes);
+            subscriptionChanges = changes;
+            Log.v(TAG, "Subscription changes: " + changes);
             Log.v(TAG, "State sync successful: " + syncResult.stateSyncSuccessful);
 
             // Start the sync (Rss Items)
@@ -173,6 +221,7 @@ public class OwnCloudSyncAdapter extends AbstractThreadedSyncAdapter {
             //Log.e(TAG, "throwException: ", ex);
             throwException(ex);
         }
+        return subscriptionChanges;
     }
 
     private void syncRssItems(final DatabaseConnectionOrm dbConn) {
@@ -180,8 +229,7 @@ public class OwnCloudSyncAdapter extends AbstractThreadedSyncAdapter {
 
         // .observeOn(AndroidSchedulers.mainThread())
 
-        Observable.fromPublisher(new RssItemObservable(dbConn, mApi.getAPI(), mPrefs))
-                .subscribeOn(Schedulers.newThread())
+        timedStage("rssItems", Observable.fromPublisher(new RssItemObservable(dbConn, mApi.getAPI(), mPrefs)))
                 .blockingSubscribe(new Observer<Integer>() {
                     @Override
                     public void onSubscribe(@NonNull Disposable d) {
@@ -218,6 +266,21 @@ public class OwnCloudSyncAdapter extends AbstractThreadedSyncAdapter {
     }
 
 
+    /**
+     * Runs the stage on the sync scheduler and logs how long it took
+     */
+    private <T> Observable<T> timedStage(final String stage, final Observable<T> observable) {
+        return Observable.defer(() -> {
+            final long start = System.currentTimeMillis();
+            return observable.doFinally(() ->
+                    Log.v(TAG, "Sync stage [" + stage + "] finished - time needed: " + (System.currentTimeMillis() - start) + "ms [" + Thread.currentThread().getName() + "]"));
+        }).subscribeOn(mSyncScheduler);
+    }
+
+    private Completable timedStage(final String stage, final Action action) {
+        return timedStage(stage, Completable.fromAction(action).toObservable()).ignoreElements();
+    }
+
     private void throwException(Throwable ex) {
         Log.e(TAG, "throwException() called [" + Thread.currentThread().getName() + "]", ex);
         syncRunning = false;
@@ -230,7 +293,7 @@ public class OwnCloudSyncAdapter extends AbstractThreadedSyncAdapter {
 
     private void updateNotification() {
         DatabaseConnectionOrm dbConn = new DatabaseConnectionOrm(getContext());
-        int newItemsCount = Integer.parseInt(dbConn.getUnreadItemsCountForSpecificFolder(SubscriptionExpandableListAdapter.SPECIAL_FOLDERS.ALL_UNREAD_ITEMS));
+        int newItemsCount = dbConn.getUnreadItemsCountForSpecificFolder(SubscriptionExpandableListAdapter.SPECIAL_FOLDERS.ALL_UNREAD_ITEMS);
         //int newItemsCount = mPrefs.getInt(Constants.LAST_UPDATE_NEW_ITEMS_COUNT_STRING, 0);
 
         if(newItemsCount > 0) {
@@ -242,6 +305,20 @@ public class OwnCloudSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
+    private void applyRetentionPolicy() {
+        DatabaseConnectionOrm dbConn = new DatabaseConnectionOrm(getContext());
+        RetentionPolicy policy = RetentionPolicy.fromPreferences(mPrefs);
+        RssItemRetention.Report report = dbConn.applyRetentionPolicy(policy);
+        Set<String> keptItemLinks = policy.maxFileBytes > 0 ? dbConn.getLinksOfItemsWithKeptFiles() : Collections.<String>emptySet();
+        NewsFileUtils.deleteCachedFiles(getContext(), report, policy.maxFileBytes, keptItemLinks);
+        Log.v(TAG, "Retention: " + report);
+    }
+
+    private void prewarmRenderedPages() {
+        DatabaseConnectionOrm dbConn = new DatabaseConnectionOrm(getContext());
+        RssItemToHtmlTask.prewarmCache(dbConn.getNewestUnreadRssItems(PREWARM_RENDERED_PAGES_COUNT), mPrefs, getContext());
+    }
+
     private void startFaviconDownload() {
         Intent data = new Intent();
         data.putExtra(DownloadImagesService.DOWNLOAD_MODE_STRING, DownloadImagesService.DownloadMode.FAVICONS_ONLY);
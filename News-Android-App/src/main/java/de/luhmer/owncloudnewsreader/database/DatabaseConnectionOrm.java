@@ -1,24 +1,31 @@
 package de.luhmer.owncloudnewsreader.database;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.Cursor;
-import android.os.AsyncTask;
+import android.text.TextUtils;
 import android.util.Log;
 import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import com.google.gson.Gson;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 
 import de.greenrobot.dao.query.LazyList;
 import de.greenrobot.dao.query.WhereCondition;
-import de.luhmer.owncloudnewsreader.Constants;
 import de.luhmer.owncloudnewsreader.NewsReaderApplication;
 import de.luhmer.owncloudnewsreader.database.model.CurrentRssItemViewDao;
 import de.luhmer.owncloudnewsreader.database.model.DaoSession;
@@ -28,16 +35,13 @@ import de.luhmer.owncloudnewsreader.database.model.Folder;
 import de.luhmer.owncloudnewsreader.database.model.FolderDao;
 import de.luhmer.owncloudnewsreader.database.model.RssItem;
 import de.luhmer.owncloudnewsreader.database.model.RssItemDao;
-import de.luhmer.owncloudnewsreader.helper.AsyncTaskHelper;
-import de.luhmer.owncloudnewsreader.helper.StopWatch;
 import de.luhmer.owncloudnewsreader.model.PodcastFeedItem;
 import de.luhmer.owncloudnewsreader.model.PodcastItem;
+import de.luhmer.owncloudnewsreader.model.Tuple;
+import de.luhmer.owncloudnewsreader.services.OwnCloudSyncService;
 import de.luhmer.owncloudnewsreader.services.PodcastDownloadService;
 
 import static de.luhmer.owncloudnewsreader.ListView.SubscriptionExpandableListAdapter.SPECIAL_FOLDERS;
-import static de.luhmer.owncloudnewsreader.ListView.SubscriptionExpandableListAdapter.SPECIAL_FOLDERS.ALL_ITEMS;
-import static de.luhmer.owncloudnewsreader.ListView.SubscriptionExpandableListAdapter.SPECIAL_FOLDERS.ALL_STARRED_ITEMS;
-import static de.luhmer.owncloudnewsreader.ListView.SubscriptionExpandableListAdapter.SPECIAL_FOLDERS.ALL_UNREAD_ITEMS;
 
 public class DatabaseConnectionOrm {
 
@@ -62,15 +66,32 @@ public class DatabaseConnectionOrm {
 
     private DaoSession daoSession;
 
-    private final static int PageSize = 100;
+    public final static int PageSize = 100;
+    /**
+     * A search shows the best matching items only. The ranked ids are kept in the current view
+     * (and persisted with it, see {@link #setCurrentRssItemView(RssItemQuery)}), paging through
+     * them can't seek in an index like the other views do. Less relevant matches are dropped (and
+     * logged, see {@link RssItemSearchTable#search}).
+     */
+    private final static int MaxSearchResults = 500;
+
+    private static final String CURRENT_RSS_ITEM_VIEW_STRING = "CURRENT_RSS_ITEM_VIEW";
+    private static RssItemQuery currentRssItemView;
+    private static final Set<Long> pinnedItemIds = new HashSet<>();
 
     protected @Inject @Named("databaseFileName") String databasePath;
+    protected @Inject SharedPreferences mPrefs;
 
     public void resetDatabase() {
-        daoSession.getRssItemDao().deleteAll();
-        daoSession.getFeedDao().deleteAll();
-        daoSession.getFolderDao().deleteAll();
-        daoSession.getCurrentRssItemViewDao().deleteAll();
+        DatabaseWriter.run(new Runnable() {
+            @Override
+            public void run() {
+                daoSession.getRssItemDao().deleteAll();
+                daoSession.getFeedDao().deleteAll();
+                daoSession.getFolderDao().deleteAll();
+                daoSession.getCurrentRssItemViewDao().deleteAll();
+            }
+        });
     }
 
     public DatabaseConnectionOrm(Context context) {
@@ -85,45 +106,147 @@ public class DatabaseConnectionOrm {
         daoSession.getFolderDao().insertOrReplace(folder);
     }*/
 
-    public void deleteOldAndInsertNewFolders (final Folder... folder) {
-        daoSession.runInTx(new Runnable() {
+    /**
+     * Writes the new / changed folders and removes the deleted ones in one transaction
+     * (see {@link de.luhmer.owncloudnewsreader.reader.InsertIntoDatabase})
+     */
+    public void updateFolders(final Iterable<Folder> changedFolders, final Iterable<Long> removedFolderIds) {
+        runInWriteTx(new Runnable() {
             @Override
             public void run() {
-                daoSession.getFolderDao().deleteAll();
-                daoSession.getFolderDao().insertInTx(folder);
+                daoSession.getFolderDao().insertOrReplaceInTx(changedFolders);
+                daoSession.getFolderDao().deleteByKeyInTx(removedFolderIds);
             }
         });
     }
 
-    public void deleteOldAndInsertNewFolders (final Iterable<Folder> folder) {
-        daoSession.runInTx(new Runnable() {
+    /*
+    public void insertNewFeed (Feed... feeds) {
+        daoSession.getFeedDao().insertOrReplaceInTx(feeds);
+    }
+*/
+
+    public void insertNewFeed (final Iterable<Feed> feeds) {
+        DatabaseWriter.run(new Runnable() {
             @Override
             public void run() {
-                daoSession.getFolderDao().deleteAll();
-                daoSession.getFolderDao().insertInTx(folder);
+                daoSession.getFeedDao().insertOrReplaceInTx(feeds);
             }
         });
+    }
 
+    /**
+     * Writes the new / changed feeds and removes the deleted ones (including their items) in one
+     * transaction (see {@link de.luhmer.owncloudnewsreader.reader.InsertIntoDatabase})
+     */
+    public void updateFeeds(final Iterable<Feed> changedFeeds, final Collection<Long> removedFeedIds) {
+        runInWriteTx(new Runnable() {
+            @Override
+            public void run() {
+                daoSession.getFeedDao().insertOrReplaceInTx(changedFeeds);
+                if(!removedFeedIds.isEmpty()) {
+                    deleteFeeds(removedFeedIds);
+                }
+            }
+        });
     }
 
     /*
-    public void insertNewFeed (Feed... feeds) {
-        daoSession.getFeedDao().insertOrReplaceInTx(feeds);
+    public void insertNewItems(RssItem... items) {
+        daoSession.getRssItemDao().insertOrReplaceInTx(items);
     }
 */
 
-    public void insertNewFeed (Iterable<Feed> feeds) {
-        daoSession.getFeedDao().insertOrReplaceInTx(feeds);
+    public void insertNewItems(final Iterable<RssItem> items) {
+        runInWriteTx(new Runnable() {
+            @Override
+            public void run() {
+                daoSession.getRssItemDao().insertOrReplaceInTx(items);
+                RssItemSearchTable.index(daoSession.getDatabase(), items);
+            }
+        });
     }
 
-    /*
-    public void insertNewItems(RssItem... items) {
-        daoSession.getRssItemDao().insertOrReplaceInTx(items);
+    /**
+     * Adds items to the search index which have been synced before the index existed
+     */
+    public void indexMissingRssItemsForSearch() {
+        int count = runBatchesOnWriter(new BatchWrite() {
+            @Override
+            public int run() {
+                return RssItemSearchTable.indexMissingItemsBatch(daoSession.getDatabase());
+            }
+        });
+        if(count > 0) {
+            Log.v(TAG, "Indexed " + count + " items for search");
+        }
     }
-*/
 
-    public void insertNewItems(Iterable<RssItem> items) {
-        daoSession.getRssItemDao().insertOrReplaceInTx(items);
+    /**
+     * Computes the preview text / thumbnail of items which have been synced before these columns
+     * existed
+     */
+    public void updateMissingRssItemPreviews() {
+        int count = runBatchesOnWriter(new BatchWrite() {
+            @Override
+            public int run() {
+                int batchCount = RssItemPreview.updateMissingPreviewsBatch(daoSession.getDatabase());
+                if(batchCount > 0) {
+                    invalidateCachedEntities();
+                }
+                return batchCount;
+            }
+        });
+        if(count > 0) {
+            Log.v(TAG, "Computed the preview of " + count + " items");
+        }
+    }
+
+    /**
+     * Compresses the bodies of items which have been synced before bodies were stored compressed
+     */
+    public void encodeRssItemBodies() {
+        int count = runBatchesOnWriter(new BatchWrite() {
+            @Override
+            public int run() {
+                int batchCount = RssItemBodyCodec.encodeTextBodiesBatch(daoSession.getDatabase());
+                if(batchCount > 0) {
+                    invalidateCachedEntities();
+                }
+                return batchCount;
+            }
+        });
+        if(count > 0) {
+            Log.v(TAG, "Encoded " + count + " bodies");
+        }
+    }
+
+    private interface BatchWrite {
+        /**
+         * @return number of processed rows (0 if there is nothing left to do)
+         */
+        int run();
+    }
+
+    /**
+     * Runs one write per batch until there is nothing left to do, so that other writes (e.g. of
+     * the ui) get their turn in between
+     *
+     * @return total number of processed rows
+     */
+    private int runBatchesOnWriter(final BatchWrite batch) {
+        final int[] batchCount = new int[1];
+        int count = 0;
+        do {
+            DatabaseWriter.run(new Runnable() {
+                @Override
+                public void run() {
+                    batchCount[0] = batch.run();
+                }
+            });
+            count += batchCount[0];
+        } while(batchCount[0] > 0);
+        return count;
     }
 
     public List<Folder> getListOfFolders() {
@@ -234,8 +357,13 @@ public class DatabaseConnectionOrm {
     }
 
 
-    public void updateFeed(Feed feed) {
-        daoSession.getFeedDao().update(feed);
+    public void updateFeed(final Feed feed) {
+        DatabaseWriter.run(new Runnable() {
+            @Override
+            public void run() {
+                daoSession.getFeedDao().update(feed);
+            }
+        });
     }
 
 
@@ -264,8 +392,7 @@ public class DatabaseConnectionOrm {
     public void change_readUnreadStateOfItem(List<String> itemIds, boolean markAsRead)
     {
         if(itemIds != null)
-            for(String idItem : itemIds)
-                updateIsReadOfRssItem(idItem, markAsRead);
+            updateFlagOfRssItems(itemIds, RssItemDao.Properties.Read.columnName, RssItemDao.Properties.Read_temp.columnName, markAsRead);
     }
 
     /**
@@ -276,52 +403,77 @@ public class DatabaseConnectionOrm {
     public void changeStarrUnstarrStateOfItem(List<String> itemIds, boolean markAsStarred)
     {
         if(itemIds != null)
-            for(String idItem : itemIds)
-                updateIsStarredOfRssItem(idItem, markAsStarred);
+            updateFlagOfRssItems(itemIds, RssItemDao.Properties.Starred.columnName, RssItemDao.Properties.Starred_temp.columnName, markAsStarred);
     }
 
-    public void updateIsReadOfRssItem(String ITEM_ID, Boolean isRead) {
-        RssItem rssItem = daoSession.getRssItemDao().queryBuilder().where(RssItemDao.Properties.Id.eq(ITEM_ID)).unique();
+    private void updateFlagOfRssItems(List<String> itemIds, String column, String tempColumn, boolean value) {
+        if(itemIds.isEmpty()) {
+            return;
+        }
 
-        rssItem.setRead(isRead);
-        rssItem.setRead_temp(isRead);
+        int intValue = value ? 1 : 0;
+        final String sql = "UPDATE " + RssItemDao.TABLENAME +
+                " SET " + column + " = " + intValue + ", " + tempColumn + " = " + intValue +
+                " WHERE " + RssItemDao.Properties.Id.columnName + " IN (" + join(itemIds, ",") + ")";
+        DatabaseWriter.run(new Runnable() {
+            @Override
+            public void run() {
+                daoSession.getDatabase().execSQL(sql);
+                invalidateCachedEntities();
+            }
+        });
+    }
 
-        daoSession.getRssItemDao().update(rssItem);
+    public void updateIsReadOfRssItem(String ITEM_ID, Boolean isRead) {
+        updateFlagOfRssItems(Collections.singletonList(ITEM_ID), RssItemDao.Properties.Read.columnName, RssItemDao.Properties.Read_temp.columnName, isRead);
     }
 
     public void updateIsStarredOfRssItem(String ITEM_ID, Boolean isStarred) {
-        RssItem rssItem = daoSession.getRssItemDao().queryBuilder().where(RssItemDao.Properties.Id.eq(ITEM_ID)).unique();
-
-        rssItem.setStarred(isStarred);
-        rssItem.setStarred_temp(isStarred);
-
-        daoSession.getRssItemDao().update(rssItem);
+        updateFlagOfRssItems(Collections.singletonList(ITEM_ID), RssItemDao.Properties.Starred.columnName, RssItemDao.Properties.Starred_temp.columnName, isStarred);
     }
 
     public void markAllItemsAsReadForCurrentView() {
-        /*
-        String sql = "UPDATE " + RssItemDao.TABLENAME + " SET " + RssItemDao.Properties.Read_temp.columnName + " = 1 " +
-                "WHERE " + RssItemDao.Properties.Id.columnName + " IN (SELECT " + CurrentRssItemViewDao.Properties.RssItemId.columnName + " FROM " + CurrentRssItemViewDao.TABLENAME + ")";
-        daoSession.getDatabase().execSQL(sql);
-        */
+        // Queued changes must not overwrite the new state later
+        flushRssItemStates();
 
-        WhereCondition whereCondition = new WhereCondition.StringCondition(RssItemDao.Properties.Id.columnName + " IN " +
-                "(SELECT " + CurrentRssItemViewDao.Properties.RssItemId.columnName + " FROM " + CurrentRssItemViewDao.TABLENAME + ")");
+        RssItemQuery query = getCurrentRssItemViewQuery();
+        if(query == null) {
+            return;
+        }
 
-        int iterationCount = 0;
-        final int itemsPerIteration = 100;
-        List<RssItem> rssItemList;
-        do {
-            int offset = iterationCount * itemsPerIteration;
-            int limit = itemsPerIteration;
-            rssItemList = daoSession.getRssItemDao().queryBuilder().where(whereCondition).limit(limit).offset(offset).listLazy();
-            for (RssItem rssItem : rssItemList) {
-                rssItem.setRead_temp(true);
+        final String sql = "UPDATE " + RssItemDao.TABLENAME + " SET " + RssItemDao.Properties.Read_temp.columnName + " = 1 " +
+                "WHERE " + RssItemDao.Properties.Read_temp.columnName + " != 1 " +
+                "AND " + RssItemDao.Properties.Id.columnName + " IN (SELECT V." + RssItemDao.Properties.Id.columnName + " FROM " + RssItemDao.TABLENAME + " V WHERE " + query.getCondition("V", getPinnedItemIds()) + ")";
+
+        runInWriteTx(new Runnable() {
+            @Override
+            public void run() {
+                daoSession.getDatabase().execSQL(sql);
+                invalidateCachedEntities();
+            }
+        });
+    }
+
+    /**
+     * Runs the write in a transaction on the writer thread (see {@link DatabaseWriter}) and waits
+     * for it.
+     */
+    private void runInWriteTx(final Runnable write) {
+        DatabaseWriter.run(new Runnable() {
+            @Override
+            public void run() {
+                daoSession.runInTx(write);
             }
-            daoSession.getRssItemDao().updateInTx(rssItemList);
+        });
+    }
 
-            iterationCount++;
-        } while(rssItemList.size() == itemsPerIteration);
+    /**
+     * Needs to be called after rss items have been changed using plain SQL. Otherwise greenDAO keeps
+     * returning the outdated entities from its identity scope. The cached feeds and folders are
+     * kept, none of the callers changes them with plain SQL.
+     */
+    private void invalidateCachedEntities() {
+        daoSession.getRssItemDao().detachAll();
     }
 
 
@@ -333,75 +485,110 @@ public class DatabaseConnectionOrm {
         return itemIds;
     }
 
-    public List<RssItem> getAllNewReadRssItems() {
-        return daoSession.getRssItemDao().queryBuilder().where(RssItemDao.Properties.Read.eq(false), RssItemDao.Properties.Read_temp.eq(true)).list();
+    public List<String> getIdsOfAllNewReadRssItems() {
+        return getRssItemIdsWhereTempDiffers(RssItemDao.Properties.Read.columnName, RssItemDao.Properties.Read_temp.columnName, true);
     }
 
-    public List<RssItem> getAllNewUnreadRssItems() {
-        return daoSession.getRssItemDao().queryBuilder().where(RssItemDao.Properties.Read.eq(true), RssItemDao.Properties.Read_temp.eq(false)).list();
+    public List<String> getIdsOfAllNewUnreadRssItems() {
+        return getRssItemIdsWhereTempDiffers(RssItemDao.Properties.Read.columnName, RssItemDao.Properties.Read_temp.columnName, false);
     }
 
-    public List<RssItem> getAllNewStarredRssItems() {
-        return daoSession.getRssItemDao().queryBuilder().where(RssItemDao.Properties.Starred.eq(false), RssItemDao.Properties.Starred_temp.eq(true)).list();
+    public List<String> getIdsOfAllNewStarredRssItems() {
+        return getRssItemIdsWhereTempDiffers(RssItemDao.Properties.Starred.columnName, RssItemDao.Properties.Starred_temp.columnName, true);
     }
 
-    public List<RssItem> getAllNewUnstarredRssItems() {
-        return daoSession.getRssItemDao().queryBuilder().where(RssItemDao.Properties.Starred.eq(true), RssItemDao.Properties.Starred_temp.eq(false)).list();
+    public List<String> getIdsOfAllNewUnstarredRssItems() {
+        return getRssItemIdsWhereTempDiffers(RssItemDao.Properties.Starred.columnName, RssItemDao.Properties.Starred_temp.columnName, false);
     }
 
-    public LazyList<RssItem> getAllUnreadRssItemsForWidget() {
-        return daoSession.getRssItemDao().queryBuilder().where(RssItemDao.Properties.Read_temp.eq(false)).limit(100).orderDesc(RssItemDao.Properties.PubDate).listLazy();
+    /**
+     * Only reads the ids - loading the complete items (including their bodies) is not necessary
+     */
+    private List<String> getRssItemIdsWhereTempDiffers(String column, String tempColumn, boolean newValue) {
+        String buildSQL = "SELECT " + RssItemDao.Properties.Id.columnName +
+                " FROM " + RssItemDao.TABLENAME +
+                " WHERE " + column + " = " + (newValue ? 0 : 1) +
+                " AND " + tempColumn + " = " + (newValue ? 1 : 0);
+
+        List<String> itemIds = new ArrayList<>();
+        Cursor cursor = daoSession.getDatabase().rawQuery(buildSQL, null);
+        try {
+            while(cursor.moveToNext()) {
+                itemIds.add(String.valueOf(cursor.getLong(0)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return itemIds;
+    }
+
+    /**
+     * @return key = feedId, value = guidHash of the requested items (loaded using a single query)
+     */
+    public List<Tuple<Long, String>> getFeedIdAndGuidHashOfRssItems(List<String> itemIds) {
+        List<Tuple<Long, String>> result = new ArrayList<>(itemIds.size());
+        if(itemIds.isEmpty()) {
+            return result;
+        }
+
+        String buildSQL = "SELECT " + RssItemDao.Properties.FeedId.columnName + ", " + RssItemDao.Properties.GuidHash.columnName +
+                " FROM " + RssItemDao.TABLENAME +
+                " WHERE " + RssItemDao.Properties.Id.columnName + " IN (" + join(itemIds, ",") + ")";
+
+        Cursor cursor = daoSession.getDatabase().rawQuery(buildSQL, null);
+        try {
+            while(cursor.moveToNext()) {
+                result.add(new Tuple<>(cursor.getLong(0), cursor.getString(1)));
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+
+    public List<RssItemListRow> getAllUnreadRssItemsForWidget() {
+        return RssItemListRow.query(daoSession.getDatabase(),
+                " WHERE T." + RssItemDao.Properties.Read_temp.columnName + " = 0" +
+                " ORDER BY T." + RssItemDao.Properties.PubDate.columnName + " DESC LIMIT 100");
     }
 
     public LazyList<RssItem> getAllUnreadRssItemsForDownloadWebPageService() {
         return daoSession.getRssItemDao().queryBuilder().where(RssItemDao.Properties.Read_temp.eq(false)).orderDesc(RssItemDao.Properties.PubDate).listLazy();
     }
 
+    public List<RssItem> getNewestUnreadRssItems(int limit) {
+        return daoSession.getRssItemDao().queryBuilder().where(RssItemDao.Properties.Read_temp.eq(false)).orderDesc(RssItemDao.Properties.PubDate).limit(limit).list();
+    }
+
     public LazyList<RssItem> getAllItemsWithIdHigher(long id) {
         return daoSession.getRssItemDao().queryBuilder().where(RssItemDao.Properties.Id.ge(id)).listLazy();
     }
 
     /***
-     * Warning: This methods performs database operations asynchronously. Therefore this method
-     * will return immediately - even though the operation might not be completed
+     * Writes the read / starred state of the row.
+     * Warning: The change is queued and written together with other changes shortly after (see
+     * {@link RssItemStateQueue}). Therefore this method will return immediately - even though the
+     * operation might not be completed
      */
-    public void updateRssItem(RssItem rssItem) {
-        AsyncTaskHelper.StartAsyncTask(new UpdateRssItemAsyncTask(rssItem));
+    public void updateRssItem(RssItemListRow rssItem) {
+        pinItemInCurrentView(rssItem.getId());
+        RssItemStateQueue.getInstance(daoSession).enqueue(rssItem.getId(), rssItem.getRead_temp(), rssItem.getStarred_temp());
     }
 
+    /**
+     * Writes the queued read / starred changes (see {@link #updateRssItem(RssItemListRow)}) and
+     * waits until they are written. Returns immediately if nothing is queued.
+     */
+    public void flushRssItemStates() {
+        RssItemStateQueue.getInstance(daoSession).flush();
+    }
 
-    class UpdateRssItemAsyncTask extends AsyncTask<Void, Void, Void> {
-
-        private RssItem rssItem;
-
-        UpdateRssItemAsyncTask(RssItem rssItem) {
-            this.rssItem = rssItem;
-        }
-
-        @Override
-        protected Void doInBackground(Void... voids) {
-            daoSession.getRssItemDao().update(rssItem);
-
-            // Code below is used to deduplicate rss items (see https://github.com/nextcloud/news-android/issues/513)
-            if(rssItem.getRead_temp()) {
-                // Get all rss items with the same fingerprint (This operation is very slow)
-                List<RssItem> rssItemList = daoSession.getRssItemDao().queryBuilder().where(
-                        RssItemDao.Properties.Fingerprint.eq(rssItem.getFingerprint()),
-                        RssItemDao.Properties.Id.notEq(rssItem.getId()))
-                        .list();
-
-                // Sync the read-state of the items
-                for (RssItem rssItem1 : rssItemList) {
-                    rssItem1.setRead_temp(rssItem.getRead_temp());
-                }
-
-                // Update in database
-                daoSession.getRssItemDao().updateInTx(rssItemList);
-            }
-
-            return null;
-        }
-    };
+    /**
+     * Writes the queued read / starred changes without waiting for them
+     */
+    public void flushRssItemStatesAsync() {
+        RssItemStateQueue.getInstance(daoSession).flushAsync();
+    }
 
 
     public boolean doesRssItemAlreadyExsists (long feedId) {
@@ -410,23 +597,30 @@ public class DatabaseConnectionOrm {
     }
 
     public void removeFeedById(final long feedId) {
-        daoSession.runInTx(new Runnable() {
+        runInWriteTx(new Runnable() {
             @Override
             public void run() {
-                daoSession.getFeedDao().deleteByKey(feedId);
-
-                List<RssItem> list = daoSession.getRssItemDao().queryBuilder().where(RssItemDao.Properties.FeedId.eq(feedId)).list();
-                for (RssItem rssItem : list) {
-                    daoSession.getRssItemDao().delete(rssItem);
-                }
+                deleteFeeds(Collections.singletonList(feedId));
             }
         });
     }
 
-    public void renameFeedById(long feedId, String newTitle) {
-        Feed feed = daoSession.getFeedDao().queryBuilder().where(FeedDao.Properties.Id.eq(feedId)).unique();
-        feed.setFeedTitle(newTitle);
-        daoSession.getFeedDao().update(feed);
+    private void deleteFeeds(Collection<Long> feedIds) {
+        daoSession.getFeedDao().deleteByKeyInTx(feedIds);
+        daoSession.getDatabase().execSQL("DELETE FROM " + RssItemDao.TABLENAME +
+                " WHERE " + RssItemDao.Properties.FeedId.columnName + " IN (" + TextUtils.join(",", feedIds) + ")");
+        invalidateCachedEntities();
+    }
+
+    public void renameFeedById(final long feedId, final String newTitle) {
+        DatabaseWriter.run(new Runnable() {
+            @Override
+            public void run() {
+                Feed feed = daoSession.getFeedDao().queryBuilder().where(FeedDao.Properties.Id.eq(feedId)).unique();
+                feed.setFeedTitle(newTitle);
+                daoSession.getFeedDao().update(feed);
+            }
+        });
     }
 
     public SparseArray<String> getUrlsToFavIcons() {
@@ -438,38 +632,89 @@ public class DatabaseConnectionOrm {
         return favIconUrls;
     }
 
-    public long getCurrentRssItemViewCount() {
-        return daoSession.getCurrentRssItemViewDao().count();
-
+    /**
+     * Sets the items shown in the list (and in the detail view). The view is persisted, so it is
+     * still available when the app is restarted by the system (e.g. in the detail view).
+     * Searches are executed here, the view keeps the ranked results.
+     */
+    public void setCurrentRssItemView(RssItemQuery query) {
+        synchronized (pinnedItemIds) {
+            pinnedItemIds.clear();
+        }
+        if(query.isSearch()) {
+            long start = System.currentTimeMillis();
+            query.loadSearchResults(daoSession.getDatabase(), MaxSearchResults);
+            Log.v(TAG, "Search for \"" + query.getMatchExpression() + "\" took " + (System.currentTimeMillis() - start) + "ms");
+        }
+        currentRssItemView = query;
+        mPrefs.edit().putString(CURRENT_RSS_ITEM_VIEW_STRING, new Gson().toJson(query)).apply();
     }
 
-    public List<RssItem> getCurrentRssItemView(int page) {
-        if(page != -1) {
-            String where_clause = ", " + CurrentRssItemViewDao.TABLENAME + " C "
-                    + " WHERE C." + CurrentRssItemViewDao.Properties.RssItemId.columnName + " = T."
-                    + RssItemDao.Properties.Id.columnName
-                    + " AND C._id > " + page * PageSize + " AND c._id <= " + ((page+1) * PageSize)
-                    + " ORDER BY C." + CurrentRssItemViewDao.Properties.Id.columnName;
+    /**
+     * @return the current view or null if no view has been set yet
+     */
+    public RssItemQuery getCurrentRssItemViewQuery() {
+        if(currentRssItemView == null) {
+            String json = mPrefs.getString(CURRENT_RSS_ITEM_VIEW_STRING, null);
+            if(json != null) {
+                currentRssItemView = new Gson().fromJson(json, RssItemQuery.class);
+            }
+        }
+        return currentRssItemView;
+    }
 
-            return daoSession.getRssItemDao().queryRaw(where_clause);
-        } else {
-            String where_clause = ", " + CurrentRssItemViewDao.TABLENAME + " C "
-                    + " WHERE C." + CurrentRssItemViewDao.Properties.RssItemId.columnName + " = T."
-                    + RssItemDao.Properties.Id.columnName
-                    + " ORDER BY C." + CurrentRssItemViewDao.Properties.Id.columnName;
+    /**
+     * Keeps the item in the current view until the view is changed, even if it doesn't match the
+     * filter of the view anymore (e.g. an item which has been read while browsing unread items)
+     */
+    public void pinItemInCurrentView(long rssItemId) {
+        synchronized (pinnedItemIds) {
+            pinnedItemIds.add(rssItemId);
+        }
+    }
 
-            return daoSession.getRssItemDao().queryRawCreate(where_clause).listLazy();
+    private List<Long> getPinnedItemIds() {
+        synchronized (pinnedItemIds) {
+            return new ArrayList<>(pinnedItemIds);
         }
     }
 
-    /*
-    public void markAllItemsAsReadForCurrentView()
-    {
-        String sql = "UPDATE " + RssItemDao.TABLENAME + " SET " + RssItemDao.Properties.Read_temp.columnName + " = 1 WHERE " + RssItemDao.Properties.Id.columnName +
-                " IN (SELECT " + CurrentRssItemViewDao.Properties.RssItemId.columnName + " FROM " + CurrentRssItemViewDao.TABLENAME + ")";
-        daoSession.getDatabase().execSQL(sql);
+    /**
+     * @param lastLoadedItem last item of the previous page or null for the first page
+     */
+    public List<RssItemListRow> getCurrentRssItemView(RssItemListRow lastLoadedItem) {
+        return getCurrentRssItemView(lastLoadedItem, PageSize);
+    }
+
+    /**
+     * Loads the next items of the current view by seeking to lastLoadedItem (keyset pagination).
+     *
+     * @param lastLoadedItem last item of the previous page or null for the first page
+     */
+    public List<RssItemListRow> getCurrentRssItemView(RssItemListRow lastLoadedItem, int limit) {
+        RssItemQuery query = getCurrentRssItemViewQuery();
+        if(query == null) {
+            return new ArrayList<>();
+        }
+        if(lastLoadedItem == null) {
+            // (Re)loading the view - show the latest read / starred changes
+            flushRssItemStates();
+        }
+
+        List<RssItemListRow> items = RssItemListRow.query(daoSession.getDatabase(), query.getPageWhereClause(getPinnedItemIds(), lastLoadedItem, limit));
+
+        if(query.isSearch() && query.getMatchExpression() != null && !items.isEmpty()) {
+            List<Long> ids = new ArrayList<>(items.size());
+            for(RssItemListRow item : items) {
+                ids.add(item.getId());
+            }
+            Map<Long, String> snippets = RssItemSearchTable.getSnippets(daoSession.getDatabase(), query.getMatchExpression(), ids);
+            for(RssItemListRow item : items) {
+                item.setSearchSnippet(snippets.get(item.getId()));
+            }
+        }
+        return items;
     }
-    */
 
     public static PodcastItem ParsePodcastItemFromRssItem(Context context, RssItem rssItem) {
         PodcastItem podcastItem = new PodcastItem();
@@ -496,36 +741,6 @@ public class DatabaseConnectionOrm {
     }
 
 
-    public String getAllItemsIdsForFeedSQL(long idFeed, boolean onlyUnread, boolean onlyStarredItems, SORT_DIRECTION sortDirection) {
-
-        String buildSQL =  "SELECT " + RssItemDao.Properties.Id.columnName +
-                " FROM " + RssItemDao.TABLENAME +
-                " WHERE " + RssItemDao.Properties.FeedId.columnName + " = " + idFeed;
-
-        if(onlyUnread && !onlyStarredItems)
-            buildSQL += " AND " + RssItemDao.Properties.Read_temp.columnName + " != 1";
-        else if(onlyStarredItems)
-            buildSQL += " AND " + RssItemDao.Properties.Starred_temp.columnName + " = 1";
-
-        buildSQL += " ORDER BY " + RssItemDao.Properties.PubDate.columnName + " " + sortDirection.toString();
-
-        return buildSQL;
-    }
-
-    public String getAllItemsIdsForFeedSQLFilteredByTitle(final long feedId, boolean onlyUnread, boolean onlyStarredItems, SORT_DIRECTION sortDirection, final String searchString) {
-        String buildSQL = getAllItemsIdsForFeedSQL(feedId, onlyUnread, onlyStarredItems, sortDirection);
-        return new StringBuilder(
-                buildSQL).insert(buildSQL.indexOf("ORDER"), " AND " + RssItemDao.Properties.Title.columnName + " LIKE \"%" + searchString + "%\" ").toString();
-    }
-
-    public String getAllItemsIdsForFeedSQLFilteredByBodySQL(final long feedId, boolean onlyUnread, boolean onlyStarredItems, SORT_DIRECTION sortDirection, final String searchString) {
-        String buildSQL = getAllItemsIdsForFeedSQL(feedId, onlyUnread, onlyStarredItems, sortDirection);
-        return new StringBuilder(buildSQL).insert(
-                buildSQL.indexOf("ORDER"), " AND " + RssItemDao.Properties.Body.columnName + " LIKE \"%" + searchString + "%\" ").toString();
-
-    }
-
-
     public Long getLowestItemIdByFolder(Long id_folder) {
         WhereCondition whereCondition = new WhereCondition.StringCondition(RssItemDao.Properties.FeedId.columnName + " IN " +
                         "(SELECT " + FeedDao.Properties.Id.columnName +
@@ -537,193 +752,183 @@ public class DatabaseConnectionOrm {
     }
 
 
-    public String getAllItemsIdsForFolderSQL(long ID_FOLDER, boolean onlyUnread, SORT_DIRECTION sortDirection) {
-        //If all starred items are requested always return them in desc. order
-        if(ID_FOLDER == ALL_STARRED_ITEMS.getValue())
-            sortDirection = SORT_DIRECTION.desc;
-
-        String buildSQL = "SELECT " + RssItemDao.Properties.Id.columnName +
-                " FROM " + RssItemDao.TABLENAME;
-
-        if(!(ID_FOLDER == ALL_UNREAD_ITEMS.getValue() || ID_FOLDER == ALL_STARRED_ITEMS.getValue()) || ID_FOLDER == ALL_ITEMS.getValue())//Wenn nicht Alle Artikel ausgewaehlt wurde (-10) oder (-11) fuer Starred Feeds
-        {
-            buildSQL += " WHERE " + RssItemDao.Properties.FeedId.columnName + " IN " +
-                    "(SELECT sc." + FeedDao.Properties.Id.columnName +
-                    " FROM " + FeedDao.TABLENAME + " sc " +
-                    " JOIN " + FolderDao.TABLENAME + " f ON sc." + FeedDao.Properties.FolderId.columnName + " = f." + FolderDao.Properties.Id.columnName +
-                    " WHERE f." + FolderDao.Properties.Id.columnName + " = " + ID_FOLDER + ")";
-
-            if(onlyUnread)
-                buildSQL += " AND " + RssItemDao.Properties.Read_temp.columnName + " != 1";
-        }
-        else if(ID_FOLDER == ALL_UNREAD_ITEMS.getValue())
-            buildSQL += " WHERE " + RssItemDao.Properties.Read_temp.columnName + " != 1";
-        else if(ID_FOLDER == ALL_STARRED_ITEMS.getValue())
-            buildSQL += " WHERE " + RssItemDao.Properties.Starred_temp.columnName + " = 1";
-
-        buildSQL += " ORDER BY " + RssItemDao.Properties.PubDate.columnName + " " + sortDirection.toString();
-
-        return buildSQL;
-    }
-
-    public String getAllItemsIdsForFolderSQLSearch(long ID_FOLDER, SORT_DIRECTION sortDirection, String searchPredicate, String searchString) {
-        String buildSQL = "SELECT " + RssItemDao.Properties.Id.columnName +
-                " FROM " + RssItemDao.TABLENAME;
-
-        if (!(ID_FOLDER == ALL_UNREAD_ITEMS.getValue() || ID_FOLDER == ALL_STARRED_ITEMS.getValue()) || ID_FOLDER == ALL_ITEMS.getValue())//Wenn nicht Alle Artikel ausgewaehlt wurde (-10) oder (-11) fuer Starred Feeds
-        {
-            buildSQL += " WHERE " + RssItemDao.Properties.FeedId.columnName + " IN " +
-                    "(SELECT sc." + FeedDao.Properties.Id.columnName +
-                    " FROM " + FeedDao.TABLENAME + " sc " +
-                    " JOIN " + FolderDao.TABLENAME + " f ON sc." + FeedDao.Properties.FolderId.columnName + " = f." + FolderDao.Properties.Id.columnName +
-                    " WHERE f." + FolderDao.Properties.Id.columnName + " = " + ID_FOLDER + ") AND ";
-        } else {
-            buildSQL += " WHERE ";
-        }
-
-        buildSQL += searchPredicate + " LIKE \"%" + searchString + "%\"";
-
-        buildSQL += " ORDER BY " + RssItemDao.Properties.PubDate.columnName + " " + sortDirection.toString();
-
-        return buildSQL;
-    }
-
-    public void insertIntoRssCurrentViewTable(String SQL_SELECT) {
-        StopWatch sw = new StopWatch();
-        sw.start();
-
-        SQL_SELECT = "INSERT INTO " + CurrentRssItemViewDao.TABLENAME +
-                " (" + CurrentRssItemViewDao.Properties.RssItemId.columnName + ") " + SQL_SELECT;
-
-        final String SQL_INSERT_STATEMENT = SQL_SELECT;
-
-        daoSession.runInTx(new Runnable() {
-            @Override
-            public void run() {
-                daoSession.getCurrentRssItemViewDao().deleteAll();
-                daoSession.getDatabase().execSQL(SQL_INSERT_STATEMENT);
-            }
-        });
-
-        sw.stop();
-        Log.v(TAG, "Time needed for insert: " + sw.toString());
-    }
-
-    public String getUnreadItemsCountForSpecificFolder(SPECIAL_FOLDERS specialFolder) {
-        String buildSQL = "SELECT COUNT(1)" +
-                " FROM " + RssItemDao.TABLENAME + " rss ";
-
+    public int getUnreadItemsCountForSpecificFolder(SPECIAL_FOLDERS specialFolder) {
+        String countColumn = FeedCounterTable.COLUMN_UNREAD_COUNT;
         if(specialFolder != null && specialFolder.equals(SPECIAL_FOLDERS.ALL_STARRED_ITEMS)) {
-            buildSQL += " WHERE " + RssItemDao.Properties.Starred_temp.columnName + " = 1 ";
-        } else {
-            buildSQL += " WHERE " + RssItemDao.Properties.Read_temp.columnName + " != 1 ";
+            countColumn = FeedCounterTable.COLUMN_STARRED_COUNT;
         }
 
-        SparseArray<String> values = getStringSparseArrayFromSQL(buildSQL, 0, 0);
-        return values.valueAt(0);
+        String buildSQL = "SELECT TOTAL(c." + countColumn + ")" +
+                " FROM " + FeedCounterTable.TABLENAME + " c " +
+                " JOIN " + FeedDao.TABLENAME + " feed ON c." + FeedCounterTable.COLUMN_FEED_ID + " = feed." + FeedDao.Properties.Id.columnName;
+
+        return (int) getLongValueBySQL(buildSQL);
     }
 
     /**
+     * Reads the counters of {@link FeedCounterTable} (one row per feed). Feeds / folders without
+     * unread items are not contained.
      *
      * @return [0] = unread items count for folders, [1] = unread items count for feeds
      */
-    public SparseArray<String>[] getUnreadItemCountFeedFolder() {
-        SparseArray<String>[] values = new SparseArray[2];
+    public SparseIntArray[] getUnreadItemCountFeedFolder() {
+        SparseIntArray[] values = new SparseIntArray[2];
 
-        String buildSQL = "SELECT f." + FolderDao.Properties.Id.columnName + ", feed." + FeedDao.Properties.Id.columnName + ", COUNT(1)" +
-                " FROM " + RssItemDao.TABLENAME + " rss " +
-                " JOIN " + FeedDao.TABLENAME + " feed ON rss." + RssItemDao.Properties.FeedId.columnName + " = feed." + FeedDao.Properties.Id.columnName +
-                " LEFT OUTER JOIN " + FolderDao.TABLENAME + " f ON feed." + FeedDao.Properties.FolderId.columnName + " = f." + FolderDao.Properties.Id.columnName +
-                " WHERE " + RssItemDao.Properties.Read_temp.columnName + " != 1 " +
-                " GROUP BY f." + FolderDao.Properties.Id.columnName + ", feed." + FeedDao.Properties.Id.columnName;
-                //" GROUP BY (case when f." + FolderDao.Properties.Id.columnName + " IS NULL then feed." + FeedDao.Properties.Id.columnName + " ELSE f." + FolderDao.Properties.Id.columnName + " end)";
+        String buildSQL = "SELECT f." + FolderDao.Properties.Id.columnName + ", c." + FeedCounterTable.COLUMN_FEED_ID + ", c." + FeedCounterTable.COLUMN_UNREAD_COUNT + ", c." + FeedCounterTable.COLUMN_STARRED_COUNT +
+                " FROM " + FeedCounterTable.TABLENAME + " c " +
+                " JOIN " + FeedDao.TABLENAME + " feed ON c." + FeedCounterTable.COLUMN_FEED_ID + " = feed." + FeedDao.Properties.Id.columnName +
+                " LEFT OUTER JOIN " + FolderDao.TABLENAME + " f ON feed." + FeedDao.Properties.FolderId.columnName + " = f." + FolderDao.Properties.Id.columnName;
 
-        values[0] = new SparseArray<>();
-        values[1] = new SparseArray<>();
+        values[0] = new SparseIntArray();
+        values[1] = new SparseIntArray();
 
         int totalUnreadItemsCount = 0;
+        int totalStarredItemsCount = 0;
 
         Cursor cursor = daoSession.getDatabase().rawQuery(buildSQL, null);
         try
         {
-            if(cursor != null)
-            {
-                if(cursor.getCount() > 0)
-                {
-                    cursor.moveToFirst();
-                    do {
-                        int folderId = cursor.getInt(0);
-                        int feedId = cursor.getInt(1);
-                        int unreadCount = cursor.getInt(2);
+            while(cursor.moveToNext()) {
+                int folderId = cursor.getInt(0);
+                int feedId = cursor.getInt(1);
+                int unreadCount = cursor.getInt(2);
+
+                totalStarredItemsCount += cursor.getInt(3);
 
-                        totalUnreadItemsCount += unreadCount;
+                if(unreadCount == 0) {
+                    continue;
+                }
 
-                        values[1].put(feedId, String.valueOf(unreadCount));
-                        if(folderId != 0) {
-                            if(values[0].get(folderId) != null) {
-                                unreadCount += Integer.parseInt(values[0].get(folderId));
-                            }
+                totalUnreadItemsCount += unreadCount;
 
-                            values[0].put(folderId, String.valueOf(unreadCount));
-                        }
-                    } while(cursor.moveToNext());
+                values[1].put(feedId, unreadCount);
+                if(folderId != 0) {
+                    values[0].put(folderId, values[0].get(folderId) + unreadCount);
                 }
             }
         } finally {
             cursor.close();
         }
 
-
-        values[0].put(SPECIAL_FOLDERS.ALL_UNREAD_ITEMS.getValue(), String.valueOf(totalUnreadItemsCount));
-        values[0].put(SPECIAL_FOLDERS.ALL_STARRED_ITEMS.getValue(), getUnreadItemsCountForSpecificFolder(SPECIAL_FOLDERS.ALL_STARRED_ITEMS));
-
+        values[0].put(SPECIAL_FOLDERS.ALL_UNREAD_ITEMS.getValue(), totalUnreadItemsCount);
+        values[0].put(SPECIAL_FOLDERS.ALL_STARRED_ITEMS.getValue(), totalStarredItemsCount);
 
         return values;
-
     }
 
-    public SparseArray<String> getStarredItemCount() {
-        String buildSQL = "SELECT " + RssItemDao.Properties.FeedId.columnName + ", COUNT(1)" + // rowid as _id,
-                " FROM " + RssItemDao.TABLENAME +
-                " WHERE " + RssItemDao.Properties.Starred_temp.columnName + " = 1 " +
-                " GROUP BY " + RssItemDao.Properties.FeedId.columnName;
+    /**
+     * @return starred items count for feeds (feeds without starred items are not contained)
+     */
+    public SparseIntArray getStarredItemCount() {
+        String buildSQL = "SELECT " + FeedCounterTable.COLUMN_FEED_ID + ", " + FeedCounterTable.COLUMN_STARRED_COUNT +
+                " FROM " + FeedCounterTable.TABLENAME +
+                " WHERE " + FeedCounterTable.COLUMN_STARRED_COUNT + " > 0";
 
-        return getStringSparseArrayFromSQL(buildSQL, 0, 1);
+        SparseIntArray result = new SparseIntArray();
+        Cursor cursor = daoSession.getDatabase().rawQuery(buildSQL, null);
+        try
+        {
+            while(cursor.moveToNext()) {
+                result.put(cursor.getInt(0), cursor.getInt(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
     }
 
-    public void clearDatabaseOverSize()
-    {
-        //If i have 9023 rows in the database, when i run that query it should delete 8023 rows and leave me with 1000
-        //database.execSQL("DELETE FROM " + RSS_ITEM_TABLE + " WHERE " +  + "ORDER BY rowid DESC LIMIT 1000 *
+    /**
+     * Removes the items which violate the policy and shrinks the database file. Runs as many short
+     * writes, so other writes (e.g. of the ui) don't have to wait until everything is deleted (the
+     * items are selected and their files collected on the calling thread). Items which are shown
+     * right now are kept.
+     */
+    public RssItemRetention.Report applyRetentionPolicy(RetentionPolicy policy) {
+        String retainedCondition = null;
+        RssItemQuery query = getCurrentRssItemViewQuery();
+        if(query != null) {
+            retainedCondition = RssItemDao.Properties.Id.columnName + " IN (SELECT V." + RssItemDao.Properties.Id.columnName +
+                    " FROM " + RssItemDao.TABLENAME + " V WHERE " + query.getCondition("V", getPinnedItemIds()) + ")";
+        }
 
-        //Let's say it said 1005 - you need to delete 5 rows.
-        //DELETE FROM table ORDER BY dateRegistered ASC LIMIT 5
+        final RssItemRetention retention = new RssItemRetention(daoSession.getDatabase(), policy, retainedCondition, System.currentTimeMillis());
+        RssItemRetention.Batch nextBatch;
+        while((nextBatch = retention.selectNextBatch()) != null) {
+            final RssItemRetention.Batch batch = nextBatch;
+            DatabaseWriter.run(new Runnable() {
+                @Override
+                public void run() {
+                    retention.delete(batch);
+                }
+            });
+        }
 
+        if(retention.getReport().getDeletedCount() > 0) {
+            DatabaseWriter.run(new Runnable() {
+                @Override
+                public void run() {
+                    invalidateCachedEntities();
+                }
+            });
+
+            // Databases which don't support incremental vacuum yet are converted when the app isn't
+            // used (see enableIncrementalVacuum)
+            final boolean[] pending = { true };
+            while(pending[0]) {
+                DatabaseWriter.run(new Runnable() {
+                    @Override
+                    public void run() {
+                        pending[0] = retention.vacuumNextStep();
+                    }
+                });
+            }
+        }
 
-        int max = Constants.maxItemsCount;
-        int total = (int) getLongValueBySQL("SELECT COUNT(*) FROM " + RssItemDao.TABLENAME);
-        int unread = (int) getLongValueBySQL("SELECT COUNT(*) FROM " + RssItemDao.TABLENAME + " WHERE " + RssItemDao.Properties.Read_temp.columnName + " != 1");
-        int read = total - unread;
+        return retention.getReport();
+    }
 
-        if(total > max)
-        {
-            Log.v(TAG, "Clearing Database oversize");
-
-            int overSize = total - max;
-            //Soll verhindern, dass ungelesene Artikel gelöscht werden
-            if(overSize > read)
-                overSize = read;
-
-            String sqlStatement = "DELETE FROM " + RssItemDao.TABLENAME + " WHERE " + RssItemDao.Properties.Id.columnName +
-                                    " IN (SELECT " + RssItemDao.Properties.Id.columnName + " FROM " + RssItemDao.TABLENAME +
-                                    " WHERE " + RssItemDao.Properties.Read_temp.columnName + " = 1 AND " + RssItemDao.Properties.Starred_temp.columnName + " != 1 " +
-                                    " AND " + RssItemDao.Properties.Id.columnName + " NOT IN (SELECT " + CurrentRssItemViewDao.Properties.RssItemId.columnName + " FROM " + CurrentRssItemViewDao.TABLENAME + ")" +
-                                    " ORDER BY " + RssItemDao.Properties.Id.columnName + " asc LIMIT " + overSize + ")";
-            daoSession.getDatabase().execSQL(sqlStatement);
-    		/* SELECT * FROM rss_item WHERE read_temp = 1 ORDER BY rowid asc LIMIT 3; */
-        } else {
-            Log.v(TAG, "Clearing Database oversize not necessary");
+    /**
+     * Converts databases created before incremental vacuum was enabled. Rebuilds the whole database
+     * (once), so it is queued on the writer when the app goes to the background and no sync is
+     * running (see {@link de.luhmer.owncloudnewsreader.helper.ForegroundListener}).
+     */
+    public void enableIncrementalVacuum() {
+        DatabaseWriter.submit(new Runnable() {
+            @Override
+            public void run() {
+                if(OwnCloudSyncService.isSyncRunning()) {
+                    return;
+                }
+                long bytes = RssItemRetention.enableIncrementalVacuum(daoSession.getDatabase());
+                if(bytes > 0) {
+                    Log.v(TAG, "Database shrunk by " + bytes / 1024 + " kB");
+                }
+            }
+        });
+    }
+
+    /**
+     * @return links and enclosure links of the items whose web archives / podcasts must be kept
+     * (items which are unread, starred or whose state isn't synced yet)
+     */
+    public Set<String> getLinksOfItemsWithKeptFiles() {
+        Set<String> links = new HashSet<>();
+        Cursor cursor = daoSession.getDatabase().rawQuery("SELECT " + RssItemDao.Properties.Link.columnName + ", " +
+                RssItemDao.Properties.EnclosureLink.columnName + " FROM " + RssItemDao.TABLENAME +
+                " WHERE NOT (" + RssItemRetention.DELETABLE_CONDITION + ")", null);
+        try {
+            while(cursor.moveToNext()) {
+                if(!cursor.isNull(0)) {
+                    links.add(cursor.getString(0));
+                }
+                if(!cursor.isNull(1)) {
+                    links.add(cursor.getString(1));
+                }
+            }
+        } finally {
+            cursor.close();
         }
+        return links;
     }
 
     public long getLastModified()
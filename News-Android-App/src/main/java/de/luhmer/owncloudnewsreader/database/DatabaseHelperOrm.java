@@ -34,8 +34,8 @@ public class DatabaseHelperOrm {
         if(daoSession == null) {
             synchronized (DatabaseHelperOrm.class) {
                 if(daoSession == null) {
-                    // As we are in development we will use the DevOpenHelper which drops the database on a schema update
-                    DaoMaster.DevOpenHelper helper = new DaoMaster.DevOpenHelper(context, DATABASE_NAME_ORM, null);
+                    // Migrates the database on a schema update (instead of dropping all tables)
+                    DatabaseOpenHelper helper = new DatabaseOpenHelper(context, DATABASE_NAME_ORM);
                     // Access the database using the helper
                     SQLiteDatabase db = helper.getWritableDatabase();
                     // Construct the DaoMaster which brokers DAOs for the Domain Objects
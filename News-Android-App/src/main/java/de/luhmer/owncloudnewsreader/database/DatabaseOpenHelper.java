@@ -0,0 +1,136 @@
+package de.luhmer.owncloudnewsreader.database;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.annotation.VisibleForTesting;
+import de.luhmer.owncloudnewsreader.database.model.DaoMaster;
+import de.luhmer.owncloudnewsreader.database.model.RssItemDao;
+
+/**
+ * Replaces the {@link DaoMaster.DevOpenHelper} which drops all tables on every schema change.
+ *
+ * Every schema version (see database/generator) comes with a migration from its predecessor,
+ * so an app update keeps the synced items as well as read / starred changes which haven't been
+ * synced to the server yet.
+ */
+public class DatabaseOpenHelper extends DaoMaster.OpenHelper {
+
+    private static final String TAG = DatabaseOpenHelper.class.getCanonicalName();
+
+    // Oldest schema version that can be migrated - older databases are recreated
+    private static final int MIN_MIGRATABLE_VERSION = 6;
+
+    public DatabaseOpenHelper(Context context, String name) {
+        super(context, name, null);
+        // Readers (ui, widget) don't wait for the writes of the sync - see DatabaseWriter
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        super.onConfigure(db);
+        // Lets RssItemRetention give unused pages back to the file system. Only takes effect for new
+        // databases, existing ones are converted by DatabaseConnectionOrm#enableIncrementalVacuum
+        db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+        FeedCounterTable.enableTriggers(db);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        super.onCreate(db);
+        FeedCounterTable.createTable(db);
+        RssItemSearchTable.createTable(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        Log.i(TAG, "Upgrading schema from version " + oldVersion + " to " + newVersion);
+
+        if(oldVersion < MIN_MIGRATABLE_VERSION) {
+            Log.i(TAG, "No migration available for schema version " + oldVersion + " - recreating all tables");
+            DaoMaster.dropAllTables(db, true);
+            onCreate(db);
+            return;
+        }
+
+        migrate(db, oldVersion);
+    }
+
+    /**
+     * Runs all migration steps required to get from oldVersion to {@link DaoMaster#SCHEMA_VERSION}.
+     * Called within the upgrade transaction of {@link android.database.sqlite.SQLiteOpenHelper}.
+     */
+    @VisibleForTesting
+    public static void migrate(SQLiteDatabase db, int oldVersion) {
+        if(oldVersion < 7) {
+            migrateToVersion7(db);
+        }
+        if(oldVersion < 8) {
+            migrateToVersion8(db);
+        }
+        if(oldVersion < 9) {
+            migrateToVersion9(db);
+        }
+        if(oldVersion < 10) {
+            migrateToVersion10(db);
+        }
+        // Version 11 stores the body as (compressed) blob, see RssItemBodyCodec. Nothing to
+        // migrate: sqlite never converts blobs to the declared type of the column and existing
+        // bodies are encoded in the background on the next sync.
+    }
+
+    /**
+     * Version 7 replaces the single column index on the feed id of rss items with covering indexes
+     * for the unread / starred / feed views, the deduplication by fingerprint and lastModified.
+     */
+    private static void migrateToVersion7(SQLiteDatabase db) {
+        // The new composite index starts with the feed id, so this one is redundant now
+        db.execSQL("DROP INDEX IF EXISTS IDX_RSS_ITEM_FEED_ID");
+        // The table exists already - this only creates the missing indexes
+        RssItemDao.createTable(db, true);
+    }
+
+    /**
+     * Version 8 adds the unread / starred counters per feed (see {@link FeedCounterTable}).
+     */
+    private static void migrateToVersion8(SQLiteDatabase db) {
+        FeedCounterTable.createTable(db);
+        FeedCounterTable.rebuild(db);
+    }
+
+    /**
+     * Version 9 adds the full text index (see {@link RssItemSearchTable}). Existing items are
+     * indexed in the background on the next sync instead of blocking the upgrade.
+     */
+    private static void migrateToVersion9(SQLiteDatabase db) {
+        RssItemSearchTable.createTable(db);
+    }
+
+    /**
+     * Version 10 adds the preview text and thumbnail of rss items (see {@link RssItemPreview}).
+     * Like the search index they are computed for existing items on the next sync.
+     */
+    private static void migrateToVersion10(SQLiteDatabase db) {
+        addColumn(db, RssItemDao.TABLENAME, RssItemDao.Properties.PreviewText.columnName, "TEXT");
+        addColumn(db, RssItemDao.TABLENAME, RssItemDao.Properties.MediaThumbnail.columnName, "TEXT");
+    }
+
+    // Like the other steps safe to run twice (sqlite has no "ADD COLUMN IF NOT EXISTS")
+    private static void addColumn(SQLiteDatabase db, String table, String column, String type) {
+        Cursor cursor = db.rawQuery("PRAGMA table_info(" + table + ")", null);
+        try {
+            int nameColumn = cursor.getColumnIndex("name");
+            while (cursor.moveToNext()) {
+                if (column.equalsIgnoreCase(cursor.getString(nameColumn))) {
+                    return;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        db.execSQL("ALTER TABLE " + table + " ADD COLUMN " + column + " " + type);
+    }
+}
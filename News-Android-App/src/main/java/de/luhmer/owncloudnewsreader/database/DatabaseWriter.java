@@ -0,0 +1,86 @@
+package de.luhmer.owncloudnewsreader.database;
+
+import android.util.Log;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs all writes to the database on a single thread.
+ *
+ * The database uses write-ahead logging (see {@link DatabaseOpenHelper}), so reads run on their
+ * own connections and never wait for a write transaction. sqlite only allows one writer at a time
+ * though - instead of having the sync, the ui and the services compete for the write lock, every
+ * write is queued here and executed in the order it was requested. Writes of the ui don't need to
+ * wait at all (see {@link #submit(Runnable)}), long running writes like the sync should be split
+ * into several short ones so that other writes get their turn in between.
+ */
+public class DatabaseWriter {
+
+    private static final String TAG = DatabaseWriter.class.getCanonicalName();
+
+    private static volatile Thread writerThread;
+
+    private static final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "DatabaseWriter");
+            writerThread = thread;
+            return thread;
+        }
+    });
+
+    private DatabaseWriter() {
+    }
+
+    /**
+     * Queues the write and returns immediately. Errors are logged.
+     */
+    public static Future<?> submit(final Runnable write) {
+        return executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    write.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Database write failed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the write on the writer thread and waits until it is done (after all writes queued
+     * before). Errors are rethrown to the caller.
+     */
+    public static void run(Runnable write) {
+        if (isWriterThread()) {
+            // Nested write (e.g. a write calling another write method)
+            write.run();
+            return;
+        }
+
+        Future<?> future = executor.submit(write);
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a database write", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    public static boolean isWriterThread() {
+        return Thread.currentThread() == writerThread;
+    }
+}
@@ -0,0 +1,103 @@
+package de.luhmer.owncloudnewsreader.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import de.luhmer.owncloudnewsreader.database.model.RssItemDao;
+
+/**
+ * Unread and starred item count per feed, kept up to date by triggers on the rss item table.
+ *
+ * The triggers cover every write path (greenDAO inserts / updates, the raw sql updates used for
+ * marking items as read and the cleanup of old items), so the counts can never drift from the
+ * items. Reading the counts for the drawer only needs one row per feed instead of scanning all
+ * items. The table is not part of the greenDAO schema because greenDAO can't generate triggers.
+ *
+ * Inserts of rss items use "INSERT OR REPLACE" - the delete trigger only fires for the replaced row
+ * if recursive triggers are enabled (see {@link #enableTriggers(SQLiteDatabase)}).
+ */
+public class FeedCounterTable {
+
+    public static final String TABLENAME = "FEED_COUNTER";
+    public static final String COLUMN_FEED_ID = "FEED_ID";
+    public static final String COLUMN_UNREAD_COUNT = "UNREAD_COUNT";
+    public static final String COLUMN_STARRED_COUNT = "STARRED_COUNT";
+
+    private static final String RSS_ITEM_FEED_ID = RssItemDao.Properties.FeedId.columnName;
+    private static final String RSS_ITEM_READ_TEMP = RssItemDao.Properties.Read_temp.columnName;
+    private static final String RSS_ITEM_STARRED_TEMP = RssItemDao.Properties.Starred_temp.columnName;
+
+    private FeedCounterTable() {
+    }
+
+    /**
+     * Has to be called for every connection before rss items are written
+     */
+    public static void enableTriggers(SQLiteDatabase db) {
+        db.execSQL("PRAGMA recursive_triggers = ON");
+    }
+
+    /** Creates the counter table and the triggers which keep it up to date. */
+    public static void createTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLENAME + " (" +
+                "\"" + COLUMN_FEED_ID + "\" INTEGER PRIMARY KEY NOT NULL ," +
+                "\"" + COLUMN_UNREAD_COUNT + "\" INTEGER NOT NULL DEFAULT 0 ," +
+                "\"" + COLUMN_STARRED_COUNT + "\" INTEGER NOT NULL DEFAULT 0);");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS TRG_RSS_ITEM_INSERT_COUNTER AFTER INSERT ON " + RssItemDao.TABLENAME +
+                " BEGIN " +
+                ensureCounterExists("NEW") +
+                updateCounter("NEW", "+") +
+                " END");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS TRG_RSS_ITEM_DELETE_COUNTER AFTER DELETE ON " + RssItemDao.TABLENAME +
+                " BEGIN " +
+                updateCounter("OLD", "-") +
+                " END");
+
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS TRG_RSS_ITEM_UPDATE_COUNTER AFTER UPDATE OF " +
+                RSS_ITEM_FEED_ID + ", " + RSS_ITEM_READ_TEMP + ", " + RSS_ITEM_STARRED_TEMP + " ON " + RssItemDao.TABLENAME +
+                " WHEN OLD." + RSS_ITEM_FEED_ID + " != NEW." + RSS_ITEM_FEED_ID +
+                " OR OLD." + RSS_ITEM_READ_TEMP + " IS NOT NEW." + RSS_ITEM_READ_TEMP +
+                " OR OLD." + RSS_ITEM_STARRED_TEMP + " IS NOT NEW." + RSS_ITEM_STARRED_TEMP +
+                " BEGIN " +
+                updateCounter("OLD", "-") +
+                ensureCounterExists("NEW") +
+                updateCounter("NEW", "+") +
+                " END");
+    }
+
+    /** Recalculates all counters from the rss items (used when the table is created for existing items) */
+    public static void rebuild(SQLiteDatabase db) {
+        db.execSQL("DELETE FROM " + TABLENAME);
+        db.execSQL("INSERT INTO " + TABLENAME + " (" + COLUMN_FEED_ID + ", " + COLUMN_UNREAD_COUNT + ", " + COLUMN_STARRED_COUNT + ")" +
+                " SELECT " + RSS_ITEM_FEED_ID + ", " +
+                "SUM(" + isUnread(RssItemDao.TABLENAME) + "), " +
+                "SUM(" + isStarred(RssItemDao.TABLENAME) + ")" +
+                " FROM " + RssItemDao.TABLENAME +
+                " GROUP BY " + RSS_ITEM_FEED_ID);
+    }
+
+    // No "INSERT OR IGNORE" here - within a trigger the conflict clause of the outer statement
+    // ("INSERT OR REPLACE" of greenDAO) would win and reset the counter
+    private static String ensureCounterExists(String row) {
+        return "INSERT INTO " + TABLENAME + " (" + COLUMN_FEED_ID + ")" +
+                " SELECT " + row + "." + RSS_ITEM_FEED_ID +
+                " WHERE NOT EXISTS (SELECT 1 FROM " + TABLENAME + " WHERE " + COLUMN_FEED_ID + " = " + row + "." + RSS_ITEM_FEED_ID + ");";
+    }
+
+    private static String updateCounter(String row, String operator) {
+        return "UPDATE " + TABLENAME + " SET " +
+                COLUMN_UNREAD_COUNT + " = " + COLUMN_UNREAD_COUNT + " " + operator + " " + isUnread(row) + ", " +
+                COLUMN_STARRED_COUNT + " = " + COLUMN_STARRED_COUNT + " " + operator + " " + isStarred(row) +
+                " WHERE " + COLUMN_FEED_ID + " = " + row + "." + RSS_ITEM_FEED_ID + ";";
+    }
+
+    // Same conditions as used by the unread / starred item views
+    private static String isUnread(String row) {
+        return "(CASE WHEN " + row + "." + RSS_ITEM_READ_TEMP + " != 1 THEN 1 ELSE 0 END)";
+    }
+
+    private static String isStarred(String row) {
+        return "(CASE WHEN " + row + "." + RSS_ITEM_STARRED_TEMP + " = 1 THEN 1 ELSE 0 END)";
+    }
+}
@@ -0,0 +1,48 @@
+package de.luhmer.owncloudnewsreader.database;
+
+import android.content.SharedPreferences;
+
+import java.util.concurrent.TimeUnit;
+
+import de.luhmer.owncloudnewsreader.Constants;
+import de.luhmer.owncloudnewsreader.SettingsActivity;
+
+/**
+ * Limits of what is kept in the database and the caches (see {@link RssItemRetention}).
+ *
+ * Only items which are read, not starred and whose state has been synced to the server are ever
+ * removed. A limit of 0 disables the rule. Apart from the total number of items (which was limited
+ * before) all rules are disabled unless they are enabled in the settings - items which have been
+ * removed are not synced again.
+ */
+public class RetentionPolicy {
+
+    // Total number of items
+    public final int maxItems;
+    // Keeps single busy feeds from pushing the items of all other feeds out of the database
+    public final int maxItemsPerFeed;
+    public final long maxAgeMillis;
+    // Size of the stored (compressed) bodies
+    public final long maxBodyBytes;
+    // Size of the web archives and downloaded podcasts (cached images are limited by the image loader,
+    // files of unread / starred items are never removed)
+    public final long maxFileBytes;
+
+    public RetentionPolicy(int maxItems, int maxItemsPerFeed, long maxAgeMillis, long maxBodyBytes, long maxFileBytes) {
+        this.maxItems = maxItems;
+        this.maxItemsPerFeed = maxItemsPerFeed;
+        this.maxAgeMillis = maxAgeMillis;
+        this.maxBodyBytes = maxBodyBytes;
+        this.maxFileBytes = maxFileBytes;
+    }
+
+    public static RetentionPolicy fromPreferences(SharedPreferences prefs) {
+        long maxFileSize = Long.parseLong(prefs.getString(SettingsActivity.SP_MAX_DOWNLOADED_FILES_SIZE, "0")) * 1024 * 1024;
+        return new RetentionPolicy(
+                Constants.maxItemsCount,
+                Integer.parseInt(prefs.getString(SettingsActivity.SP_RETENTION_MAX_ITEMS_PER_FEED, "0")),
+                TimeUnit.DAYS.toMillis(Long.parseLong(prefs.getString(SettingsActivity.SP_RETENTION_MAX_AGE_DAYS, "0"))),
+                Long.parseLong(prefs.getString(SettingsActivity.SP_RETENTION_MAX_BODY_SIZE, "0")) * 1024 * 1024,
+                maxFileSize);
+    }
+}
@@ -0,0 +1,223 @@
+package de.luhmer.owncloudnewsreader.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import de.luhmer.owncloudnewsreader.database.model.RssItemDao;
+
+/**
+ * Storage format of the rss item bodies (the BODY column, see
+ * {@link de.luhmer.owncloudnewsreader.database.model.RssItem#getBody()}).
+ *
+ * Html compresses well, so longer bodies are stored deflated: a marker byte (0, which can't be
+ * part of the text), the codec, the length of the uncompressed text (4 bytes, big endian) and the
+ * deflate data. Everything else is the plain utf-8 text - which is also what sqlite returns for
+ * bodies written as text by older versions of the app (Cursor#getBlob adds the 0 terminator of
+ * the text, see {@link #decode(byte[])}).
+ */
+public class RssItemBodyCodec {
+
+    private static final String TAG = RssItemBodyCodec.class.getCanonicalName();
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte MARKER = 0;
+    static final byte CODEC_DEFLATE = 1;
+    private static final int HEADER_LENGTH = 6;
+
+    // Shorter bodies don't get much smaller (and are cheap to read anyway)
+    static final int MIN_COMPRESS_LENGTH = 256;
+
+    private static final String ID = RssItemDao.Properties.Id.columnName;
+    private static final String BODY = RssItemDao.Properties.BodyData.columnName;
+    private static final int BATCH_SIZE = 200;
+
+    private RssItemBodyCodec() {
+    }
+
+    public static byte[] encode(String body) {
+        if (body == null) {
+            return null;
+        }
+
+        byte[] text = body.getBytes(UTF_8);
+        if (text.length < MIN_COMPRESS_LENGTH) {
+            return text;
+        }
+
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            deflater.setInput(text);
+            deflater.finish();
+
+            ByteArrayOutputStream data = new ByteArrayOutputStream(text.length / 3 + HEADER_LENGTH);
+            data.write(MARKER);
+            data.write(CODEC_DEFLATE);
+            data.write(text.length >>> 24);
+            data.write(text.length >>> 16);
+            data.write(text.length >>> 8);
+            data.write(text.length);
+
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                data.write(buffer, 0, deflater.deflate(buffer));
+                if (data.size() >= text.length) {
+                    // Incompressible (e.g. mostly base64 images)
+                    return text;
+                }
+            }
+            return data.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static String decode(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (!isCompressed(data)) {
+            // Bodies stored as text are returned with their 0 terminator
+            int length = data.length;
+            if (length > 0 && data[length - 1] == MARKER) {
+                length--;
+            }
+            return new String(data, 0, length, UTF_8);
+        }
+
+        byte[] text = new byte[getUncompressedLength(data)];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data, HEADER_LENGTH, data.length - HEADER_LENGTH);
+            int length = 0;
+            while (length < text.length && !inflater.finished()) {
+                int inflated = inflater.inflate(text, length, text.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            return new String(text, 0, length, UTF_8);
+        } catch (DataFormatException e) {
+            Log.e(TAG, "Corrupt body", e);
+            return "";
+        } finally {
+            inflater.end();
+        }
+    }
+
+    static boolean isCompressed(byte[] data) {
+        return data.length >= HEADER_LENGTH && data[0] == MARKER && data[1] == CODEC_DEFLATE;
+    }
+
+    private static int getUncompressedLength(byte[] data) {
+        return (data[2] & 0xff) << 24 | (data[3] & 0xff) << 16 | (data[4] & 0xff) << 8 | (data[5] & 0xff);
+    }
+
+    /**
+     * Converts the next {@link #BATCH_SIZE} bodies which are still stored as text (synced by an
+     * older version of the app) in one transaction (see
+     * {@link DatabaseConnectionOrm#encodeRssItemBodies()})
+     *
+     * @return number of converted bodies (0 if there are none left)
+     */
+    public static int encodeTextBodiesBatch(SQLiteDatabase db) {
+        // Read the whole batch first - updating rows while the cursor is open would change its result
+        List<Long> ids = new ArrayList<>(BATCH_SIZE);
+        List<String> bodies = new ArrayList<>(BATCH_SIZE);
+        Cursor cursor = db.rawQuery("SELECT " + ID + ", " + BODY +
+                " FROM " + RssItemDao.TABLENAME +
+                " WHERE typeof(" + BODY + ") = 'text'" +
+                " LIMIT " + BATCH_SIZE, null);
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+                bodies.add(cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        SQLiteStatement statement = db.compileStatement("UPDATE " + RssItemDao.TABLENAME +
+                " SET " + BODY + " = ? WHERE " + ID + " = ?");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                statement.bindBlob(1, encode(bodies.get(i)));
+                statement.bindLong(2, ids.get(i));
+                statement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+        return ids.size();
+    }
+
+    /**
+     * Size of the stored bodies compared to their text
+     */
+    public static Stats getStats(SQLiteDatabase db) {
+        Stats stats = new Stats();
+        // Only the header is needed to know the length of the text
+        Cursor cursor = db.rawQuery("SELECT typeof(" + BODY + "), LENGTH(CAST(" + BODY + " AS BLOB)), SUBSTR(CAST(" + BODY + " AS BLOB), 1, " + HEADER_LENGTH + ")" +
+                " FROM " + RssItemDao.TABLENAME +
+                " WHERE " + BODY + " IS NOT NULL", null);
+        try {
+            while (cursor.moveToNext()) {
+                long storedLength = cursor.getLong(1);
+                byte[] header = cursor.getBlob(2);
+
+                stats.itemCount++;
+                stats.storedBytes += storedLength;
+                if (header != null && isCompressed(header)) {
+                    stats.compressedCount++;
+                    stats.textBytes += getUncompressedLength(header);
+                } else {
+                    stats.textBytes += storedLength;
+                    if ("text".equals(cursor.getString(0))) {
+                        stats.pendingCount++;
+                    }
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return stats;
+    }
+
+    public static class Stats {
+        public int itemCount;
+        public int compressedCount;
+        // Bodies which are still stored as text (see encodeTextBodiesBatch)
+        public int pendingCount;
+        public long storedBytes;
+        public long textBytes;
+
+        public double getCompressionRatio() {
+            return storedBytes == 0 ? 1.0 : (double) textBytes / storedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d bodies (%d compressed, %d pending): %d kB stored, %d kB text, ratio %.2f",
+                    itemCount, compressedCount, pendingCount, storedBytes / 1024, textBytes / 1024, getCompressionRatio());
+        }
+    }
+}
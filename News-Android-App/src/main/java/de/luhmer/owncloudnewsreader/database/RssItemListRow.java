@@ -0,0 +1,188 @@
+package de.luhmer.owncloudnewsreader.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import de.luhmer.owncloudnewsreader.adapter.HasId;
+import de.luhmer.owncloudnewsreader.database.model.FeedDao;
+import de.luhmer.owncloudnewsreader.database.model.RssItemDao;
+
+/**
+ * The columns of an rss item (and its feed) which are needed to show it in a list.
+ *
+ * Loading complete {@link de.luhmer.owncloudnewsreader.database.model.RssItem} entities for a list
+ * pulls every html body into memory (and through the cursor window) just to show a few lines of
+ * it. Rows only contain the preview of the body (see {@link RssItemPreview}), the complete item is
+ * loaded by id when it is actually rendered (see {@link DatabaseConnectionOrm#getRssItemById(long)}).
+ *
+ * Rows are not managed by greenDAO, changes are written using
+ * {@link DatabaseConnectionOrm#updateRssItem(RssItemListRow)}.
+ */
+public class RssItemListRow implements HasId<Long> {
+
+    private static final String COLUMNS = "T." + RssItemDao.Properties.Id.columnName +
+            ", T." + RssItemDao.Properties.FeedId.columnName +
+            ", T." + RssItemDao.Properties.Title.columnName +
+            ", T." + RssItemDao.Properties.Author.columnName +
+            ", T." + RssItemDao.Properties.Link.columnName +
+            ", T." + RssItemDao.Properties.PubDate.columnName +
+            ", T." + RssItemDao.Properties.Read_temp.columnName +
+            ", T." + RssItemDao.Properties.Starred_temp.columnName +
+            ", T." + RssItemDao.Properties.EnclosureLink.columnName +
+            ", T." + RssItemDao.Properties.EnclosureMime.columnName +
+            ", T." + RssItemDao.Properties.PreviewText.columnName +
+            ", T." + RssItemDao.Properties.MediaThumbnail.columnName +
+            ", F." + FeedDao.Properties.FeedTitle.columnName +
+            ", F." + FeedDao.Properties.FaviconUrl.columnName +
+            ", F." + FeedDao.Properties.AvgColour.columnName;
+
+    private long id;
+    private long feedId;
+    private String title;
+    private String author;
+    private String link;
+    private Date pubDate;
+    private boolean read_temp;
+    private boolean starred_temp;
+    private String enclosureLink;
+    private String enclosureMime;
+    private String previewText;
+    private String mediaThumbnail;
+    private String feedTitle;
+    private String feedFaviconUrl;
+    private String feedAvgColour;
+    // Highlighted text of a search result (html)
+    private String searchSnippet;
+
+    /**
+     * Loads the rows of the rss items selected by the where clause (for the rss item table with
+     * the alias "T", e.g. {@link RssItemQuery#getPageWhereClause}).
+     */
+    public static List<RssItemListRow> query(SQLiteDatabase db, String whereClause) {
+        String sql = "SELECT " + COLUMNS +
+                " FROM " + RssItemDao.TABLENAME + " T" +
+                " LEFT JOIN " + FeedDao.TABLENAME + " F ON F." + FeedDao.Properties.Id.columnName + " = T." + RssItemDao.Properties.FeedId.columnName +
+                whereClause;
+
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            List<RssItemListRow> rows = new ArrayList<>(cursor.getCount());
+            while (cursor.moveToNext()) {
+                rows.add(readRow(cursor));
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static RssItemListRow readRow(Cursor cursor) {
+        RssItemListRow row = new RssItemListRow();
+        row.id = cursor.getLong(0);
+        row.feedId = cursor.getLong(1);
+        row.title = cursor.getString(2);
+        row.author = cursor.getString(3);
+        row.link = cursor.getString(4);
+        row.pubDate = cursor.isNull(5) ? null : new Date(cursor.getLong(5));
+        row.read_temp = !cursor.isNull(6) && cursor.getShort(6) != 0;
+        row.starred_temp = !cursor.isNull(7) && cursor.getShort(7) != 0;
+        row.enclosureLink = cursor.getString(8);
+        row.enclosureMime = cursor.getString(9);
+        row.previewText = cursor.getString(10);
+        row.mediaThumbnail = cursor.getString(11);
+        row.feedTitle = cursor.getString(12);
+        row.feedFaviconUrl = cursor.getString(13);
+        row.feedAvgColour = cursor.getString(14);
+        return row;
+    }
+
+    @Override
+    public Long getId() {
+        return id;
+    }
+
+    public long getFeedId() {
+        return feedId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+
+    public String getLink() {
+        return link;
+    }
+
+    public Date getPubDate() {
+        return pubDate;
+    }
+
+    public boolean getRead_temp() {
+        return read_temp;
+    }
+
+    public void setRead_temp(boolean read_temp) {
+        this.read_temp = read_temp;
+    }
+
+    public boolean getStarred_temp() {
+        return starred_temp;
+    }
+
+    public void setStarred_temp(boolean starred_temp) {
+        this.starred_temp = starred_temp;
+    }
+
+    public String getEnclosureLink() {
+        return enclosureLink;
+    }
+
+    public String getEnclosureMime() {
+        return enclosureMime;
+    }
+
+    /**
+     * @return the beginning of the body as plain text (null until the preview has been computed)
+     */
+    public String getPreviewText() {
+        return previewText;
+    }
+
+    /**
+     * @return link of the first image of the body or null
+     */
+    public String getMediaThumbnail() {
+        return mediaThumbnail;
+    }
+
+    /**
+     * @return title of the feed or null if the feed doesn't exist (anymore)
+     */
+    public String getFeedTitle() {
+        return feedTitle;
+    }
+
+    public String getFeedFaviconUrl() {
+        return feedFaviconUrl;
+    }
+
+    public String getFeedAvgColour() {
+        return feedAvgColour;
+    }
+
+    public String getSearchSnippet() {
+        return searchSnippet;
+    }
+
+    public void setSearchSnippet(String searchSnippet) {
+        this.searchSnippet = searchSnippet;
+    }
+}
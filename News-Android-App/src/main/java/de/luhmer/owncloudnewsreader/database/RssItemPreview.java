@@ -0,0 +1,125 @@
+package de.luhmer.owncloudnewsreader.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import de.luhmer.owncloudnewsreader.database.model.RssItemDao;
+import de.luhmer.owncloudnewsreader.helper.ImageHandler;
+
+/**
+ * Preview text and thumbnail of rss items.
+ *
+ * Both are extracted from the body once when the item is parsed during the sync, so showing an
+ * item in the list only reads two short columns instead of parsing the html of its body (see
+ * {@link RssItemListRow}).
+ */
+public class RssItemPreview {
+
+    private static final String TAG = RssItemPreview.class.getCanonicalName();
+
+    // More than the list layouts show (they cut the text after a few lines)
+    public static final int PREVIEW_TEXT_LENGTH = 500;
+
+    private static final String ID = RssItemDao.Properties.Id.columnName;
+    private static final String PREVIEW_TEXT = RssItemDao.Properties.PreviewText.columnName;
+    private static final String MEDIA_THUMBNAIL = RssItemDao.Properties.MediaThumbnail.columnName;
+    private static final int BATCH_SIZE = 200;
+
+    private RssItemPreview() {
+    }
+
+    /**
+     * Sets the preview text (never null, so items without preview can be found) and the
+     * thumbnail (link of the first image or null) of the item.
+     */
+    public static void update(RssItem item) {
+        item.setPreviewText(getPreviewText(item.getBody()));
+        item.setMediaThumbnail(getMediaThumbnail(item.getBody()));
+    }
+
+    public static String getPreviewText(String body) {
+        String text = RssItemSearchTable.toPlainText(body);
+        if (text.length() > PREVIEW_TEXT_LENGTH) {
+            text = text.substring(0, PREVIEW_TEXT_LENGTH);
+        }
+        return text;
+    }
+
+    public static String getMediaThumbnail(String body) {
+        return body == null ? null : ImageHandler.getFirstImageLinkFromText(body);
+    }
+
+    /**
+     * Computes the preview of all items which have been synced before the preview columns existed.
+     *
+     * @return number of updated items
+     */
+    public static int updateMissingPreviews(SQLiteDatabase db) {
+        int count = 0;
+        int batchCount;
+        while ((batchCount = updateMissingPreviewsBatch(db)) > 0) {
+            count += batchCount;
+        }
+
+        if (count > 0) {
+            Log.v(TAG, "Computed the preview of " + count + " items");
+        }
+        return count;
+    }
+
+    /**
+     * Computes the preview of the next {@link #BATCH_SIZE} items without one in one transaction
+     * (see {@link DatabaseConnectionOrm#updateMissingRssItemPreviews()})
+     *
+     * @return number of updated items (0 if there are none left)
+     */
+    public static int updateMissingPreviewsBatch(SQLiteDatabase db) {
+        // Read the whole batch first - updating rows while the cursor is open would change its result
+        List<Long> ids = new ArrayList<>(BATCH_SIZE);
+        List<String> bodies = new ArrayList<>(BATCH_SIZE);
+        Cursor cursor = db.rawQuery("SELECT " + ID + ", " + RssItemDao.Properties.BodyData.columnName +
+                " FROM " + RssItemDao.TABLENAME +
+                " WHERE " + PREVIEW_TEXT + " IS NULL" +
+                " LIMIT " + BATCH_SIZE, null);
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+                bodies.add(RssItemBodyCodec.decode(cursor.getBlob(1)));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        SQLiteStatement statement = db.compileStatement("UPDATE " + RssItemDao.TABLENAME +
+                " SET " + PREVIEW_TEXT + " = ?, " + MEDIA_THUMBNAIL + " = ? WHERE " + ID + " = ?");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                String mediaThumbnail = getMediaThumbnail(bodies.get(i));
+
+                statement.clearBindings();
+                statement.bindString(1, getPreviewText(bodies.get(i)));
+                if (mediaThumbnail != null) {
+                    statement.bindString(2, mediaThumbnail);
+                }
+                statement.bindLong(3, ids.get(i));
+                statement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+        return ids.size();
+    }
+}
@@ -0,0 +1,277 @@
+package de.luhmer.owncloudnewsreader.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import de.luhmer.owncloudnewsreader.database.model.FeedDao;
+import de.luhmer.owncloudnewsreader.database.model.RssItemDao;
+
+import static de.luhmer.owncloudnewsreader.ListView.SubscriptionExpandableListAdapter.SPECIAL_FOLDERS.ALL_STARRED_ITEMS;
+import static de.luhmer.owncloudnewsreader.ListView.SubscriptionExpandableListAdapter.SPECIAL_FOLDERS.ALL_UNREAD_ITEMS;
+
+/**
+ * Describes the rss items of a list view (feed / folder, unread / starred, search) and builds the
+ * sql conditions for it.
+ *
+ * Items are ordered by (pubDate, id), so a page can be loaded by seeking to the last item of the
+ * previous page (keyset pagination) - no matter how many items the view contains, each page only
+ * reads the rows it returns from the indexes.
+ *
+ * Search results are ranked by relevance instead, the view then consists of the ids of the best
+ * matching items (see {@link #loadSearchResults(SQLiteDatabase, int)}).
+ */
+public class RssItemQuery {
+
+    private static final String ID = RssItemDao.Properties.Id.columnName;
+    private static final String FEED_ID = RssItemDao.Properties.FeedId.columnName;
+    private static final String PUB_DATE = RssItemDao.Properties.PubDate.columnName;
+    private static final String FINGERPRINT = RssItemDao.Properties.Fingerprint.columnName;
+
+    // Fields are persisted as json (see DatabaseConnectionOrm#setCurrentRssItemView)
+    private Long feedId;
+    private Long folderId;
+    private boolean onlyUnread;
+    private boolean onlyStarred;
+    private String searchColumn;
+    private String searchString;
+    private List<Long> searchResultIds;
+    private boolean deduplicate;
+    private DatabaseConnectionOrm.SORT_DIRECTION sortDirection;
+
+    private RssItemQuery(DatabaseConnectionOrm.SORT_DIRECTION sortDirection) {
+        this.sortDirection = sortDirection;
+    }
+
+    public static RssItemQuery forFeed(long idFeed, boolean onlyUnread, boolean onlyStarred, DatabaseConnectionOrm.SORT_DIRECTION sortDirection) {
+        RssItemQuery query = new RssItemQuery(sortDirection);
+        query.feedId = idFeed;
+        query.onlyStarred = onlyStarred;
+        query.onlyUnread = onlyUnread && !onlyStarred;
+        return query;
+    }
+
+    public static RssItemQuery forFolder(long idFolder, boolean onlyUnread, DatabaseConnectionOrm.SORT_DIRECTION sortDirection) {
+        RssItemQuery query;
+        if(idFolder == ALL_UNREAD_ITEMS.getValue()) {
+            query = new RssItemQuery(sortDirection);
+            query.onlyUnread = true;
+        } else if(idFolder == ALL_STARRED_ITEMS.getValue()) {
+            //If all starred items are requested always return them in desc. order
+            query = new RssItemQuery(DatabaseConnectionOrm.SORT_DIRECTION.desc);
+            query.onlyStarred = true;
+        } else {
+            query = new RssItemQuery(sortDirection);
+            query.folderId = idFolder;
+            query.onlyUnread = onlyUnread;
+        }
+        return query;
+    }
+
+    /**
+     * Only items which contain the words of searchString (or words starting with them)
+     *
+     * @param column column of the {@link RssItemSearchTable} or null to search in all columns
+     */
+    public RssItemQuery search(String column, String searchString) {
+        this.searchColumn = column;
+        this.searchString = searchString;
+        this.searchResultIds = null;
+        return this;
+    }
+
+    public boolean isSearch() {
+        return searchString != null;
+    }
+
+    /**
+     * @return the fts query of the search or null if there is nothing to search for
+     */
+    public String getMatchExpression() {
+        return isSearch() ? RssItemSearchTable.getMatchExpression(searchColumn, searchString) : null;
+    }
+
+    /**
+     * Runs the full text search. Afterwards the view consists of the best matching items (at most
+     * limit), ordered by relevance.
+     */
+    public void loadSearchResults(SQLiteDatabase db, int limit) {
+        searchResultIds = null;
+        String matchExpression = getMatchExpression();
+        if(matchExpression == null) {
+            searchResultIds = new ArrayList<>();
+        } else {
+            searchResultIds = RssItemSearchTable.search(db, matchExpression, getFilter("T", null), limit);
+        }
+    }
+
+    /**
+     * Shows items with the same fingerprint (e.g. the same article in two feeds) only once
+     */
+    public RssItemQuery deduplicate() {
+        this.deduplicate = true;
+        return this;
+    }
+
+    /**
+     * @param alias alias of the rss item table
+     * @param pinnedItemIds items which stay in the view even if their read / starred state doesn't
+     *                      match anymore (can be null)
+     */
+    public String getCondition(String alias, Collection<Long> pinnedItemIds) {
+        String condition = getFilter(alias, pinnedItemIds);
+        if(deduplicate) {
+            // The item with the highest id represents all items with the same fingerprint
+            String duplicateAlias = alias + "_dup";
+            condition += " AND NOT EXISTS (SELECT 1 FROM " + RssItemDao.TABLENAME + " " + duplicateAlias +
+                    " WHERE " + duplicateAlias + "." + FINGERPRINT + " = " + alias + "." + FINGERPRINT +
+                    " AND " + duplicateAlias + "." + ID + " > " + alias + "." + ID +
+                    " AND " + getFilter(duplicateAlias, pinnedItemIds) + ")";
+        }
+        return condition;
+    }
+
+    /**
+     * Where clause (for the rss item table with the alias "T") which selects one page of this view.
+     *
+     * @param lastLoadedItem last item of the previous page or null for the first page
+     */
+    public String getPageWhereClause(Collection<Long> pinnedItemIds, RssItemListRow lastLoadedItem, int limit) {
+        if(searchResultIds != null) {
+            List<Long> pageIds = getSearchResultPage(lastLoadedItem, limit);
+            return " WHERE T." + ID + " IN (" + DatabaseConnectionOrm.join(pageIds, ",") + ")" +
+                    " ORDER BY " + getRankOrderBy("T", pageIds);
+        }
+
+        String condition = getCondition("S", pinnedItemIds);
+        if(lastLoadedItem == null) {
+            return " WHERE T." + ID + " IN (" + selectPageIds(condition, limit) + ")" +
+                    " ORDER BY " + getOrderBy("T");
+        }
+
+        String pageIds = selectPageIds(condition + " AND " + getSeekCondition("S", lastLoadedItem), limit);
+        String followingCondition = getFollowingItemsCondition("S", lastLoadedItem);
+        if(followingCondition != null) {
+            // The items with / without a pubDate which follow are selected separately (an OR
+            // would prevent sqlite from seeking in the indexes)
+            pageIds = "SELECT * FROM (" + pageIds + ")" +
+                    " UNION ALL SELECT * FROM (" + selectPageIds(condition + " AND " + followingCondition, limit) + ")";
+        }
+        return " WHERE T." + ID + " IN (" + pageIds + ")" +
+                " ORDER BY " + getOrderBy("T") +
+                " LIMIT " + limit;
+    }
+
+    /**
+     * Sorts / limits by the indexed columns only, the complete rows of the page are loaded afterwards
+     */
+    private String selectPageIds(String condition, int limit) {
+        return "SELECT S." + ID + " FROM " + RssItemDao.TABLENAME + " S" +
+                " WHERE " + condition +
+                " ORDER BY " + getOrderBy("S") +
+                " LIMIT " + limit;
+    }
+
+    /**
+     * Condition for the items which come after the given item in this view and have a pubDate if
+     * the item has one (or none if the item has none). Items without a pubDate are ordered like
+     * items with the pubDate 0 (sqlite sorts NULL first).
+     */
+    public String getSeekCondition(String alias, RssItemListRow lastItem) {
+        String operator = sortDirection == DatabaseConnectionOrm.SORT_DIRECTION.asc ? ">" : "<";
+        String idCondition = alias + "." + ID + " " + operator + " " + lastItem.getId();
+        if(lastItem.getPubDate() == null) {
+            return alias + "." + PUB_DATE + " IS NULL AND " + idCondition;
+        }
+        long pubDate = lastItem.getPubDate().getTime();
+
+        // Written without row values (not supported by older sqlite versions), the first part
+        // allows sqlite to seek in the pubDate indexes
+        return alias + "." + PUB_DATE + " " + operator + "= " + pubDate +
+                " AND (" + alias + "." + PUB_DATE + " " + operator + " " + pubDate +
+                " OR " + idCondition + ")";
+    }
+
+    /**
+     * @return condition for the items which come after the items of
+     * {@link #getSeekCondition(String, RssItemListRow)} or null if there are none
+     */
+    private String getFollowingItemsCondition(String alias, RssItemListRow lastItem) {
+        boolean ascending = sortDirection == DatabaseConnectionOrm.SORT_DIRECTION.asc;
+        if(ascending && lastItem.getPubDate() == null) {
+            return alias + "." + PUB_DATE + " IS NOT NULL";
+        } else if(!ascending && lastItem.getPubDate() != null) {
+            return alias + "." + PUB_DATE + " IS NULL";
+        }
+        return null;
+    }
+
+    public String getOrderBy(String alias) {
+        if(searchResultIds != null) {
+            return getRankOrderBy(alias, searchResultIds);
+        }
+        return alias + "." + PUB_DATE + " " + sortDirection + ", " + alias + "." + ID + " " + sortDirection;
+    }
+
+    private String getFilter(String alias, Collection<Long> pinnedItemIds) {
+        List<String> conditions = new ArrayList<>();
+
+        if(feedId != null) {
+            conditions.add(alias + "." + FEED_ID + " = " + feedId);
+        } else if(folderId != null) {
+            conditions.add(alias + "." + FEED_ID + " IN (SELECT " + FeedDao.Properties.Id.columnName +
+                    " FROM " + FeedDao.TABLENAME +
+                    " WHERE " + FeedDao.Properties.FolderId.columnName + " = " + folderId + ")");
+        }
+
+        if(searchResultIds != null) {
+            conditions.add(alias + "." + ID + " IN (" + DatabaseConnectionOrm.join(searchResultIds, ",") + ")");
+        }
+
+        String stateCondition = null;
+        if(onlyStarred) {
+            stateCondition = alias + "." + RssItemDao.Properties.Starred_temp.columnName + " = 1";
+        } else if(onlyUnread) {
+            // "= 0" instead of "!= 1" (same result for booleans) so that sqlite can use the
+            // (read_temp, pubDate) indexes for the order of the items
+            stateCondition = alias + "." + RssItemDao.Properties.Read_temp.columnName + " = 0";
+        }
+        if(stateCondition != null) {
+            if(pinnedItemIds != null && !pinnedItemIds.isEmpty()) {
+                stateCondition = "(" + stateCondition + " OR " + alias + "." + ID + " IN (" + DatabaseConnectionOrm.join(pinnedItemIds, ",") + "))";
+            }
+            conditions.add(stateCondition);
+        }
+
+        if(conditions.isEmpty()) {
+            return "1";
+        }
+        return DatabaseConnectionOrm.join(conditions, " AND ");
+    }
+
+    private List<Long> getSearchResultPage(RssItemListRow lastLoadedItem, int limit) {
+        int start = 0;
+        if(lastLoadedItem != null) {
+            start = searchResultIds.indexOf(lastLoadedItem.getId()) + 1;
+            if(start == 0) {
+                return new ArrayList<>();
+            }
+        }
+        return searchResultIds.subList(start, Math.min(start + limit, searchResultIds.size()));
+    }
+
+    // Keeps the order of the ranked search results
+    private static String getRankOrderBy(String alias, List<Long> rankedIds) {
+        if(rankedIds.isEmpty()) {
+            return alias + "." + ID;
+        }
+
+        StringBuilder orderBy = new StringBuilder("CASE ").append(alias).append('.').append(ID);
+        for(int i = 0; i < rankedIds.size(); i++) {
+            orderBy.append(" WHEN ").append(rankedIds.get(i)).append(" THEN ").append(i);
+        }
+        return orderBy.append(" END").toString();
+    }
+}
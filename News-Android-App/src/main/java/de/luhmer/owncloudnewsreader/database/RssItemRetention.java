@@ -0,0 +1,421 @@
+package de.luhmer.owncloudnewsreader.database;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import de.luhmer.owncloudnewsreader.database.model.RssItemDao;
+import de.luhmer.owncloudnewsreader.helper.ImageHandler;
+
+/**
+ * Removes rss items according to a {@link RetentionPolicy}.
+ *
+ * The work is split into small steps (see {@link #selectNextBatch()}, {@link #delete(Batch)} and
+ * {@link #vacuumNextStep()}). Selecting the items and collecting the files which belong to them only
+ * reads, just deleting them and vacuuming needs the writer, each in its own short transaction, so
+ * other writes don't have to wait for all items to be deleted. The rules are applied in order: max
+ * age, items per feed, total items and the size of the bodies. Within each rule the oldest items are
+ * removed first.
+ */
+public class RssItemRetention {
+
+    private static final String TAG = RssItemRetention.class.getCanonicalName();
+
+    static final int BATCH_SIZE = 100;
+    private static final int VACUUM_PAGES = 256;
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    private static final String ID = RssItemDao.Properties.Id.columnName;
+    private static final String FEED_ID = RssItemDao.Properties.FeedId.columnName;
+    private static final String BODY = RssItemDao.Properties.BodyData.columnName;
+
+    private enum Rule { MAX_AGE, FEED_LIMIT, ITEM_LIMIT, BODY_BUDGET }
+
+    private static final Rule[] RULES = Rule.values();
+
+    /**
+     * Items which may be removed: read, not starred and their state is synced (otherwise the
+     * unsynced changes of the read / starred state would be lost)
+     */
+    public static final String DELETABLE_CONDITION = RssItemDao.Properties.Read.columnName + " = 1" +
+            " AND " + RssItemDao.Properties.Read_temp.columnName + " = 1" +
+            " AND IFNULL(" + RssItemDao.Properties.Starred.columnName + ", 0) != 1" +
+            " AND IFNULL(" + RssItemDao.Properties.Starred_temp.columnName + ", 0) != 1";
+
+    private final SQLiteDatabase db;
+    private final RetentionPolicy policy;
+    private final String deletableCondition;
+    private final long now;
+    private final Report report = new Report();
+
+    private int ruleIndex = 0;
+    private boolean ruleStarted = false;
+    // Number of items (FEED_LIMIT, ITEM_LIMIT) or bytes (BODY_BUDGET) which are over the limit
+    private final Map<Long, Long> feedExcess = new LinkedHashMap<>();
+    private long excess;
+
+    /**
+     * @param retainedCondition condition of items which must be kept in any case (e.g. the items
+     *                          which are shown right now) or null
+     */
+    public RssItemRetention(SQLiteDatabase db, RetentionPolicy policy, String retainedCondition, long now) {
+        this.db = db;
+        this.policy = policy;
+        this.now = now;
+
+        String condition = DELETABLE_CONDITION;
+        if (retainedCondition != null) {
+            condition += " AND NOT (" + retainedCondition + ")";
+        }
+        this.deletableCondition = condition;
+    }
+
+    public Report getReport() {
+        return report;
+    }
+
+    /**
+     * Selects and deletes the next items which violate the policy (on the calling thread).
+     *
+     * @return false if nothing is left to delete
+     */
+    public boolean deleteNextBatch() {
+        Batch batch = selectNextBatch();
+        if (batch == null) {
+            return false;
+        }
+        delete(batch);
+        return true;
+    }
+
+    /**
+     * Selects the next items which violate the policy and collects the files which belong to them
+     * (only reads, doesn't need to run on the writer).
+     *
+     * @return null if nothing is left to delete
+     */
+    public Batch selectNextBatch() {
+        while (ruleIndex < RULES.length) {
+            Rule rule = RULES[ruleIndex];
+            if (!ruleStarted) {
+                startRule(rule);
+                ruleStarted = true;
+            }
+
+            List<Long> ids = selectBatch(rule);
+            if (!ids.isEmpty()) {
+                return createBatch(rule, ids);
+            }
+
+            ruleIndex++;
+            ruleStarted = false;
+        }
+        return null;
+    }
+
+    private void startRule(Rule rule) {
+        switch (rule) {
+            case FEED_LIMIT:
+                feedExcess.clear();
+                if (policy.maxItemsPerFeed > 0) {
+                    Cursor cursor = db.rawQuery("SELECT " + FEED_ID + ", COUNT(*) FROM " + RssItemDao.TABLENAME +
+                            " GROUP BY " + FEED_ID + " HAVING COUNT(*) > " + policy.maxItemsPerFeed, null);
+                    try {
+                        while (cursor.moveToNext()) {
+                            feedExcess.put(cursor.getLong(0), cursor.getLong(1) - policy.maxItemsPerFeed);
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+                break;
+            case ITEM_LIMIT:
+                excess = policy.maxItems > 0 ? queryLong("SELECT COUNT(*) FROM " + RssItemDao.TABLENAME) - policy.maxItems : 0;
+                break;
+            case BODY_BUDGET:
+                excess = policy.maxBodyBytes > 0 ? queryLong("SELECT IFNULL(SUM(LENGTH(" + BODY + ")), 0) FROM " + RssItemDao.TABLENAME) - policy.maxBodyBytes : 0;
+                break;
+            default:
+                break;
+        }
+    }
+
+    private List<Long> selectBatch(Rule rule) {
+        switch (rule) {
+            case MAX_AGE:
+                if (policy.maxAgeMillis <= 0) {
+                    return new ArrayList<>();
+                }
+                return selectIds(RssItemDao.Properties.PubDate.columnName + " < " + (now - policy.maxAgeMillis), BATCH_SIZE);
+            case FEED_LIMIT:
+                Iterator<Map.Entry<Long, Long>> iterator = feedExcess.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<Long, Long> feed = iterator.next();
+                    List<Long> ids = selectIds(FEED_ID + " = " + feed.getKey(), (int) Math.min(feed.getValue(), BATCH_SIZE));
+                    feed.setValue(feed.getValue() - ids.size());
+                    if (ids.isEmpty() || feed.getValue() <= 0) {
+                        iterator.remove();
+                    }
+                    if (!ids.isEmpty()) {
+                        return ids;
+                    }
+                }
+                return new ArrayList<>();
+            case ITEM_LIMIT:
+                if (excess <= 0) {
+                    return new ArrayList<>();
+                }
+                List<Long> ids = selectIds(null, (int) Math.min(excess, BATCH_SIZE));
+                excess = ids.isEmpty() ? 0 : excess - ids.size();
+                return ids;
+            case BODY_BUDGET:
+                List<Long> bodyIds = new ArrayList<>();
+                if (excess <= 0) {
+                    return bodyIds;
+                }
+                Cursor cursor = db.rawQuery("SELECT " + ID + ", IFNULL(LENGTH(" + BODY + "), 0) FROM " + RssItemDao.TABLENAME +
+                        " WHERE " + deletableCondition +
+                        " ORDER BY " + ID + " LIMIT " + BATCH_SIZE, null);
+                try {
+                    while (excess > 0 && cursor.moveToNext()) {
+                        bodyIds.add(cursor.getLong(0));
+                        excess -= cursor.getLong(1);
+                    }
+                } finally {
+                    cursor.close();
+                }
+                if (bodyIds.isEmpty()) {
+                    excess = 0;
+                }
+                return bodyIds;
+            default:
+                return new ArrayList<>();
+        }
+    }
+
+    private List<Long> selectIds(String condition, int limit) {
+        List<Long> ids = new ArrayList<>(limit);
+        Cursor cursor = db.rawQuery("SELECT " + ID + " FROM " + RssItemDao.TABLENAME +
+                " WHERE " + deletableCondition + (condition != null ? " AND " + condition : "") +
+                " ORDER BY " + ID + " LIMIT " + limit, null);
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    /**
+     * Remembers the files which belong to the items, so they can be removed from the caches. The
+     * bodies are decoded here, outside of the write transaction.
+     */
+    private Batch createBatch(Rule rule, List<Long> ids) {
+        Batch batch = new Batch(rule);
+        Cursor cursor = db.rawQuery("SELECT " + ID + ", " + RssItemDao.Properties.Link.columnName + ", " +
+                RssItemDao.Properties.EnclosureLink.columnName + ", " + BODY +
+                " FROM " + RssItemDao.TABLENAME + " WHERE " + ID + " IN (" + TextUtils.join(",", ids) + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                BatchItem item = new BatchItem();
+                item.link = cursor.isNull(1) ? null : cursor.getString(1);
+                item.enclosureLink = cursor.isNull(2) ? null : cursor.getString(2);
+                byte[] body = cursor.getBlob(3);
+                if (body != null) {
+                    item.bodyBytes = body.length;
+                    item.imageLinks = ImageHandler.getImageLinksFromText(RssItemBodyCodec.decode(body));
+                }
+                batch.items.put(cursor.getLong(0), item);
+            }
+        } finally {
+            cursor.close();
+        }
+        return batch;
+    }
+
+    /**
+     * Deletes the items of the batch in a short transaction (call it on the writer). Items which
+     * may not be deleted anymore (e.g. marked as unread since they have been selected) are kept.
+     */
+    public void delete(Batch batch) {
+        if (batch.items.isEmpty()) {
+            return;
+        }
+
+        db.beginTransaction();
+        try {
+            Cursor cursor = db.rawQuery("SELECT " + ID + " FROM " + RssItemDao.TABLENAME +
+                    " WHERE " + ID + " IN (" + TextUtils.join(",", batch.items.keySet()) + ")" +
+                    " AND NOT (" + deletableCondition + ")", null);
+            try {
+                while (cursor.moveToNext()) {
+                    batch.items.remove(cursor.getLong(0));
+                }
+            } finally {
+                cursor.close();
+            }
+
+            if (!batch.items.isEmpty()) {
+                db.execSQL("DELETE FROM " + RssItemDao.TABLENAME + " WHERE " + ID + " IN (" + TextUtils.join(",", batch.items.keySet()) + ")");
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+
+        for (BatchItem item : batch.items.values()) {
+            if (item.link != null) {
+                report.itemLinks.add(item.link);
+            }
+            if (item.enclosureLink != null) {
+                report.enclosureLinks.add(item.enclosureLink);
+            }
+            report.bodyBytes += item.bodyBytes;
+            report.imageLinks.addAll(item.imageLinks);
+        }
+
+        int count = batch.items.size();
+        switch (batch.rule) {
+            case MAX_AGE:
+                report.expiredCount += count;
+                break;
+            case FEED_LIMIT:
+                report.feedLimitCount += count;
+                break;
+            case ITEM_LIMIT:
+                report.itemLimitCount += count;
+                break;
+            case BODY_BUDGET:
+                report.bodyBudgetCount += count;
+                break;
+        }
+    }
+
+    /**
+     * Gives a few of the unused pages of the database file back to the file system.
+     *
+     * @return false if there are no unused pages left
+     */
+    public boolean vacuumNextStep() {
+        if (queryLong("PRAGMA auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+            return false;
+        }
+
+        long freePages = queryLong("PRAGMA freelist_count");
+        if (freePages == 0) {
+            return false;
+        }
+
+        // Returns no rows, but the cursor needs to be stepped to run the statement
+        Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum(" + VACUUM_PAGES + ")", null);
+        try {
+            while (cursor.moveToNext()) {
+                // Nothing to read
+            }
+        } finally {
+            cursor.close();
+        }
+
+        long freedPages = freePages - queryLong("PRAGMA freelist_count");
+        report.databaseBytes += freedPages * queryLong("PRAGMA page_size");
+        return freedPages > 0 && freedPages < freePages;
+    }
+
+    /**
+     * Databases created before incremental vacuum was enabled (see {@link DatabaseOpenHelper})
+     * need to be rebuilt once. Does nothing if there is no unused space to reclaim. Rebuilds the
+     * whole database, so only call it while nothing else needs the database (not during a sync).
+     *
+     * @return number of bytes the database file shrunk by
+     */
+    public static long enableIncrementalVacuum(SQLiteDatabase db) {
+        if (queryLong(db, "PRAGMA auto_vacuum") == AUTO_VACUUM_INCREMENTAL || queryLong(db, "PRAGMA freelist_count") == 0) {
+            return 0;
+        }
+
+        long pages = queryLong(db, "PRAGMA page_count");
+        try {
+            db.execSQL("PRAGMA auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+            Log.v(TAG, "Enabled incremental vacuum");
+            return (pages - queryLong(db, "PRAGMA page_count")) * queryLong(db, "PRAGMA page_size");
+        } catch (SQLException e) {
+            // E.g. if another connection is reading - try again next time
+            Log.e(TAG, "Enabling incremental vacuum failed", e);
+            return 0;
+        }
+    }
+
+    private long queryLong(String sql) {
+        return queryLong(db, sql);
+    }
+
+    private static long queryLong(SQLiteDatabase db, String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Items selected by {@link #selectNextBatch()}
+     */
+    public static class Batch {
+        private final Rule rule;
+        private final Map<Long, BatchItem> items = new LinkedHashMap<>();
+
+        private Batch(Rule rule) {
+            this.rule = rule;
+        }
+    }
+
+    private static class BatchItem {
+        private String link;
+        private String enclosureLink;
+        private long bodyBytes;
+        private List<String> imageLinks = Collections.emptyList();
+    }
+
+    public static class Report {
+        public int expiredCount;
+        public int feedLimitCount;
+        public int itemLimitCount;
+        public int bodyBudgetCount;
+        // Stored size of the bodies of the deleted items
+        public long bodyBytes;
+        // Size the database file shrunk by
+        public long databaseBytes;
+        public int fileCount;
+        public long fileBytes;
+
+        public final List<String> itemLinks = new ArrayList<>();
+        public final List<String> enclosureLinks = new ArrayList<>();
+        public final List<String> imageLinks = new ArrayList<>();
+
+        public int getDeletedCount() {
+            return expiredCount + feedLimitCount + itemLimitCount + bodyBudgetCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "Deleted %d items (%d expired, %d over feed limit, %d over item limit, %d over body budget), " +
+                            "%d kB bodies, database shrunk by %d kB, %d files with %d kB deleted",
+                    getDeletedCount(), expiredCount, feedLimitCount, itemLimitCount, bodyBudgetCount,
+                    bodyBytes / 1024, databaseBytes / 1024, fileCount, fileBytes / 1024);
+        }
+    }
+}
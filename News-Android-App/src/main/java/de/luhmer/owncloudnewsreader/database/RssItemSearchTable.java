@@ -0,0 +1,384 @@
+package de.luhmer.owncloudnewsreader.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import de.luhmer.owncloudnewsreader.database.model.RssItemDao;
+
+/**
+ * Full text index (sqlite fts4) over the title, author and body of the rss items.
+ *
+ * The index stores the plain text of the items (without html), so neither tags nor attributes
+ * (e.g. image urls) can be found and the snippets of the search results are readable. Because the
+ * text has to be extracted first, items are indexed when they are inserted (see
+ * {@link DatabaseConnectionOrm#insertNewItems(Iterable)}) - deletes are covered by a trigger, no
+ * matter which write path removed the item. Like the {@link FeedCounterTable} the table is not
+ * part of the greenDAO schema because greenDAO can't generate virtual tables.
+ *
+ * fts5 would provide ranking out of the box, but the sqlite version of older android releases
+ * only ships fts3 / fts4, so the results are ranked using matchinfo().
+ */
+public class RssItemSearchTable {
+
+    private static final String TAG = RssItemSearchTable.class.getCanonicalName();
+
+    public static final String TABLENAME = "RSS_ITEM_FTS";
+    public static final String COLUMN_TITLE = "TITLE";
+    public static final String COLUMN_AUTHOR = "AUTHOR";
+    public static final String COLUMN_BODY = "BODY";
+
+    // Weight of a hit per column (same order as the columns of the table)
+    private static final double[] COLUMN_WEIGHTS = { 10.0, 5.0, 1.0 };
+
+    // Snippets are marked with control characters which can't be part of the text, the html is
+    // built after the text has been escaped (see getSnippets)
+    private static final String SNIPPET_START = "\u0002";
+    private static final String SNIPPET_END = "\u0003";
+    private static final int SNIPPET_TOKENS = 24;
+
+    private static final String ID = RssItemDao.Properties.Id.columnName;
+    private static final int INDEX_BATCH_SIZE = 200;
+
+    private RssItemSearchTable() {
+    }
+
+    /** Creates the index and the trigger which removes deleted items from it. */
+    public static void createTable(SQLiteDatabase db) {
+        db.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLENAME + " USING fts4(" +
+                COLUMN_TITLE + ", " + COLUMN_AUTHOR + ", " + COLUMN_BODY + ")");
+
+        // Also fires for rows replaced by "INSERT OR REPLACE" (see FeedCounterTable#enableTriggers)
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS TRG_RSS_ITEM_DELETE_SEARCH AFTER DELETE ON " + RssItemDao.TABLENAME +
+                " BEGIN " +
+                "DELETE FROM " + TABLENAME + " WHERE docid = OLD." + ID + ";" +
+                " END");
+    }
+
+    /**
+     * Adds the items to the index (or updates them). Should be called within the transaction
+     * which inserted the items.
+     */
+    public static void index(SQLiteDatabase db, Iterable<RssItem> items) {
+        SQLiteStatement statement = db.compileStatement("INSERT OR REPLACE INTO " + TABLENAME +
+                " (docid, " + COLUMN_TITLE + ", " + COLUMN_AUTHOR + ", " + COLUMN_BODY + ") VALUES (?, ?, ?, ?)");
+        try {
+            for (RssItem item : items) {
+                statement.bindLong(1, item.getId());
+                statement.bindString(2, toPlainText(item.getTitle()));
+                statement.bindString(3, toPlainText(item.getAuthor()));
+                statement.bindString(4, toPlainText(item.getBody()));
+                statement.executeInsert();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Indexes all items which are not part of the index yet (items that have been synced before
+     * the index existed).
+     *
+     * @return number of indexed items
+     */
+    public static int indexMissingItems(SQLiteDatabase db) {
+        int count = 0;
+        int batchCount;
+        while ((batchCount = indexMissingItemsBatch(db)) > 0) {
+            count += batchCount;
+        }
+
+        if (count > 0) {
+            Log.v(TAG, "Indexed " + count + " items for search");
+        }
+        return count;
+    }
+
+    /**
+     * Indexes the next {@link #INDEX_BATCH_SIZE} items which aren't indexed yet in one transaction
+     * (see {@link DatabaseConnectionOrm#indexMissingRssItemsForSearch()})
+     *
+     * @return number of indexed items (0 if there are none left)
+     */
+    public static int indexMissingItemsBatch(SQLiteDatabase db) {
+        List<RssItem> items = new ArrayList<>(INDEX_BATCH_SIZE);
+        Cursor cursor = db.rawQuery("SELECT T." + ID + ", T." + RssItemDao.Properties.Title.columnName +
+                ", T." + RssItemDao.Properties.Author.columnName +
+                ", T." + RssItemDao.Properties.BodyData.columnName +
+                " FROM " + RssItemDao.TABLENAME + " T" +
+                " WHERE NOT EXISTS (SELECT 1 FROM " + TABLENAME + " WHERE docid = T." + ID + ")" +
+                " LIMIT " + INDEX_BATCH_SIZE, null);
+        try {
+            while (cursor.moveToNext()) {
+                RssItem item = new RssItem();
+                item.setId(cursor.getLong(0));
+                item.setTitle(cursor.getString(1));
+                item.setAuthor(cursor.getString(2));
+                // Decoded when the text is extracted
+                item.setBodyData(cursor.getBlob(3));
+                items.add(item);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (items.isEmpty()) {
+            return 0;
+        }
+
+        db.beginTransaction();
+        try {
+            index(db, items);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return items.size();
+    }
+
+    /**
+     * Builds the fts query for the text entered by the user. Every word has to be found (as
+     * prefix of a word in the item), so results show up while the user is still typing.
+     *
+     * @param column one of the columns of the index or null to search in all columns
+     * @return the query or null if the text doesn't contain any searchable word
+     */
+    public static String getMatchExpression(String column, String searchString) {
+        StringBuilder expression = new StringBuilder();
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i <= searchString.length(); i++) {
+            char c = i < searchString.length() ? searchString.charAt(i) : ' ';
+            if (isTokenChar(c)) {
+                // The tokenizer folds ascii characters only, lower case also prevents "OR" / "AND"
+                // from being interpreted as operators
+                term.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+            } else if (term.length() > 0) {
+                if (expression.length() > 0) {
+                    expression.append(' ');
+                }
+                if (column != null) {
+                    expression.append(column).append(':');
+                }
+                expression.append(term).append('*');
+                term.setLength(0);
+            }
+        }
+        return expression.length() > 0 ? expression.toString() : null;
+    }
+
+    /**
+     * Searches the index and ranks the results by the number of hits per column (weighted by
+     * column) in relation to how common the word is.
+     *
+     * @param itemCondition condition for the rss item table with the alias "T" to restrict the
+     *                      results (e.g. to a feed), can be null
+     * @param limit maximum number of results, less relevant matches are dropped
+     * @return ids of the best matching items, best match first
+     */
+    public static List<Long> search(SQLiteDatabase db, String matchExpression, String itemCondition, int limit) {
+        String sql = "SELECT docid, matchinfo(" + TABLENAME + ", 'pcx') FROM " + TABLENAME +
+                " WHERE " + TABLENAME + " MATCH ?";
+        if (itemCondition != null) {
+            sql += " AND docid IN (SELECT T." + ID + " FROM " + RssItemDao.TABLENAME + " T WHERE " + itemCondition + ")";
+        }
+
+        List<double[]> results = new ArrayList<>();
+        Cursor cursor = db.rawQuery(sql, new String[] { matchExpression });
+        try {
+            while (cursor.moveToNext()) {
+                results.add(new double[] { rank(cursor.getBlob(1)), cursor.getLong(0) });
+            }
+        } finally {
+            cursor.close();
+        }
+
+        double[][] ranked = results.toArray(new double[results.size()][]);
+        Arrays.sort(ranked, new Comparator<double[]>() {
+            @Override
+            public int compare(double[] a, double[] b) {
+                // Higher score first, newer items (higher ids) first if the score is the same
+                int result = Double.compare(b[0], a[0]);
+                return result != 0 ? result : Double.compare(b[1], a[1]);
+            }
+        });
+
+        if (ranked.length > limit) {
+            Log.v(TAG, "Search found " + ranked.length + " items - showing the best " + limit);
+        }
+
+        List<Long> itemIds = new ArrayList<>(Math.min(limit, ranked.length));
+        for (int i = 0; i < ranked.length && i < limit; i++) {
+            itemIds.add((long) ranked[i][1]);
+        }
+        return itemIds;
+    }
+
+    /**
+     * @return html snippets of the matching text per item id, the matching words are bold
+     */
+    public static Map<Long, String> getSnippets(SQLiteDatabase db, String matchExpression, Collection<?> itemIds) {
+        Map<Long, String> snippets = new HashMap<>();
+        if (itemIds.isEmpty()) {
+            return snippets;
+        }
+
+        String sql = "SELECT docid, snippet(" + TABLENAME + ", '" + SNIPPET_START + "', '" + SNIPPET_END + "', '\u2026', -1, " + SNIPPET_TOKENS + ")" +
+                " FROM " + TABLENAME +
+                " WHERE " + TABLENAME + " MATCH ? AND docid IN (" + DatabaseConnectionOrm.join(itemIds, ",") + ")";
+        Cursor cursor = db.rawQuery(sql, new String[] { matchExpression });
+        try {
+            while (cursor.moveToNext()) {
+                String snippet = TextUtils.htmlEncode(cursor.getString(1))
+                        .replace(SNIPPET_START, "<b>")
+                        .replace(SNIPPET_END, "</b>");
+                snippets.put(cursor.getLong(0), snippet);
+            }
+        } finally {
+            cursor.close();
+        }
+        return snippets;
+    }
+
+    /**
+     * Extracts the text of html (tags, scripts and styles are removed, entities decoded and
+     * whitespace collapsed). Much faster than Html.fromHtml, which builds spans for the markup.
+     */
+    public static String toPlainText(String html) {
+        if (html == null) {
+            return "";
+        }
+
+        StringBuilder text = new StringBuilder(html.length());
+        int length = html.length();
+        int i = 0;
+        while (i < length) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                if (html.startsWith("<![CDATA[", i)) {
+                    i += 9;
+                    continue;
+                }
+                int end = html.indexOf('>', i);
+                if (end < 0) {
+                    break;
+                }
+                String skipUntil = null;
+                if (html.regionMatches(true, i, "<script", 0, 7)) {
+                    skipUntil = "</script";
+                } else if (html.regionMatches(true, i, "<style", 0, 6)) {
+                    skipUntil = "</style";
+                }
+                if (skipUntil != null) {
+                    int close = indexOfIgnoreCase(html, skipUntil, end);
+                    end = close < 0 ? length - 1 : html.indexOf('>', close);
+                    if (end < 0) {
+                        break;
+                    }
+                }
+                appendSpace(text);
+                i = end + 1;
+            } else if (c == ']' && html.startsWith("]]>", i)) {
+                i += 3;
+            } else if (c == '&') {
+                int end = html.indexOf(';', i);
+                String decoded = end > 0 && end - i <= 10 ? decodeEntity(html.substring(i + 1, end)) : null;
+                if (decoded != null) {
+                    if (decoded.equals(" ")) {
+                        appendSpace(text);
+                    } else {
+                        text.append(decoded);
+                    }
+                    i = end + 1;
+                } else {
+                    text.append(c);
+                    i++;
+                }
+            } else {
+                if (Character.isWhitespace(c)) {
+                    appendSpace(text);
+                } else {
+                    text.append(c);
+                }
+                i++;
+            }
+        }
+        return text.toString().trim();
+    }
+
+    private static double rank(byte[] matchinfo) {
+        // "pcx": phrase count, column count and per phrase and column: hits in this row, hits in
+        // all rows, rows with hits (32 bit integers in native byte order)
+        ByteBuffer buffer = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder());
+        int phraseCount = buffer.getInt(0);
+        int columnCount = buffer.getInt(4);
+
+        double score = 0;
+        for (int phrase = 0; phrase < phraseCount; phrase++) {
+            for (int column = 0; column < columnCount; column++) {
+                int offset = 8 + 12 * (phrase * columnCount + column);
+                int hitsThisRow = buffer.getInt(offset);
+                int hitsAllRows = buffer.getInt(offset + 4);
+                if (hitsThisRow > 0) {
+                    double weight = column < COLUMN_WEIGHTS.length ? COLUMN_WEIGHTS[column] : 1.0;
+                    score += weight * hitsThisRow / hitsAllRows;
+                }
+            }
+        }
+        return score;
+    }
+
+    // Same characters as the "simple" tokenizer of sqlite treats as part of a word
+    private static boolean isTokenChar(char c) {
+        return c >= 0x80 || Character.isLetterOrDigit(c);
+    }
+
+    private static void appendSpace(StringBuilder text) {
+        if (text.length() > 0 && text.charAt(text.length() - 1) != ' ') {
+            text.append(' ');
+        }
+    }
+
+    private static int indexOfIgnoreCase(String text, String search, int fromIndex) {
+        for (int i = fromIndex; i <= text.length() - search.length(); i++) {
+            if (text.regionMatches(true, i, search, 0, search.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String decodeEntity(String entity) {
+        switch (entity) {
+            case "amp": return "&";
+            case "lt": return "<";
+            case "gt": return ">";
+            case "quot": return "\"";
+            case "apos": return "'";
+            case "nbsp": return " ";
+        }
+        if (entity.length() > 1 && entity.charAt(0) == '#') {
+            try {
+                int codePoint = entity.charAt(1) == 'x' || entity.charAt(1) == 'X'
+                        ? Integer.parseInt(entity.substring(2), 16)
+                        : Integer.parseInt(entity.substring(1));
+                return Character.isValidCodePoint(codePoint) ? new String(Character.toChars(codePoint)) : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,217 @@
+package de.luhmer.owncloudnewsreader.database;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseIntArray;
+
+import org.greenrobot.eventbus.EventBus;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import androidx.annotation.VisibleForTesting;
+import de.luhmer.owncloudnewsreader.database.model.DaoSession;
+import de.luhmer.owncloudnewsreader.database.model.FeedDao;
+import de.luhmer.owncloudnewsreader.database.model.RssItemDao;
+import de.luhmer.owncloudnewsreader.events.RssItemCountChangedEvent;
+
+import static de.luhmer.owncloudnewsreader.ListView.SubscriptionExpandableListAdapter.SPECIAL_FOLDERS;
+
+/**
+ * Collects the read / starred changes of the ui (see
+ * {@link DatabaseConnectionOrm#updateRssItem(RssItemListRow)}) and writes them together.
+ *
+ * Marking items as read while scrolling changes many items within a short time. Instead of one
+ * transaction per change, the latest state of every changed item is kept and all of them are
+ * written in a single transaction {@link #FLUSH_DELAY_MS} after the first change (or earlier, see
+ * {@link #flush()}). Afterwards one {@link RssItemCountChangedEvent} is posted for all changes.
+ */
+public class RssItemStateQueue {
+
+    private static final String TAG = RssItemStateQueue.class.getCanonicalName();
+
+    public static final long FLUSH_DELAY_MS = 1000;
+
+    private static final String ID = RssItemDao.Properties.Id.columnName;
+    private static final String READ_TEMP = RssItemDao.Properties.Read_temp.columnName;
+    private static final String STARRED_TEMP = RssItemDao.Properties.Starred_temp.columnName;
+    private static final String FINGERPRINT = RssItemDao.Properties.Fingerprint.columnName;
+
+    private static RssItemStateQueue instance;
+
+    private final DaoSession daoSession;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // Latest state of each changed item (in the order of the first change)
+    private final Map<Long, boolean[]> pending = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+
+    public static synchronized RssItemStateQueue getInstance(DaoSession daoSession) {
+        if (instance == null) {
+            instance = new RssItemStateQueue(daoSession);
+        }
+        return instance;
+    }
+
+    @VisibleForTesting
+    public RssItemStateQueue(DaoSession daoSession) {
+        this.daoSession = daoSession;
+    }
+
+    public void enqueue(long rssItemId, boolean read, boolean starred) {
+        synchronized (pending) {
+            pending.put(rssItemId, new boolean[] { read, starred });
+            if (!flushScheduled) {
+                flushScheduled = true;
+                handler.postDelayed(scheduledFlush, FLUSH_DELAY_MS);
+            }
+        }
+    }
+
+    public boolean hasPendingChanges() {
+        synchronized (pending) {
+            return !pending.isEmpty();
+        }
+    }
+
+    /**
+     * Writes the pending changes and waits until they are written (e.g. before reading items)
+     */
+    public void flush() {
+        if (hasPendingChanges()) {
+            DatabaseWriter.run(write);
+        }
+    }
+
+    /**
+     * Writes the pending changes without waiting (e.g. when the app is paused)
+     */
+    public void flushAsync() {
+        if (hasPendingChanges()) {
+            DatabaseWriter.submit(write);
+        }
+    }
+
+    private final Runnable scheduledFlush = new Runnable() {
+        @Override
+        public void run() {
+            DatabaseWriter.submit(write);
+        }
+    };
+
+    private final Runnable write = new Runnable() {
+        @Override
+        public void run() {
+            Map<Long, boolean[]> states;
+            synchronized (pending) {
+                handler.removeCallbacks(scheduledFlush);
+                flushScheduled = false;
+                if (pending.isEmpty()) {
+                    return;
+                }
+                states = new LinkedHashMap<>(pending);
+                pending.clear();
+            }
+
+            RssItemCountChangedEvent event = writeStates(daoSession.getDatabase(), states);
+            // The items have been changed using plain SQL
+            daoSession.clear();
+
+            Log.v(TAG, "Wrote the state of " + states.size() + " items");
+            EventBus.getDefault().post(event);
+        }
+    };
+
+    private static RssItemCountChangedEvent writeStates(SQLiteDatabase db, Map<Long, boolean[]> states) {
+        db.beginTransaction();
+        try {
+            Map<Long, int[]> countsBefore = readCounts(db);
+
+            SQLiteStatement update = db.compileStatement("UPDATE " + RssItemDao.TABLENAME +
+                    " SET " + READ_TEMP + " = ?, " + STARRED_TEMP + " = ? WHERE " + ID + " = ?");
+            // Deduplicate rss items (see https://github.com/nextcloud/news-android/issues/513)
+            // by syncing the read-state of all items with the same fingerprint
+            SQLiteStatement markDuplicatesAsRead = db.compileStatement("UPDATE " + RssItemDao.TABLENAME + " SET " + READ_TEMP + " = 1" +
+                    " WHERE " + FINGERPRINT + " = (SELECT " + FINGERPRINT + " FROM " + RssItemDao.TABLENAME + " WHERE " + ID + " = ?1)" +
+                    " AND " + ID + " != ?1 AND " + READ_TEMP + " != 1");
+            try {
+                for (Map.Entry<Long, boolean[]> state : states.entrySet()) {
+                    boolean read = state.getValue()[0];
+                    update.bindLong(1, read ? 1 : 0);
+                    update.bindLong(2, state.getValue()[1] ? 1 : 0);
+                    update.bindLong(3, state.getKey());
+                    update.executeUpdateDelete();
+
+                    if (read) {
+                        markDuplicatesAsRead.bindLong(1, state.getKey());
+                        markDuplicatesAsRead.executeUpdateDelete();
+                    }
+                }
+            } finally {
+                update.close();
+                markDuplicatesAsRead.close();
+            }
+
+            RssItemCountChangedEvent event = getCountChanges(countsBefore, readCounts(db));
+            db.setTransactionSuccessful();
+            return event;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return folder id, unread count and starred count per feed
+     */
+    private static Map<Long, int[]> readCounts(SQLiteDatabase db) {
+        Map<Long, int[]> counts = new HashMap<>();
+        Cursor cursor = db.rawQuery("SELECT c." + FeedCounterTable.COLUMN_FEED_ID + ", feed." + FeedDao.Properties.FolderId.columnName +
+                ", c." + FeedCounterTable.COLUMN_UNREAD_COUNT + ", c." + FeedCounterTable.COLUMN_STARRED_COUNT +
+                " FROM " + FeedCounterTable.TABLENAME + " c" +
+                " LEFT OUTER JOIN " + FeedDao.TABLENAME + " feed ON c." + FeedCounterTable.COLUMN_FEED_ID + " = feed." + FeedDao.Properties.Id.columnName, null);
+        try {
+            while (cursor.moveToNext()) {
+                counts.put(cursor.getLong(0), new int[] { cursor.getInt(1), cursor.getInt(2), cursor.getInt(3) });
+            }
+        } finally {
+            cursor.close();
+        }
+        return counts;
+    }
+
+    private static RssItemCountChangedEvent getCountChanges(Map<Long, int[]> before, Map<Long, int[]> after) {
+        SparseIntArray unreadFolders = new SparseIntArray();
+        SparseIntArray unreadFeeds = new SparseIntArray();
+        SparseIntArray starredFeeds = new SparseIntArray();
+        int totalUnread = 0;
+        int totalStarred = 0;
+
+        for (Map.Entry<Long, int[]> feed : after.entrySet()) {
+            int feedId = feed.getKey().intValue();
+            int folderId = feed.getValue()[0];
+            int[] countsBefore = before.containsKey(feed.getKey()) ? before.get(feed.getKey()) : new int[3];
+            int unreadDelta = feed.getValue()[1] - countsBefore[1];
+            int starredDelta = feed.getValue()[2] - countsBefore[2];
+
+            if (unreadDelta != 0) {
+                unreadFeeds.put(feedId, unreadDelta);
+                if (folderId != 0) {
+                    unreadFolders.put(folderId, unreadFolders.get(folderId) + unreadDelta);
+                }
+                totalUnread += unreadDelta;
+            }
+            if (starredDelta != 0) {
+                starredFeeds.put(feedId, starredDelta);
+                totalStarred += starredDelta;
+            }
+        }
+
+        unreadFolders.put(SPECIAL_FOLDERS.ALL_UNREAD_ITEMS.getValue(), totalUnread);
+        unreadFolders.put(SPECIAL_FOLDERS.ALL_STARRED_ITEMS.getValue(), totalStarred);
+        return new RssItemCountChangedEvent(unreadFolders, unreadFeeds, starredFeeds);
+    }
+}
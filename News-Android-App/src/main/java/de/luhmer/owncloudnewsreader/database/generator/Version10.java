@@ -0,0 +1,35 @@
+package de.luhmer.owncloudnewsreader.database.generator;
+
+import de.greenrobot.daogenerator.Entity;
+
+/**
+ * Version 10 adds the preview text and the thumbnail of rss items, which are extracted from the
+ * body during the sync (so the item list doesn't need to parse the body).
+ */
+public class Version10 extends Version9 {
+
+    /**
+     * Constructor
+     *
+     * @param current
+     */
+    public Version10(boolean current) {
+        super(current);
+
+        for (Entity entity : getSchema().getEntities()) {
+            if (entity.getClassName().equals("RssItem")) {
+                // Appended to the existing columns (see DatabaseOpenHelper#migrateToVersion10)
+                entity.addStringProperty("previewText");
+                entity.addStringProperty("mediaThumbnail");
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getVersionNumber() {
+        return 10;
+    }
+}
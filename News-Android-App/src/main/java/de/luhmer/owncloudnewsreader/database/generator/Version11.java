@@ -0,0 +1,32 @@
+package de.luhmer.owncloudnewsreader.database.generator;
+
+import de.greenrobot.daogenerator.Entity;
+
+/**
+ * Version 11 stores the body of rss items as blob, which is compressed for longer bodies (see
+ * RssItemBodyCodec). The column keeps its name, RssItem#getBody() / setBody() convert the data.
+ */
+public class Version11 extends Version10 {
+
+    /**
+     * Constructor
+     *
+     * @param current
+     */
+    public Version11(boolean current) {
+        super(current);
+    }
+
+    @Override
+    protected void addBodyProperty(Entity rssItem) {
+        rssItem.addByteArrayProperty("bodyData").columnName("BODY");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getVersionNumber() {
+        return 11;
+    }
+}
@@ -0,0 +1,118 @@
+package de.luhmer.owncloudnewsreader.database.generator;
+
+import de.greenrobot.daogenerator.Entity;
+import de.greenrobot.daogenerator.Index;
+import de.greenrobot.daogenerator.Property;
+import de.greenrobot.daogenerator.Schema;
+
+public class Version7 extends SchemaVersion {
+
+    /**
+     * Constructor
+     *
+     * @param current
+     */
+    public Version7(boolean current) {
+        super(current);
+
+        Schema schema = getSchema();
+        addEntitysToSchema(schema);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getVersionNumber() {
+        return 7;
+    }
+
+    @SuppressWarnings("unused") // id properties (folderId, etc.) need to be in database
+    private void addEntitysToSchema(Schema schema) {
+
+        /* Folder */
+        Entity folder = schema.addEntity("Folder");
+        Property folderId = folder.addIdProperty().notNull().getProperty();
+        folder.addStringProperty("label").notNull();
+
+        /* Feed */
+        Entity feed = schema.addEntity("Feed");
+        Property feedId = feed.addIdProperty().notNull().getProperty();
+        Property folderIdProperty = feed.addLongProperty("folderId").index().getProperty();
+
+        feed.addStringProperty("feedTitle").notNull();
+        feed.addStringProperty("faviconUrl");
+        feed.addStringProperty("link");
+        feed.addStringProperty("avgColour");
+
+
+
+        /* RSS Item */
+        Entity rssItem = schema.addEntity("RssItem");
+        Property rssItemId = rssItem.addIdProperty().notNull().getProperty();
+        // Indexed by the composite indexes below
+        Property rssItemFeedId = rssItem.addLongProperty("feedId").notNull().getProperty();
+
+        rssItem.addStringProperty("link");
+        rssItem.addStringProperty("title");
+        addBodyProperty(rssItem);
+        rssItem.addBooleanProperty("read");
+        rssItem.addBooleanProperty("starred");
+        rssItem.addStringProperty("author").notNull();
+        rssItem.addStringProperty("guid").notNull();
+        rssItem.addStringProperty("guidHash").notNull();
+        Property rssItemFingerprint = rssItem.addStringProperty("fingerprint").notNull().getProperty();
+        Property rssItemReadTemp = rssItem.addBooleanProperty("read_temp").getProperty();
+        Property rssItemStarredTemp = rssItem.addBooleanProperty("starred_temp").getProperty();
+        Property rssItemLastModified = rssItem.addDateProperty("lastModified").getProperty();
+        Property rssItemPubDate = rssItem.addDateProperty("pubDate").getProperty();
+
+
+        rssItem.addStringProperty("enclosureLink");
+        rssItem.addStringProperty("enclosureMime");
+
+        // Feed views and unread counts per feed
+        addIndex(rssItem, "IDX_RSS_ITEM_FEED_ID_READ_TEMP_PUB_DATE", rssItemFeedId, rssItemReadTemp, rssItemPubDate);
+        // "All unread items" view and total unread count
+        addIndex(rssItem, "IDX_RSS_ITEM_READ_TEMP_PUB_DATE", rssItemReadTemp, rssItemPubDate);
+        // "Starred items" view and starred count
+        addIndex(rssItem, "IDX_RSS_ITEM_STARRED_TEMP_PUB_DATE", rssItemStarredTemp, rssItemPubDate);
+        // Deduplication of items (GROUP BY fingerprint / sync read state of duplicates)
+        addIndex(rssItem, "IDX_RSS_ITEM_FINGERPRINT", rssItemFingerprint);
+        // Starting point of the incremental sync
+        addIndex(rssItem, "IDX_RSS_ITEM_LAST_MODIFIED", rssItemLastModified);
+
+
+        feed.addToOne(folder, folderIdProperty);
+        folder.addToMany(feed, folderIdProperty);
+
+        feed.addToMany(rssItem, rssItemFeedId);
+        rssItem.addToOne(feed, rssItemFeedId);
+
+
+
+
+        Entity rssItemView = schema.addEntity("CurrentRssItemView");
+        rssItemView.addIdProperty().notNull();
+        rssItemView.addLongProperty("rssItemId").notNull();
+
+
+        rssItem.implementsInterface("HasId<Long>");
+    }
+
+    /**
+     * The html body of rss items (called from the constructor)
+     */
+    protected void addBodyProperty(Entity rssItem) {
+        rssItem.addStringProperty("body");
+    }
+
+    private static void addIndex(Entity entity, String name, Property... properties) {
+        Index index = new Index();
+        index.setName(name);
+        for(Property property : properties) {
+            index.addProperty(property);
+        }
+        entity.addIndex(index);
+    }
+}
@@ -0,0 +1,25 @@
+package de.luhmer.owncloudnewsreader.database.generator;
+
+/**
+ * The entities are the same as in version 7. Version 8 adds the FEED_COUNTER table and its
+ * triggers which are created by the DatabaseOpenHelper (greenDAO can't generate triggers).
+ */
+public class Version8 extends Version7 {
+
+    /**
+     * Constructor
+     *
+     * @param current
+     */
+    public Version8(boolean current) {
+        super(current);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getVersionNumber() {
+        return 8;
+    }
+}
@@ -0,0 +1,25 @@
+package de.luhmer.owncloudnewsreader.database.generator;
+
+/**
+ * The entities are the same as in version 8. Version 9 adds the RSS_ITEM_FTS full text index and
+ * its trigger which are created by the DatabaseOpenHelper (greenDAO can't generate virtual tables).
+ */
+public class Version9 extends Version8 {
+
+    /**
+     * Constructor
+     *
+     * @param current
+     */
+    public Version9(boolean current) {
+        super(current);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getVersionNumber() {
+        return 9;
+    }
+}
@@ -11,10 +11,10 @@ import de.greenrobot.dao.identityscope.IdentityScopeType;
 
 // THIS CODE IS GENERATED BY greenDAO, DO NOT EDIT.
 /** 
- * Master of DAO (schema version 6): knows all DAOs.
+ * Master of DAO (schema version 11): knows all DAOs.
 */
 public class DaoMaster extends AbstractDaoMaster {
-    public static final int SCHEMA_VERSION = 6;
+    public static final int SCHEMA_VERSION = 11;
 
     /** Creates underlying database table using DAOs. */
     public static void createAllTables(SQLiteDatabase db, boolean ifNotExists) {
@@ -6,6 +6,7 @@ import de.luhmer.owncloudnewsreader.adapter.HasId;
 // THIS CODE IS GENERATED BY greenDAO, EDIT ONLY INSIDE THE "KEEP"-SECTIONS
 
 // KEEP INCLUDES - put your custom includes here
+import de.luhmer.owncloudnewsreader.database.RssItemBodyCodec;
 // KEEP INCLUDES END
 /**
  * Entity mapped to table "RSS_ITEM".
@@ -16,7 +17,7 @@ public class RssItem implements HasId<Long> {
     private long feedId;
     private String link;
     private String title;
-    private String body;
+    private byte[] bodyData;
     private Boolean read;
     private Boolean starred;
     /** Not-null value. */
@@ -33,6 +34,8 @@ public class RssItem implements HasId<Long> {
     private java.util.Date pubDate;
     private String enclosureLink;
     private String enclosureMime;
+    private String previewText;
+    private String mediaThumbnail;
 
     /** Used to resolve relations */
     private transient DaoSession daoSession;
@@ -45,6 +48,9 @@ public class RssItem implements HasId<Long> {
 
 
     // KEEP FIELDS - put your custom fields here
+    // Decoded body and the data it was decoded from (bodyData is replaced when the entity is refreshed)
+    private transient String body;
+    private transient byte[] decodedBodyData;
     // KEEP FIELDS END
 
     public RssItem() {
@@ -54,12 +60,12 @@ public class RssItem implements HasId<Long> {
         this.id = id;
     }
 
-    public RssItem(long id, long feedId, String link, String title, String body, Boolean read, Boolean starred, String author, String guid, String guidHash, String fingerprint, Boolean read_temp, Boolean starred_temp, java.util.Date lastModified, java.util.Date pubDate, String enclosureLink, String enclosureMime) {
+    public RssItem(long id, long feedId, String link, String title, byte[] bodyData, Boolean read, Boolean starred, String author, String guid, String guidHash, String fingerprint, Boolean read_temp, Boolean starred_temp, java.util.Date lastModified, java.util.Date pubDate, String enclosureLink, String enclosureMime, String previewText, String mediaThumbnail) {
         this.id = id;
         this.feedId = feedId;
         this.link = link;
         this.title = title;
-        this.body = body;
+        this.bodyData = bodyData;
         this.read = read;
         this.starred = starred;
         this.author = author;
@@ -72,6 +78,8 @@ public class RssItem implements HasId<Long> {
         this.pubDate = pubDate;
         this.enclosureLink = enclosureLink;
         this.enclosureMime = enclosureMime;
+        this.previewText = previewText;
+        this.mediaThumbnail = mediaThumbnail;
     }
 
     /** called by internal mechanisms, do not call yourself. */
@@ -112,12 +120,12 @@ public class RssItem implements HasId<Long> {
         this.title = title;
     }
 
-    public String getBody() {
-        return body;
+    public byte[] getBodyData() {
+        return bodyData;
     }
 
-    public void setBody(String body) {
-        this.body = body;
+    public void setBodyData(byte[] bodyData) {
+        this.bodyData = bodyData;
     }
 
     public Boolean getRead() {
@@ -224,6 +232,22 @@ public class RssItem implements HasId<Long> {
         this.enclosureMime = enclosureMime;
     }
 
+    public String getPreviewText() {
+        return previewText;
+    }
+
+    public void setPreviewText(String previewText) {
+        this.previewText = previewText;
+    }
+
+    public String getMediaThumbnail() {
+        return mediaThumbnail;
+    }
+
+    public void setMediaThumbnail(String mediaThumbnail) {
+        this.mediaThumbnail = mediaThumbnail;
+    }
+
     /** To-one relationship, resolved on first access. */
     public Feed getFeed() {
         long __key = this.feedId;
@@ -277,6 +301,22 @@ public class RssItem implements HasId<Long> {
     }
 
     // KEEP METHODS - put your custom methods here
+    /**
+     * @return the html body, decoded (decompressed) on first access
+     */
+    public String getBody() {
+        if (bodyData != decodedBodyData) {
+            body = RssItemBodyCodec.decode(bodyData);
+            decodedBodyData = bodyData;
+        }
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.bodyData = RssItemBodyCodec.encode(body);
+        this.body = body;
+        this.decodedBodyData = bodyData;
+    }
     // KEEP METHODS END
 
 }
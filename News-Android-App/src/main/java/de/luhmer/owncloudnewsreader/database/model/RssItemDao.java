@@ -31,7 +31,7 @@ public class RssItemDao extends AbstractDao<RssItem, Long> {
         public final static Property FeedId = new Property(1, long.class, "feedId", false, "FEED_ID");
         public final static Property Link = new Property(2, String.class, "link", false, "LINK");
         public final static Property Title = new Property(3, String.class, "title", false, "TITLE");
-        public final static Property Body = new Property(4, String.class, "body", false, "BODY");
+        public final static Property BodyData = new Property(4, byte[].class, "bodyData", false, "BODY");
         public final static Property Read = new Property(5, Boolean.class, "read", false, "READ");
         public final static Property Starred = new Property(6, Boolean.class, "starred", false, "STARRED");
         public final static Property Author = new Property(7, String.class, "author", false, "AUTHOR");
@@ -44,6 +44,8 @@ public class RssItemDao extends AbstractDao<RssItem, Long> {
         public final static Property PubDate = new Property(14, java.util.Date.class, "pubDate", false, "PUB_DATE");
         public final static Property EnclosureLink = new Property(15, String.class, "enclosureLink", false, "ENCLOSURE_LINK");
         public final static Property EnclosureMime = new Property(16, String.class, "enclosureMime", false, "ENCLOSURE_MIME");
+        public final static Property PreviewText = new Property(17, String.class, "previewText", false, "PREVIEW_TEXT");
+        public final static Property MediaThumbnail = new Property(18, String.class, "mediaThumbnail", false, "MEDIA_THUMBNAIL");
     };
 
     private DaoSession daoSession;
@@ -67,7 +69,7 @@ public class RssItemDao extends AbstractDao<RssItem, Long> {
                 "\"FEED_ID\" INTEGER NOT NULL ," + // 1: feedId
                 "\"LINK\" TEXT," + // 2: link
                 "\"TITLE\" TEXT," + // 3: title
-                "\"BODY\" TEXT," + // 4: body
+                "\"BODY\" BLOB," + // 4: bodyData
                 "\"READ\" INTEGER," + // 5: read
                 "\"STARRED\" INTEGER," + // 6: starred
                 "\"AUTHOR\" TEXT NOT NULL ," + // 7: author
@@ -79,10 +81,20 @@ public class RssItemDao extends AbstractDao<RssItem, Long> {
                 "\"LAST_MODIFIED\" INTEGER," + // 13: lastModified
                 "\"PUB_DATE\" INTEGER," + // 14: pubDate
                 "\"ENCLOSURE_LINK\" TEXT," + // 15: enclosureLink
-                "\"ENCLOSURE_MIME\" TEXT);"); // 16: enclosureMime
+                "\"ENCLOSURE_MIME\" TEXT," + // 16: enclosureMime
+                "\"PREVIEW_TEXT\" TEXT," + // 17: previewText
+                "\"MEDIA_THUMBNAIL\" TEXT);"); // 18: mediaThumbnail
         // Add Indexes
-        db.execSQL("CREATE INDEX " + constraint + "IDX_RSS_ITEM_FEED_ID ON RSS_ITEM" +
-                " (\"FEED_ID\");");
+        db.execSQL("CREATE INDEX " + constraint + "IDX_RSS_ITEM_FEED_ID_READ_TEMP_PUB_DATE ON RSS_ITEM" +
+                " (\"FEED_ID\",\"READ_TEMP\",\"PUB_DATE\");");
+        db.execSQL("CREATE INDEX " + constraint + "IDX_RSS_ITEM_READ_TEMP_PUB_DATE ON RSS_ITEM" +
+                " (\"READ_TEMP\",\"PUB_DATE\");");
+        db.execSQL("CREATE INDEX " + constraint + "IDX_RSS_ITEM_STARRED_TEMP_PUB_DATE ON RSS_ITEM" +
+                " (\"STARRED_TEMP\",\"PUB_DATE\");");
+        db.execSQL("CREATE INDEX " + constraint + "IDX_RSS_ITEM_FINGERPRINT ON RSS_ITEM" +
+                " (\"FINGERPRINT\");");
+        db.execSQL("CREATE INDEX " + constraint + "IDX_RSS_ITEM_LAST_MODIFIED ON RSS_ITEM" +
+                " (\"LAST_MODIFIED\");");
     }
 
     /** Drops the underlying database table. */
@@ -108,9 +120,9 @@ public class RssItemDao extends AbstractDao<RssItem, Long> {
             stmt.bindString(4, title);
         }
  
-        String body = entity.getBody();
-        if (body != null) {
-            stmt.bindString(5, body);
+        byte[] bodyData = entity.getBodyData();
+        if (bodyData != null) {
+            stmt.bindBlob(5, bodyData);
         }
  
         Boolean read = entity.getRead();
@@ -156,6 +168,16 @@ public class RssItemDao extends AbstractDao<RssItem, Long> {
         if (enclosureMime != null) {
             stmt.bindString(17, enclosureMime);
         }
+ 
+        String previewText = entity.getPreviewText();
+        if (previewText != null) {
+            stmt.bindString(18, previewText);
+        }
+ 
+        String mediaThumbnail = entity.getMediaThumbnail();
+        if (mediaThumbnail != null) {
+            stmt.bindString(19, mediaThumbnail);
+        }
     }
 
     @Override
@@ -178,7 +200,7 @@ public class RssItemDao extends AbstractDao<RssItem, Long> {
             cursor.getLong(offset + 1), // feedId
             cursor.isNull(offset + 2) ? null : cursor.getString(offset + 2), // link
             cursor.isNull(offset + 3) ? null : cursor.getString(offset + 3), // title
-            cursor.isNull(offset + 4) ? null : cursor.getString(offset + 4), // body
+            cursor.isNull(offset + 4) ? null : cursor.getBlob(offset + 4), // bodyData
             cursor.isNull(offset + 5) ? null : cursor.getShort(offset + 5) != 0, // read
             cursor.isNull(offset + 6) ? null : cursor.getShort(offset + 6) != 0, // starred
             cursor.getString(offset + 7), // author
@@ -190,7 +212,9 @@ public class RssItemDao extends AbstractDao<RssItem, Long> {
             cursor.isNull(offset + 13) ? null : new java.util.Date(cursor.getLong(offset + 13)), // lastModified
             cursor.isNull(offset + 14) ? null : new java.util.Date(cursor.getLong(offset + 14)), // pubDate
             cursor.isNull(offset + 15) ? null : cursor.getString(offset + 15), // enclosureLink
-            cursor.isNull(offset + 16) ? null : cursor.getString(offset + 16) // enclosureMime
+            cursor.isNull(offset + 16) ? null : cursor.getString(offset + 16), // enclosureMime
+            cursor.isNull(offset + 17) ? null : cursor.getString(offset + 17), // previewText
+            cursor.isNull(offset + 18) ? null : cursor.getString(offset + 18) // mediaThumbnail
         );
         return entity;
     }
@@ -202,7 +226,7 @@ public class RssItemDao extends AbstractDao<RssItem, Long> {
         entity.setFeedId(cursor.getLong(offset + 1));
         entity.setLink(cursor.isNull(offset + 2) ? null : cursor.getString(offset + 2));
         entity.setTitle(cursor.isNull(offset + 3) ? null : cursor.getString(offset + 3));
-        entity.setBody(cursor.isNull(offset + 4) ? null : cursor.getString(offset + 4));
+        entity.setBodyData(cursor.isNull(offset + 4) ? null : cursor.getBlob(offset + 4));
         entity.setRead(cursor.isNull(offset + 5) ? null : cursor.getShort(offset + 5) != 0);
         entity.setStarred(cursor.isNull(offset + 6) ? null : cursor.getShort(offset + 6) != 0);
         entity.setAuthor(cursor.getString(offset + 7));
@@ -215,6 +239,8 @@ public class RssItemDao extends AbstractDao<RssItem, Long> {
         entity.setPubDate(cursor.isNull(offset + 14) ? null : new java.util.Date(cursor.getLong(offset + 14)));
         entity.setEnclosureLink(cursor.isNull(offset + 15) ? null : cursor.getString(offset + 15));
         entity.setEnclosureMime(cursor.isNull(offset + 16) ? null : cursor.getString(offset + 16));
+        entity.setPreviewText(cursor.isNull(offset + 17) ? null : cursor.getString(offset + 17));
+        entity.setMediaThumbnail(cursor.isNull(offset + 18) ? null : cursor.getString(offset + 18));
      }
     
     /** @inheritdoc */
@@ -8,6 +8,12 @@ import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 
+import java.io.File;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import javax.inject.Named;
 import javax.inject.Singleton;
 
@@ -15,8 +21,13 @@ import dagger.Module;
 import dagger.Provides;
 import de.luhmer.owncloudnewsreader.helper.PostDelayHandler;
 import de.luhmer.owncloudnewsreader.helper.ThemeChooser;
+import de.luhmer.owncloudnewsreader.reader.nextcloud.ApiMetrics;
+import de.luhmer.owncloudnewsreader.reader.nextcloud.ConditionalGetInterceptor;
 import de.luhmer.owncloudnewsreader.ssl.MemorizingTrustManager;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
 import okhttp3.Cache;
+import okhttp3.ConnectionPool;
 import okhttp3.OkHttpClient;
 
 /**
@@ -26,6 +37,13 @@ import okhttp3.OkHttpClient;
 @Module
 public class ApiModule {
 
+    // folders, feeds and item states are synced in parallel; the rest of the sync runs after them
+    private static final int SYNC_THREAD_COUNT = 3;
+
+    private static final long HTTP_CACHE_SIZE = 10 * 1024 * 1024; // 10 MiB
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+
     private Application mApplication;
 
     public ApiModule(Application application) {
@@ -66,14 +84,17 @@ public class ApiModule {
         return new NextcloudAPI("");
     }*/
 
-    /*
     @Provides
     @Singleton
-    Cache provideOkHttpCache(Application application) {
-        int cacheSize = 10 * 1024 * 1024; // 10 MiB
-        Cache cache = new Cache(application.getCacheDir(), cacheSize);
-        return cache;
-    }*/
+    Cache provideOkHttpCache() {
+        return new Cache(new File(mApplication.getCacheDir(), "http"), HTTP_CACHE_SIZE);
+    }
+
+    @Provides
+    @Singleton
+    ApiMetrics provideApiMetrics() {
+        return new ApiMetrics();
+    }
 
     @Provides
     @Singleton
@@ -83,12 +104,41 @@ public class ApiModule {
         return gsonBuilder.create();
     }
 
+    /**
+     * Base client of the api. Other clients are derived from it (see {@link OkHttpClient#newBuilder()})
+     * so they share the connection pool and the threads. Responses are decompressed transparently
+     * (OkHttp sends "Accept-Encoding: gzip" itself as long as no other encoding is requested).
+     */
+    @Provides
+    @Singleton
+    OkHttpClient provideOkHttpClient(Cache cache, ApiMetrics apiMetrics) {
+        return new OkHttpClient.Builder()
+                .cache(cache)
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(120, TimeUnit.SECONDS)
+                .writeTimeout(120, TimeUnit.SECONDS)
+                .addInterceptor(apiMetrics)
+                .addNetworkInterceptor(new ConditionalGetInterceptor())
+                .build();
+    }
+
+    /**
+     * Bounded pool which runs all stages of the synchronization. The threads are kept alive so
+     * periodic syncs don't create new threads every time.
+     */
     @Provides
     @Singleton
-    OkHttpClient provideOkHttpClient(Cache cache) {
-        OkHttpClient client = new OkHttpClient();
-        //client.setCache(cache);
-        return client;
+    @Named("syncScheduler")
+    Scheduler provideSyncScheduler() {
+        return Schedulers.from(Executors.newFixedThreadPool(SYNC_THREAD_COUNT, new ThreadFactory() {
+            private final AtomicInteger threadCount = new AtomicInteger(0);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "sync-" + threadCount.incrementAndGet());
+            }
+        }));
     }
 
     @Provides
@@ -119,8 +169,8 @@ public class ApiModule {
 
     @Provides
     @Singleton
-    ApiProvider provideAPI(MemorizingTrustManager mtm, SharedPreferences sp) {
-        return new ApiProvider(mtm, sp, mApplication);
+    ApiProvider provideAPI(MemorizingTrustManager mtm, SharedPreferences sp, OkHttpClient client) {
+        return new ApiProvider(mtm, sp, mApplication, client);
     }
 
 }
\ No newline at end of file
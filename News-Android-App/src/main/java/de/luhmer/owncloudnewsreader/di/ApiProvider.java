@@ -40,12 +40,15 @@ public class ApiProvider {
     protected Context context;
     protected API mApi;
     private NextcloudAPI mNextcloudSsoApi;
+    private final OkHttpClient mBaseClient;
+    private OkHttpClient mImageClient;
 
 
-    public ApiProvider(MemorizingTrustManager mtm, SharedPreferences sp, Context context) {
+    public ApiProvider(MemorizingTrustManager mtm, SharedPreferences sp, Context context, OkHttpClient baseClient) {
         this.mMemorizingTrustManager = mtm;
         this.mPrefs = sp;
         this.context = context;
+        this.mBaseClient = baseClient;
         initApi(new NextcloudAPI.ApiConnectedListener() {
             @Override
             public void onConnected() { }
@@ -64,8 +67,7 @@ public class ApiProvider {
 
         boolean useSSO = mPrefs.getBoolean(SettingsActivity.SW_USE_SINGLE_SIGN_ON, false);
         if(useSSO) {
-            OkHttpClient client = new OkHttpClient.Builder().build();
-            initImageLoader(mPrefs, client, context);
+            initImageLoader(mPrefs, mBaseClient, context);
             initSsoApi(apiConnectedListener);
         } else {
             if(mPrefs.contains(SettingsActivity.EDT_OWNCLOUDROOTPATH_STRING)) {
@@ -76,7 +78,7 @@ public class ApiProvider {
                         .addPathSegments("index.php/apps/news/api/v1-2/")
                         .build();
                 Log.d("ApiModule", "HttpUrl: " + baseUrl.toString());
-                OkHttpClient client = OkHttpSSLClient.GetSslClient(baseUrl, username, password, mPrefs, mMemorizingTrustManager);
+                OkHttpClient client = OkHttpSSLClient.GetSslClient(mBaseClient, baseUrl, username, password, mPrefs, mMemorizingTrustManager);
                 initImageLoader(mPrefs, client, context);
                 initRetrofitApi(baseUrl, client);
                 apiConnectedListener.onConnected();
@@ -120,17 +122,27 @@ public class ApiProvider {
                 .cacheInMemory(true)
                 .build();
 
+        // Images are cached by the image loader, they would only push the api responses out of the http cache
+        mImageClient = okHttpClient.newBuilder().cache(null).build();
+
         ImageLoaderConfiguration config = new ImageLoaderConfiguration.Builder(context)
                 .diskCacheSize(diskCacheSize)
                 .memoryCacheSize(10 * 1024 * 1024)
                 .diskCacheFileNameGenerator(new Md5FileNameGenerator())
                 .defaultDisplayImageOptions(imageOptions)
-                .imageDownloader(new OkHttpImageDownloader(context, okHttpClient))
+                .imageDownloader(new OkHttpImageDownloader(context, mImageClient))
                 .build();
 
         ImageLoader.getInstance().init(config);
     }
 
+    /**
+     * @return client which is used to download images into the cache of the image loader
+     */
+    public OkHttpClient getImageClient() {
+        return mImageClient;
+    }
+
     public API getAPI() {
         return mApi;
     }
@@ -17,6 +17,7 @@ import de.luhmer.owncloudnewsreader.SettingsFragment;
 import de.luhmer.owncloudnewsreader.SyncIntervalSelectorActivity;
 import de.luhmer.owncloudnewsreader.authentication.OwnCloudSyncAdapter;
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
+import de.luhmer.owncloudnewsreader.services.DownloadImagesService;
 import de.luhmer.owncloudnewsreader.services.SyncItemStateService;
 import de.luhmer.owncloudnewsreader.widget.WidgetProvider;
 
@@ -44,6 +45,7 @@ public interface AppComponent {
     void injectFragment(SyncIntervalSelectorActivity.PlaceholderFragment fragment);
 
     void injectService(SyncItemStateService service);
+    void injectService(DownloadImagesService service);
     void injectService(OwnCloudSyncAdapter ownCloudSyncAdapter);
 
     void injectWidget(WidgetProvider widgetProvider);
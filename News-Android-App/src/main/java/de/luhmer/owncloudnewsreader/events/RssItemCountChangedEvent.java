@@ -0,0 +1,35 @@
+package de.luhmer.owncloudnewsreader.events;
+
+import android.util.SparseIntArray;
+
+/**
+ * Posted after read / starred changes of rss items have been written (see
+ * {@link de.luhmer.owncloudnewsreader.database.RssItemStateQueue}). Contains how much the counts
+ * shown in the drawer changed, with the same keys as
+ * {@link de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm#getUnreadItemCountFeedFolder()}.
+ */
+public class RssItemCountChangedEvent {
+
+    private final SparseIntArray unreadCountFolderDeltas;
+    private final SparseIntArray unreadCountFeedDeltas;
+    private final SparseIntArray starredCountFeedDeltas;
+
+    public RssItemCountChangedEvent(SparseIntArray unreadCountFolderDeltas, SparseIntArray unreadCountFeedDeltas, SparseIntArray starredCountFeedDeltas) {
+        this.unreadCountFolderDeltas = unreadCountFolderDeltas;
+        this.unreadCountFeedDeltas = unreadCountFeedDeltas;
+        this.starredCountFeedDeltas = starredCountFeedDeltas;
+    }
+
+    /** Also contains the total unread / starred counts (special folders) */
+    public SparseIntArray getUnreadCountFolderDeltas() {
+        return unreadCountFolderDeltas;
+    }
+
+    public SparseIntArray getUnreadCountFeedDeltas() {
+        return unreadCountFeedDeltas;
+    }
+
+    public SparseIntArray getStarredCountFeedDeltas() {
+        return starredCountFeedDeltas;
+    }
+}
@@ -38,9 +38,13 @@ public class ColorHelper {
     }
 
     public static int getFeedColor(Context context, Feed item) {
+        return getFeedColor(context, item != null ? item.getAvgColour() : null);
+    }
+
+    public static int getFeedColor(Context context, String avgColour) {
         int color;
-        if(item != null && item.getAvgColour() != null)
-            color = Integer.parseInt(item.getAvgColour());
+        if(avgColour != null)
+            color = Integer.parseInt(avgColour);
         else
             color = getColorFromAttribute(context, R.attr.dividerLineColor);
         return color;
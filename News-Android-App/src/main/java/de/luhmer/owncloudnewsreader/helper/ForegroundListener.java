@@ -4,6 +4,9 @@ import android.app.Activity;
 import android.app.Application;
 import android.os.Bundle;
 
+import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
+import de.luhmer.owncloudnewsreader.services.OwnCloudSyncService;
+
 public class ForegroundListener implements Application.ActivityLifecycleCallbacks {
 
     private static int numStarted;
@@ -35,6 +38,10 @@ public class ForegroundListener implements Application.ActivityLifecycleCallback
     @Override
     public void onActivityStopped(Activity activity) {
         numStarted--;
+        if(numStarted == 0 && !OwnCloudSyncService.isSyncRunning()) {
+            // Maintenance which would block the database for a while
+            new DatabaseConnectionOrm(activity).enableIncrementalVacuum();
+        }
     }
 
     @Override
@@ -18,6 +18,7 @@ import de.luhmer.owncloudnewsreader.database.model.Folder;
 import de.luhmer.owncloudnewsreader.database.model.RssItem;
 import de.luhmer.owncloudnewsreader.model.UserInfo;
 import de.luhmer.owncloudnewsreader.reader.nextcloud.NextcloudDeserializer;
+import de.luhmer.owncloudnewsreader.reader.nextcloud.RssItemListTypeAdapter;
 import de.luhmer.owncloudnewsreader.reader.nextcloud.Types;
 import de.luhmer.owncloudnewsreader.ssl.OkHttpSSLClient;
 
@@ -37,7 +38,7 @@ public class GsonConfig {
                 .setLenient()
                 .registerTypeAdapter(folderList,   new NextcloudDeserializer<>(Types.FOLDERS.toString(), Folder.class))
                 .registerTypeAdapter(feedList,     new NextcloudDeserializer<>(Types.FEEDS.toString(), Feed.class))
-                .registerTypeAdapter(rssItemsList, new NextcloudDeserializer<>(Types.ITEMS.toString(), RssItem.class))
+                .registerTypeAdapter(rssItemsList, new RssItemListTypeAdapter())
                 .registerTypeAdapter(UserInfo.class, (JsonDeserializer<UserInfo>) (json, typeOfT, context) -> {
                     try {
                         JsonObject jObj = json.getAsJsonObject();
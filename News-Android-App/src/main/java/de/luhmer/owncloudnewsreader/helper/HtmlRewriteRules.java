@@ -0,0 +1,88 @@
+package de.luhmer.owncloudnewsreader.helper;
+
+/**
+ * Rules for the {@link HtmlRewriter} which prepare the body of an article for the web view
+ */
+public class HtmlRewriteRules {
+
+    private HtmlRewriteRules() {}
+
+    /**
+     * Uses https for protocol relative urls ("//example.com/image.png"), they wouldn't work in
+     * the web view as the page is loaded from file:///android_asset/
+     */
+    public static HtmlRewriter.Rule httpsForProtocolRelativeUrls() {
+        return new HtmlRewriter.Rule() {
+            @Override
+            public void onStartTag(HtmlRewriter.Tag tag) {
+                for(int i = 0; i < tag.getAttributeCount(); i++) {
+                    String value = tag.getAttributeValue(i);
+                    if(value != null && value.startsWith("//")) {
+                        tag.setAttributeValue(i, "https:" + value);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Videos are not started automatically and only their metadata is loaded
+     */
+    public static HtmlRewriter.Rule videoPreload() {
+        return new HtmlRewriter.Rule() {
+            @Override
+            public void onStartTag(HtmlRewriter.Tag tag) {
+                if("video".equals(tag.getName())) {
+                    tag.removeAttribute("autoplay");
+                    tag.setAttribute("preload", "metadata");
+                }
+            }
+        };
+    }
+
+    /**
+     * Images and iframes are only loaded when they are scrolled into view
+     */
+    public static HtmlRewriter.Rule lazyLoading() {
+        return new HtmlRewriter.Rule() {
+            @Override
+            public void onStartTag(HtmlRewriter.Tag tag) {
+                if(("img".equals(tag.getName()) || "iframe".equals(tag.getName())) && !tag.hasAttribute("loading")) {
+                    tag.setAttribute("loading", "lazy");
+                }
+            }
+        };
+    }
+
+    /**
+     * Images are shown as small placeholders in incognito mode (they are not loaded from the cache)
+     */
+    public static HtmlRewriter.Rule incognitoImages() {
+        return new HtmlRewriter.Rule() {
+            @Override
+            public void onStartTag(HtmlRewriter.Tag tag) {
+                if("img".equals(tag.getName())) {
+                    tag.setAttribute("width", "40px");
+                    tag.setAttribute("height", "40px");
+                }
+            }
+        };
+    }
+
+    /**
+     * Removes srcset / sizes of images, otherwise the web view would load another image than the
+     * one of the src attribute, which is the one downloaded for offline reading (see
+     * {@link de.luhmer.owncloudnewsreader.services.DownloadImagesService})
+     */
+    public static HtmlRewriter.Rule imageSrcOnly() {
+        return new HtmlRewriter.Rule() {
+            @Override
+            public void onStartTag(HtmlRewriter.Tag tag) {
+                if("img".equals(tag.getName()) && tag.hasAttribute("src")) {
+                    tag.removeAttribute("srcset");
+                    tag.removeAttribute("sizes");
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,288 @@
+package de.luhmer.owncloudnewsreader.helper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Rewrites the start tags of a html document in a single pass, e.g. to replace image urls or to
+ * change the attributes of videos (see {@link HtmlRewriteRules}).
+ *
+ * Text, comments, end tags and the content of script / style elements are copied unchanged. Tags
+ * which are not modified by any rule are copied as they are, so the document is only changed where
+ * necessary. This is not a html parser, tags are not balanced and entities are not decoded.
+ */
+public class HtmlRewriter {
+
+    public interface Rule {
+        /**
+         * Called for each start tag of the document, the tag can be modified by the rule
+         */
+        void onStartTag(Tag tag);
+    }
+
+    private final Rule[] rules;
+    private final Tag tag = new Tag();
+
+    public HtmlRewriter(Rule... rules) {
+        this.rules = rules;
+    }
+
+    public String rewrite(String html) {
+        StringBuilder out = new StringBuilder(html.length() + 256);
+        rewrite(html, out);
+        return out.toString();
+    }
+
+    /**
+     * Appends the rewritten html to out
+     */
+    public void rewrite(String html, StringBuilder out) {
+        out.ensureCapacity(out.length() + html.length());
+        int length = html.length();
+        int pos = 0;
+        while(pos < length) {
+            int start = html.indexOf('<', pos);
+            if(start == -1 || start + 1 >= length) {
+                break;
+            }
+            out.append(html, pos, start);
+
+            char next = html.charAt(start + 1);
+            int end;
+            if(html.startsWith("<!--", start)) {
+                end = html.indexOf("-->", start + 4);
+                end = end == -1 ? length : end + 3;
+                out.append(html, start, end);
+            } else if(isLetter(next)) {
+                end = parseStartTag(html, start);
+                if(end == -1) {
+                    // Not terminated, copy the rest
+                    out.append(html, start, length);
+                    pos = length;
+                    break;
+                }
+                for(Rule rule : rules) {
+                    rule.onStartTag(tag);
+                }
+                if(tag.modified) {
+                    tag.appendTo(out);
+                } else {
+                    out.append(html, start, end);
+                }
+                if(!tag.selfClosing && (tag.name.equals("script") || tag.name.equals("style"))) {
+                    // Raw text, may contain '<'
+                    int close = indexOfIgnoreCase(html, "</" + tag.name, end);
+                    close = close == -1 ? length : close;
+                    out.append(html, end, close);
+                    end = close;
+                }
+            } else {
+                // End tag, doctype, processing instruction or just a '<' in the text
+                end = next == '/' || next == '!' || next == '?' ? html.indexOf('>', start) : -1;
+                end = end == -1 ? start + 1 : end + 1;
+                out.append(html, start, end);
+            }
+            pos = end;
+        }
+        out.append(html, pos, length);
+    }
+
+    /**
+     * Parses the start tag at the given position into {@link #tag}
+     * @return position after the tag or -1 if the tag isn't terminated
+     */
+    private int parseStartTag(String html, int start) {
+        tag.reset();
+        int length = html.length();
+        int pos = start + 1;
+        while(pos < length && isNameChar(html.charAt(pos))) {
+            pos++;
+        }
+        tag.originalName = html.substring(start + 1, pos);
+        tag.name = tag.originalName.toLowerCase(Locale.US);
+
+        while(pos < length) {
+            char c = html.charAt(pos);
+            if(c == '>') {
+                return pos + 1;
+            } else if(c == '/' && pos + 1 < length && html.charAt(pos + 1) == '>') {
+                tag.selfClosing = true;
+                return pos + 2;
+            } else if(isWhitespace(c) || c == '/') {
+                pos++;
+                continue;
+            }
+
+            // Attribute name
+            int nameStart = pos;
+            while(pos < length && !isWhitespace(html.charAt(pos)) && "/>=".indexOf(html.charAt(pos)) == -1) {
+                pos++;
+            }
+            String name = html.substring(nameStart, pos);
+            while(pos < length && isWhitespace(html.charAt(pos))) {
+                pos++;
+            }
+            if(pos >= length || html.charAt(pos) != '=') {
+                tag.addAttribute(name, null);
+                continue;
+            }
+            pos++;
+            while(pos < length && isWhitespace(html.charAt(pos))) {
+                pos++;
+            }
+            if(pos >= length) {
+                break;
+            }
+
+            // Attribute value
+            char quote = html.charAt(pos);
+            String value;
+            if(quote == '"' || quote == '\'') {
+                int valueEnd = html.indexOf(quote, pos + 1);
+                if(valueEnd == -1) {
+                    return -1;
+                }
+                value = html.substring(pos + 1, valueEnd);
+                pos = valueEnd + 1;
+            } else {
+                int valueStart = pos;
+                while(pos < length && !isWhitespace(html.charAt(pos)) && html.charAt(pos) != '>') {
+                    pos++;
+                }
+                value = html.substring(valueStart, pos);
+            }
+            tag.addAttribute(name, value);
+        }
+        return -1;
+    }
+
+    private static int indexOfIgnoreCase(String text, String str, int fromIndex) {
+        for(int i = fromIndex; i <= text.length() - str.length(); i++) {
+            if(text.regionMatches(true, i, str, 0, str.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isNameChar(char c) {
+        return isLetter(c) || (c >= '0' && c <= '9') || c == '-' || c == ':';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f';
+    }
+
+
+    /**
+     * Start tag of the document. Attribute values are not decoded (e.g. &amp;amp; stays &amp;amp;).
+     */
+    public static class Tag {
+        private String name;
+        private String originalName;
+        private boolean selfClosing;
+        private boolean modified;
+        private final List<String> attributeNames = new ArrayList<>();
+        private final List<String> attributeValues = new ArrayList<>();
+
+        private void reset() {
+            selfClosing = false;
+            modified = false;
+            attributeNames.clear();
+            attributeValues.clear();
+        }
+
+        private void addAttribute(String name, String value) {
+            attributeNames.add(name);
+            attributeValues.add(value);
+        }
+
+        /**
+         * @return lower case tag name
+         */
+        public String getName() {
+            return name;
+        }
+
+        public int getAttributeCount() {
+            return attributeNames.size();
+        }
+
+        public String getAttributeValue(int index) {
+            return attributeValues.get(index);
+        }
+
+        public void setAttributeValue(int index, String value) {
+            if(value == null ? attributeValues.get(index) != null : !value.equals(attributeValues.get(index))) {
+                attributeValues.set(index, value);
+                modified = true;
+            }
+        }
+
+        public boolean hasAttribute(String name) {
+            return indexOf(name) != -1;
+        }
+
+        /**
+         * @return value of the attribute, null if it doesn't exist or has no value
+         */
+        public String getAttribute(String name) {
+            int index = indexOf(name);
+            return index != -1 ? attributeValues.get(index) : null;
+        }
+
+        public void setAttribute(String name, String value) {
+            int index = indexOf(name);
+            if(index == -1) {
+                addAttribute(name, value);
+                modified = true;
+            } else {
+                setAttributeValue(index, value);
+            }
+        }
+
+        public void removeAttribute(String name) {
+            int index;
+            while((index = indexOf(name)) != -1) {
+                attributeNames.remove(index);
+                attributeValues.remove(index);
+                modified = true;
+            }
+        }
+
+        private int indexOf(String name) {
+            for(int i = 0; i < attributeNames.size(); i++) {
+                if(attributeNames.get(i).equalsIgnoreCase(name)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void appendTo(StringBuilder out) {
+            out.append('<').append(originalName);
+            for(int i = 0; i < attributeNames.size(); i++) {
+                out.append(' ').append(attributeNames.get(i));
+                String value = attributeValues.get(i);
+                if(value != null) {
+                    out.append("=\"");
+                    for(int j = 0; j < value.length(); j++) {
+                        char c = value.charAt(j);
+                        if(c == '"') {
+                            out.append("&quot;");
+                        } else {
+                            out.append(c);
+                        }
+                    }
+                    out.append('"');
+                }
+            }
+            out.append(selfClosing ? " />" : ">");
+        }
+    }
+}
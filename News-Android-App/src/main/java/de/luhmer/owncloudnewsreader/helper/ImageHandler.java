@@ -39,18 +39,43 @@ public class ImageHandler {
 		Matcher matcher = patternImg.matcher(text);
 	    // Check all occurrences
 	    while (matcher.find()) {
-	    	Matcher matcherSrcLink = patternImgSrcLink.matcher(matcher.group());
-	    	if(matcherSrcLink.find()) {
-                String link = matcherSrcLink.group(1);
-                if(link.startsWith("//")) { //Maybe the text contains image urls without http or https prefix.
-                    link = "https:" + link;
-                }
+	    	String link = getImageLink(matcher.group());
+	    	if(link != null) {
 	    		links.add(link);
 	    	}
 	    }
 	    return links;
 	}
 
+    /**
+     * @return link of the first image in text or null if there is none (stops at the first image,
+     * unlike {@link #getImageLinksFromText(String)})
+     */
+    public static String getFirstImageLinkFromText(String text)
+    {
+        Matcher matcher = patternImg.matcher(text);
+        while (matcher.find()) {
+            String link = getImageLink(matcher.group());
+            if(link != null) {
+                return link;
+            }
+        }
+        return null;
+    }
+
+    private static String getImageLink(String imgTag)
+    {
+        Matcher matcherSrcLink = patternImgSrcLink.matcher(imgTag);
+        if(!matcherSrcLink.find()) {
+            return null;
+        }
+        String link = matcherSrcLink.group(1);
+        if(link.startsWith("//")) { //Maybe the text contains image urls without http or https prefix.
+            link = "https:" + link;
+        }
+        return link;
+    }
+
     public static void clearCache()
     {
         if(ImageLoader.getInstance().isInited()) {
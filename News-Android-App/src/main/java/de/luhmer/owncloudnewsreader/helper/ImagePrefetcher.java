@@ -0,0 +1,297 @@
+package de.luhmer.owncloudnewsreader.helper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloads the images of articles for offline reading (see
+ * {@link de.luhmer.owncloudnewsreader.services.DownloadImagesService}):
+ * - every url is only downloaded once, even if it is used by multiple articles
+ * - images of unread and newer articles are downloaded first
+ * - multiple images are downloaded at the same time, but only a few from the same host
+ * - no more images are started once the byte budget is used up (e.g. the size of the image cache)
+ *
+ * Add the urls with {@link #add(String, boolean, long)} and call {@link #run()}.
+ */
+public class ImagePrefetcher {
+
+    public interface Fetcher {
+        /**
+         * Called on multiple threads at the same time
+         * @return number of bytes downloaded (0 if the image is cached already)
+         */
+        long fetch(String url) throws IOException;
+    }
+
+    public interface ProgressListener {
+        void onProgress(int finishedCount, int totalCount);
+    }
+
+    private final Fetcher fetcher;
+    private final int maxConcurrentDownloads;
+    private final int maxDownloadsPerHost;
+    private final long byteBudget;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    // Hosts with pending urls which may start another download, ordered by their most important url
+    private final TreeSet<Host> availableHosts = new TreeSet<>(new Comparator<Host>() {
+        @Override
+        public int compare(Host h1, Host h2) {
+            return h1.pending.peek().compareTo(h2.pending.peek());
+        }
+    });
+
+    private ProgressListener progressListener;
+    private long progressIntervalMillis;
+    private long lastProgressMillis;
+
+    private int runningCount = 0;
+    private int finishedCount = 0;
+    private int failedCount = 0;
+    private long bytesDownloaded = 0;
+    private boolean budgetExceeded = false;
+    private volatile boolean cancelled = false;
+    private ExecutorService executor;
+
+    public ImagePrefetcher(Fetcher fetcher, int maxConcurrentDownloads, int maxDownloadsPerHost, long byteBudget) {
+        this.fetcher = fetcher;
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+        this.maxDownloadsPerHost = maxDownloadsPerHost;
+        this.byteBudget = byteBudget;
+    }
+
+    /**
+     * @param intervalMillis the listener is called at most once per interval (and when all downloads are finished)
+     */
+    public void setProgressListener(ProgressListener listener, long intervalMillis) {
+        this.progressListener = listener;
+        this.progressIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * Adds the url of an image, urls which have been added before only keep the higher priority
+     * @param unread true if the image belongs to an unread article
+     * @param date   publication date of the article (newer articles first)
+     */
+    public synchronized void add(String url, boolean unread, long date) {
+        Entry entry = entries.get(url);
+        Entry newEntry = new Entry(url, unread, date, entries.size());
+        if(entry == null) {
+            entries.put(url, newEntry);
+        } else if(newEntry.compareTo(entry) < 0) {
+            entry.unread = unread;
+            entry.date = date;
+        }
+    }
+
+    /**
+     * @return number of (distinct) urls
+     */
+    public synchronized int getCount() {
+        return entries.size();
+    }
+
+    /**
+     * Downloads the images, blocks until all downloads are finished (or the prefetcher is cancelled)
+     */
+    public void run() throws InterruptedException {
+        synchronized (this) {
+            if(cancelled) {
+                return;
+            }
+            Map<String, Host> hosts = new HashMap<>();
+            for(Entry entry : entries.values()) {
+                String hostName = getHostName(entry.url);
+                Host host = hosts.get(hostName);
+                if(host == null) {
+                    host = new Host();
+                    hosts.put(hostName, host);
+                }
+                entry.host = host;
+                host.pending.add(entry);
+            }
+            availableHosts.addAll(hosts.values());
+
+            final AtomicInteger threadCount = new AtomicInteger(0);
+            executor = Executors.newFixedThreadPool(maxConcurrentDownloads, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    return new Thread(r, "image-prefetch-" + threadCount.incrementAndGet());
+                }
+            });
+        }
+
+        for(int i = 0; i < maxConcurrentDownloads; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    Entry entry;
+                    while((entry = take()) != null) {
+                        download(entry);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * No more downloads are started, running downloads are interrupted
+     */
+    public void cancel() {
+        synchronized (this) {
+            cancelled = true;
+            notifyAll();
+        }
+        if(executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public synchronized boolean isBudgetExceeded() {
+        return budgetExceeded;
+    }
+
+    public synchronized int getFinishedCount() {
+        return finishedCount;
+    }
+
+    public synchronized int getFailedCount() {
+        return failedCount;
+    }
+
+    public synchronized long getBytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+    /**
+     * @return next url to download or null if there are none left
+     */
+    private synchronized Entry take() {
+        while(!cancelled && !budgetExceeded) {
+            Host host = availableHosts.pollFirst();
+            if(host != null) {
+                Entry entry = host.pending.poll();
+                host.runningCount++;
+                runningCount++;
+                // Re-added with the priority of its next url
+                if(!host.pending.isEmpty() && host.runningCount < maxDownloadsPerHost) {
+                    availableHosts.add(host);
+                }
+                return entry;
+            } else if(runningCount == 0) {
+                return null;
+            }
+
+            // Wait until a host is available again
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private void download(Entry entry) {
+        long bytes = 0;
+        boolean failed = false;
+        try {
+            bytes = fetcher.fetch(entry.url);
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+        }
+
+        int finished;
+        int total;
+        boolean notifyProgress;
+        synchronized (this) {
+            Host host = entry.host;
+            // Not available while it was at its limit
+            if(host.runningCount == maxDownloadsPerHost && !host.pending.isEmpty()) {
+                availableHosts.add(host);
+            }
+            host.runningCount--;
+            runningCount--;
+
+            finished = ++finishedCount;
+            total = entries.size();
+            if(failed) {
+                failedCount++;
+            }
+            bytesDownloaded += bytes;
+            if(bytesDownloaded >= byteBudget) {
+                budgetExceeded = true;
+            }
+            notifyAll();
+
+            long now = System.currentTimeMillis();
+            notifyProgress = progressListener != null &&
+                    (finished == total || now - lastProgressMillis >= progressIntervalMillis);
+            if(notifyProgress) {
+                lastProgressMillis = now;
+            }
+        }
+
+        if(notifyProgress) {
+            progressListener.onProgress(finished, total);
+        }
+    }
+
+    private static String getHostName(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host.toLowerCase(Locale.US) : "";
+        } catch (IllegalArgumentException e) {
+            // Invalid urls fail anyway
+            return "";
+        }
+    }
+
+    private static class Host {
+        private final PriorityQueue<Entry> pending = new PriorityQueue<>();
+        private int runningCount = 0;
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        private final String url;
+        private final int index;
+        private boolean unread;
+        private long date;
+        private Host host;
+
+        private Entry(String url, boolean unread, long date, int index) {
+            this.url = url;
+            this.unread = unread;
+            this.date = date;
+            this.index = index;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if(unread != other.unread) {
+                return unread ? -1 : 1;
+            } else if(date != other.date) {
+                return date > other.date ? -1 : 1;
+            }
+            return index < other.index ? -1 : (index == other.index ? 0 : 1);
+        }
+    }
+}
@@ -25,6 +25,8 @@ import android.content.Context;
 import android.os.Environment;
 import android.util.Log;
 
+import com.nostra13.universalimageloader.cache.disc.DiskCache;
+import com.nostra13.universalimageloader.core.ImageLoader;
 import com.nostra13.universalimageloader.utils.StorageUtils;
 
 import java.io.File;
@@ -33,7 +35,16 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
-
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import de.luhmer.owncloudnewsreader.database.RssItemRetention;
 import de.luhmer.owncloudnewsreader.services.DownloadWebPageService;
 import de.luhmer.owncloudnewsreader.services.PodcastDownloadService;
 
@@ -114,6 +125,121 @@ public class NewsFileUtils {
         }
     }
 
+    /**
+     * Removes the web archives, podcasts and cached images of the items which have been removed
+     * from the database. Afterwards the least recently modified web archives and podcasts are
+     * removed until they take up less than maxBytes (the image cache has its own limit).
+     *
+     * @param maxBytes      0 to keep all web archives and podcasts of existing items
+     * @param keptItemLinks links / enclosure links of the items whose files must not be removed to
+     *                      stay below maxBytes (see {@link de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm#getLinksOfItemsWithKeptFiles()})
+     */
+    public static void deleteCachedFiles(Context context, RssItemRetention.Report report, long maxBytes, Collection<String> keptItemLinks) {
+        boolean hasPodcastDir = context.getExternalFilesDir(Environment.DIRECTORY_MUSIC) != null;
+
+        for (String link : report.itemLinks) {
+            deleteCachedFile(DownloadWebPageService.getWebPageArchiveFileForUrl(context, link), report);
+        }
+        if (hasPodcastDir) {
+            for (String link : report.enclosureLinks) {
+                deleteCachedFile(new File(PodcastDownloadService.getUrlToPodcastFile(context, link, false)), report);
+            }
+        }
+        if (ImageLoader.getInstance().isInited()) {
+            DiskCache diskCache = ImageLoader.getInstance().getDiskCache();
+            for (String link : report.imageLinks) {
+                File file = diskCache.get(link);
+                long length = file != null ? file.length() : 0;
+                if (file != null && file.exists() && diskCache.remove(link)) {
+                    report.fileCount++;
+                    report.fileBytes += length;
+                }
+            }
+        }
+
+        if (maxBytes <= 0) {
+            return;
+        }
+
+        Set<String> keptFiles = new HashSet<>();
+        for (String link : keptItemLinks) {
+            keptFiles.add(DownloadWebPageService.getWebPageArchiveFileForUrl(context, link).getAbsolutePath());
+            if (hasPodcastDir) {
+                keptFiles.add(new File(PodcastDownloadService.getUrlToPodcastFile(context, link, false)).getAbsolutePath());
+            }
+        }
+
+        List<File> files = new ArrayList<>();
+        listFiles(getWebPageArchiveStorage(context), files);
+        if (hasPodcastDir) {
+            listFiles(new File(getPathPodcasts(context)), files);
+        }
+        long totalBytes = 0;
+        for (File file : files) {
+            totalBytes += file.length();
+        }
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+
+        // Files of unread / starred items stay, even if they take up more than maxBytes
+        Iterator<File> iterator = files.iterator();
+        while (iterator.hasNext()) {
+            if (keptFiles.contains(iterator.next().getAbsolutePath())) {
+                iterator.remove();
+            }
+        }
+
+        Collections.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File file1, File file2) {
+                return Long.compare(file1.lastModified(), file2.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            long length = file.length();
+            if (deleteCachedFile(file, report)) {
+                totalBytes -= length;
+            }
+        }
+    }
+
+    private static boolean deleteCachedFile(File file, RssItemRetention.Report report) {
+        long length = file.length();
+        if (!file.exists() || !file.delete()) {
+            return false;
+        }
+        report.fileCount++;
+        report.fileBytes += length;
+
+        // Podcasts are stored in a directory of their own
+        File parent = file.getParentFile();
+        String[] siblings = parent != null ? parent.list() : null;
+        if (siblings != null && siblings.length == 0 && parent.getParentFile() != null
+                && parent.getParentFile().getName().equals("podcasts")) {
+            parent.delete();
+        }
+        return true;
+    }
+
+    private static void listFiles(File directory, List<File> files) {
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                listFiles(child, files);
+            } else if (!child.getName().endsWith(".download")) {
+                // Podcasts which are downloaded right now are skipped
+                files.add(child);
+            }
+        }
+    }
+
     public static String getCacheDirPath(Context context) {
         return StorageUtils.getCacheDirectory(context).getPath();
     }
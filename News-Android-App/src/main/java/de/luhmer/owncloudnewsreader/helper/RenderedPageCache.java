@@ -0,0 +1,198 @@
+package de.luhmer.owncloudnewsreader.helper;
+
+import android.content.Context;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Keeps the html pages of rss items (see {@link de.luhmer.owncloudnewsreader.async_tasks.RssItemToHtmlTask})
+ * in memory (LRU) and on disk, so swiping between articles doesn't build the same page again.
+ *
+ * The key contains everything the page depends on (item, last modified date, theme, font size,
+ * ...), so changing one of them simply leads to a new entry. Entries which are no longer used are
+ * removed once the size limits are reached (least recently used first).
+ */
+public class RenderedPageCache {
+
+    private static final String TAG = RenderedPageCache.class.getCanonicalName();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int MEMORY_CACHE_SIZE = 4 * 1024 * 1024; // 4 MiB
+    private static final long DISK_CACHE_SIZE = 20 * 1024 * 1024; // 20 MiB
+
+    private static RenderedPageCache instance;
+
+    private final LruCache<String, String> memoryCache;
+    private final File directory;
+    private final long maxDiskBytes;
+    private long diskBytes = -1;
+
+    public static synchronized RenderedPageCache getInstance(Context context) {
+        if(instance == null) {
+            instance = new RenderedPageCache(new File(context.getCacheDir(), "pages"), MEMORY_CACHE_SIZE, DISK_CACHE_SIZE);
+        }
+        return instance;
+    }
+
+    @VisibleForTesting
+    public RenderedPageCache(File directory, int maxMemoryBytes, long maxDiskBytes) {
+        this.directory = directory;
+        this.maxDiskBytes = maxDiskBytes;
+        this.memoryCache = new LruCache<String, String>(maxMemoryBytes) {
+            @Override
+            protected int sizeOf(String key, String page) {
+                return page.length() * 2;
+            }
+        };
+    }
+
+    /**
+     * @return the page or null if it isn't cached
+     */
+    public String get(String key) {
+        String page = memoryCache.get(key);
+        if(page != null) {
+            return page;
+        }
+
+        File file = getFile(key);
+        if(!file.exists()) {
+            return null;
+        }
+        try {
+            page = read(file);
+        } catch (IOException e) {
+            Log.e(TAG, "Reading cached page failed", e);
+            return null;
+        }
+        // Remember the access, the least recently used files are removed first
+        file.setLastModified(System.currentTimeMillis());
+        memoryCache.put(key, page);
+        return page;
+    }
+
+    /**
+     * @param persistent false if the page should only be kept in memory (e.g. in incognito mode)
+     */
+    public void put(String key, String page, boolean persistent) {
+        memoryCache.put(key, page);
+        if(!persistent) {
+            return;
+        }
+
+        synchronized (this) {
+            if(!directory.isDirectory() && !directory.mkdirs()) {
+                return;
+            }
+            File file = getFile(key);
+            File tmpFile = new File(directory, file.getName() + ".tmp");
+            try {
+                write(tmpFile, page);
+                long oldSize = file.length();
+                if(!tmpFile.renameTo(file)) {
+                    tmpFile.delete();
+                    return;
+                }
+                diskBytes = getDiskBytes() - oldSize + file.length();
+            } catch (IOException e) {
+                Log.e(TAG, "Writing cached page failed", e);
+                tmpFile.delete();
+                return;
+            }
+
+            if(diskBytes > maxDiskBytes) {
+                trim(maxDiskBytes * 3 / 4);
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        memoryCache.evictAll();
+        File[] files = directory.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                file.delete();
+            }
+        }
+        diskBytes = 0;
+    }
+
+    private long getDiskBytes() {
+        if(diskBytes < 0) {
+            diskBytes = 0;
+            File[] files = directory.listFiles();
+            if(files != null) {
+                for(File file : files) {
+                    diskBytes += file.length();
+                }
+            }
+        }
+        return diskBytes;
+    }
+
+    private void trim(long targetBytes) {
+        File[] files = directory.listFiles();
+        if(files == null) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+
+        int count = 0;
+        for(File file : files) {
+            if(diskBytes <= targetBytes) {
+                break;
+            }
+            long size = file.length();
+            if(file.delete()) {
+                diskBytes -= size;
+                count++;
+            }
+        }
+        Log.v(TAG, "Removed " + count + " cached pages");
+    }
+
+    private File getFile(String key) {
+        return new File(directory, key.replaceAll("[^a-zA-Z0-9._-]", "_") + ".html");
+    }
+
+    private static String read(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        InputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            int count;
+            while(offset < data.length && (count = in.read(data, offset, data.length - offset)) != -1) {
+                offset += count;
+            }
+        } finally {
+            in.close();
+        }
+        return new String(data, UTF_8);
+    }
+
+    private static void write(File file, String page) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(page.getBytes(UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+}
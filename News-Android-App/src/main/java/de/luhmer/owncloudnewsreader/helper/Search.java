@@ -2,7 +2,6 @@ package de.luhmer.owncloudnewsreader.helper;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.preference.PreferenceManager;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -10,28 +9,30 @@ import java.util.List;
 import de.luhmer.owncloudnewsreader.NewsDetailActivity;
 import de.luhmer.owncloudnewsreader.SettingsActivity;
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
-import de.luhmer.owncloudnewsreader.database.model.RssItem;
-import de.luhmer.owncloudnewsreader.database.model.RssItemDao;
+import de.luhmer.owncloudnewsreader.database.RssItemListRow;
+import de.luhmer.owncloudnewsreader.database.RssItemQuery;
+import de.luhmer.owncloudnewsreader.database.RssItemSearchTable;
 
 public class Search {
 
     private static final String SEARCH_IN_TITLE = "0";
     private static final String SEARCH_IN_BODY = "1";
     
-    public static List<RssItem> PerformSearch(Context context, Long idFolder, Long idFeed, String searchString, SharedPreferences mPrefs) {
+    public static List<RssItemListRow> PerformSearch(Context context, Long idFolder, Long idFeed, String searchString, SharedPreferences mPrefs) {
         DatabaseConnectionOrm.SORT_DIRECTION sortDirection = NewsDetailActivity.getSortDirectionFromSettings(mPrefs);
         DatabaseConnectionOrm dbConn = new DatabaseConnectionOrm(context);
-        String sqlSelectStatement = null;
+        RssItemQuery query = null;
         if (idFeed != null) {
-            sqlSelectStatement = getFeedSQLStatement(idFeed, sortDirection, searchString, dbConn, mPrefs);
+            query = RssItemQuery.forFeed(idFeed, false, false, sortDirection);
         } else if (idFolder != null) {
-            sqlSelectStatement = getFolderSQLStatement(idFolder, sortDirection, searchString, dbConn, mPrefs);
+            query = RssItemQuery.forFolder(idFolder, false, sortDirection);
         }
 
-        List<RssItem> items = new ArrayList<>();
-        if (sqlSelectStatement != null) {
-            dbConn.insertIntoRssCurrentViewTable(sqlSelectStatement);
-            items = dbConn.getCurrentRssItemView(0);
+        List<RssItemListRow> items = new ArrayList<>();
+        if (query != null) {
+            // Ranks the matching items and keeps them as current view
+            dbConn.setCurrentRssItemView(query.search(getSearchColumn(mPrefs), searchString));
+            items = dbConn.getCurrentRssItemView(null);
         }
         return items;
 
@@ -39,34 +40,14 @@ public class Search {
 
 
 
-    private static String getFeedSQLStatement(final long idFeed,
-                                       final DatabaseConnectionOrm.SORT_DIRECTION sortDirection,
-                                       final String searchString,
-                                       final DatabaseConnectionOrm dbConn,
-                                       final SharedPreferences mPrefs) {
-        String sql = "";
-        String searchIn = mPrefs.getString(SettingsActivity.SP_SEARCH_IN,"0");
-        if(searchIn.equals(SEARCH_IN_TITLE)) {
-            sql = dbConn.getAllItemsIdsForFeedSQLFilteredByTitle(idFeed, false, false, sortDirection, searchString);
-        } else if(searchIn.equals(SEARCH_IN_BODY)) {
-            sql = dbConn.getAllItemsIdsForFeedSQLFilteredByBodySQL(idFeed, false, false, sortDirection, searchString);
+    /**
+     * @return column of the search index or null to search the whole article (title, author and body)
+     */
+    private static String getSearchColumn(final SharedPreferences mPrefs) {
+        String searchIn = mPrefs.getString(SettingsActivity.SP_SEARCH_IN, SEARCH_IN_TITLE);
+        if(searchIn.equals(SEARCH_IN_BODY)) {
+            return null;
         }
-        return sql;
-    }
-
-    private static String getFolderSQLStatement(final long ID_FOLDER,
-                                         final DatabaseConnectionOrm.SORT_DIRECTION sortDirection,
-                                         final String searchString,
-                                         final DatabaseConnectionOrm dbConn,
-                                         final SharedPreferences mPrefs) {
-        String sql = "";
-        String searchIn = mPrefs.getString(SettingsActivity.SP_SEARCH_IN,"0");
-        if(searchIn.equals(SEARCH_IN_TITLE)) {
-            sql = dbConn.getAllItemsIdsForFolderSQLSearch(ID_FOLDER, sortDirection, RssItemDao.Properties.Title.columnName, searchString);
-        } else if(searchIn.equals(SEARCH_IN_BODY)) {
-            sql = dbConn.getAllItemsIdsForFolderSQLSearch(ID_FOLDER, sortDirection, RssItemDao.Properties.Body.columnName, searchString);
-        }
-
-        return sql;
+        return RssItemSearchTable.COLUMN_TITLE;
     }
 }
@@ -0,0 +1,181 @@
+package de.luhmer.owncloudnewsreader.helper;
+
+import android.app.Activity;
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.webkit.WebView;
+import android.webkit.WebViewClient;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import androidx.annotation.VisibleForTesting;
+
+/**
+ * Keeps a few initialized web views of an activity, so a page of the news detail view doesn't
+ * need to create a new one (which takes quite some time) when it is swiped into view. The pool
+ * is filled when the main thread is idle.
+ *
+ * Pool size and how many pages next to the current one are prepared depend on the memory of the
+ * device. Web views are only reused within the same activity, call {@link #destroy()} when it is
+ * destroyed.
+ */
+public class WebViewPool {
+
+    private static final String TAG = WebViewPool.class.getCanonicalName();
+
+    private final Context context;
+    private final int poolSize;
+    private final int prefetchDistance;
+    private final Deque<WebView> idleWebViews = new ArrayDeque<>();
+    private boolean prefillScheduled = false;
+    private boolean trimmed = false;
+    private boolean destroyed = false;
+
+    public static WebViewPool create(Activity activity) {
+        ActivityManager activityManager = (ActivityManager) activity.getSystemService(Context.ACTIVITY_SERVICE);
+        boolean lowRamDevice = activityManager.isLowRamDevice();
+        int memoryClass = activityManager.getMemoryClass();
+        return new WebViewPool(activity, getPoolSize(memoryClass, lowRamDevice), getPrefetchDistance(memoryClass, lowRamDevice));
+    }
+
+    @VisibleForTesting
+    public WebViewPool(Context context, int poolSize, int prefetchDistance) {
+        this.context = context;
+        this.poolSize = poolSize;
+        this.prefetchDistance = prefetchDistance;
+        Log.v(TAG, "Pool size: " + poolSize + ", prefetch distance: " + prefetchDistance);
+    }
+
+    /**
+     * @param memoryClass memory limit of the app in MB (see {@link ActivityManager#getMemoryClass()})
+     * @return how many unused web views are kept
+     */
+    @VisibleForTesting
+    static int getPoolSize(int memoryClass, boolean lowRamDevice) {
+        if(lowRamDevice) {
+            return 0;
+        } else if(memoryClass < 128) {
+            return 1;
+        }
+        return 2;
+    }
+
+    /**
+     * @return how many pages before / after the current page are rendered
+     */
+    @VisibleForTesting
+    static int getPrefetchDistance(int memoryClass, boolean lowRamDevice) {
+        if(lowRamDevice || memoryClass < 256) {
+            return 1;
+        }
+        return 2;
+    }
+
+    public int getPrefetchDistance() {
+        return prefetchDistance;
+    }
+
+    @VisibleForTesting
+    public int getIdleCount() {
+        return idleWebViews.size();
+    }
+
+    /**
+     * @return web view from the pool or a new one if the pool is empty
+     */
+    public WebView acquire() {
+        WebView webView = idleWebViews.poll();
+        if(webView == null) {
+            webView = create();
+        } else {
+            webView.onResume();
+        }
+        schedulePrefill();
+        return webView;
+    }
+
+    /**
+     * @return new web view (e.g. to restore the state of a web view, which doesn't work with used ones)
+     */
+    public WebView create() {
+        return new WebView(context);
+    }
+
+    /**
+     * Returns the web view to the pool, it is destroyed if the pool is full
+     */
+    public void release(WebView webView) {
+        ViewGroup parent = (ViewGroup) webView.getParent();
+        if(parent != null) {
+            parent.removeView(webView);
+        }
+        if(destroyed || trimmed || idleWebViews.size() >= poolSize) {
+            webView.destroy();
+            return;
+        }
+
+        // Remove everything which belongs to the previous page
+        webView.stopLoading();
+        webView.setWebViewClient(new WebViewClient());
+        webView.setWebChromeClient(null);
+        webView.setOnTouchListener(null);
+        webView.setOnCreateContextMenuListener(null);
+        webView.setLayerType(View.LAYER_TYPE_NONE, null);
+        webView.clearHistory();
+        webView.loadUrl("about:blank");
+        idleWebViews.add(webView);
+    }
+
+    /**
+     * Fills the pool when the main thread is idle (again after {@link #trim()})
+     */
+    public void prefill() {
+        trimmed = false;
+        schedulePrefill();
+    }
+
+    private void schedulePrefill() {
+        // One web view at a time, to keep the ui responsive
+        if(prefillScheduled || trimmed || destroyed || idleWebViews.size() >= poolSize) {
+            return;
+        }
+        prefillScheduled = true;
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                if(!destroyed && !trimmed && idleWebViews.size() < poolSize) {
+                    idleWebViews.add(create());
+                }
+                prefillScheduled = !destroyed && !trimmed && idleWebViews.size() < poolSize;
+                return prefillScheduled;
+            }
+        });
+    }
+
+    /**
+     * Destroys all unused web views, the pool is not filled again until {@link #prefill()} is called
+     */
+    public void trim() {
+        trimmed = true;
+        Log.v(TAG, "Releasing " + idleWebViews.size() + " web views");
+        destroyIdleWebViews();
+    }
+
+    public void destroy() {
+        destroyed = true;
+        destroyIdleWebViews();
+    }
+
+    private void destroyIdleWebViews() {
+        WebView webView;
+        while((webView = idleWebViews.poll()) != null) {
+            webView.destroy();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package de.luhmer.owncloudnewsreader.helper;
+
+import android.annotation.TargetApi;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Log;
+import android.util.LruCache;
+import android.webkit.WebResourceRequest;
+import android.webkit.WebResourceResponse;
+
+import com.nostra13.universalimageloader.cache.disc.DiskCache;
+import com.nostra13.universalimageloader.core.ImageLoader;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import de.luhmer.owncloudnewsreader.async_tasks.DownloadImageHandler;
+
+import static de.luhmer.owncloudnewsreader.NewsDetailActivity.INCOGNITO_MODE_ENABLED;
+
+/**
+ * Answers the requests of the web views which show articles (call it from
+ * {@link android.webkit.WebViewClient#shouldInterceptRequest}):
+ * - ads are blocked (see {@link AdBlocker})
+ * - images (and favicons) are loaded from the image cache, so they are available offline
+ * - images which are not cached yet are downloaded into the cache in the background (the web view
+ *   loads them itself this time)
+ *
+ * Nothing is loaded from / written to the cache in incognito mode.
+ */
+public class WebViewRequestInterceptor {
+
+    private static final String TAG = WebViewRequestInterceptor.class.getCanonicalName();
+    // Number of urls whose ad check result is remembered per web view
+    private static final int MAX_CACHED_AD_CHECKS = 500;
+    private static final Pattern PATTERN_IMAGE_URL = Pattern.compile(".*\\.(jpe?g|png|gif|webp|svg|bmp)$", Pattern.CASE_INSENSITIVE);
+
+    // Shared by all web views, the same image is only downloaded once
+    private static final Set<String> pendingDownloads = Collections.synchronizedSet(new HashSet<String>());
+
+    private final SharedPreferences mPrefs;
+    // Requests are intercepted on multiple threads (LruCache is thread-safe)
+    private final LruCache<String, Boolean> adUrls = new LruCache<>(MAX_CACHED_AD_CHECKS);
+    private volatile boolean downloadMissingImages = true;
+
+    public WebViewRequestInterceptor(SharedPreferences prefs) {
+        this.mPrefs = prefs;
+    }
+
+    /**
+     * @param downloadMissingImages false while the web view shows other pages than the article
+     *                              (their images should not end up in the cache)
+     */
+    public void setDownloadMissingImages(boolean downloadMissingImages) {
+        this.downloadMissingImages = downloadMissingImages;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    public WebResourceResponse intercept(WebResourceRequest request) {
+        if(!"GET".equals(request.getMethod())) {
+            return null;
+        }
+        String accept = request.getRequestHeaders().get("Accept");
+        return intercept(request.getUrl().toString(), accept != null && accept.startsWith("image/"));
+    }
+
+    /**
+     * For devices below Lollipop (the request headers are not available)
+     */
+    public WebResourceResponse intercept(String url) {
+        return intercept(url, PATTERN_IMAGE_URL.matcher(getPath(url)).matches());
+    }
+
+    /**
+     * @return response or null if the web view should load the url itself
+     */
+    private WebResourceResponse intercept(String url, boolean isImage) {
+        if(!url.startsWith("http://") && !url.startsWith("https://")) {
+            return null;
+        }
+
+        Boolean isAd = adUrls.get(url);
+        if(isAd == null) {
+            isAd = AdBlocker.isAd(url);
+            adUrls.put(url, isAd);
+        }
+        if(isAd) {
+            return AdBlocker.createEmptyResource();
+        }
+
+        if(mPrefs.getBoolean(INCOGNITO_MODE_ENABLED, false) || !ImageLoader.getInstance().isInited()) {
+            return null;
+        }
+
+        // Only images are stored in the cache, no need to know whether the request is one
+        DiskCache diskCache = ImageLoader.getInstance().getDiskCache();
+        File file = diskCache.get(url);
+        if(file != null && file.exists()) {
+            try {
+                return new WebResourceResponse(getMimeType(url), null, new FileInputStream(file));
+            } catch (FileNotFoundException e) {
+                // Removed in the meantime
+                Log.d(TAG, "Cached image removed: " + url);
+            }
+        }
+
+        if(isImage && downloadMissingImages) {
+            downloadImage(url);
+        }
+        return null;
+    }
+
+    private static void downloadImage(final String url) {
+        if(!pendingDownloads.add(url)) {
+            return;
+        }
+        new DownloadImageHandler(url).downloadAsync(new ImageDownloadFinished() {
+            @Override
+            public void DownloadFinished(Bitmap bitmap) {
+                pendingDownloads.remove(url);
+            }
+        });
+    }
+
+    private static String getMimeType(String url) {
+        String mimeType = URLConnection.guessContentTypeFromName(getPath(url));
+        // The web view detects the type of the image itself
+        return mimeType != null ? mimeType : "image/*";
+    }
+
+    private static String getPath(String url) {
+        int end = url.length();
+        int query = url.indexOf('?');
+        if(query != -1) {
+            end = query;
+        }
+        int fragment = url.indexOf('#');
+        if(fragment != -1 && fragment < end) {
+            end = fragment;
+        }
+        return url.substring(0, end).toLowerCase(Locale.US);
+    }
+}
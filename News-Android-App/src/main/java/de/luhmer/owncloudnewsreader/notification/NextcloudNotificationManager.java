@@ -121,6 +121,9 @@ public class NextcloudNotificationManager {
 
 
 
+    /**
+     * @param limit size of the image cache in MB
+     */
     public static void showNotificationImageDownloadLimitReached(Context context, String channelId, int limit) {
         NotificationManager notificationManager = getNotificationManagerAndCreateChannel(context, channelId);
 
@@ -128,7 +131,7 @@ public class NextcloudNotificationManager {
         PendingIntent pIntent = PendingIntent.getActivity(context, 0, intentNewsReader, 0);
         NotificationCompat.Builder notifyBuilder = new NotificationCompat.Builder(context, channelId)
                 .setContentTitle("Nextcloud News")
-                .setContentText("Only " + limit + " images can be cached at once")
+                .setContentText("Only " + limit + " MB of images can be cached at once")
                 .setSmallIcon(R.drawable.ic_notification)
                 .setContentIntent(pIntent);
 
@@ -21,78 +21,96 @@
 
 package de.luhmer.owncloudnewsreader.reader;
 
+import android.text.TextUtils;
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
 import de.luhmer.owncloudnewsreader.database.model.Feed;
 import de.luhmer.owncloudnewsreader.database.model.Folder;
 
+/**
+ * Compares the folders / feeds of the server with the local ones (by id) and only writes the
+ * differences. What changed is collected in a {@link SubscriptionChanges}.
+ */
 public class InsertIntoDatabase {
     private static final String TAG = "InsertRssItemIntoDb";
 
-    public static void InsertFoldersIntoDatabase(List<Folder> folderList, DatabaseConnectionOrm dbConn)
+    public static void InsertFoldersIntoDatabase(List<Folder> folderList, DatabaseConnectionOrm dbConn, SubscriptionChanges changes)
     {
-        dbConn.deleteOldAndInsertNewFolders(folderList);
-
-        /*
-        List<Feed> feeds = dbConn.getListOfFeeds();
+        if(folderList == null)
+            return;
 
-        List<String> tagsAvailable = new ArrayList<String>(feeds.size());
-        for(int i = 0; i < feeds.size(); i++)
-            tagsAvailable.add(feeds.get(i).getFeedTitle());
+        Map<Long, Folder> oldFolders = new LinkedHashMap<>();
+        for(Folder folder : dbConn.getListOfFolders())
+            oldFolders.put(folder.getId(), folder);
 
-
-        if(folderList != null)
+        List<Folder> changedFolders = new ArrayList<>();
+        for(Folder folder : folderList)
         {
-            int addedCount = 0;
-            int removedCount = 0;
-
-            for(Folder folder : folderList)
-            {
-                if(!tagsAvailable.contains(folder.getLabel()))
-                {
-                    addedCount++;
-                    dbConn.insertNewFolder(folder);
-                }
+            Folder oldFolder = oldFolders.remove(folder.getId());
+            if(oldFolder == null) {
+                changes.addedFolderIds.add(folder.getId());
+                changedFolders.add(folder);
+            } else if(!TextUtils.equals(oldFolder.getLabel(), folder.getLabel())) {
+                changes.renamedFolders.add(folder);
+                changedFolders.add(folder);
             }
-
-            Log.d("ADD", ""+ addedCount);
-            Log.d("REMOVE", ""+ removedCount++);
         }
-    */
+        // Folders which are left don't exist on the server anymore
+        changes.removedFolderIds.addAll(oldFolders.keySet());
+
+        if(!changedFolders.isEmpty() || !oldFolders.isEmpty())
+            dbConn.updateFolders(changedFolders, oldFolders.keySet());
     }
 
-    public static void InsertFeedsIntoDatabase(List<Feed> feeds, DatabaseConnectionOrm dbConn)
+    public static void InsertFeedsIntoDatabase(List<Feed> feeds, DatabaseConnectionOrm dbConn, SubscriptionChanges changes)
     {
-        List<Feed> oldFeeds = dbConn.getListOfFeeds();
+        if(feeds == null)
+            return;
+
+        Map<Long, Feed> oldFeeds = new LinkedHashMap<>();
+        for(Feed feed : dbConn.getListOfFeeds())
+            oldFeeds.put(feed.getId(), feed);
 
-        if(feeds != null)
+        List<Feed> changedFeeds = new ArrayList<>();
+        for(Feed newFeed : feeds)
         {
-            dbConn.insertNewFeed(feeds);
-
-            for(Feed oldFeed : oldFeeds)
-            {
-                boolean found = false;
-                for(Feed newFeed : feeds)
-                {
-                    if(oldFeed.getId() == newFeed.getId()) {
-                        found = true;
-
-                        //Set the avg color after sync again.
-                        newFeed.setAvgColour(oldFeed.getAvgColour());
-                        dbConn.updateFeed(newFeed);
-                        break;
-                    }
-
-                }
-                if(!found)
-                {
-                    dbConn.removeFeedById(oldFeed.getId());
-                    Log.v(TAG, "Remove Subscription: " + oldFeed.getFeedTitle());
-                }
+            Feed oldFeed = oldFeeds.remove(newFeed.getId());
+            if(oldFeed == null) {
+                changes.addedFeedIds.add(newFeed.getId());
+                changedFeeds.add(newFeed);
+                continue;
             }
+
+            //Set the avg color after sync again.
+            newFeed.setAvgColour(oldFeed.getAvgColour());
+
+            if(!equals(oldFeed.getFolderId(), newFeed.getFolderId())) {
+                changes.movedFeedIds.add(newFeed.getId());
+                changedFeeds.add(newFeed);
+            } else if(!TextUtils.equals(oldFeed.getFeedTitle(), newFeed.getFeedTitle()) ||
+                    !TextUtils.equals(oldFeed.getFaviconUrl(), newFeed.getFaviconUrl()) ||
+                    !TextUtils.equals(oldFeed.getLink(), newFeed.getLink())) {
+                changes.updatedFeeds.add(newFeed);
+                changedFeeds.add(newFeed);
+            }
+        }
+
+        for(Feed oldFeed : oldFeeds.values()) {
+            changes.removedFeedIds.add(oldFeed.getId());
+            Log.v(TAG, "Remove Subscription: " + oldFeed.getFeedTitle());
         }
+
+        if(!changedFeeds.isEmpty() || !oldFeeds.isEmpty())
+            dbConn.updateFeeds(changedFeeds, oldFeeds.keySet());
+    }
+
+    private static boolean equals(Long a, Long b) {
+        return a == null ? b == null : a.equals(b);
     }
 }
@@ -0,0 +1,45 @@
+package de.luhmer.owncloudnewsreader.reader;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import de.luhmer.owncloudnewsreader.database.model.Feed;
+import de.luhmer.owncloudnewsreader.database.model.Folder;
+
+/**
+ * Summary of the folder / feed changes of a sync (see {@link InsertIntoDatabase}). Lets the list
+ * of subscriptions decide whether it needs to be rebuilt or can be updated in place.
+ */
+public class SubscriptionChanges {
+
+    public final List<Long> addedFolderIds = new ArrayList<>();
+    public final List<Folder> renamedFolders = new ArrayList<>();
+    public final List<Long> removedFolderIds = new ArrayList<>();
+
+    public final List<Long> addedFeedIds = new ArrayList<>();
+    // Feeds with a new title, favicon or link
+    public final List<Feed> updatedFeeds = new ArrayList<>();
+    // Feeds which are in another folder now
+    public final List<Long> movedFeedIds = new ArrayList<>();
+    public final List<Long> removedFeedIds = new ArrayList<>();
+
+    public boolean isEmpty() {
+        return !hasStructuralChanges() && renamedFolders.isEmpty() && updatedFeeds.isEmpty();
+    }
+
+    /**
+     * @return true if folders / feeds have been added, removed or moved
+     */
+    public boolean hasStructuralChanges() {
+        return !addedFolderIds.isEmpty() || !removedFolderIds.isEmpty() ||
+                !addedFeedIds.isEmpty() || !movedFeedIds.isEmpty() || !removedFeedIds.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "Folders: %d added, %d renamed, %d removed - Feeds: %d added, %d updated, %d moved, %d removed",
+                addedFolderIds.size(), renamedFolders.size(), removedFolderIds.size(),
+                addedFeedIds.size(), updatedFeeds.size(), movedFeedIds.size(), removedFeedIds.size());
+    }
+}
@@ -84,6 +84,18 @@ public interface API {
             @Query("oldestFirst") boolean oldestFirst
     );
 
+    /** Same as {@link #items} but the response is streamed (see {@link RssItemObservable#events}) **/
+    @GET("items")
+    @Streaming
+    Call<ResponseBody> itemsStreamed(
+            @Query("batchSize") long batchSize,
+            @Query("offset") long offset,
+            @Query("type") int type,
+            @Query("id") long id,
+            @Query("getRead") boolean getRead,
+            @Query("oldestFirst") boolean oldestFirst
+    );
+
     @GET("items/updated")
     @Streaming
     Observable<ResponseBody> updatedItems(
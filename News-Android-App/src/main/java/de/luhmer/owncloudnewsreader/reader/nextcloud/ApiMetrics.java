@@ -0,0 +1,136 @@
+package de.luhmer.owncloudnewsreader.reader.nextcloud;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Collects statistics of the requests to the news api per endpoint: how often the response came
+ * from the http cache, was not modified (304) or had to be downloaded, whether it was compressed
+ * and how long it took until the response headers were received.
+ *
+ * Needs to be added as application interceptor (not as network interceptor), otherwise responses
+ * from the cache are not seen.
+ */
+public class ApiMetrics implements Interceptor {
+
+    private static final String TAG = ApiMetrics.class.getCanonicalName();
+
+    private final Map<String, Endpoint> endpoints = new TreeMap<>();
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String endpoint = getEndpoint(request);
+        if(endpoint == null) {
+            // E.g. images
+            return chain.proceed(request);
+        }
+
+        long start = System.currentTimeMillis();
+        Response response = chain.proceed(request);
+        long millis = System.currentTimeMillis() - start;
+
+        // The response as it came from the server (still compressed), null if it came from the cache
+        Response networkResponse = response.networkResponse();
+        boolean cacheHit = networkResponse == null;
+        boolean notModified = networkResponse != null && networkResponse.code() == HttpURLConnection.HTTP_NOT_MODIFIED;
+        boolean compressed = networkResponse != null && "gzip".equalsIgnoreCase(networkResponse.header("Content-Encoding"));
+        long bytes = networkResponse != null ? getContentLength(networkResponse) : 0;
+
+        synchronized (endpoints) {
+            Endpoint stats = endpoints.get(endpoint);
+            if(stats == null) {
+                stats = new Endpoint();
+                endpoints.put(endpoint, stats);
+            }
+            stats.requestCount++;
+            stats.cacheHitCount += cacheHit ? 1 : 0;
+            stats.notModifiedCount += notModified ? 1 : 0;
+            stats.compressedCount += compressed ? 1 : 0;
+            stats.bytes += bytes;
+            stats.millis += millis;
+        }
+
+        Log.v(TAG, endpoint + " - " + response.code() + (cacheHit ? " (cache)" : notModified ? " (not modified)" : "") +
+                (compressed ? " gzip" : "") + (bytes > 0 ? " " + bytes + " bytes" : "") + " in " + millis + "ms");
+        return response;
+    }
+
+    /**
+     * @return e.g. "GET feeds" or "PUT feeds/{id}/rename", null if the request doesn't belong to the api
+     */
+    static String getEndpoint(Request request) {
+        String path = request.url().encodedPath();
+        int index = path.indexOf(API.mApiEndpoint);
+        if(index == -1) {
+            return null;
+        }
+        String endpoint = path.substring(index + API.mApiEndpoint.length()).replaceAll("(^|/)\\d+(?=/|$)", "$1{id}");
+        return request.method() + " " + endpoint;
+    }
+
+    private static long getContentLength(Response response) {
+        // Unknown for chunked responses
+        String contentLength = response.header("Content-Length");
+        try {
+            return contentLength != null ? Long.parseLong(contentLength) : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public Endpoint getEndpointMetrics(String endpoint) {
+        synchronized (endpoints) {
+            Endpoint stats = endpoints.get(endpoint);
+            return stats != null ? stats.copy() : new Endpoint();
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Api metrics:");
+        synchronized (endpoints) {
+            for(Map.Entry<String, Endpoint> endpoint : endpoints.entrySet()) {
+                sb.append("\n").append(endpoint.getKey()).append(" - ").append(endpoint.getValue());
+            }
+        }
+        return sb.toString();
+    }
+
+    public static class Endpoint {
+        public int requestCount;
+        public int cacheHitCount;
+        public int notModifiedCount;
+        public int compressedCount;
+        // Bytes received from the server (if the length is known)
+        public long bytes;
+        public long millis;
+
+        private Endpoint copy() {
+            Endpoint copy = new Endpoint();
+            copy.requestCount = requestCount;
+            copy.cacheHitCount = cacheHitCount;
+            copy.notModifiedCount = notModifiedCount;
+            copy.compressedCount = compressedCount;
+            copy.bytes = bytes;
+            copy.millis = millis;
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d requests (%d cached, %d not modified, %d compressed), %d kB, avg %dms",
+                    requestCount, cacheHitCount, notModifiedCount, compressedCount, bytes / 1024,
+                    requestCount > 0 ? millis / requestCount : 0);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package de.luhmer.owncloudnewsreader.reader.nextcloud;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Network interceptor which lets the http cache store the small lists of the api which rarely
+ * change, even though the server marks them as not cacheable. They are revalidated on every
+ * request (If-None-Match / If-Modified-Since), so an unchanged list only costs a 304.
+ *
+ * Only works if the server sends an ETag or Last-Modified header.
+ */
+public class ConditionalGetInterceptor implements Interceptor {
+
+    static final List<String> REVALIDATED_ENDPOINTS = Arrays.asList("folders", "feeds", "version");
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        Response response = chain.proceed(request);
+
+        if("GET".equals(request.method()) && isRevalidated(request.url()) &&
+                (response.header("ETag") != null || response.header("Last-Modified") != null)) {
+            return response.newBuilder()
+                    .header("Cache-Control", "no-cache")
+                    .removeHeader("Pragma")
+                    .removeHeader("Expires")
+                    .build();
+        }
+        return response;
+    }
+
+    static boolean isRevalidated(HttpUrl url) {
+        for(String endpoint : REVALIDATED_ENDPOINTS) {
+            if(url.encodedPath().endsWith(API.mApiEndpoint + endpoint)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
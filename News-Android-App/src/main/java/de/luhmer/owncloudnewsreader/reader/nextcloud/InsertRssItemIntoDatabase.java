@@ -21,79 +21,173 @@
 
 package de.luhmer.owncloudnewsreader.reader.nextcloud;
 
-import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
+import de.luhmer.owncloudnewsreader.database.RssItemPreview;
 import de.luhmer.owncloudnewsreader.database.model.RssItem;
 
 class InsertRssItemIntoDatabase {
 
-    static RssItem parseItem(JsonObject e) {
-		Date pubDate = new Date(e.get("pubDate").getAsLong() * 1000);
+    private static final Pattern YOUTUBE_URL_PATTERN = Pattern.compile("^https?://(www.)?youtube.com/.*");
+
+    /**
+     * Skips to the items array of an items response ({"items": [...]}) and begins it
+     */
+    static void beginItemsArray(JsonReader reader) throws IOException {
+        reader.beginObject();
+
+        String currentName;
+        while(reader.hasNext() && (currentName = reader.nextName()) != null) {
+            if(currentName.equals("items")) {
+                break;
+            } else {
+                reader.skipValue();
+            }
+        }
 
-        String content = e.get("body").getAsString();
+        reader.beginArray();
+    }
 
-        /*
-        // URL Decoding content (some pages provide url decoded content - such as showrss.info
-        try {
-            // Try URL decoding
-            content = URLDecoder.decode(content, "UTF-8");
-        } catch (UnsupportedEncodingException e1) {
-            e1.printStackTrace();
+    /**
+     * Reads the next item object directly from the stream into a {@link RssItem} - without
+     * building an intermediate JsonObject tree for every item.
+     *
+     * @throws JsonParseException if a required field is missing or null
+     */
+    static RssItem parseItem(JsonReader reader) throws IOException {
+        RssItem rssItem = new RssItem();
+        boolean hasId = false;
+        boolean hasFeedId = false;
+
+        reader.beginObject();
+        while(reader.hasNext()) {
+            String name = reader.nextName();
+            if(reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+
+            switch(name) {
+                case "id":
+                    rssItem.setId(reader.nextLong());
+                    hasId = true;
+                    break;
+                case "feedId":
+                    rssItem.setFeedId(reader.nextLong());
+                    hasFeedId = true;
+                    break;
+                case "guid":
+                    rssItem.setGuid(reader.nextString());
+                    break;
+                case "guidHash":
+                    rssItem.setGuidHash(reader.nextString());
+                    break;
+                case "fingerprint":
+                    rssItem.setFingerprint(reader.nextString());
+                    break;
+                case "body":
+                    rssItem.setBody(reader.nextString());
+                    break;
+                case "pubDate":
+                    rssItem.setPubDate(new Date(reader.nextLong() * 1000));
+                    break;
+                case "lastModified":
+                    rssItem.setLastModified(new Date(reader.nextLong()));
+                    break;
+                case "unread":
+                    rssItem.setRead(!reader.nextBoolean());
+                    break;
+                case "starred":
+                    rssItem.setStarred(reader.nextBoolean());
+                    break;
+                //Possible XSS fields
+                case "title":
+                    rssItem.setTitle(reader.nextString());
+                    break;
+                case "author":
+                    rssItem.setAuthor(reader.nextString());
+                    break;
+                case "url":
+                    rssItem.setLink(reader.nextString());
+                    break;
+                case "enclosureLink":
+                    rssItem.setEnclosureLink(reader.nextString());
+                    break;
+                case "enclosureMime":
+                    rssItem.setEnclosureMime(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
         }
-        */
+        reader.endObject();
 
-        //String url = e.get("url").getAsString();
-        String url = getStringOrDefault("url", "about:blank", e);
-        String guid = e.get("guid").getAsString();
-        String enclosureLink = getStringOrEmpty("enclosureLink", e);
-        String enclosureMime = getStringOrEmpty("enclosureMime", e);
-
-        if(enclosureLink.trim().equals("") && url.matches("^https?://(www.)?youtube.com/.*")) {
-            enclosureLink = url;
-            enclosureMime = "youtube";
+        // Required fields (the item can't be stored or synced without them)
+        if(!hasId) {
+            throw new JsonParseException("Item has no id");
+        }
+        if(!hasFeedId) {
+            throw new JsonParseException("Item " + rssItem.getId() + " has no feedId");
+        }
+        if(rssItem.getGuid() == null || rssItem.getGuidHash() == null) {
+            throw new JsonParseException("Item " + rssItem.getId() + " has no guid / guidHash");
+        }
+        if(rssItem.getPubDate() == null || rssItem.getLastModified() == null) {
+            throw new JsonParseException("Item " + rssItem.getId() + " has no pubDate / lastModified");
+        }
+        if(rssItem.getBody() == null) {
+            rssItem.setBody("");
+        }
+        if(rssItem.getTitle() == null) {
+            rssItem.setTitle("");
+        }
+        if(rssItem.getAuthor() == null) {
+            rssItem.setAuthor("");
+        }
+        if(rssItem.getLink() == null) {
+            rssItem.setLink("about:blank");
+        }
+        if(rssItem.getEnclosureLink() == null) {
+            rssItem.setEnclosureLink("");
+        }
+        if(rssItem.getEnclosureMime() == null) {
+            rssItem.setEnclosureMime("");
+        }
+        if(rssItem.getRead() == null) {
+            rssItem.setRead(false);
+        }
+        if(rssItem.getStarred() == null) {
+            rssItem.setStarred(false);
         }
 
-        RssItem rssItem = new RssItem();
-        rssItem.setId(e.get("id").getAsLong());
-        rssItem.setFeedId(e.get("feedId").getAsLong());
-        rssItem.setGuid(guid);
-        rssItem.setGuidHash(e.get("guidHash").getAsString());
-        rssItem.setFingerprint(getStringOrDefault("fingerprint", null, e));
-        rssItem.setBody(content);
-        rssItem.setLastModified(new Date(e.get("lastModified").getAsLong()));
-        rssItem.setRead(!e.get("unread").getAsBoolean());
+        return finishItem(rssItem);
+    }
+
+    private static RssItem finishItem(RssItem rssItem) {
         rssItem.setRead_temp(rssItem.getRead());
-        rssItem.setStarred(e.get("starred").getAsBoolean());
         rssItem.setStarred_temp(rssItem.getStarred());
-        rssItem.setPubDate(pubDate);
 
-        //Possible XSS fields
-        rssItem.setTitle(e.get("title").getAsString());
-        rssItem.setAuthor(e.get("author").getAsString());
-        rssItem.setLink(url);
-        rssItem.setEnclosureLink(enclosureLink);
-        rssItem.setEnclosureMime(enclosureMime);
+        if(rssItem.getEnclosureLink().trim().equals("") && YOUTUBE_URL_PATTERN.matcher(rssItem.getLink()).matches()) {
+            rssItem.setEnclosureLink(rssItem.getLink());
+            rssItem.setEnclosureMime("youtube");
+        }
 
         if(rssItem.getFingerprint() == null) {
             rssItem.setFingerprint(UUID.randomUUID().toString());
         }
 
-        return rssItem;
-	}
-
-	private static String getStringOrEmpty(String key, JsonObject jObj) {
-        return getStringOrDefault(key, "", jObj);
-    }
+        // Done once here instead of every time the item is shown in the list
+        RssItemPreview.update(rssItem);
 
-    private static String getStringOrDefault(String key, String defaultValue, JsonObject jObj) {
-        if(jObj.has(key) && !jObj.get(key).isJsonNull()) {
-            return jObj.get(key).getAsString();
-        } else {
-            return defaultValue;
-        }
+        return rssItem;
     }
 
 }
@@ -1,10 +1,22 @@
 package de.luhmer.owncloudnewsreader.reader.nextcloud;
 
+import android.util.Log;
+
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
 
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
 import de.luhmer.owncloudnewsreader.reader.FeedItemTags;
+import io.reactivex.Single;
+import io.reactivex.functions.BiFunction;
+import io.reactivex.functions.BiPredicate;
+import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
+import retrofit2.Response;
 
 /**
  * Created by david on 26.05.17.
@@ -12,55 +24,161 @@ import de.luhmer.owncloudnewsreader.reader.FeedItemTags;
 
 public class ItemStateSync {
 
+    private static final String TAG = ItemStateSync.class.getCanonicalName();
+
+    // Max. number of items per request - keeps the request bodies small enough to not run into timeouts
+    private static final int CHUNK_SIZE = 500;
+    static final int MAX_RETRIES_PER_CHUNK = 2;
+
+    /**
+     * @return false if the server rejected some of the changes
+     * @throws IOException if some of the changes couldn't be sent (after all retries), the
+     * remaining changes are sent anyway
+     */
     public static boolean PerformItemStateSync(API api, DatabaseConnectionOrm dbConn) throws IOException {
-        boolean successful;
-
-        //Mark as READ
-        List<String> itemIds = dbConn.getRssItemsIdsFromList(dbConn.getAllNewReadRssItems());
-        boolean result = PerformTagExecution(itemIds, FeedItemTags.MARK_ITEM_AS_READ, dbConn, api);
-        if(result)
-            dbConn.change_readUnreadStateOfItem(itemIds, true);
-        successful = result;
-
-        //Mark as UNREAD
-        itemIds = dbConn.getRssItemsIdsFromList(dbConn.getAllNewUnreadRssItems());
-        result = PerformTagExecution(itemIds, FeedItemTags.MARK_ITEM_AS_UNREAD, dbConn, api);
-        if(result)
-            dbConn.change_readUnreadStateOfItem(itemIds, false);
-        successful &= result;
-
-        //Mark as STARRED
-        itemIds = dbConn.getRssItemsIdsFromList(dbConn.getAllNewStarredRssItems());
-        result = PerformTagExecution(itemIds, FeedItemTags.MARK_ITEM_AS_STARRED, dbConn, api);
-        if(result)
-            dbConn.changeStarrUnstarrStateOfItem(itemIds, true);
-        successful &= result;
-
-        //Mark as UNSTARRED
-        itemIds = dbConn.getRssItemsIdsFromList(dbConn.getAllNewUnstarredRssItems());
-        result = PerformTagExecution(itemIds, FeedItemTags.MARK_ITEM_AS_UNSTARRED, dbConn, api);
-        if(result)
-            dbConn.changeStarrUnstarrStateOfItem(itemIds, false);
-        successful &= result;
+        // Changes of the last second might still be queued
+        dbConn.flushRssItemStates();
+
+        // First error (other than a rejected chunk) of all chunks
+        AtomicReference<Throwable> error = new AtomicReference<>();
 
+        // The four mutations are independent from each other, so they are sent in parallel. This
+        // uses the io scheduler since the caller might be blocking a thread of the sync scheduler.
+        List<Single<Boolean>> mutations = Arrays.asList(
+                PerformTagExecution(dbConn.getIdsOfAllNewReadRssItems(), FeedItemTags.MARK_ITEM_AS_READ, dbConn, api, error),
+                PerformTagExecution(dbConn.getIdsOfAllNewUnreadRssItems(), FeedItemTags.MARK_ITEM_AS_UNREAD, dbConn, api, error),
+                PerformTagExecution(dbConn.getIdsOfAllNewStarredRssItems(), FeedItemTags.MARK_ITEM_AS_STARRED, dbConn, api, error),
+                PerformTagExecution(dbConn.getIdsOfAllNewUnstarredRssItems(), FeedItemTags.MARK_ITEM_AS_UNSTARRED, dbConn, api, error));
+
+        boolean successful = Single.zip(mutations, new Function<Object[], Boolean>() {
+            @Override
+            public Boolean apply(Object[] results) {
+                boolean successful = true;
+                for(Object result : results) {
+                    successful &= (Boolean) result;
+                }
+                return successful;
+            }
+        }).blockingGet();
+
+        // Same as before the requests were chunked: rejected changes make the sync unsuccessful,
+        // network errors are passed on
+        Throwable throwable = error.get();
+        if(throwable instanceof IOException) {
+            throw (IOException) throwable;
+        } else if(throwable instanceof RuntimeException) {
+            throw (RuntimeException) throwable;
+        } else if(throwable != null) {
+            throw new IOException(throwable);
+        }
         return successful;
     }
 
-    private static boolean PerformTagExecution(List<String> itemIds, FeedItemTags tag, DatabaseConnectionOrm dbConn, API api) throws IOException {
+    /**
+     * Sends the item ids in chunks of {@link #CHUNK_SIZE} (one after another). Every chunk is retried
+     * on its own (only after transient errors, see {@link #isTransientError(Throwable)}) and the
+     * local state of its items is updated as soon as the server accepted it. A chunk which failed
+     * doesn't stop the following ones, its error is stored in error (unless the server rejected it).
+     */
+    private static Single<Boolean> PerformTagExecution(List<String> itemIds, final FeedItemTags tag, final DatabaseConnectionOrm dbConn, final API api, final AtomicReference<Throwable> error) {
         if(itemIds.size() <= 0) { // Nothing to sync --> Skip
-            return true;
+            return Single.just(true);
+        }
+
+        List<Single<Boolean>> chunks = new ArrayList<>();
+        for(int i = 0; i < itemIds.size(); i += CHUNK_SIZE) {
+            final List<String> chunk = itemIds.subList(i, Math.min(i + CHUNK_SIZE, itemIds.size()));
+            chunks.add(Single.fromCallable(new Callable<Boolean>() {
+                        @Override
+                        public Boolean call() throws Exception {
+                            return PerformChunkExecution(chunk, tag, dbConn, api);
+                        }
+                    })
+                    .retry(new BiPredicate<Integer, Throwable>() {
+                        @Override
+                        public boolean test(Integer retryCount, Throwable throwable) {
+                            return retryCount <= MAX_RETRIES_PER_CHUNK && isTransientError(throwable);
+                        }
+                    })
+                    .onErrorReturn(new Function<Throwable, Boolean>() {
+                        @Override
+                        public Boolean apply(Throwable throwable) {
+                            Log.e(TAG, "Syncing " + tag + " failed for " + chunk.size() + " items", throwable);
+                            if(!(throwable instanceof HttpStatusException)) {
+                                error.compareAndSet(null, throwable);
+                            }
+                            return false;
+                        }
+                    }));
+        }
+
+        return Single.concat(chunks)
+                .reduce(true, new BiFunction<Boolean, Boolean, Boolean>() {
+                    @Override
+                    public Boolean apply(Boolean successful, Boolean result) {
+                        return successful && result;
+                    }
+                })
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * @return true if sending the chunk again might succeed (network errors and server errors),
+     * false if the server rejected it (e.g. 4xx responses) or the error is a bug
+     */
+    static boolean isTransientError(Throwable throwable) {
+        if(throwable instanceof HttpStatusException) {
+            return ((HttpStatusException) throwable).code >= 500;
+        }
+        return throwable instanceof IOException;
+    }
+
+    static class HttpStatusException extends IOException {
+        final int code;
+
+        HttpStatusException(String message, int code) {
+            super(message + " - HTTP " + code);
+            this.code = code;
+        }
+    }
+
+    private static boolean PerformChunkExecution(List<String> itemIds, FeedItemTags tag, DatabaseConnectionOrm dbConn, API api) throws IOException {
+        Response<Void> response;
+        switch(tag) {
+            case MARK_ITEM_AS_READ:
+                response = api.markItemsRead(new ItemIds(itemIds)).execute();
+                break;
+            case MARK_ITEM_AS_UNREAD:
+                response = api.markItemsUnread(new ItemIds(itemIds)).execute();
+                break;
+            case MARK_ITEM_AS_STARRED:
+                response = api.markItemsStarred(new ItemMap(itemIds, dbConn)).execute();
+                break;
+            case MARK_ITEM_AS_UNSTARRED:
+                response = api.markItemsUnstarred(new ItemMap(itemIds, dbConn)).execute();
+                break;
+            default:
+                return false;
+        }
+
+        if(!response.isSuccessful()) {
+            throw new HttpStatusException("Syncing " + tag + " failed", response.code());
         }
 
         switch(tag) {
             case MARK_ITEM_AS_READ:
-                return api.markItemsRead(new ItemIds(itemIds)).execute().isSuccessful();
+                dbConn.change_readUnreadStateOfItem(itemIds, true);
+                break;
             case MARK_ITEM_AS_UNREAD:
-                return api.markItemsUnread(new ItemIds(itemIds)).execute().isSuccessful();
+                dbConn.change_readUnreadStateOfItem(itemIds, false);
+                break;
             case MARK_ITEM_AS_STARRED:
-                return api.markItemsStarred(new ItemMap(itemIds, dbConn)).execute().isSuccessful();
+                dbConn.changeStarrUnstarrStateOfItem(itemIds, true);
+                break;
             case MARK_ITEM_AS_UNSTARRED:
-                return api.markItemsUnstarred(new ItemMap(itemIds, dbConn)).execute().isSuccessful();
+                dbConn.changeStarrUnstarrStateOfItem(itemIds, false);
+                break;
         }
-        return false;
+        return true;
     }
 }
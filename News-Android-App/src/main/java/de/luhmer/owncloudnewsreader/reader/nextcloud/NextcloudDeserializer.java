@@ -13,7 +13,6 @@ import java.util.List;
 
 import de.luhmer.owncloudnewsreader.database.model.Feed;
 import de.luhmer.owncloudnewsreader.database.model.Folder;
-import de.luhmer.owncloudnewsreader.database.model.RssItem;
 
 /**
  * Created by david on 24.05.17.
@@ -43,9 +42,8 @@ public class NextcloudDeserializer<T> implements JsonDeserializer<List<T>> {
                 items.add((T) parseFolder(jArr.get(i).getAsJsonObject()));
             } else if(mType == Feed.class) {
                 items.add((T) parseFeed(jArr.get(i).getAsJsonObject()));
-            } else if(mType == RssItem.class) {
-                items.add((T) InsertRssItemIntoDatabase.parseItem(jArr.get(i).getAsJsonObject()));
             }
+            // RssItems are read with the streaming parser (see RssItemListTypeAdapter)
 
             //items.add(gson.fromJson(jArr.get(i), mType));
         }
@@ -0,0 +1,105 @@
+package de.luhmer.owncloudnewsreader.reader.nextcloud;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
+import de.luhmer.owncloudnewsreader.database.model.RssItem;
+
+/**
+ * Buffers rss items and stores them using {@link DatabaseConnectionOrm#insertNewItems(Iterable)}.
+ *
+ * A transaction is committed once the buffered items reach a certain size (which is mostly the
+ * size of their bodies) instead of a fixed number of items. That way the amount of data written
+ * per transaction is predictable, no matter if a feed ships short teasers or complete articles.
+ */
+class RssItemBatchWriter {
+
+    private static final String TAG = RssItemBatchWriter.class.getCanonicalName();
+
+    static final int DEFAULT_MAX_BATCH_BYTES = 512 * 1024;
+    // Upper bound for items without (or with tiny) bodies
+    private static final int MAX_BATCH_ITEMS = 1000;
+    // Rough estimate for the columns that are not counted separately (ids, flags, dates, hashes)
+    private static final int ITEM_OVERHEAD_BYTES = 200;
+
+    private final DatabaseConnectionOrm mDbConn;
+    private final int mMaxBatchBytes;
+    private final List<RssItem> mBuffer = new ArrayList<>();
+    private int mBufferBytes = 0;
+
+    private int mTotalRows = 0;
+    private int mTransactionCount = 0;
+    private long mTotalInsertNanos = 0;
+
+    RssItemBatchWriter(DatabaseConnectionOrm dbConn) {
+        this(dbConn, DEFAULT_MAX_BATCH_BYTES);
+    }
+
+    RssItemBatchWriter(DatabaseConnectionOrm dbConn, int maxBatchBytes) {
+        this.mDbConn = dbConn;
+        this.mMaxBatchBytes = maxBatchBytes;
+    }
+
+    void add(RssItem rssItem) {
+        mBuffer.add(rssItem);
+        mBufferBytes += estimateSize(rssItem);
+
+        if(mBufferBytes >= mMaxBatchBytes || mBuffer.size() >= MAX_BATCH_ITEMS) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes all buffered items in one transaction
+     */
+    void flush() {
+        if(mBuffer.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        mDbConn.insertNewItems(mBuffer);
+        long duration = System.nanoTime() - start;
+
+        mTotalInsertNanos += duration;
+        mTotalRows += mBuffer.size();
+        mTransactionCount++;
+
+        Log.v(TAG, "Inserted " + mBuffer.size() + " items (~" + (mBufferBytes / 1024) + "kB) in " + TimeUnit.NANOSECONDS.toMillis(duration) + "ms");
+
+        mBuffer.clear();
+        mBufferBytes = 0;
+    }
+
+    /**
+     * Writes the remaining items and logs the insert statistics
+     */
+    void close() {
+        flush();
+        Log.v(TAG, "Inserted " + mTotalRows + " items in " + mTransactionCount + " transactions - " + getRowsPerSecond() + " rows/s");
+    }
+
+    int getRowsPerSecond() {
+        if(mTotalInsertNanos == 0) {
+            return 0;
+        }
+        return (int) (mTotalRows * TimeUnit.SECONDS.toNanos(1) / mTotalInsertNanos);
+    }
+
+    private static int estimateSize(RssItem rssItem) {
+        return ITEM_OVERHEAD_BYTES
+                + length(rssItem.getBody())
+                + length(rssItem.getTitle())
+                + length(rssItem.getLink())
+                + length(rssItem.getAuthor())
+                + length(rssItem.getEnclosureLink());
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+}
@@ -0,0 +1,176 @@
+package de.luhmer.owncloudnewsreader.reader.nextcloud;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
+import de.luhmer.owncloudnewsreader.database.DatabaseWriter;
+import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Decouples the database inserts of the rss item sync from downloading and parsing the items.
+ *
+ * Downloading and parsing are one stage: the items are parsed while the response is streamed,
+ * the socket keeps receiving while the parser works through the buffered data. A queue between
+ * them would only copy the response once more. Parsed batches are handed over to the
+ * {@link DatabaseWriter}, one write per batch. While the writer runs the sqlite transaction of one
+ * batch, the sync thread is already downloading / parsing the next one, and other writes (e.g. of
+ * the ui) get their turn in between. If the database can't keep up, {@link #submit(List)} blocks
+ * (backpressure), so memory usage stays bounded by the number of pending batches.
+ */
+class RssItemInsertPipeline {
+
+    private static final String TAG = RssItemInsertPipeline.class.getCanonicalName();
+    private static final int MAX_PENDING_BATCHES = 4;
+
+    private final DatabaseConnectionOrm mDbConn;
+    private final Semaphore mPendingBatches = new Semaphore(MAX_PENDING_BATCHES);
+
+    private volatile Throwable mWriterError;
+    private volatile int mInsertedCount = 0;
+
+    // Time the sync thread spent waiting for another stage
+    private long mResponseWaitNanos = 0;            // waiting for the server to start the response
+    private long mNetworkReadNanos = 0;             // waiting for the response body while parsing
+    private long mWriterWaitNanos = 0;              // waiting for the writer to catch up
+    // Time the writer spent inserting
+    private volatile long mInsertNanos = 0;
+
+    RssItemInsertPipeline(DatabaseConnectionOrm dbConn) {
+        this.mDbConn = dbConn;
+    }
+
+    /**
+     * Hands the batch over to the writer. The pipeline takes ownership of the list, the caller must
+     * not modify it afterwards. Blocks if the writer is too far behind.
+     */
+    void submit(final List<RssItem> items) {
+        if(items.isEmpty()) {
+            return;
+        }
+        if(mWriterError != null) {
+            throw new IllegalStateException("Inserting rss items failed", mWriterError);
+        }
+
+        long start = System.nanoTime();
+        try {
+            mPendingBatches.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for database inserts", e);
+        }
+        mWriterWaitNanos += System.nanoTime() - start;
+
+        DatabaseWriter.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    // After an error the remaining batches are skipped
+                    if(mWriterError == null) {
+                        long start = System.nanoTime();
+                        mDbConn.insertNewItems(items);
+                        mInsertedCount += items.size();
+                        mInsertNanos += System.nanoTime() - start;
+                    }
+                } catch (RuntimeException ex) {
+                    Log.e(TAG, "Inserting rss items failed", ex);
+                    mWriterError = ex;
+                } finally {
+                    mPendingBatches.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the action on the writer once all batches submitted so far are stored in the database
+     * (e.g. to store the progress of the sync). Doesn't block. The action is skipped if inserting
+     * failed.
+     */
+    void afterInserted(final Runnable action) {
+        DatabaseWriter.submit(new Runnable() {
+            @Override
+            public void run() {
+                if(mWriterError == null) {
+                    action.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Blocks until all batches submitted so far are stored in the database.
+     */
+    void flush() throws IOException {
+        try {
+            // Queued after the batches submitted so far
+            DatabaseWriter.run(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+        } catch (RuntimeException e) {
+            throw new IOException("Interrupted while waiting for database inserts", e);
+        }
+        throwWriterError();
+    }
+
+    /**
+     * Waits until all remaining batches are inserted and logs the stage statistics.
+     */
+    void finish() throws IOException {
+        try {
+            flush();
+        } finally {
+            Log.v(TAG, "Inserted " + mInsertedCount + " items - time blocked:"
+                    + " response=" + TimeUnit.NANOSECONDS.toMillis(mResponseWaitNanos) + "ms"
+                    + " network=" + TimeUnit.NANOSECONDS.toMillis(mNetworkReadNanos) + "ms"
+                    + " writer=" + TimeUnit.NANOSECONDS.toMillis(mWriterWaitNanos) + "ms"
+                    + " - time inserting: " + TimeUnit.NANOSECONDS.toMillis(mInsertNanos) + "ms");
+        }
+    }
+
+    boolean hasFailed() {
+        return mWriterError != null;
+    }
+
+    /**
+     * Used to account the time until the server sent the response headers
+     */
+    void addResponseWaitTime(long nanos) {
+        mResponseWaitNanos += nanos;
+    }
+
+    /**
+     * Wraps the response body, the time spent reading from it is accounted as waiting for the
+     * network (the rest of the time between the reads is spent parsing)
+     */
+    BufferedSource timeNetworkReads(Source body) {
+        return Okio.buffer(new ForwardingSource(body) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long start = System.nanoTime();
+                try {
+                    return super.read(sink, byteCount);
+                } finally {
+                    mNetworkReadNanos += System.nanoTime() - start;
+                }
+            }
+        });
+    }
+
+    private void throwWriterError() throws IOException {
+        if(mWriterError != null) {
+            throw new IOException("Inserting rss items failed", mWriterError);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package de.luhmer.owncloudnewsreader.reader.nextcloud;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.luhmer.owncloudnewsreader.database.model.RssItem;
+
+/**
+ * Reads an items response with the same streaming parser as the sync (see
+ * {@link RssItemObservable#events(okio.BufferedSource)}), without building a JsonObject tree.
+ */
+public class RssItemListTypeAdapter extends TypeAdapter<List<RssItem>> {
+
+    @Override
+    public List<RssItem> read(JsonReader reader) throws IOException {
+        List<RssItem> items = new ArrayList<>();
+
+        InsertRssItemIntoDatabase.beginItemsArray(reader);
+        while (reader.hasNext()) {
+            items.add(InsertRssItemIntoDatabase.parseItem(reader));
+        }
+        reader.endArray();
+
+        // Remaining fields of the response
+        while (reader.hasNext()) {
+            reader.nextName();
+            reader.skipValue();
+        }
+        reader.endObject();
+
+        return items;
+    }
+
+    /**
+     * Writes the items in the format of an items response, so {@link #read(JsonReader)} returns
+     * the same items again
+     */
+    @Override
+    public void write(JsonWriter out, List<RssItem> items) throws IOException {
+        if (items == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        out.name("items").beginArray();
+        for (RssItem item : items) {
+            out.beginObject();
+            out.name("id").value(item.getId());
+            out.name("feedId").value(item.getFeedId());
+            out.name("guid").value(item.getGuid());
+            out.name("guidHash").value(item.getGuidHash());
+            out.name("fingerprint").value(item.getFingerprint());
+            out.name("title").value(item.getTitle());
+            out.name("author").value(item.getAuthor());
+            out.name("url").value(item.getLink());
+            out.name("body").value(item.getBody());
+            out.name("enclosureLink").value(item.getEnclosureLink());
+            out.name("enclosureMime").value(item.getEnclosureMime());
+            out.name("pubDate").value(item.getPubDate() != null ? item.getPubDate().getTime() / 1000 : null);
+            out.name("lastModified").value(item.getLastModified() != null ? item.getLastModified().getTime() : null);
+            out.name("unread").value(item.getRead() != null ? !item.getRead() : null);
+            out.name("starred").value(item.getStarred());
+            out.endObject();
+        }
+        out.endArray();
+        out.endObject();
+    }
+}
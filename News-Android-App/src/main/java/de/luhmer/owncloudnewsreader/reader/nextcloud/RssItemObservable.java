@@ -3,9 +3,7 @@ package de.luhmer.owncloudnewsreader.reader.nextcloud;
 import android.content.SharedPreferences;
 import android.util.Log;
 
-import com.google.gson.JsonObject;
 import com.google.gson.stream.JsonReader;
-import com.google.gson.stream.JsonToken;
 
 import org.reactivestreams.Publisher;
 import org.reactivestreams.Subscriber;
@@ -17,6 +15,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 import de.luhmer.owncloudnewsreader.Constants;
+import de.luhmer.owncloudnewsreader.SettingsActivity;
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
 import de.luhmer.owncloudnewsreader.database.model.RssItem;
 import de.luhmer.owncloudnewsreader.reader.FeedItemTags;
@@ -30,6 +29,7 @@ import io.reactivex.disposables.Disposable;
 import io.reactivex.functions.Function;
 import okhttp3.ResponseBody;
 import okio.BufferedSource;
+import retrofit2.Response;
 
 /**
  * onNext returns the current amount of synced items
@@ -40,7 +40,10 @@ public class RssItemObservable implements Publisher<Integer> {
     private API mApi;
     private SharedPreferences mPrefs;
     private static final String TAG = RssItemObservable.class.getCanonicalName();
+    // lastModified of the database before an incremental sync, removed once the sync succeeded
+    private static final String INCOMPLETE_SYNC_LAST_MODIFIED_STRING = "INCOMPLETE_SYNC_LAST_MODIFIED";
     private static int maxSizePerSync = 300;
+    private static final int maxBatchSize = 150;
 
     public RssItemObservable(DatabaseConnectionOrm dbConn, API api, SharedPreferences prefs) {
         this.mDbConn = dbConn;
@@ -60,63 +63,36 @@ public class RssItemObservable implements Publisher<Integer> {
 
     public void sync(Subscriber<? super Integer> subscriber) throws IOException {
 
-        mDbConn.clearDatabaseOverSize();
+        // Old items are removed after the sync (see OwnCloudSyncAdapter)
+
+        // Only do something for items synced before the search index / preview columns /
+        // compressed bodies existed
+        mDbConn.indexMissingRssItemsForSearch();
+        mDbConn.updateMissingRssItemPreviews();
+        mDbConn.encodeRssItemBodies();
 
         //String authKey = AuthenticationManager.getGoogleAuthKey(username, password);
         //int maxItemsInDatabase = Integer.parseInt(mPrefs.getString(SettingsActivity.SP_MAX_ITEMS_SYNC, "200"));
 
         long lastModified = mDbConn.getLastModified();
-        //dbConn.clearDatabaseOverSize();
-
-        int requestCount = 0;
-        int totalCount   = 0;
-        int maxSyncSize = maxSizePerSync;
+        String account = mPrefs.getString(SettingsActivity.EDT_USERNAME_STRING, "") + "@" + mPrefs.getString(SettingsActivity.EDT_OWNCLOUDROOTPATH_STRING, "");
+
+        SyncCheckpoint checkpoint = SyncCheckpoint.load(mPrefs);
+        if(checkpoint != null && (!account.equals(checkpoint.account) || !checkpoint.isConsistentWith(mDbConn.getHighestItemId(), lastModified))) {
+            Log.w(TAG, "Sync checkpoint doesn't match the database - starting the first sync again: " + checkpoint);
+            checkpoint = new SyncCheckpoint(account);
+        } else if(checkpoint == null && lastModified == 0) {
+            checkpoint = new SyncCheckpoint(account);
+        }
 
-        if(lastModified == 0)//Only on first sync
+        if(checkpoint != null)//Only on first sync (or if it has been interrupted)
         {
-            long offset = 0;
-
-            Log.v(TAG, "First sync!!");
-            int maxItemsInDatabase = Constants.maxItemsCount;
-
-            do {
-                Log.v(TAG, "offset=" + offset + ",  requestCount=" + requestCount + "");
-                List<RssItem> buffer = (mApi.items(maxSyncSize, offset, Integer.valueOf(FeedItemTags.ALL.toString()), 0, false, true).execute().body());
-
-                requestCount = 0;
-                if(buffer != null) {
-                    requestCount = buffer.size();
-                    performDatabaseBatchInsert(mDbConn, buffer);
-                }
-
-                if(requestCount > 0)
-                    offset = mDbConn.getHighestItemId();
-                totalCount += requestCount;
-
-                subscriber.onNext(totalCount);
-            } while(requestCount == maxSyncSize);
-
-            Log.v(TAG, "offset=" + offset + ",  requestCount=" + requestCount + ", maxSyncSize=" + maxSyncSize);
-
-            Log.v(TAG, "Sync all items done - Starting starred now");
-
-            mPrefs.edit().putInt(Constants.LAST_UPDATE_NEW_ITEMS_COUNT_STRING, totalCount).apply();
-
-            do {
-                offset = mDbConn.getLowestItemId(true);
-                List<RssItem> buffer = mApi.items(maxSyncSize, offset, Integer.valueOf(FeedItemTags.ALL_STARRED.toString()), 0, false, true).execute().body();
-
-                requestCount = 0;
-                if(buffer != null) {
-                    requestCount = buffer.size();
-                    performDatabaseBatchInsert(mDbConn, buffer);
-                }
-                //if(requestCount > 0)
-                //	offset = dbConn.getLowestItemId(true);
-                totalCount += requestCount;
-
-                subscriber.onNext(totalCount);
-            } while(requestCount == maxSyncSize && totalCount < maxItemsInDatabase);
+            Log.v(TAG, "First sync!! " + checkpoint);
+            // Stored before the first item is inserted, otherwise an interrupted first sync would
+            // be continued as incremental sync
+            checkpoint.save(mPrefs);
+            mPrefs.edit().remove(INCOMPLETE_SYNC_LAST_MODIFIED_STRING).apply();
+            syncAllItems(subscriber, checkpoint);
         }
         else
         {
@@ -126,6 +102,18 @@ public class RssItemObservable implements Publisher<Integer> {
 
             long highestItemIdBeforeSync = mDbConn.getHighestItemId();
 
+            // The items stored before a failed sync may have been modified later than the items
+            // that were missed, so request everything since the failed sync started
+            long incompleteSyncLastModified = mPrefs.getLong(INCOMPLETE_SYNC_LAST_MODIFIED_STRING, -1);
+            if(incompleteSyncLastModified >= 0 && incompleteSyncLastModified < lastModified) {
+                Log.w(TAG, "Previous sync didn't finish - requesting items modified since " + incompleteSyncLastModified);
+                lastModified = incompleteSyncLastModified;
+            }
+            mPrefs.edit().putLong(INCOMPLETE_SYNC_LAST_MODIFIED_STRING, lastModified).commit();
+
+            // The observable emits synchronously on the current (sync) thread
+            final Throwable[] error = new Throwable[1];
+
             //Get all updated items
             mApi.updatedItems(lastModified+1, Integer.valueOf(FeedItemTags.ALL.toString()), highestItemIdBeforeSync)
                     .flatMap(new Function<ResponseBody, ObservableSource<RssItem>>() {
@@ -136,8 +124,7 @@ public class RssItemObservable implements Publisher<Integer> {
                     })
                     .subscribe(new Observer<RssItem>() {
                         int totalUpdatedUnreadItemCount = 0;
-                        final int bufferSize = 150;
-                        List<RssItem> buffer = new ArrayList<>(bufferSize); //Buffer of size X
+                        final RssItemBatchWriter batchWriter = new RssItemBatchWriter(mDbConn);
 
                         @Override
                         public void onSubscribe(@NonNull Disposable d) {
@@ -150,26 +137,189 @@ public class RssItemObservable implements Publisher<Integer> {
                                 totalUpdatedUnreadItemCount++;
                             }
 
-                            buffer.add(rssItem);
-                            if (buffer.size() >= bufferSize) {
-                                performDatabaseBatchInsert(mDbConn, buffer);
-                            }
+                            batchWriter.add(rssItem);
                         }
 
                         @Override
                         public void onError(@NonNull Throwable e) {
                             Log.e(TAG, "onError() called with: e = [" + e + "]");
+                            error[0] = e;
+                            // Don't throw away the items that have been received before the error
+                            // (the next sync requests them again anyway)
+                            try {
+                                batchWriter.close();
+                            } catch (RuntimeException ex) {
+                                Log.e(TAG, "Storing the received items failed", ex);
+                            }
                         }
 
                         @Override
                         public void onComplete() {
                             Log.v(TAG, "onComplete() called");
-                            performDatabaseBatchInsert(mDbConn, buffer);
+                            try {
+                                batchWriter.close();
+                            } catch (RuntimeException ex) {
+                                Log.e(TAG, "Storing the received items failed", ex);
+                                error[0] = ex;
+                                return;
+                            }
 
                             //If no exception occurs, set the number of updated items
-                            mPrefs.edit().putInt(Constants.LAST_UPDATE_NEW_ITEMS_COUNT_STRING, totalUpdatedUnreadItemCount).apply();
+                            mPrefs.edit()
+                                    .putInt(Constants.LAST_UPDATE_NEW_ITEMS_COUNT_STRING, totalUpdatedUnreadItemCount)
+                                    .remove(INCOMPLETE_SYNC_LAST_MODIFIED_STRING)
+                                    .apply();
                         }
                     });
+
+            if(error[0] != null) {
+                if(error[0] instanceof IOException) {
+                    throw (IOException) error[0];
+                }
+                throw new IOException(error[0]);
+            }
+        }
+    }
+
+    private void syncAllItems(Subscriber<? super Integer> subscriber, SyncCheckpoint checkpoint) throws IOException {
+        int requestCount;
+        int maxSyncSize = maxSizePerSync;
+
+        // Database inserts run on the DatabaseWriter while the next page is downloaded
+        RssItemInsertPipeline pipeline = new RssItemInsertPipeline(mDbConn);
+        try {
+            if(checkpoint.phase == SyncCheckpoint.Phase.UNREAD_ITEMS) {
+                do {
+                    Log.v(TAG, "offset=" + checkpoint.offset + ",  requestCount=" + checkpoint.getItemCount() + "");
+                    BatchInsertObserver result = fetchItemsIntoPipeline(pipeline, maxSyncSize, checkpoint.offset, FeedItemTags.ALL);
+
+                    requestCount = result.count;
+                    checkpoint.addPage(result.count, result.highestItemId, result.lastModified);
+                    // The progress is stored once the items of the page are in the database
+                    pipeline.afterInserted(checkpoint.saveTask(mPrefs));
+
+                    subscriber.onNext(checkpoint.getItemCount());
+                } while (requestCount == maxSyncSize);
+
+                Log.v(TAG, "Sync all items done - Starting starred now");
+
+                checkpoint.startStarredItems();
+                pipeline.afterInserted(checkpoint.saveTask(mPrefs));
+            }
+
+            mPrefs.edit().putInt(Constants.LAST_UPDATE_NEW_ITEMS_COUNT_STRING, checkpoint.unreadItemCount).apply();
+
+            do {
+                BatchInsertObserver result = fetchItemsIntoPipeline(pipeline, maxSyncSize, checkpoint.offset, FeedItemTags.ALL_STARRED);
+
+                requestCount = result.count;
+                checkpoint.addPage(result.count, result.highestItemId, result.lastModified);
+                pipeline.afterInserted(checkpoint.saveTask(mPrefs));
+
+                subscriber.onNext(checkpoint.getItemCount());
+            } while (requestCount == maxSyncSize && checkpoint.getItemCount() < Constants.maxItemsCount);
+        } finally {
+            pipeline.finish();
+        }
+
+        // Only switch to the incremental sync if all received items have been stored
+        if(checkpoint.isConsistentWith(mDbConn.getHighestItemId(), mDbConn.getLastModified())) {
+            Log.v(TAG, "First sync finished: " + checkpoint);
+            SyncCheckpoint.clear(mPrefs);
+        } else {
+            Log.e(TAG, "Items of the first sync are missing in the database - starting over with the next sync: " + checkpoint);
+            new SyncCheckpoint(checkpoint.account).save(mPrefs);
+        }
+    }
+
+    /**
+     * Requests one page of items and parses it while it is still downloading. Parsed items are
+     * handed over to the pipeline in batches of {@link #maxBatchSize} items, so the response is
+     * never held in memory as a whole.
+     */
+    private BatchInsertObserver fetchItemsIntoPipeline(RssItemInsertPipeline pipeline, int batchSize, long offset, FeedItemTags type) throws IOException {
+        BatchInsertObserver observer = new BatchInsertObserver(pipeline);
+
+        long start = System.nanoTime();
+        Response<ResponseBody> response = mApi.itemsStreamed(batchSize, offset, Integer.valueOf(type.toString()), 0, false, true).execute();
+        pipeline.addResponseWaitTime(System.nanoTime() - start);
+
+        // Otherwise an error would look like the last page and end the first sync too early
+        if(!response.isSuccessful()) {
+            if(response.errorBody() != null) {
+                response.errorBody().close();
+            }
+            throw new IOException("Requesting items failed: HTTP " + response.code());
+        }
+
+        ResponseBody responseBody = response.body();
+        if(responseBody == null) {
+            return observer;
+        }
+
+        try {
+            // events() emits synchronously on the current (sync) thread
+            events(pipeline.timeNetworkReads(responseBody.source())).subscribe(observer);
+        } finally {
+            responseBody.close();
+        }
+
+        if(observer.error != null) {
+            if(observer.error instanceof IOException) {
+                throw (IOException) observer.error;
+            }
+            throw new IOException(observer.error);
+        }
+        return observer;
+    }
+
+    private static class BatchInsertObserver implements Observer<RssItem> {
+        private final RssItemInsertPipeline pipeline;
+        private List<RssItem> buffer = new ArrayList<>(maxBatchSize);
+        private int count = 0;
+        private long highestItemId = 0;
+        private long lastModified = 0;
+        private Throwable error;
+
+        BatchInsertObserver(RssItemInsertPipeline pipeline) {
+            this.pipeline = pipeline;
+        }
+
+        @Override
+        public void onSubscribe(@NonNull Disposable d) { }
+
+        @Override
+        public void onNext(@NonNull RssItem rssItem) {
+            buffer.add(rssItem);
+            count++;
+            highestItemId = Math.max(highestItemId, rssItem.getId());
+            if (rssItem.getLastModified() != null) {
+                lastModified = Math.max(lastModified, rssItem.getLastModified().getTime());
+            }
+            if (buffer.size() >= maxBatchSize) {
+                submitBuffer();
+            }
+        }
+
+        @Override
+        public void onError(@NonNull Throwable e) {
+            Log.e(TAG, "onError() called with: e = [" + e + "]");
+            // Keep everything that has been parsed successfully so far
+            if(!pipeline.hasFailed()) {
+                submitBuffer();
+            }
+            error = e;
+        }
+
+        @Override
+        public void onComplete() {
+            submitBuffer();
+        }
+
+        private void submitBuffer() {
+            // The pipeline takes ownership of the list
+            pipeline.submit(buffer);
+            buffer = new ArrayList<>(maxBatchSize);
         }
     }
 
@@ -190,21 +340,9 @@ public class RssItemObservable implements Publisher<Integer> {
                     JsonReader reader = new JsonReader(br);
 
                     try {
-                        reader.beginObject();
-
-                        String currentName;
-                        while(reader.hasNext() && (currentName = reader.nextName()) != null) {
-                            if(currentName.equals("items")) {
-                                break;
-                            } else {
-                                reader.skipValue();
-                            }
-                        }
-
-                        reader.beginArray();
+                        InsertRssItemIntoDatabase.beginItemsArray(reader);
                         while (reader.hasNext()) {
-                            JsonObject jsonObj = getJsonObjectFromReader(reader);
-                            RssItem item = InsertRssItemIntoDatabase.parseItem(jsonObj);
+                            RssItem item = InsertRssItemIntoDatabase.parseItem(reader);
                             e.onNext(item);
                         }
                         reader.endArray();
@@ -224,61 +362,4 @@ public class RssItemObservable implements Publisher<Integer> {
             }
         });
     }
-
-
-    private static JsonObject getJsonObjectFromReader(JsonReader jsonReader) {
-        JsonObject jObj = new JsonObject();
-        JsonToken tokenInstance;
-        try {
-            tokenInstance = jsonReader.peek();
-            if(tokenInstance == JsonToken.BEGIN_OBJECT)
-                jsonReader.beginObject();
-            else if (tokenInstance == JsonToken.BEGIN_ARRAY)
-                jsonReader.beginArray();
-
-            while(jsonReader.hasNext()) {
-                JsonToken token;
-                String name;
-                try {
-                    name = jsonReader.nextName();
-                    token = jsonReader.peek();
-
-                    //Log.d(TAG, token.toString());
-
-                    switch(token) {
-                        case NUMBER:
-                            jObj.addProperty(name, jsonReader.nextLong());
-                            break;
-                        case NULL:
-                            jsonReader.skipValue();
-                            break;
-                        case BOOLEAN:
-                            jObj.addProperty(name, jsonReader.nextBoolean());
-                            break;
-                        case BEGIN_OBJECT:
-                            jObj.add(name, getJsonObjectFromReader(jsonReader));
-                            break;
-                        case BEGIN_ARRAY:
-                            jsonReader.skipValue();
-                            break;
-                        default:
-                            jObj.addProperty(name, jsonReader.nextString());
-                    }
-                } catch(Exception ex) {
-                    ex.printStackTrace();
-                    jsonReader.skipValue();
-                }
-            }
-
-            if(tokenInstance == JsonToken.BEGIN_OBJECT)
-                jsonReader.endObject();
-            else if (tokenInstance == JsonToken.BEGIN_ARRAY)
-                jsonReader.endArray();
-
-            return jObj;
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return null;
-    }
 }
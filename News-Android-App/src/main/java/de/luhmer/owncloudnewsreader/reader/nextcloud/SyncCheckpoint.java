@@ -0,0 +1,114 @@
+package de.luhmer.owncloudnewsreader.reader.nextcloud;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.util.Locale;
+
+/**
+ * Progress of the first sync (see {@link RssItemObservable}), stored after each page of items.
+ *
+ * As long as a checkpoint exists the first sync isn't finished. If it is interrupted (network
+ * error, process killed) the next sync continues at the stored offset, instead of switching to the
+ * incremental sync with an incomplete database or downloading everything again.
+ */
+class SyncCheckpoint {
+
+    private static final String TAG = SyncCheckpoint.class.getCanonicalName();
+    private static final String SYNC_CHECKPOINT_STRING = "SYNC_CHECKPOINT";
+    private static final Gson GSON = new Gson();
+
+    enum Phase { UNREAD_ITEMS, STARRED_ITEMS }
+
+    // User / server the checkpoint belongs to
+    String account;
+    Phase phase = Phase.UNREAD_ITEMS;
+    // Offset of the next request (items are requested oldest first)
+    long offset;
+    // Highest id / last modified date of all items received so far
+    long highestItemId;
+    long lastModified;
+    int unreadItemCount;
+    int starredItemCount;
+
+    SyncCheckpoint(String account) {
+        this.account = account;
+    }
+
+    /**
+     * @return null if there is no first sync in progress
+     */
+    static SyncCheckpoint load(SharedPreferences prefs) {
+        String json = prefs.getString(SYNC_CHECKPOINT_STRING, null);
+        if(json == null) {
+            return null;
+        }
+        try {
+            return GSON.fromJson(json, SyncCheckpoint.class);
+        } catch (JsonParseException e) {
+            Log.e(TAG, "Invalid sync checkpoint", e);
+            return null;
+        }
+    }
+
+    static void clear(SharedPreferences prefs) {
+        prefs.edit().remove(SYNC_CHECKPOINT_STRING).commit();
+    }
+
+    void save(SharedPreferences prefs) {
+        saveTask(prefs).run();
+    }
+
+    /**
+     * @return task which stores the current state of the checkpoint (later changes are not included)
+     */
+    Runnable saveTask(final SharedPreferences prefs) {
+        final String json = GSON.toJson(this);
+        return new Runnable() {
+            @Override
+            public void run() {
+                // Synchronously, the progress must not get lost if the process is killed
+                prefs.edit().putString(SYNC_CHECKPOINT_STRING, json).commit();
+            }
+        };
+    }
+
+    void addPage(int itemCount, long highestItemId, long lastModified) {
+        if(phase == Phase.UNREAD_ITEMS) {
+            unreadItemCount += itemCount;
+        } else {
+            starredItemCount += itemCount;
+        }
+        if(itemCount > 0) {
+            offset = highestItemId;
+        }
+        this.highestItemId = Math.max(this.highestItemId, highestItemId);
+        this.lastModified = Math.max(this.lastModified, lastModified);
+    }
+
+    void startStarredItems() {
+        phase = Phase.STARRED_ITEMS;
+        offset = 0;
+    }
+
+    int getItemCount() {
+        return unreadItemCount + starredItemCount;
+    }
+
+    /**
+     * @return false if the items received so far are not (or no longer) in the database, e.g. after
+     *         the database has been reset
+     */
+    boolean isConsistentWith(long highestItemIdInDatabase, long lastModifiedInDatabase) {
+        return highestItemIdInDatabase >= highestItemId && lastModifiedInDatabase >= lastModified;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s offset=%d, highestItemId=%d, lastModified=%d, items=%d unread / %d starred",
+                phase, offset, highestItemId, lastModified, unreadItemCount, starredItemCount);
+    }
+}
@@ -24,26 +24,38 @@ package de.luhmer.owncloudnewsreader.services;
 import android.app.NotificationManager;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import androidx.annotation.NonNull;
 import androidx.core.app.JobIntentService;
 import androidx.core.app.NotificationCompat;
 import android.util.Log;
 
+import com.nostra13.universalimageloader.cache.disc.DiskCache;
 import com.nostra13.universalimageloader.core.ImageLoader;
+import com.nostra13.universalimageloader.utils.IoUtils;
 
-import java.util.ArrayList;
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 import java.util.Random;
 
+import javax.inject.Inject;
+
 import de.greenrobot.dao.query.LazyList;
+import de.luhmer.owncloudnewsreader.NewsReaderApplication;
 import de.luhmer.owncloudnewsreader.R;
-import de.luhmer.owncloudnewsreader.async_tasks.DownloadImageHandler;
+import de.luhmer.owncloudnewsreader.SettingsActivity;
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
 import de.luhmer.owncloudnewsreader.database.model.Feed;
 import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import de.luhmer.owncloudnewsreader.di.ApiProvider;
 import de.luhmer.owncloudnewsreader.helper.FavIconHandler;
 import de.luhmer.owncloudnewsreader.helper.ImageHandler;
+import de.luhmer.owncloudnewsreader.helper.ImagePrefetcher;
 import de.luhmer.owncloudnewsreader.notification.NextcloudNotificationManager;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
 
 public class DownloadImagesService extends JobIntentService {
 
@@ -54,6 +66,14 @@ public class DownloadImagesService extends JobIntentService {
     public static final String DOWNLOAD_MODE_STRING = "DOWNLOAD_MODE";
 	private static Random random;
 
+    private static final int MAX_CONCURRENT_DOWNLOADS = 8;
+    private static final int MAX_DOWNLOADS_PER_HOST = 4;
+    private static final long PROGRESS_INTERVAL_MILLIS = 500;
+
+    protected @Inject ApiProvider mApi;
+    protected @Inject SharedPreferences mPrefs;
+    private volatile ImagePrefetcher mImagePrefetcher;
+
 	private int NOTIFICATION_ID = 1923;
 	private NotificationCompat.Builder mNotificationDownloadImages;
 
@@ -87,6 +107,7 @@ public class DownloadImagesService extends JobIntentService {
             NOTIFICATION_ID = random.nextInt();
 
             mNotificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+            ((NewsReaderApplication) getApplication()).getAppComponent().injectService(this);
         } catch (Exception ex) {
             ex.printStackTrace();
         }
@@ -104,6 +125,16 @@ public class DownloadImagesService extends JobIntentService {
 		super.onDestroy();
 	}
 
+    @Override
+    public boolean onStopCurrentWork() {
+        // The work is started again later, cached images are skipped then
+        ImagePrefetcher imagePrefetcher = mImagePrefetcher;
+        if(imagePrefetcher != null) {
+            imagePrefetcher.cancel();
+        }
+        return super.onStopCurrentWork();
+    }
+
     @Override
     protected void onHandleWork(@NonNull Intent intent) {
         DownloadMode downloadMode = (DownloadMode) intent.getSerializableExtra(DOWNLOAD_MODE_STRING);
@@ -122,62 +153,126 @@ public class DownloadImagesService extends JobIntentService {
                 }
             }
         } else if(downloadMode.equals(DownloadMode.FAVICONS_AND_PICTURES) || downloadMode.equals(DownloadMode.PICTURES_ONLY)) {
+            OkHttpClient imageClient = mApi.getImageClient();
+            if(imageClient == null || !ImageLoader.getInstance().isInited()) {
+                Log.w(TAG, "Image loader not initialized");
+                return;
+            }
+
+            // Downloading more than the cache can hold would only push the first images out again
+            int cacheSizeMb = Integer.parseInt(mPrefs.getString(SettingsActivity.SP_MAX_CACHE_SIZE, "500"));
+            ImagePrefetcher imagePrefetcher = new ImagePrefetcher(
+                    new DiskCacheFetcher(imageClient, ImageLoader.getInstance().getDiskCache()),
+                    MAX_CONCURRENT_DOWNLOADS, MAX_DOWNLOADS_PER_HOST, cacheSizeMb * 1024L * 1024L);
+
             long lastId = intent.getLongExtra(LAST_ITEM_ID, 0);
             List<RssItem> rssItemList = dbConn.getAllItemsWithIdHigher(lastId);
-            List<String> links = new ArrayList<>();
             for(RssItem rssItem : rssItemList) {
-                String body = rssItem.getBody();
-                links.addAll(ImageHandler.getImageLinksFromText(body));
-
-                if(links.size() > 10000) {
-                    NextcloudNotificationManager.showNotificationImageDownloadLimitReached(this, CHANNEL_ID, 10000);
-                    break;
+                boolean unread = !Boolean.TRUE.equals(rssItem.getRead());
+                long date = rssItem.getPubDate() != null ? rssItem.getPubDate().getTime() : 0;
+                for(String link : ImageHandler.getImageLinksFromText(rssItem.getBody())) {
+                    imagePrefetcher.add(link, unread, date);
                 }
             }
             ((LazyList)rssItemList).close();
 
-            maxCount = links.size();
+            maxCount = imagePrefetcher.getCount();
 
             if (maxCount > 0) {
                 mNotificationManager.notify(NOTIFICATION_ID, mNotificationDownloadImages.build());
             }
 
-            downloadImages(links);
+            downloadImages(imagePrefetcher);
+
+            if(imagePrefetcher.isBudgetExceeded()) {
+                NextcloudNotificationManager.showNotificationImageDownloadLimitReached(this, CHANNEL_ID, cacheSizeMb);
+            }
         }
 	}
 
-    private void downloadImages(List<String> linksToImages) {
-        try {
-            while(linksToImages.size() > 0) {
-                String link = linksToImages.remove(0);
-                new DownloadImageHandler(link).downloadSync();
-
-                updateNotificationProgress(linksToImages.size());
+    private void downloadImages(ImagePrefetcher imagePrefetcher) {
+        imagePrefetcher.setProgressListener(new ImagePrefetcher.ProgressListener() {
+            @Override
+            public void onProgress(int finishedCount, int totalCount) {
+                updateNotificationProgress(finishedCount);
             }
-        } catch (Exception ex) {
-            ex.printStackTrace();
-            Log.e(TAG, "Error while downloading images.");
-            mNotificationDownloadImages
-                    .setContentText("Error while downloading images - " + ex.toString())
-                    .setProgress(0, 0, false);
-            mNotificationManager.notify(NOTIFICATION_ID, mNotificationDownloadImages.build());
+        }, PROGRESS_INTERVAL_MILLIS);
+
+        mImagePrefetcher = imagePrefetcher;
+        try {
+            long startTime = System.currentTimeMillis();
+            imagePrefetcher.run();
+            Log.v(TAG, "Downloaded " + imagePrefetcher.getFinishedCount() + "/" + maxCount + " images (" +
+                    imagePrefetcher.getFailedCount() + " failed, " + imagePrefetcher.getBytesDownloaded() + " bytes) in " +
+                    (System.currentTimeMillis() - startTime) + "ms");
+        } catch (InterruptedException ex) {
+            imagePrefetcher.cancel();
+            Thread.currentThread().interrupt();
+        } finally {
+            mImagePrefetcher = null;
+            // Not finished if cancelled or the budget is exceeded
+            mNotificationManager.cancel(NOTIFICATION_ID);
         }
     }
 
-    private void updateNotificationProgress(int remainingImagesCount) {
-        int count = maxCount - remainingImagesCount;
-        if(maxCount == count) {
+    private synchronized void updateNotificationProgress(int finishedCount) {
+        if(finishedCount == maxCount) {
             mNotificationManager.cancel(NOTIFICATION_ID);
-            //RemoveOldImages();
         } else {
             mNotificationDownloadImages
-                    .setContentText((count + 1) + "/" + maxCount + " - " + getString(R.string.notification_download_images_offline))
-                    .setProgress(maxCount, count + 1, false);
+                    .setContentText(finishedCount + "/" + maxCount + " - " + getString(R.string.notification_download_images_offline))
+                    .setProgress(maxCount, finishedCount, false);
 
             mNotificationManager.notify(NOTIFICATION_ID, mNotificationDownloadImages.build());
         }
     }
 
+    /**
+     * Downloads images into the disk cache of the image loader (without decoding them like
+     * {@link ImageLoader#loadImageSync(String)} would)
+     */
+    private static class DiskCacheFetcher implements ImagePrefetcher.Fetcher {
+        private final OkHttpClient client;
+        private final DiskCache diskCache;
+
+        DiskCacheFetcher(OkHttpClient client, DiskCache diskCache) {
+            this.client = client;
+            this.diskCache = diskCache;
+        }
+
+        @Override
+        public long fetch(String url) throws IOException {
+            File file = diskCache.get(url);
+            if(file != null && file.exists()) {
+                return 0;
+            }
+
+            Request request;
+            try {
+                request = new Request.Builder().url(url).build();
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Invalid url: " + url, e);
+            }
+            Response response = client.newCall(request).execute();
+            try {
+                if(!response.isSuccessful()) {
+                    throw new IOException("HTTP " + response.code() + ": " + url);
+                }
+                boolean saved = diskCache.save(url, response.body().byteStream(), new IoUtils.CopyListener() {
+                    @Override
+                    public boolean onBytesCopied(int current, int total) {
+                        // Stop if the prefetcher has been cancelled
+                        return !Thread.currentThread().isInterrupted();
+                    }
+                });
+                file = diskCache.get(url);
+                return saved && file != null ? file.length() : 0;
+            } finally {
+                response.close();
+            }
+        }
+    }
+
     private void RemoveOldImages() {
         ImageLoader.getInstance().clearDiskCache();
     }
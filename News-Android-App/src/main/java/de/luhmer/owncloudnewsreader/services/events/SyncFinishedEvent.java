@@ -1,7 +1,22 @@
 package de.luhmer.owncloudnewsreader.services.events;
 
+import de.luhmer.owncloudnewsreader.reader.SubscriptionChanges;
+
 /**
  * Created by David on 26.08.2016.
  */
 public class SyncFinishedEvent {
+
+    private final SubscriptionChanges subscriptionChanges;
+
+    public SyncFinishedEvent(SubscriptionChanges subscriptionChanges) {
+        this.subscriptionChanges = subscriptionChanges;
+    }
+
+    /**
+     * @return the folder / feed changes of the sync or null if they are unknown (e.g. the sync failed)
+     */
+    public SubscriptionChanges getSubscriptionChanges() {
+        return subscriptionChanges;
+    }
 }
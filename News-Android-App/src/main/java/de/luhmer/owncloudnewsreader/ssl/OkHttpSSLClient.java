@@ -12,7 +12,6 @@ import java.security.KeyManagementException;
 import java.security.KeyStore;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
-import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
@@ -38,16 +37,17 @@ import okhttp3.logging.HttpLoggingInterceptor;
 
 public class OkHttpSSLClient {
 
-    public static OkHttpClient GetSslClient(HttpUrl baseUrl, String username, String password, SharedPreferences sp, MemorizingTrustManager mtm) {
+    /**
+     * @param baseClient client whose connection pool, cache and timeouts are used
+     */
+    public static OkHttpClient GetSslClient(OkHttpClient baseClient, HttpUrl baseUrl, String username, String password, SharedPreferences sp, MemorizingTrustManager mtm) {
         // set location of the keystore
         MemorizingTrustManager.setKeyStoreFile("private", "sslkeys.bks");
 
         HttpLoggingInterceptor interceptor = new HttpLoggingInterceptor();
         //interceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
 
-        OkHttpClient.Builder clientBuilder = new OkHttpClient.Builder()
-                .connectTimeout(30, TimeUnit.SECONDS)
-                .readTimeout(30, TimeUnit.MINUTES)
+        OkHttpClient.Builder clientBuilder = baseClient.newBuilder()
                 .addInterceptor(new AuthorizationInterceptor(baseUrl, Credentials.basic(username, password)))
                 .addInterceptor(interceptor);
 
@@ -70,9 +70,6 @@ public class OkHttpSSLClient {
             e.printStackTrace();
         }
 
-        clientBuilder.connectTimeout(10, TimeUnit.SECONDS);
-        clientBuilder.readTimeout(120, TimeUnit.SECONDS);
-
         // disable hostname verification, when preference is set
         // (this still shows a certification dialog, which requires user interaction!)
         if(sp.getBoolean(SettingsActivity.CB_DISABLE_HOSTNAME_VERIFICATION_STRING, false))
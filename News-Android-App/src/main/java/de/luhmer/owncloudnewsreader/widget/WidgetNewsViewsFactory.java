@@ -37,13 +37,13 @@ import java.util.List;
 import de.luhmer.owncloudnewsreader.Constants;
 import de.luhmer.owncloudnewsreader.R;
 import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
-import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import de.luhmer.owncloudnewsreader.database.RssItemListRow;
 
 public class WidgetNewsViewsFactory implements RemoteViewsService.RemoteViewsFactory {
 	private static final String TAG = WidgetNewsViewsFactory.class.getCanonicalName();
 
     private DatabaseConnectionOrm dbConn;
-    private List<RssItem> rssItems;
+    private List<RssItemListRow> rssItems;
 	private Context context;
 
 	private int appWidgetId;
@@ -86,9 +86,9 @@ public class WidgetNewsViewsFactory implements RemoteViewsService.RemoteViewsFac
         RemoteViews rv = new RemoteViews(context.getPackageName(), R.layout.widget_item);
 
         try {
-            RssItem rssItem = rssItems.get(position);
-            String header = rssItem.getFeed().getFeedTitle();
-            String colorString = rssItem.getFeed().getAvgColour();
+            RssItemListRow rssItem = rssItems.get(position);
+            String header = rssItem.getFeedTitle();
+            String colorString = rssItem.getFeedAvgColour();
 
             String authorOfArticle = rssItem.getAuthor();
             header += authorOfArticle == null ? "" : " - " + authorOfArticle.trim();
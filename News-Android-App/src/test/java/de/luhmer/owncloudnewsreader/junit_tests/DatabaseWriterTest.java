@@ -0,0 +1,115 @@
+package de.luhmer.owncloudnewsreader.junit_tests;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import de.luhmer.owncloudnewsreader.database.DatabaseWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class DatabaseWriterTest {
+
+    @Test
+    public void testWritesRunInOrder() throws Exception {
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch blocked = new CountDownLatch(1);
+
+        // The first write blocks the writer, all others are queued behind it
+        DatabaseWriter.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocked.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                order.add(0);
+            }
+        });
+        for (int i = 1; i <= 10; i++) {
+            final int index = i;
+            DatabaseWriter.submit(new Runnable() {
+                @Override
+                public void run() {
+                    order.add(index);
+                }
+            });
+        }
+        assertTrue(order.isEmpty());
+        blocked.countDown();
+
+        DatabaseWriter.run(new Runnable() {
+            @Override
+            public void run() {
+                order.add(11);
+            }
+        });
+        assertEquals(12, order.size());
+        for (int i = 0; i < order.size(); i++) {
+            assertEquals(i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void testNestedWrite() {
+        final boolean[] ran = new boolean[1];
+        assertFalse(DatabaseWriter.isWriterThread());
+
+        DatabaseWriter.run(new Runnable() {
+            @Override
+            public void run() {
+                assertTrue(DatabaseWriter.isWriterThread());
+                // Would deadlock if it was queued
+                DatabaseWriter.run(new Runnable() {
+                    @Override
+                    public void run() {
+                        ran[0] = true;
+                    }
+                });
+            }
+        });
+        assertTrue(ran[0]);
+    }
+
+    @Test
+    public void testErrors() {
+        try {
+            DatabaseWriter.run(new Runnable() {
+                @Override
+                public void run() {
+                    throw new IllegalStateException("write failed");
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("write failed", e.getMessage());
+        }
+
+        // A failed write doesn't stop the writer
+        DatabaseWriter.submit(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("write failed");
+            }
+        });
+        final boolean[] ran = new boolean[1];
+        DatabaseWriter.run(new Runnable() {
+            @Override
+            public void run() {
+                ran[0] = true;
+            }
+        });
+        assertTrue(ran[0]);
+    }
+}
@@ -0,0 +1,87 @@
+package de.luhmer.owncloudnewsreader.junit_tests;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Random;
+
+import de.luhmer.owncloudnewsreader.database.FeedCounterTable;
+import de.luhmer.owncloudnewsreader.database.model.DaoMaster;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+public class FeedCounterTableTest {
+
+    private static final String COUNTERS = "SELECT FEED_ID, UNREAD_COUNT, STARRED_COUNT FROM FEED_COUNTER" +
+            " WHERE UNREAD_COUNT > 0 OR STARRED_COUNT > 0 ORDER BY FEED_ID";
+    private static final String RECALCULATED = "SELECT FEED_ID, SUM(CASE WHEN READ_TEMP != 1 THEN 1 ELSE 0 END) AS unread, SUM(CASE WHEN STARRED_TEMP = 1 THEN 1 ELSE 0 END) AS starred" +
+            " FROM RSS_ITEM GROUP BY FEED_ID HAVING unread > 0 OR starred > 0 ORDER BY FEED_ID";
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        db = SQLiteDatabase.create(null);
+        FeedCounterTable.enableTriggers(db);
+        DaoMaster.createAllTables(db, false);
+        FeedCounterTable.createTable(db);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void testCountersFollowAllWritePaths() {
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            long id = random.nextInt(200);
+            int action = random.nextInt(10);
+            if (action < 5) {
+                // Same statement as greenDAO's insertOrReplace
+                db.execSQL("INSERT OR REPLACE INTO RSS_ITEM (_id, FEED_ID, AUTHOR, GUID, GUID_HASH, FINGERPRINT, READ_TEMP, STARRED_TEMP) VALUES (?, ?, '', '', '', '', ?, ?)",
+                        new Object[] { id, random.nextInt(5), random.nextInt(2), random.nextInt(2) });
+            } else if (action < 8) {
+                db.execSQL("UPDATE RSS_ITEM SET READ_TEMP = ?, STARRED_TEMP = ? WHERE _id = ?",
+                        new Object[] { random.nextInt(2), random.nextInt(2), id });
+            } else if (action < 9) {
+                db.execSQL("UPDATE RSS_ITEM SET READ_TEMP = 1 WHERE READ_TEMP != 1 AND FEED_ID = ?", new Object[] { random.nextInt(5) });
+            } else {
+                db.execSQL("DELETE FROM RSS_ITEM WHERE _id = ?", new Object[] { id });
+            }
+        }
+
+        assertEquals(query(RECALCULATED), query(COUNTERS));
+    }
+
+    @Test
+    public void testRebuild() {
+        db.execSQL("INSERT INTO RSS_ITEM (_id, FEED_ID, AUTHOR, GUID, GUID_HASH, FINGERPRINT, READ_TEMP, STARRED_TEMP) VALUES (1, 3, '', '', '', '', 0, 1)");
+        db.execSQL("UPDATE FEED_COUNTER SET UNREAD_COUNT = 10");
+
+        FeedCounterTable.rebuild(db);
+
+        assertEquals("3:1:1;", query(COUNTERS));
+    }
+
+    private String query(String sql) {
+        StringBuilder result = new StringBuilder();
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            while (cursor.moveToNext()) {
+                result.append(cursor.getLong(0)).append(':').append(cursor.getLong(1)).append(':').append(cursor.getLong(2)).append(';');
+            }
+        } finally {
+            cursor.close();
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,121 @@
+package de.luhmer.owncloudnewsreader.junit_tests;
+
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.luhmer.owncloudnewsreader.helper.HtmlRewriteRules;
+import de.luhmer.owncloudnewsreader.helper.HtmlRewriter;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the single pass {@link HtmlRewriter} with the previous regex / String.replace based
+ * rewriting of article bodies (which replaced the image urls with the cached files) on large,
+ * image heavy bodies (run manually, e.g. with a profiler attached).
+ */
+@Ignore("Benchmark with a large fixture, run manually")
+public class HtmlRewriterBenchmarkTest {
+
+    private static final int BODY_COUNT = 200;
+    private static final int IMAGES_PER_BODY = 200;
+
+    private static final Pattern PATTERN_IMG = Pattern.compile("<img[^>]*>");
+    private static final Pattern PATTERN_IMG_SRC_LINK = Pattern.compile("src=\"(.*?)\"");
+    private static final Pattern PATTERN_VIDEO = Pattern.compile("<video[^>]*>");
+    private static final Pattern PATTERN_PRELOAD_VIDEOS_REMOVE = Pattern.compile("(<video[^>]*)(preload=\".*?\")(.*?>)");
+    private static final Pattern PATTERN_PRELOAD_VIDEOS_INSERT = Pattern.compile("(<video[^>]*)(.*?)(.*?>)");
+    private static final Pattern PATTERN_AUTOPLAY_VIDEOS_1 = Pattern.compile("(<video[^>]*)(autoplay=\".*?\")(.*?>)");
+    private static final Pattern PATTERN_AUTOPLAY_VIDEOS_2 = Pattern.compile("(<video[^>]*)(\\sautoplay)(.*?>)");
+
+    private static final String CACHE_DIR = "file:///data/cache/uil-images/";
+
+    private static List<String> bodies;
+
+    @BeforeClass
+    public static void createFixture() {
+        bodies = new ArrayList<>(BODY_COUNT);
+        for (int b = 0; b < BODY_COUNT; b++) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("<div class=\"article\"><video src=\"https://example.com/").append(b).append(".mp4\" preload=\"auto\" autoplay controls></video>");
+            for (int i = 0; i < IMAGES_PER_BODY; i++) {
+                sb.append("<p>Lorem ipsum dolor sit amet, consetetur sadipscing elitr, sed diam nonumy eirmod tempor invidunt ut labore ")
+                        .append("<a href=\"https://example.com/article/").append(i).append("\">et dolore</a> magna aliquyam erat.</p>")
+                        .append("<img src=\"https://example.com/images/").append(b).append('/').append(i).append(".png\" alt=\"Image ").append(i).append("\" />");
+            }
+            sb.append("</div>");
+            bodies.add(sb.toString());
+        }
+    }
+
+    @Test
+    public void compareRewriterWithRegexRewriting() {
+        List<String> expected = rewriteWithRegex();
+        List<String> actual = rewriteSinglePass();
+
+        // Same markup except for the image urls (the regex rewriting replaced them with the cached
+        // files, now the web view requests are intercepted instead), the rewriter additionally
+        // enables lazy loading (the regex rewriting leaves additional spaces in video tags, they
+        // are covered by HtmlRewriterTest)
+        for (int i = 0; i < BODY_COUNT; i++) {
+            assertEquals(PATTERN_VIDEO.matcher(expected.get(i)).replaceAll("").replace("\" />", "\" loading=\"lazy\" />"),
+                    PATTERN_VIDEO.matcher(uncachedImages(actual.get(i))).replaceAll(""));
+        }
+    }
+
+    private static String uncachedImages(String body) {
+        Matcher matcher = PATTERN_IMG_SRC_LINK.matcher(body);
+        StringBuffer sb = new StringBuffer();
+        while (matcher.find()) {
+            String link = matcher.group(1);
+            String replacement = link.startsWith("https://example.com/images/") ? CACHE_DIR + link.hashCode() : link;
+            matcher.appendReplacement(sb, Matcher.quoteReplacement("src=\"" + replacement + "\""));
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+
+    private List<String> rewriteSinglePass() {
+        List<String> result = new ArrayList<>(BODY_COUNT);
+        for (String body : bodies) {
+            StringBuilder builder = new StringBuilder();
+            new HtmlRewriter(
+                    HtmlRewriteRules.httpsForProtocolRelativeUrls(),
+                    HtmlRewriteRules.imageSrcOnly(),
+                    HtmlRewriteRules.videoPreload(),
+                    HtmlRewriteRules.lazyLoading()
+            ).rewrite(body, builder);
+            result.add(builder.toString());
+        }
+        return result;
+    }
+
+    private List<String> rewriteWithRegex() {
+        List<String> result = new ArrayList<>(BODY_COUNT);
+        for (String body : bodies) {
+            String description = body;
+            Matcher matcher = PATTERN_IMG.matcher(description);
+            List<String> links = new ArrayList<>();
+            while (matcher.find()) {
+                Matcher matcherSrcLink = PATTERN_IMG_SRC_LINK.matcher(matcher.group());
+                if (matcherSrcLink.find()) {
+                    links.add(matcherSrcLink.group(1));
+                }
+            }
+            for (String link : links) {
+                description = description.replace(link, CACHE_DIR + link.hashCode());
+            }
+            description = PATTERN_PRELOAD_VIDEOS_REMOVE.matcher(description).replaceAll("$1 $3");
+            description = PATTERN_PRELOAD_VIDEOS_INSERT.matcher(description).replaceAll("$1 preload=\"metadata\" $3");
+            description = PATTERN_AUTOPLAY_VIDEOS_1.matcher(description).replaceAll("$1 $3");
+            description = PATTERN_AUTOPLAY_VIDEOS_2.matcher(description).replaceAll("$1 $3");
+            result.add(description.replaceAll("\"//", "\"https://"));
+        }
+        return result;
+    }
+}
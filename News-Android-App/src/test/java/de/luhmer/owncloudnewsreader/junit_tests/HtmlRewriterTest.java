@@ -0,0 +1,83 @@
+package de.luhmer.owncloudnewsreader.junit_tests;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import de.luhmer.owncloudnewsreader.helper.HtmlRewriteRules;
+import de.luhmer.owncloudnewsreader.helper.HtmlRewriter;
+
+import static org.junit.Assert.assertEquals;
+
+public class HtmlRewriterTest {
+
+    @Test
+    public void testUnmodifiedHtmlIsCopied() {
+        String html = "<p class='a'>Text &amp; <b>bold</b> a < b<br/></p><!-- <img src=\"//x\"> --><!DOCTYPE html>";
+        assertEquals(html, new HtmlRewriter(HtmlRewriteRules.videoPreload()).rewrite(html));
+    }
+
+    @Test
+    public void testProtocolRelativeUrls() {
+        String html = "<a href=\"//example.com/\">link</a> \"//text\" <img src='//example.com/a.png' alt=\"x\">";
+        assertEquals("<a href=\"https://example.com/\">link</a> \"//text\" <img src=\"https://example.com/a.png\" alt=\"x\">",
+                new HtmlRewriter(HtmlRewriteRules.httpsForProtocolRelativeUrls()).rewrite(html));
+    }
+
+    @Test
+    public void testImageSrcOnly() {
+        HtmlRewriter rewriter = new HtmlRewriter(HtmlRewriteRules.httpsForProtocolRelativeUrls(), HtmlRewriteRules.imageSrcOnly());
+        assertEquals("<IMG src=\"https://example.com/a.png\" />",
+                rewriter.rewrite("<IMG src=\"//example.com/a.png\" srcset=\"a.png 1x, b.png 2x\" sizes=\"50vw\" />"));
+
+        // Without src the srcset is the only image
+        String html = "<img srcset=\"a.png 1x, b.png 2x\">";
+        assertEquals(html, rewriter.rewrite(html));
+    }
+
+    @Test
+    public void testTagNamesIgnoreDefaultLocale() {
+        Locale defaultLocale = Locale.getDefault();
+        // The lower case of "I" is the dotless "ı" in turkish
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            assertEquals("<IMG src=\"https://example.com/a.png\" />",
+                    new HtmlRewriter(HtmlRewriteRules.imageSrcOnly()).rewrite("<IMG src=\"https://example.com/a.png\" srcset=\"a.png 1x\" />"));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+
+    @Test
+    public void testVideos() {
+        HtmlRewriter rewriter = new HtmlRewriter(HtmlRewriteRules.videoPreload());
+        assertEquals("<video src=\"a.mp4\" preload=\"metadata\" controls>",
+                rewriter.rewrite("<video src=\"a.mp4\" preload=\"auto\" autoplay=\"autoplay\" controls>"));
+        assertEquals("<video src=\"a.mp4\" controls preload=\"metadata\"></video>",
+                rewriter.rewrite("<video src=a.mp4 autoplay controls></video>"));
+    }
+
+    @Test
+    public void testIncognitoImagesAndLazyLoading() {
+        HtmlRewriter rewriter = new HtmlRewriter(HtmlRewriteRules.incognitoImages(), HtmlRewriteRules.lazyLoading());
+        assertEquals("<p><img src=\"a.png\" width=\"40px\" height=\"40px\" loading=\"lazy\"></p><iframe src=\"b\" loading=\"eager\">",
+                rewriter.rewrite("<p><img src=\"a.png\" width=\"800\"></p><iframe src=\"b\" loading=\"eager\">"));
+    }
+
+    @Test
+    public void testScriptContentAndInvalidHtml() {
+        HtmlRewriter rewriter = new HtmlRewriter(HtmlRewriteRules.lazyLoading());
+        String script = "<script>if (a<b) document.write('<img src=x>');</script>";
+        assertEquals(script + "<img src=\"y\" loading=\"lazy\">", rewriter.rewrite(script + "<img src=\"y\">"));
+
+        // Not terminated
+        assertEquals("text <img src=\"y", rewriter.rewrite("text <img src=\"y"));
+        assertEquals("text <", rewriter.rewrite("text <"));
+    }
+
+    @Test
+    public void testAttributeValuesWithQuotes() {
+        assertEquals("<img title=\"say &quot;hi&quot;\" loading=\"lazy\">",
+                new HtmlRewriter(HtmlRewriteRules.lazyLoading()).rewrite("<img title='say \"hi\"'>"));
+    }
+}
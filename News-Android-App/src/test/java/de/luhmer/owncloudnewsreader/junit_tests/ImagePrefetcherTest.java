@@ -0,0 +1,189 @@
+package de.luhmer.owncloudnewsreader.junit_tests;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import de.luhmer.owncloudnewsreader.helper.ImagePrefetcher;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ImagePrefetcherTest {
+
+    @Test
+    public void testDuplicatesAreDownloadedOnceByPriority() throws InterruptedException {
+        final List<String> downloaded = Collections.synchronizedList(new ArrayList<String>());
+        ImagePrefetcher prefetcher = new ImagePrefetcher(new ImagePrefetcher.Fetcher() {
+            @Override
+            public long fetch(String url) {
+                downloaded.add(url);
+                return 1;
+            }
+        }, 1, 1, Long.MAX_VALUE);
+
+        prefetcher.add("https://a.example.com/read-old.png", false, 1);
+        prefetcher.add("https://a.example.com/unread-old.png", true, 1);
+        prefetcher.add("https://b.example.com/read-new.png", false, 3);
+        prefetcher.add("https://b.example.com/unread-new.png", true, 2);
+        // Used by a newer unread article as well
+        prefetcher.add("https://a.example.com/read-old.png", true, 3);
+        prefetcher.add("https://b.example.com/read-new.png", false, 0);
+        assertEquals(4, prefetcher.getCount());
+
+        prefetcher.run();
+
+        assertEquals(Arrays.asList(
+                "https://a.example.com/read-old.png",
+                "https://b.example.com/unread-new.png",
+                "https://a.example.com/unread-old.png",
+                "https://b.example.com/read-new.png"), downloaded);
+        assertEquals(4, prefetcher.getFinishedCount());
+        assertEquals(4, prefetcher.getBytesDownloaded());
+    }
+
+    @Test
+    public void testConnectionsPerHostAreLimited() throws InterruptedException {
+        int[] maxRunning = measureMaxConcurrentDownloads(6, 2);
+        assertEquals(2, maxRunning[0]);
+        assertEquals(6, maxRunning[1]);
+    }
+
+    @Test
+    public void testDownloadsRunConcurrently() throws InterruptedException {
+        assertEquals(1, measureMaxConcurrentDownloads(1, 1)[1]);
+
+        int[] maxRunning = measureMaxConcurrentDownloads(8, 4);
+        assertTrue(maxRunning[0] <= 4);
+        assertEquals(8, maxRunning[1]);
+    }
+
+    /**
+     * Downloads 80 images from 4 hosts. The first downloads wait until maxConcurrentDownloads
+     * downloads are running (or a timeout), so the result doesn't depend on timing.
+     *
+     * @return max. number of downloads which ran at the same time for one host and in total
+     */
+    private int[] measureMaxConcurrentDownloads(int maxConcurrentDownloads, int maxDownloadsPerHost) throws InterruptedException {
+        final CountDownLatch allRunning = new CountDownLatch(maxConcurrentDownloads);
+        final Map<String, Integer> running = new HashMap<>();
+        final int[] maxRunning = new int[2];
+        ImagePrefetcher prefetcher = new ImagePrefetcher(new ImagePrefetcher.Fetcher() {
+            @Override
+            public long fetch(String url) throws IOException {
+                String host = url.substring(0, url.indexOf(".example.com"));
+                synchronized (running) {
+                    Integer count = running.get(host);
+                    count = count == null ? 1 : count + 1;
+                    running.put(host, count);
+                    maxRunning[0] = Math.max(maxRunning[0], count);
+                    int total = 0;
+                    for(int c : running.values()) {
+                        total += c;
+                    }
+                    maxRunning[1] = Math.max(maxRunning[1], total);
+                }
+                allRunning.countDown();
+                try {
+                    allRunning.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                synchronized (running) {
+                    running.put(host, running.get(host) - 1);
+                }
+                return 0;
+            }
+        }, maxConcurrentDownloads, maxDownloadsPerHost, Long.MAX_VALUE);
+        for(int i = 0; i < 80; i++) {
+            prefetcher.add("https://host" + (i % 4) + ".example.com/" + i + ".png", false, 0);
+        }
+
+        prefetcher.run();
+
+        assertEquals(80, prefetcher.getFinishedCount());
+        return maxRunning;
+    }
+
+    @Test
+    public void testByteBudget() throws InterruptedException {
+        ImagePrefetcher prefetcher = new ImagePrefetcher(new ImagePrefetcher.Fetcher() {
+            @Override
+            public long fetch(String url) {
+                return 100;
+            }
+        }, 1, 1, 250);
+        for(int i = 0; i < 10; i++) {
+            prefetcher.add("https://example.com/" + i + ".png", true, 0);
+        }
+
+        prefetcher.run();
+
+        assertTrue(prefetcher.isBudgetExceeded());
+        assertEquals(3, prefetcher.getFinishedCount());
+        assertEquals(300, prefetcher.getBytesDownloaded());
+    }
+
+    @Test
+    public void testFailuresAndProgress() throws InterruptedException {
+        final List<Integer> progress = new ArrayList<>();
+        ImagePrefetcher prefetcher = new ImagePrefetcher(new ImagePrefetcher.Fetcher() {
+            @Override
+            public long fetch(String url) throws IOException {
+                if(url.contains("missing")) {
+                    throw new IOException("404");
+                }
+                return 1;
+            }
+        }, 1, 1, Long.MAX_VALUE);
+        prefetcher.setProgressListener(new ImagePrefetcher.ProgressListener() {
+            @Override
+            public void onProgress(int finishedCount, int totalCount) {
+                synchronized (progress) {
+                    progress.add(finishedCount);
+                    assertEquals(3, totalCount);
+                }
+            }
+        }, 60000);
+        prefetcher.add("https://example.com/1.png", true, 0);
+        prefetcher.add("https://example.com/missing.png", true, 0);
+        prefetcher.add("not a url", true, 0);
+
+        prefetcher.run();
+
+        assertEquals(3, prefetcher.getFinishedCount());
+        assertEquals(1, prefetcher.getFailedCount());
+        // The first download and the last one (throttled in between)
+        assertEquals(Arrays.asList(1, 3), progress);
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        final ImagePrefetcher[] prefetcher = new ImagePrefetcher[1];
+        prefetcher[0] = new ImagePrefetcher(new ImagePrefetcher.Fetcher() {
+            @Override
+            public long fetch(String url) {
+                prefetcher[0].cancel();
+                return 1;
+            }
+        }, 1, 1, Long.MAX_VALUE);
+        for(int i = 0; i < 10; i++) {
+            prefetcher[0].add("https://example.com/" + i + ".png", true, 0);
+        }
+
+        prefetcher[0].run();
+
+        assertTrue(prefetcher[0].isCancelled());
+        assertFalse(prefetcher[0].isBudgetExceeded());
+        assertEquals(1, prefetcher[0].getFinishedCount());
+    }
+}
@@ -0,0 +1,113 @@
+package de.luhmer.owncloudnewsreader.junit_tests;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import de.luhmer.owncloudnewsreader.NewsReaderListActivity;
+import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
+import de.luhmer.owncloudnewsreader.database.model.Feed;
+import de.luhmer.owncloudnewsreader.database.model.Folder;
+import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import de.luhmer.owncloudnewsreader.reader.InsertIntoDatabase;
+import de.luhmer.owncloudnewsreader.reader.SubscriptionChanges;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class InsertIntoDatabaseTest {
+
+    private DatabaseConnectionOrm dbConn;
+
+    @Before
+    public void setUp() {
+        NewsReaderListActivity activity = Robolectric.buildActivity(NewsReaderListActivity.class).create().get();
+        dbConn = new DatabaseConnectionOrm(activity);
+        dbConn.resetDatabase();
+
+        sync(Arrays.asList(new Folder(1, "Folder 1"), new Folder(2, "Folder 2")),
+                Arrays.asList(feed(1, 1L, "Feed 1"), feed(2, 1L, "Feed 2"), feed(3, 2L, "Feed 3")));
+
+        List<RssItem> items = new ArrayList<>();
+        for (long id = 1; id <= 6; id++) {
+            items.add(TestDatabase.item(id, (id - 1) / 2 + 1));
+        }
+        dbConn.insertNewItems(items);
+
+        Feed feed = dbConn.getFeedById(1);
+        feed.setAvgColour("#ff0000");
+        dbConn.updateFeed(feed);
+    }
+
+    @Test
+    public void testNothingChanged() {
+        SubscriptionChanges changes = sync(Arrays.asList(new Folder(1, "Folder 1"), new Folder(2, "Folder 2")),
+                Arrays.asList(feed(1, 1L, "Feed 1"), feed(2, 1L, "Feed 2"), feed(3, 2L, "Feed 3")));
+
+        assertTrue(changes.isEmpty());
+        assertEquals("#ff0000", dbConn.getFeedById(1).getAvgColour());
+        for (long id = 1; id <= 6; id++) {
+            assertNotNull(dbConn.getRssItemById(id));
+        }
+    }
+
+    @Test
+    public void testRenamedSubscriptions() {
+        SubscriptionChanges changes = sync(Arrays.asList(new Folder(1, "Folder 1 renamed"), new Folder(2, "Folder 2")),
+                Arrays.asList(feed(1, 1L, "Feed 1 renamed"), feed(2, 1L, "Feed 2"), feed(3, 2L, "Feed 3")));
+
+        assertFalse(changes.isEmpty());
+        assertFalse(changes.hasStructuralChanges());
+        assertEquals(1, changes.renamedFolders.size());
+        assertEquals(1, changes.updatedFeeds.size());
+        assertEquals("Folder 1 renamed", dbConn.getFolderById(1).getLabel());
+        assertEquals("Feed 1 renamed", dbConn.getFeedById(1).getFeedTitle());
+        // The colour of the favicon is computed locally and must be kept
+        assertEquals("#ff0000", dbConn.getFeedById(1).getAvgColour());
+    }
+
+    @Test
+    public void testAddedMovedAndRemovedSubscriptions() {
+        SubscriptionChanges changes = sync(Arrays.asList(new Folder(1, "Folder 1"), new Folder(3, "Folder 3")),
+                Arrays.asList(feed(1, 3L, "Feed 1"), feed(2, 1L, "Feed 2"), feed(4, 3L, "Feed 4")));
+
+        assertTrue(changes.hasStructuralChanges());
+        assertEquals(Collections.singletonList(3L), changes.addedFolderIds);
+        assertEquals(Collections.singletonList(2L), changes.removedFolderIds);
+        assertEquals(Collections.singletonList(4L), changes.addedFeedIds);
+        assertEquals(Collections.singletonList(1L), changes.movedFeedIds);
+        assertEquals(Collections.singletonList(3L), changes.removedFeedIds);
+
+        assertNull(dbConn.getFolderById(2));
+        assertEquals("Folder 3", dbConn.getFolderById(3).getLabel());
+        assertEquals(3L, (long) dbConn.getFeedById(1).getFolderId());
+        assertNull(dbConn.getFeedById(3));
+        assertEquals("Feed 4", dbConn.getFeedById(4).getFeedTitle());
+        // The items of the removed feed are deleted as well
+        assertNull(dbConn.getRssItemById(5));
+        assertNull(dbConn.getRssItemById(6));
+        assertNotNull(dbConn.getRssItemById(1));
+    }
+
+    private SubscriptionChanges sync(List<Folder> folders, List<Feed> feeds) {
+        SubscriptionChanges changes = new SubscriptionChanges();
+        InsertIntoDatabase.InsertFoldersIntoDatabase(folders, dbConn, changes);
+        InsertIntoDatabase.InsertFeedsIntoDatabase(feeds, dbConn, changes);
+        return changes;
+    }
+
+    private static Feed feed(long id, Long folderId, String title) {
+        return new Feed(id, folderId, title, "http://example.com/" + id + ".ico", "http://example.com/" + id, null);
+    }
+}
@@ -0,0 +1,103 @@
+package de.luhmer.owncloudnewsreader.junit_tests;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import de.luhmer.owncloudnewsreader.database.DatabaseOpenHelper;
+import de.luhmer.owncloudnewsreader.database.model.DaoMaster;
+
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the query plans of the hot rss item queries before (schema version 6) and after the
+ * migration to schema version 7.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class QueryPlanTest {
+
+    private static final String UNREAD_COUNT = "SELECT COUNT(1) FROM RSS_ITEM WHERE READ_TEMP != 1";
+    private static final String STARRED_VIEW = "SELECT _id FROM RSS_ITEM WHERE STARRED_TEMP = 1 GROUP BY FINGERPRINT ORDER BY PUB_DATE DESC";
+    private static final String FEED_UNREAD_VIEW = "SELECT _id FROM RSS_ITEM WHERE FEED_ID = 1 AND READ_TEMP != 1 ORDER BY PUB_DATE DESC";
+    private static final String FINGERPRINT_LOOKUP = "SELECT _id FROM RSS_ITEM WHERE FINGERPRINT = 'abc'";
+    private static final String LAST_MODIFIED = "SELECT LAST_MODIFIED FROM RSS_ITEM ORDER BY LAST_MODIFIED DESC LIMIT 1";
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        db = SQLiteDatabase.create(null);
+        createVersion6Schema(db);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void testMigrationAddsIndexesForHotQueries() {
+        String[] queries = { UNREAD_COUNT, STARRED_VIEW, FEED_UNREAD_VIEW, FINGERPRINT_LOOKUP, LAST_MODIFIED };
+        String[] plansBefore = new String[queries.length];
+        for (int i = 0; i < queries.length; i++) {
+            plansBefore[i] = explain(queries[i]);
+        }
+
+        DatabaseOpenHelper.migrate(db, 6);
+
+        for (int i = 0; i < queries.length; i++) {
+            String planAfter = explain(queries[i]);
+            assertNotEquals(plansBefore[i], planAfter);
+        }
+
+        assertTrue(explain(UNREAD_COUNT).contains("COVERING INDEX"));
+        assertTrue(explain(STARRED_VIEW).contains("IDX_RSS_ITEM_STARRED_TEMP_PUB_DATE"));
+        assertTrue(explain(FEED_UNREAD_VIEW).contains("IDX_RSS_ITEM_FEED_ID_READ_TEMP_PUB_DATE"));
+        assertTrue(explain(FINGERPRINT_LOOKUP).contains("IDX_RSS_ITEM_FINGERPRINT"));
+        assertTrue(explain(LAST_MODIFIED).contains("IDX_RSS_ITEM_LAST_MODIFIED"));
+    }
+
+    @Test
+    public void testMigrationIsIdempotent() {
+        DatabaseOpenHelper.migrate(db, 6);
+        DatabaseOpenHelper.migrate(db, 6);
+        assertTrue(explain(FEED_UNREAD_VIEW).contains("IDX_RSS_ITEM_FEED_ID_READ_TEMP_PUB_DATE"));
+    }
+
+    /**
+     * The tables of version 6 only lack the columns added later (which the migration skips if
+     * they exist), the indexes differ
+     */
+    private static void createVersion6Schema(SQLiteDatabase db) {
+        DaoMaster.createAllTables(db, false);
+        db.execSQL("DROP INDEX IDX_RSS_ITEM_FEED_ID_READ_TEMP_PUB_DATE");
+        db.execSQL("DROP INDEX IDX_RSS_ITEM_READ_TEMP_PUB_DATE");
+        db.execSQL("DROP INDEX IDX_RSS_ITEM_STARRED_TEMP_PUB_DATE");
+        db.execSQL("DROP INDEX IDX_RSS_ITEM_FINGERPRINT");
+        db.execSQL("DROP INDEX IDX_RSS_ITEM_LAST_MODIFIED");
+        db.execSQL("CREATE INDEX IDX_RSS_ITEM_FEED_ID ON RSS_ITEM (\"FEED_ID\");");
+    }
+
+    private String explain(String query) {
+        StringBuilder plan = new StringBuilder();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + query, null);
+        try {
+            int detailColumn = cursor.getColumnIndex("detail");
+            while (cursor.moveToNext()) {
+                if (plan.length() > 0) {
+                    plan.append(" | ");
+                }
+                plan.append(cursor.getString(detailColumn));
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+}
@@ -0,0 +1,82 @@
+package de.luhmer.owncloudnewsreader.junit_tests;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.File;
+
+import de.luhmer.owncloudnewsreader.helper.RenderedPageCache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class RenderedPageCacheTest {
+
+    private static final String PAGE = "<html><body>Article</body></html>";
+
+    @Rule
+    public TemporaryFolder cacheDir = new TemporaryFolder();
+
+    private RenderedPageCache cache;
+
+    @Before
+    public void setUp() {
+        cache = newCache(1024);
+    }
+
+    @Test
+    public void testMemoryAndDiskHit() {
+        cache.put("1_1000_lightTheme_1.0_header", PAGE, true);
+        assertEquals(PAGE, cache.get("1_1000_lightTheme_1.0_header"));
+
+        // E.g. after the app has been restarted
+        assertEquals(PAGE, newCache(1024).get("1_1000_lightTheme_1.0_header"));
+        assertNull(newCache(1024).get("1_2000_lightTheme_1.0_header"));
+    }
+
+    @Test
+    public void testNonPersistentPageIsOnlyKeptInMemory() {
+        cache.put("1_1000_lightTheme_1.0_header", PAGE, false);
+
+        assertEquals(PAGE, cache.get("1_1000_lightTheme_1.0_header"));
+        assertNull(newCache(1024).get("1_1000_lightTheme_1.0_header"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedPagesAreRemoved() {
+        // Room for about four pages
+        cache = newCache(PAGE.length() * 4 + 10);
+        for (int i = 0; i < 4; i++) {
+            cache.put("page" + i, PAGE, true);
+            new File(cacheDir.getRoot(), "page" + i + ".html").setLastModified(1000 * i);
+        }
+        // Read from disk recently
+        newCache(PAGE.length() * 4 + 10).get("page0");
+
+        cache.put("page4", PAGE, true);
+
+        RenderedPageCache restarted = newCache(PAGE.length() * 4 + 10);
+        assertEquals(PAGE, restarted.get("page0"));
+        assertNull(restarted.get("page1"));
+        assertNull(restarted.get("page2"));
+        assertEquals(PAGE, restarted.get("page4"));
+    }
+
+    @Test
+    public void testClear() {
+        cache.put("page", PAGE, true);
+        cache.clear();
+
+        assertNull(cache.get("page"));
+        assertNull(newCache(1024).get("page"));
+    }
+
+    private RenderedPageCache newCache(long maxDiskBytes) {
+        return new RenderedPageCache(cacheDir.getRoot(), 1024 * 1024, maxDiskBytes);
+    }
+}
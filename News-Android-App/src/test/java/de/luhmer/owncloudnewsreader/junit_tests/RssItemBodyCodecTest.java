@@ -0,0 +1,147 @@
+package de.luhmer.owncloudnewsreader.junit_tests;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import de.luhmer.owncloudnewsreader.database.RssItemBodyCodec;
+import de.luhmer.owncloudnewsreader.database.model.DaoMaster;
+import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import de.luhmer.owncloudnewsreader.database.model.RssItemDao;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class RssItemBodyCodecTest {
+
+    private static final String[] WORDS = { "android", "kernel", "release", "update", "security",
+            "browser", "privacy", "nextcloud", "server", "feature", "bug", "performance" };
+
+    private SQLiteDatabase db;
+    private DaoMaster daoMaster;
+
+    @Before
+    public void setUp() {
+        db = TestDatabase.create();
+        daoMaster = new DaoMaster(db);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        String html = html(1);
+        byte[] data = RssItemBodyCodec.encode(html);
+        assertTrue(data.length * 2 < html.length());
+        assertEquals(html, RssItemBodyCodec.decode(data));
+
+        // Short bodies are stored as plain text
+        assertArrayEquals("<p>Hallo Welt – ünïcödé</p>".getBytes(Charset.forName("UTF-8")), RssItemBodyCodec.encode("<p>Hallo Welt – ünïcödé</p>"));
+        assertEquals("<p>Hallo Welt – ünïcödé</p>", RssItemBodyCodec.decode(RssItemBodyCodec.encode("<p>Hallo Welt – ünïcödé</p>")));
+        assertEquals("", RssItemBodyCodec.decode(RssItemBodyCodec.encode("")));
+        assertNull(RssItemBodyCodec.decode(RssItemBodyCodec.encode(null)));
+    }
+
+    @Test
+    public void testTextBodyReadAsBlob() {
+        // Cursor#getBlob of a text column includes the 0 terminator
+        daoMaster.newSession().getRssItemDao().insert(item(1, ""));
+        db.execSQL("UPDATE RSS_ITEM SET BODY = ? WHERE _id = 1", new Object[] { "<p>Hallo Welt – ünïcödé</p>" });
+        Cursor cursor = db.rawQuery("SELECT BODY FROM RSS_ITEM WHERE _id = 1", null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            assertEquals("<p>Hallo Welt – ünïcödé</p>", RssItemBodyCodec.decode(cursor.getBlob(0)));
+        } finally {
+            cursor.close();
+        }
+
+        byte[] text = "<p>Hallo Welt</p>".getBytes(Charset.forName("UTF-8"));
+        byte[] terminated = Arrays.copyOf(text, text.length + 1);
+        assertEquals("<p>Hallo Welt</p>", RssItemBodyCodec.decode(terminated));
+    }
+
+    @Test
+    public void testEntityDecodesLazily() {
+        RssItemDao rssItemDao = daoMaster.newSession().getRssItemDao();
+        rssItemDao.insert(item(1, html(1)));
+
+        // A new session doesn't return the cached entity
+        RssItem item = daoMaster.newSession().getRssItemDao().load(1L);
+        assertTrue(item.getBodyData().length < html(1).length());
+        assertEquals(html(1), item.getBody());
+
+        // Refreshing the entity replaces the decoded body
+        db.execSQL("UPDATE RSS_ITEM SET BODY = ? WHERE _id = 1", new Object[] { RssItemBodyCodec.encode(html(2)) });
+        daoMaster.newSession().getRssItemDao().refresh(item);
+        assertEquals(html(2), item.getBody());
+    }
+
+    @Test
+    public void testEncodeTextBodies() {
+        RssItemDao rssItemDao = daoMaster.newSession().getRssItemDao();
+        for (long id = 1; id <= 500; id++) {
+            rssItemDao.insert(item(id, html(id)));
+            // Written as text by older versions
+            db.execSQL("UPDATE RSS_ITEM SET BODY = ? WHERE _id = ?", new Object[] { html(id), id });
+        }
+
+        RssItemBodyCodec.Stats before = RssItemBodyCodec.getStats(db);
+        assertEquals(500, before.pendingCount);
+        // Text bodies can still be read
+        assertEquals(html(1), daoMaster.newSession().getRssItemDao().load(1L).getBody());
+
+        // Batch by batch, like DatabaseConnectionOrm#encodeRssItemBodies
+        int batches = 0;
+        int count = 0;
+        int batchCount;
+        while ((batchCount = RssItemBodyCodec.encodeTextBodiesBatch(db)) > 0) {
+            assertTrue(batchCount <= 200);
+            count += batchCount;
+            batches++;
+        }
+        assertEquals(500, count);
+        assertEquals(3, batches);
+
+        RssItemBodyCodec.Stats after = RssItemBodyCodec.getStats(db);
+        assertEquals(0, after.pendingCount);
+        assertEquals(500, after.compressedCount);
+        assertEquals(before.textBytes, after.textBytes);
+        assertTrue(after.getCompressionRatio() > 2);
+
+        RssItemDao newDao = daoMaster.newSession().getRssItemDao();
+        for (long id = 1; id <= 500; id += 37) {
+            assertEquals(html(id), newDao.load(id).getBody());
+        }
+    }
+
+    private static String html(long seed) {
+        StringBuilder html = new StringBuilder("<div class=\"article\">");
+        for (int i = 0; i < 400; i++) {
+            if (i % 40 == 0) {
+                html.append(i > 0 ? "</p>" : "").append("<p><img src=\"https://example.com/images/").append(seed).append('/').append(i).append(".png\" alt=\"\">");
+            }
+            html.append(WORDS[(int) ((seed * 31 + i * 7) % WORDS.length)]).append(' ');
+        }
+        return html.append("</p></div>").toString();
+    }
+
+    private static RssItem item(long id, String body) {
+        RssItem item = TestDatabase.item(id, 1);
+        item.setBody(body);
+        return item;
+    }
+}
@@ -0,0 +1,191 @@
+package de.luhmer.owncloudnewsreader.junit_tests;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm.SORT_DIRECTION;
+import de.luhmer.owncloudnewsreader.database.RssItemListRow;
+import de.luhmer.owncloudnewsreader.database.RssItemPreview;
+import de.luhmer.owncloudnewsreader.database.RssItemQuery;
+import de.luhmer.owncloudnewsreader.database.model.DaoMaster;
+import de.luhmer.owncloudnewsreader.database.model.Feed;
+import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import de.luhmer.owncloudnewsreader.database.model.RssItemDao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class RssItemQueryTest {
+
+    private static final int ITEM_COUNT = 20000;
+    private static final int PAGE_SIZE = 100;
+
+    private SQLiteDatabase db;
+    private RssItemDao rssItemDao;
+
+    @Before
+    public void setUp() {
+        db = SQLiteDatabase.create(null);
+        DaoMaster.createAllTables(db, false);
+        rssItemDao = new DaoMaster(db).newSession().getRssItemDao();
+
+        List<RssItem> items = new ArrayList<>(ITEM_COUNT);
+        for (long id = 1; id <= ITEM_COUNT; id++) {
+            RssItem item = new RssItem();
+            item.setId(id);
+            item.setFeedId(id % 10);
+            item.setTitle("Item " + id);
+            item.setAuthor("");
+            item.setGuid("guid" + id);
+            item.setGuidHash("guidHash" + id);
+            // Every 50th item is a duplicate of its predecessor
+            item.setFingerprint("fp" + (id % 50 == 0 ? id - 1 : id));
+            item.setRead_temp(id % 3 == 0);
+            item.setStarred_temp(id % 40 == 0);
+            // Many items share the same pubDate, so the id decides about the order
+            item.setPubDate(new Date(1500000000000L + (id / 7) * 1000));
+            item.setLastModified(new Date());
+            items.add(item);
+        }
+        rssItemDao.insertInTx(items);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void testPagesMatchCompleteView() {
+        assertPagesMatchCompleteView(RssItemQuery.forFeed(3, true, false, SORT_DIRECTION.desc));
+        assertPagesMatchCompleteView(RssItemQuery.forFeed(3, false, false, SORT_DIRECTION.asc));
+        assertPagesMatchCompleteView(RssItemQuery.forFolder(-10, false, SORT_DIRECTION.desc)); // all unread items
+        assertPagesMatchCompleteView(RssItemQuery.forFolder(-11, false, SORT_DIRECTION.asc)); // starred items
+        assertPagesMatchCompleteView(RssItemQuery.forFolder(-10, false, SORT_DIRECTION.desc).deduplicate());
+    }
+
+    @Test
+    public void testItemsWithoutPubDate() {
+        // Spans multiple pages and shares pubDates with the remaining items
+        db.execSQL("UPDATE " + RssItemDao.TABLENAME + " SET " + RssItemDao.Properties.PubDate.columnName + " = NULL" +
+                " WHERE " + RssItemDao.Properties.Id.columnName + " % 20 < 5");
+
+        assertPagesMatchCompleteView(RssItemQuery.forFeed(3, false, false, SORT_DIRECTION.desc));
+        assertPagesMatchCompleteView(RssItemQuery.forFeed(3, false, false, SORT_DIRECTION.asc));
+        assertPagesMatchCompleteView(RssItemQuery.forFolder(-10, false, SORT_DIRECTION.desc));
+        assertPagesMatchCompleteView(RssItemQuery.forFolder(-10, false, SORT_DIRECTION.asc));
+    }
+
+    @Test
+    public void testDeduplicate() {
+        List<RssItemListRow> rows = loadAllPages(RssItemQuery.forFolder(-10, false, SORT_DIRECTION.desc).deduplicate(), null);
+
+        Set<String> fingerprints = new HashSet<>();
+        for (RssItemListRow row : rows) {
+            assertTrue(fingerprints.add(rssItemDao.load(row.getId()).getFingerprint()));
+        }
+    }
+
+    @Test
+    public void testPinnedItemsStayInView() {
+        RssItemQuery query = RssItemQuery.forFeed(3, true, false, SORT_DIRECTION.desc);
+        List<RssItemListRow> firstPage = RssItemListRow.query(db, query.getPageWhereClause(null, null, PAGE_SIZE));
+        RssItem readItem = rssItemDao.load(firstPage.get(5).getId());
+
+        readItem.setRead_temp(true);
+        rssItemDao.update(readItem);
+
+        assertFalse(rowIds(RssItemListRow.query(db, query.getPageWhereClause(null, null, PAGE_SIZE))).contains(readItem.getId()));
+        assertEquals(rowIds(firstPage), rowIds(RssItemListRow.query(db, query.getPageWhereClause(Collections.singleton(readItem.getId()), null, PAGE_SIZE))));
+    }
+
+    @Test
+    public void testListRows() {
+        Feed feed = new Feed(3L, 1L, "Feed 3", "http://example.com/favicon.png", "http://example.com/feed", "-16776961");
+        new DaoMaster(db).newSession().getFeedDao().insert(feed);
+
+        StringBuilder body = new StringBuilder("<img src=\"//example.com/image.png\">");
+        while (body.length() < 5000) {
+            body.append("<p>Some text</p>");
+        }
+        RssItem item = rssItemDao.load(3L);
+        item.setBody(body.toString());
+        // Done by InsertRssItemIntoDatabase during the sync
+        RssItemPreview.update(item);
+        rssItemDao.update(item);
+
+        List<RssItemListRow> rows = RssItemListRow.query(db, " WHERE T._id IN (3, 4) ORDER BY T._id");
+        assertEquals(2, rows.size());
+
+        RssItemListRow row = rows.get(0);
+        assertEquals("Item 3", row.getTitle());
+        assertTrue(row.getRead_temp());
+        assertEquals("Feed 3", row.getFeedTitle());
+        assertEquals("-16776961", row.getFeedAvgColour());
+        // Only the beginning of the body is loaded - as plain text
+        assertEquals(RssItemPreview.PREVIEW_TEXT_LENGTH, row.getPreviewText().length());
+        assertTrue(row.getPreviewText().startsWith("Some text Some text"));
+        assertEquals("https://example.com/image.png", row.getMediaThumbnail());
+
+        // Items of unknown feeds are still listed
+        assertNull(rows.get(1).getFeedTitle());
+
+        // Items synced before the preview columns existed
+        assertNull(rows.get(1).getPreviewText());
+        assertEquals(ITEM_COUNT - 1, RssItemPreview.updateMissingPreviews(db));
+        assertEquals(0, RssItemPreview.updateMissingPreviews(db));
+        assertEquals("", RssItemListRow.query(db, " WHERE T._id = 4").get(0).getPreviewText());
+    }
+
+    private void assertPagesMatchCompleteView(RssItemQuery query) {
+        List<RssItem> expected = rssItemDao.queryRaw(" WHERE " + query.getCondition("T", null) + " ORDER BY " + query.getOrderBy("T"));
+        assertTrue(expected.size() > PAGE_SIZE);
+
+        List<RssItemListRow> actual = loadAllPages(query, null);
+        assertEquals(ids(expected), rowIds(actual));
+    }
+
+    private List<RssItemListRow> loadAllPages(RssItemQuery query, Set<Long> pinnedItemIds) {
+        List<RssItemListRow> items = new ArrayList<>();
+        RssItemListRow lastLoadedItem = null;
+        while (true) {
+            List<RssItemListRow> page = RssItemListRow.query(db, query.getPageWhereClause(pinnedItemIds, lastLoadedItem, PAGE_SIZE));
+            items.addAll(page);
+            if (page.size() < PAGE_SIZE) {
+                return items;
+            }
+            lastLoadedItem = page.get(page.size() - 1);
+        }
+    }
+
+    private static List<Long> ids(List<RssItem> items) {
+        List<Long> ids = new ArrayList<>(items.size());
+        for (RssItem item : items) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+
+    private static List<Long> rowIds(List<RssItemListRow> rows) {
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (RssItemListRow row : rows) {
+            ids.add(row.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,215 @@
+package de.luhmer.owncloudnewsreader.junit_tests;
+
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.preference.PreferenceManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.luhmer.owncloudnewsreader.Constants;
+import de.luhmer.owncloudnewsreader.database.RetentionPolicy;
+import de.luhmer.owncloudnewsreader.database.RssItemRetention;
+import de.luhmer.owncloudnewsreader.database.model.DaoMaster;
+import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import de.luhmer.owncloudnewsreader.database.model.RssItemDao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class RssItemRetentionTest {
+
+    private static final long NOW = 1500000000000L;
+
+    private SQLiteDatabase db;
+    private RssItemDao rssItemDao;
+
+    @Before
+    public void setUp() {
+        db = TestDatabase.create();
+        rssItemDao = new DaoMaster(db).newSession().getRssItemDao();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void testItemLimitKeepsUnreadStarredAndUnsyncedItems() {
+        for (long id = 1; id <= 300; id++) {
+            RssItem item = item(id, 1, NOW);
+            if (id <= 50) {
+                setRead(item, false);
+            } else if (id <= 60) {
+                item.setStarred(true);
+                item.setStarred_temp(true);
+            } else if (id <= 70) {
+                // Marked as read, but not synced yet
+                item.setRead(false);
+            }
+            rssItemDao.insert(item);
+        }
+
+        RssItemRetention.Report report = apply(new RetentionPolicy(100, 0, 0, 0, 0), null);
+
+        assertEquals(200, report.itemLimitCount);
+        assertEquals(200, report.getDeletedCount());
+        List<Long> ids = ids();
+        assertEquals(100, ids.size());
+        // The oldest deletable items are removed first
+        for (long id = 1; id <= 70; id++) {
+            assertTrue(ids.contains(id));
+        }
+        for (long id = 271; id <= 300; id++) {
+            assertTrue(ids.contains(id));
+        }
+        assertEquals(200, report.itemLinks.size());
+    }
+
+    @Test
+    public void testMaxAgeAndFeedLimit() {
+        long maxAge = TimeUnit.DAYS.toMillis(30);
+        for (long id = 1; id <= 400; id++) {
+            // Feed 1 has 300 items, feed 2 has 100 items. Every 10th item is too old.
+            long pubDate = id % 10 == 0 ? NOW - maxAge - 1000 : NOW - 1000;
+            rssItemDao.insert(item(id, id <= 300 ? 1 : 2, pubDate));
+        }
+
+        RssItemRetention.Report report = apply(new RetentionPolicy(0, 150, maxAge, 0, 0), null);
+
+        assertEquals(40, report.expiredCount);
+        // 270 items of feed 1 are left after removing the expired ones
+        assertEquals(120, report.feedLimitCount);
+        assertEquals(150, count("FEED_ID = 1"));
+        assertEquals(90, count("FEED_ID = 2"));
+        assertEquals(0, count("PUB_DATE < " + (NOW - maxAge)));
+    }
+
+    @Test
+    public void testBodyBudget() {
+        for (long id = 1; id <= 100; id++) {
+            RssItem item = item(id, 1, NOW);
+            item.setBody("<p><img src=\"https://example.com/" + id + ".png\"></p>");
+            rssItemDao.insert(item);
+        }
+        long bodySize = queryLong("SELECT SUM(LENGTH(BODY)) FROM RSS_ITEM");
+
+        RssItemRetention.Report report = apply(new RetentionPolicy(0, 0, 0, bodySize / 2, 0), null);
+
+        assertTrue(queryLong("SELECT SUM(LENGTH(BODY)) FROM RSS_ITEM") <= bodySize / 2);
+        assertEquals(report.bodyBudgetCount, 100 - count(null));
+        assertEquals(bodySize - queryLong("SELECT SUM(LENGTH(BODY)) FROM RSS_ITEM"), report.bodyBytes);
+        assertEquals(report.bodyBudgetCount, report.imageLinks.size());
+        assertTrue(report.imageLinks.contains("https://example.com/1.png"));
+    }
+
+    @Test
+    public void testRetainedItems() {
+        for (long id = 1; id <= 100; id++) {
+            rssItemDao.insert(item(id, 1, NOW));
+        }
+
+        RssItemRetention.Report report = apply(new RetentionPolicy(10, 0, 0, 0, 0), "_id <= 20");
+
+        assertEquals(80, report.getDeletedCount());
+        assertEquals(20, count(null));
+        assertEquals(20, count("_id <= 20"));
+
+        // Nothing left to do
+        assertEquals(0, apply(new RetentionPolicy(10, 0, 0, 0, 0), "_id <= 20").getDeletedCount());
+    }
+
+    @Test
+    public void testItemsMarkedUnreadAfterSelectionAreKept() {
+        for (long id = 1; id <= 20; id++) {
+            rssItemDao.insert(item(id, 1, NOW));
+        }
+
+        RssItemRetention retention = new RssItemRetention(db, new RetentionPolicy(10, 0, 0, 0, 0), null, NOW);
+        RssItemRetention.Batch batch = retention.selectNextBatch();
+        db.execSQL("UPDATE RSS_ITEM SET READ_TEMP = 0 WHERE _id = 1");
+        retention.delete(batch);
+
+        assertEquals(9, retention.getReport().itemLimitCount);
+        assertEquals(11, count(null));
+        assertEquals(1, count("_id = 1"));
+        assertFalse(retention.getReport().itemLinks.contains("https://example.com/1"));
+    }
+
+    @Test
+    public void testPolicyDefaultsKeepPreviousBehaviour() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(RuntimeEnvironment.application);
+        RetentionPolicy policy = RetentionPolicy.fromPreferences(prefs);
+
+        assertEquals(Constants.maxItemsCount, policy.maxItems);
+        assertEquals(0, policy.maxItemsPerFeed);
+        assertEquals(0, policy.maxAgeMillis);
+        assertEquals(0, policy.maxBodyBytes);
+        assertEquals(0, policy.maxFileBytes);
+    }
+
+    private RssItemRetention.Report apply(RetentionPolicy policy, String retainedCondition) {
+        RssItemRetention retention = new RssItemRetention(db, policy, retainedCondition, NOW);
+        int batches = 0;
+        while (retention.deleteNextBatch()) {
+            batches++;
+        }
+        assertFalse(retention.deleteNextBatch());
+        assertTrue(batches * 100 >= retention.getReport().getDeletedCount());
+        return retention.getReport();
+    }
+
+    private List<Long> ids() {
+        List<Long> ids = new ArrayList<>();
+        Cursor cursor = db.rawQuery("SELECT _id FROM RSS_ITEM ORDER BY _id", null);
+        try {
+            while (cursor.moveToNext()) {
+                ids.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return ids;
+    }
+
+    private long count(String condition) {
+        return queryLong("SELECT COUNT(*) FROM RSS_ITEM" + (condition != null ? " WHERE " + condition : ""));
+    }
+
+    private long queryLong(String sql) {
+        Cursor cursor = db.rawQuery(sql, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void setRead(RssItem item, boolean read) {
+        item.setRead(read);
+        item.setRead_temp(read);
+    }
+
+    private static RssItem item(long id, long feedId, long pubDate) {
+        RssItem item = TestDatabase.item(id, feedId);
+        item.setLink("https://example.com/" + id);
+        setRead(item, true);
+        item.setPubDate(new Date(pubDate));
+        item.setLastModified(new Date(pubDate));
+        return item;
+    }
+}
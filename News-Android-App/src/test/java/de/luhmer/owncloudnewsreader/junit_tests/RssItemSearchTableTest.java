@@ -0,0 +1,207 @@
+package de.luhmer.owncloudnewsreader.junit_tests;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm.SORT_DIRECTION;
+import de.luhmer.owncloudnewsreader.database.RssItemListRow;
+import de.luhmer.owncloudnewsreader.database.RssItemQuery;
+import de.luhmer.owncloudnewsreader.database.RssItemSearchTable;
+import de.luhmer.owncloudnewsreader.database.model.DaoMaster;
+import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import de.luhmer.owncloudnewsreader.database.model.RssItemDao;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class RssItemSearchTableTest {
+
+    private static final String[] WORDS = { "android", "kernel", "release", "update", "security",
+            "browser", "privacy", "nextcloud", "server", "feature", "bug", "performance" };
+
+    private SQLiteDatabase db;
+    private RssItemDao rssItemDao;
+
+    @Before
+    public void setUp() {
+        db = TestDatabase.create();
+        rssItemDao = new DaoMaster(db).newSession().getRssItemDao();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+    }
+
+    @Test
+    public void testPlainText() {
+        assertEquals("Tom & Jerry say \"hi\" €",
+                RssItemSearchTable.toPlainText("<![CDATA[<p>Tom &amp; <b>Jerry</b>&nbsp;say &quot;hi&quot; &#8364;</p>]]>"));
+        assertEquals("before after",
+                RssItemSearchTable.toPlainText("before<script type=\"text/javascript\">var a = '<p>';</script><STYLE>p {}</STYLE>after"));
+        assertEquals("", RssItemSearchTable.toPlainText(null));
+    }
+
+    @Test
+    public void testMatchExpression() {
+        assertEquals("and* or* c*", RssItemSearchTable.getMatchExpression(null, "AND \"or\" -C++"));
+        assertEquals("TITLE:über* TITLE:x*", RssItemSearchTable.getMatchExpression(RssItemSearchTable.COLUMN_TITLE, "über x"));
+        assertNull(RssItemSearchTable.getMatchExpression(null, " *:- "));
+    }
+
+    @Test
+    public void testSearch() {
+        insert(item(1, "Kernel release", "<p>Linus tagged a new version</p>"),
+                item(2, "Weekly news", "<p>The new <b>kernel</b> ships a lot of drivers</p><img src=\"kernel.png\">"),
+                item(3, "Browser update", "<p>Nothing about operating systems</p>"));
+
+        // Prefix search in all columns, the hit in the title ranks higher than the one in the body
+        assertEquals(Arrays.asList(1L, 2L), search(null, "kern"));
+        assertEquals(Collections.singletonList(1L), search(RssItemSearchTable.COLUMN_TITLE, "kern"));
+        // Html is not indexed
+        assertEquals(Collections.<Long>emptyList(), search(null, "img png"));
+        // All words have to match
+        assertEquals(Collections.singletonList(2L), search(null, "new drivers"));
+    }
+
+    @Test
+    public void testIndexFollowsWritePaths() {
+        insert(item(1, "Kernel release", ""), item(2, "Kernel update", ""));
+
+        // Replacing an item updates the index (instead of keeping the old text)
+        insert(item(1, "Browser release", ""));
+        assertEquals(Collections.singletonList(2L), search(null, "kernel"));
+        assertEquals(Collections.singletonList(1L), search(null, "browser"));
+
+        // Deleting items removes them from the index
+        db.execSQL("DELETE FROM RSS_ITEM WHERE _id = 2");
+        assertEquals(Collections.<Long>emptyList(), search(null, "kernel"));
+        rssItemDao.deleteAll();
+        assertEquals(Collections.<Long>emptyList(), search(null, "browser"));
+    }
+
+    @Test
+    public void testIndexMissingItems() {
+        rssItemDao.insertInTx(item(1, "Kernel release", ""), item(2, "Kernel update", ""));
+        assertEquals(Collections.<Long>emptyList(), search(null, "kernel"));
+
+        assertEquals(2, RssItemSearchTable.indexMissingItems(db));
+        assertEquals(0, RssItemSearchTable.indexMissingItems(db));
+        assertEquals(Arrays.asList(2L, 1L), search(null, "kernel"));
+    }
+
+    @Test
+    public void testSnippets() {
+        insert(item(1, "Title", "<p>Some text before. The kernel <b>&lt;4.19&gt;</b> has been released.</p>"));
+
+        Map<Long, String> snippets = RssItemSearchTable.getSnippets(db, RssItemSearchTable.getMatchExpression(null, "kern"), Collections.singletonList(1L));
+        String snippet = snippets.get(1L);
+        assertTrue(snippet, snippet.contains("The <b>kernel</b> &lt;4.19&gt; has been released."));
+    }
+
+    @Test
+    public void testSearchResultsView() {
+        List<RssItem> items = new ArrayList<>();
+        for (long id = 1; id <= 1000; id++) {
+            items.add(item(id, "Item " + id + (id % 3 == 0 ? " kernel" : ""), "<p>kernel " + id % 5 + "</p>"));
+        }
+        insert(items.toArray(new RssItem[0]));
+
+        RssItemQuery query = RssItemQuery.forFeed(3, false, false, SORT_DIRECTION.desc).search(null, "kernel");
+        query.loadSearchResults(db, 500);
+
+        List<RssItem> expected = rssItemDao.queryRaw(" WHERE " + query.getCondition("T", null) + " ORDER BY " + query.getOrderBy("T"));
+        assertEquals(100, expected.size());
+        // Items with the word in the title come first
+        assertTrue(expected.get(0).getTitle().endsWith("kernel"));
+        assertFalse(expected.get(expected.size() - 1).getTitle().endsWith("kernel"));
+
+        List<Long> pages = new ArrayList<>();
+        RssItemListRow lastLoadedItem = null;
+        while (true) {
+            List<RssItemListRow> page = RssItemListRow.query(db, query.getPageWhereClause(null, lastLoadedItem, 30));
+            for (RssItemListRow row : page) {
+                pages.add(row.getId());
+            }
+            if (page.size() < 30) {
+                break;
+            }
+            lastLoadedItem = page.get(page.size() - 1);
+        }
+        assertEquals(ids(expected), pages);
+    }
+
+    @Ignore("Benchmark with a large database, run manually")
+    @Test
+    public void testSearchPerformance() {
+        int itemCount = 20000;
+        StringBuilder body = new StringBuilder();
+        List<RssItem> items = new ArrayList<>(1000);
+        // Bodies are stored compressed, LIKE needs the text (as stored by older versions)
+        db.execSQL("CREATE TABLE PLAIN_BODY (_id INTEGER PRIMARY KEY, BODY TEXT)");
+        for (long id = 1; id <= itemCount; id++) {
+            body.setLength(0);
+            for (int i = 0; i < 300; i++) {
+                body.append(i % 20 == 0 ? "<p>" : "").append(WORDS[(int) ((id * 31 + i * 7) % WORDS.length)]).append(' ');
+            }
+            body.append(id % 1000 == 0 ? "needle" : "hay").append("</p>");
+            items.add(item(id, "Item " + id, body.toString()));
+            db.execSQL("INSERT INTO PLAIN_BODY VALUES (?, ?)", new Object[] { id, body.toString() });
+            if (items.size() == 1000) {
+                insert(items.toArray(new RssItem[0]));
+                items.clear();
+            }
+        }
+
+        List<RssItem> likeResults = rssItemDao.queryRaw(", PLAIN_BODY P WHERE P._id = T._id AND P.BODY LIKE '%needle%'");
+        List<Long> ftsResults = search(null, "needl");
+        assertEquals(itemCount / 1000, likeResults.size());
+        assertEquals(itemCount / 1000, ftsResults.size());
+    }
+
+    private List<Long> search(String column, String searchString) {
+        return RssItemSearchTable.search(db, RssItemSearchTable.getMatchExpression(column, searchString), null, 100);
+    }
+
+    // Same as DatabaseConnectionOrm#insertNewItems
+    private void insert(RssItem... items) {
+        db.beginTransaction();
+        try {
+            rssItemDao.insertOrReplaceInTx(items);
+            RssItemSearchTable.index(db, Arrays.asList(items));
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private static RssItem item(long id, String title, String body) {
+        RssItem item = TestDatabase.item(id, id % 10);
+        item.setTitle(title);
+        item.setBody(body);
+        return item;
+    }
+
+    private static List<Long> ids(List<RssItem> items) {
+        List<Long> ids = new ArrayList<>(items.size());
+        for (RssItem item : items) {
+            ids.add(item.getId());
+        }
+        return ids;
+    }
+}
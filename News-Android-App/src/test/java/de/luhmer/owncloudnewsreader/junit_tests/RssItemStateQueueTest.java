@@ -0,0 +1,135 @@
+package de.luhmer.owncloudnewsreader.junit_tests;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.greenrobot.eventbus.EventBus;
+import org.greenrobot.eventbus.Subscribe;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import de.luhmer.owncloudnewsreader.database.RssItemStateQueue;
+import de.luhmer.owncloudnewsreader.database.model.DaoMaster;
+import de.luhmer.owncloudnewsreader.database.model.DaoSession;
+import de.luhmer.owncloudnewsreader.database.model.Feed;
+import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import de.luhmer.owncloudnewsreader.events.RssItemCountChangedEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+public class RssItemStateQueueTest {
+
+    private SQLiteDatabase db;
+    private DaoSession daoSession;
+    private RssItemStateQueue queue;
+    private final List<RssItemCountChangedEvent> events = Collections.synchronizedList(new ArrayList<RssItemCountChangedEvent>());
+
+    @Before
+    public void setUp() {
+        db = TestDatabase.create();
+        daoSession = new DaoMaster(db).newSession();
+        // Feed 1 and 2 are in folder 5, feed 3 has no folder
+        daoSession.getFeedDao().insert(new Feed(1L, 5L, "Feed 1", null, "http://example.com/1", null));
+        daoSession.getFeedDao().insert(new Feed(2L, 5L, "Feed 2", null, "http://example.com/2", null));
+        daoSession.getFeedDao().insert(new Feed(3L, 0L, "Feed 3", null, "http://example.com/3", null));
+        for (long id = 1; id <= 30; id++) {
+            daoSession.getRssItemDao().insert(item(id, (id - 1) / 10 + 1, "fp" + id));
+        }
+        // Same article in feed 1 and feed 3
+        daoSession.getRssItemDao().insert(item(31, 3, "fp1"));
+
+        queue = new RssItemStateQueue(daoSession);
+        EventBus.getDefault().register(this);
+    }
+
+    @After
+    public void tearDown() {
+        EventBus.getDefault().unregister(this);
+        db.close();
+    }
+
+    @Subscribe
+    public void onEvent(RssItemCountChangedEvent event) {
+        events.add(event);
+    }
+
+    @Test
+    public void testChangesAreCoalesced() {
+        // Marked as read while scrolling, one item is marked as unread again
+        for (long id = 1; id <= 10; id++) {
+            queue.enqueue(id, true, false);
+        }
+        queue.enqueue(2, false, false);
+        queue.enqueue(12, true, true);
+        queue.enqueue(2, false, true);
+        assertTrue(queue.hasPendingChanges());
+        assertEquals(0, count("READ_TEMP = 1"));
+
+        queue.flush();
+
+        assertFalse(queue.hasPendingChanges());
+        // Items 1, 3-10, 12 and the duplicate of item 1
+        assertEquals(11, count("READ_TEMP = 1"));
+        assertEquals(1, count("_id = 31 AND READ_TEMP = 1"));
+        assertEquals(2, count("STARRED_TEMP = 1"));
+        assertEquals(1, count("_id = 2 AND READ_TEMP = 0 AND STARRED_TEMP = 1"));
+
+        // One event for all changes
+        assertEquals(1, events.size());
+        RssItemCountChangedEvent event = events.get(0);
+        assertEquals(-9, event.getUnreadCountFeedDeltas().get(1));
+        assertEquals(-1, event.getUnreadCountFeedDeltas().get(2));
+        assertEquals(-1, event.getUnreadCountFeedDeltas().get(3));
+        assertEquals(-10, event.getUnreadCountFolderDeltas().get(5));
+        assertEquals(-11, event.getUnreadCountFolderDeltas().get(-10)); // all unread items
+        assertEquals(1, event.getStarredCountFeedDeltas().get(1));
+        assertEquals(1, event.getStarredCountFeedDeltas().get(2));
+        assertEquals(2, event.getUnreadCountFolderDeltas().get(-11)); // starred items
+
+        // Nothing left to write
+        queue.flush();
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    public void testDelayedFlush() throws InterruptedException {
+        queue.enqueue(1, true, false);
+        queue.enqueue(2, true, false);
+
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        // The flush runs on the writer thread
+        for (int i = 0; i < 100 && events.isEmpty(); i++) {
+            Thread.sleep(20);
+        }
+
+        assertEquals(1, events.size());
+        assertEquals(2, count("_id IN (1, 2) AND READ_TEMP = 1"));
+    }
+
+    private long count(String condition) {
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM RSS_ITEM WHERE " + condition, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static RssItem item(long id, long feedId, String fingerprint) {
+        RssItem item = TestDatabase.item(id, feedId);
+        item.setFingerprint(fingerprint);
+        return item;
+    }
+}
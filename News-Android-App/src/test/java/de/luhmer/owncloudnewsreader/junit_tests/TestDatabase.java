@@ -0,0 +1,54 @@
+package de.luhmer.owncloudnewsreader.junit_tests;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.Date;
+
+import de.luhmer.owncloudnewsreader.database.FeedCounterTable;
+import de.luhmer.owncloudnewsreader.database.RssItemSearchTable;
+import de.luhmer.owncloudnewsreader.database.model.DaoMaster;
+import de.luhmer.owncloudnewsreader.database.model.RssItem;
+
+/**
+ * In-memory database and rss items for the database tests (which run with Robolectric).
+ */
+public final class TestDatabase {
+
+    private TestDatabase() {
+    }
+
+    /**
+     * @return in-memory database with the same tables and triggers as a new installation
+     * (see {@link de.luhmer.owncloudnewsreader.database.DatabaseOpenHelper})
+     */
+    public static SQLiteDatabase create() {
+        SQLiteDatabase db = SQLiteDatabase.create(null);
+        FeedCounterTable.enableTriggers(db);
+        DaoMaster.createAllTables(db, false);
+        FeedCounterTable.createTable(db);
+        RssItemSearchTable.createTable(db);
+        return db;
+    }
+
+    /**
+     * @return unread and unstarred item with all required columns set, newer items have higher ids
+     */
+    public static RssItem item(long id, long feedId) {
+        RssItem item = new RssItem();
+        item.setId(id);
+        item.setFeedId(feedId);
+        item.setTitle("Item " + id);
+        item.setBody("<p>Item " + id + "</p>");
+        item.setAuthor("");
+        item.setGuid("guid" + id);
+        item.setGuidHash("guidHash" + id);
+        item.setFingerprint("fp" + id);
+        item.setRead(false);
+        item.setRead_temp(false);
+        item.setStarred(false);
+        item.setStarred_temp(false);
+        item.setPubDate(new Date(1500000000000L + id * 1000));
+        item.setLastModified(new Date());
+        return item;
+    }
+}
@@ -0,0 +1,101 @@
+package de.luhmer.owncloudnewsreader.junit_tests;
+
+import android.app.Activity;
+import android.webkit.WebView;
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import de.luhmer.owncloudnewsreader.helper.WebViewPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class WebViewPoolTest {
+
+    private Activity activity;
+
+    @Before
+    public void setUp() {
+        activity = Robolectric.buildActivity(Activity.class).create().get();
+    }
+
+    @Test
+    public void testReleasedWebViewIsReused() {
+        WebViewPool pool = new WebViewPool(activity, 1, 1);
+        FrameLayout container = new FrameLayout(activity);
+        WebView webView = pool.acquire();
+        container.addView(webView);
+
+        pool.release(webView);
+
+        assertNull(webView.getParent());
+        assertFalse(shadowOf(webView).wasDestroyCalled());
+        assertEquals(1, pool.getIdleCount());
+        assertSame(webView, pool.acquire());
+        assertEquals(0, pool.getIdleCount());
+    }
+
+    @Test
+    public void testWebViewIsDestroyedIfPoolIsFull() {
+        WebViewPool pool = new WebViewPool(activity, 1, 1);
+        WebView webView1 = pool.acquire();
+        WebView webView2 = pool.acquire();
+        assertNotSame(webView1, webView2);
+
+        pool.release(webView1);
+        pool.release(webView2);
+
+        assertEquals(1, pool.getIdleCount());
+        assertFalse(shadowOf(webView1).wasDestroyCalled());
+        assertTrue(shadowOf(webView2).wasDestroyCalled());
+    }
+
+    @Test
+    public void testTrimReleasesAllWebViews() {
+        WebViewPool pool = new WebViewPool(activity, 2, 1);
+        WebView webView1 = pool.acquire();
+        WebView webView2 = pool.acquire();
+        WebView webView3 = pool.acquire();
+        pool.release(webView1);
+        pool.release(webView2);
+
+        pool.trim();
+
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(shadowOf(webView1).wasDestroyCalled());
+        assertTrue(shadowOf(webView2).wasDestroyCalled());
+
+        // Not pooled until the pool is filled again
+        pool.release(webView3);
+        assertTrue(shadowOf(webView3).wasDestroyCalled());
+        pool.prefill();
+        pool.release(pool.acquire());
+        assertEquals(1, pool.getIdleCount());
+    }
+
+    @Test
+    public void testDestroy() {
+        WebViewPool pool = new WebViewPool(activity, 2, 1);
+        WebView webView1 = pool.acquire();
+        WebView webView2 = pool.acquire();
+        pool.release(webView1);
+
+        pool.destroy();
+        pool.release(webView2);
+
+        assertEquals(0, pool.getIdleCount());
+        assertTrue(shadowOf(webView1).wasDestroyCalled());
+        assertTrue(shadowOf(webView2).wasDestroyCalled());
+    }
+}
@@ -0,0 +1,129 @@
+package de.luhmer.owncloudnewsreader.reader.nextcloud;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+public class ConditionalGetInterceptorTest {
+
+    private static final String FEEDS = "{\"feeds\":[{\"id\":1,\"title\":\"Feed 1\"}]}";
+
+    @Rule
+    public TemporaryFolder cacheDir = new TemporaryFolder();
+
+    private MockWebServer server;
+    private OkHttpClient client;
+    private ApiMetrics metrics;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        metrics = new ApiMetrics();
+        client = new OkHttpClient.Builder()
+                .cache(new Cache(cacheDir.getRoot(), 1024 * 1024))
+                .addInterceptor(metrics)
+                .addNetworkInterceptor(new ConditionalGetInterceptor())
+                .build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void testUnchangedFeedsAreRevalidated() throws IOException {
+        server.enqueue(new MockResponse()
+                .setHeader("ETag", "\"v1\"")
+                .setHeader("Cache-Control", "no-cache, no-store, must-revalidate")
+                .setHeader("Pragma", "no-cache")
+                .setBody(FEEDS));
+        server.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", "\"v1\""));
+
+        assertEquals(FEEDS, get("feeds"));
+        assertEquals(FEEDS, get("feeds"));
+
+        RecordedRequest first = server.takeRequest();
+        RecordedRequest second = server.takeRequest();
+        assertNull(first.getHeader("If-None-Match"));
+        assertEquals("\"v1\"", second.getHeader("If-None-Match"));
+
+        ApiMetrics.Endpoint feeds = metrics.getEndpointMetrics("GET feeds");
+        assertEquals(2, feeds.requestCount);
+        assertEquals(1, feeds.notModifiedCount);
+    }
+
+    @Test
+    public void testItemsAreNotCached() throws IOException {
+        // Large and changes with every sync
+        for (int i = 0; i < 2; i++) {
+            server.enqueue(new MockResponse()
+                    .setHeader("ETag", "\"v1\"")
+                    .setHeader("Cache-Control", "no-cache, no-store, must-revalidate")
+                    .setBody("{\"items\":[]}"));
+        }
+
+        get("items");
+        get("items");
+
+        server.takeRequest();
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+        assertEquals(0, metrics.getEndpointMetrics("GET items").notModifiedCount);
+    }
+
+    @Test
+    public void testCompressedResponse() throws IOException {
+        Buffer compressed = new Buffer();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(compressed))) {
+            sink.writeUtf8(FEEDS);
+        }
+        server.enqueue(new MockResponse().setHeader("Content-Encoding", "gzip").setBody(compressed));
+
+        // Decompressed transparently
+        assertEquals(FEEDS, get("feeds"));
+        assertEquals("gzip", server.takeRequest().getHeader("Accept-Encoding"));
+        assertEquals(1, metrics.getEndpointMetrics("GET feeds").compressedCount);
+    }
+
+    @Test
+    public void testEndpointNames() {
+        assertEquals("PUT feeds/{id}/rename", ApiMetrics.getEndpoint(request("feeds/12/rename").newBuilder().put(RequestBody.create(null, "")).build()));
+        assertEquals("GET items/updated", ApiMetrics.getEndpoint(request("items/updated")));
+        assertNull(ApiMetrics.getEndpoint(new Request.Builder().url(server.url("/image.png")).build()));
+    }
+
+    private String get(String endpoint) throws IOException {
+        try (Response response = client.newCall(request(endpoint)).execute()) {
+            return response.body().string();
+        }
+    }
+
+    private Request request(String endpoint) {
+        return new Request.Builder().url(server.url("/nextcloud" + API.mApiEndpoint + endpoint)).build();
+    }
+}
@@ -0,0 +1,104 @@
+package de.luhmer.owncloudnewsreader.reader.nextcloud;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
+
+import de.luhmer.owncloudnewsreader.database.model.RssItem;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class InsertRssItemIntoDatabaseTest {
+
+    private static final String[] REQUIRED_FIELDS = { "id", "feedId", "guid", "guidHash", "pubDate", "lastModified" };
+
+    @Test
+    public void testCompleteItem() throws IOException {
+        RssItem rssItem = parse(item(null, false));
+
+        assertEquals(12, rssItem.getId());
+        assertEquals(3, rssItem.getFeedId());
+        assertEquals(1367270544000L, rssItem.getPubDate().getTime());
+        assertEquals(1367273003000L, rssItem.getLastModified().getTime());
+        assertEquals("", rssItem.getEnclosureLink());
+    }
+
+    @Test
+    public void testMissingRequiredFields() throws IOException {
+        for (String field : REQUIRED_FIELDS) {
+            assertParseFails(item(field, false), field);
+            assertParseFails(item(field, true), field);
+        }
+    }
+
+    @Test
+    public void testWrittenItemsAreReadBack() throws IOException {
+        RssItem rssItem = parse(item(null, false));
+        RssItemListTypeAdapter adapter = new RssItemListTypeAdapter();
+
+        List<RssItem> items = adapter.fromJson(adapter.toJson(Collections.singletonList(rssItem)));
+
+        assertEquals(1, items.size());
+        RssItem copy = items.get(0);
+        assertEquals(rssItem.getId(), copy.getId());
+        assertEquals(rssItem.getFeedId(), copy.getFeedId());
+        assertEquals(rssItem.getGuid(), copy.getGuid());
+        assertEquals(rssItem.getGuidHash(), copy.getGuidHash());
+        assertEquals(rssItem.getFingerprint(), copy.getFingerprint());
+        assertEquals(rssItem.getTitle(), copy.getTitle());
+        assertEquals(rssItem.getBody(), copy.getBody());
+        assertEquals(rssItem.getLink(), copy.getLink());
+        assertEquals(rssItem.getPubDate(), copy.getPubDate());
+        assertEquals(rssItem.getLastModified(), copy.getLastModified());
+        assertEquals(rssItem.getRead(), copy.getRead());
+        assertEquals(rssItem.getStarred(), copy.getStarred());
+    }
+
+    private static void assertParseFails(String json, String field) throws IOException {
+        try {
+            parse(json);
+            fail("Item without " + field + " has been parsed: " + json);
+        } catch (JsonParseException e) {
+            // expected
+        }
+    }
+
+    private static RssItem parse(String json) throws IOException {
+        return InsertRssItemIntoDatabase.parseItem(new JsonReader(new StringReader(json)));
+    }
+
+    /**
+     * @param field field which is left out (or set to null)
+     */
+    private static String item(String field, boolean asNull) {
+        String[][] values = {
+                { "id", "12" },
+                { "feedId", "3" },
+                { "guid", "\"http://example.com/?p=12\"" },
+                { "guidHash", "\"hash12\"" },
+                { "pubDate", "1367270544" },
+                { "lastModified", "1367273003000" },
+                { "title", "\"Article\"" },
+                { "body", "\"<p>Article</p>\"" },
+                { "enclosureLink", "null" }
+        };
+        StringBuilder sb = new StringBuilder("{");
+        for (String[] value : values) {
+            if (value[0].equals(field) && !asNull) {
+                continue;
+            }
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append('"').append(value[0]).append("\":").append(value[0].equals(field) ? "null" : value[1]);
+        }
+        return sb.append('}').toString();
+    }
+}
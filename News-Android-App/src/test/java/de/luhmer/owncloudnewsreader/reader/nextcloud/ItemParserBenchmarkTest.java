@@ -0,0 +1,221 @@
+package de.luhmer.owncloudnewsreader.reader.nextcloud;
+
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import de.luhmer.owncloudnewsreader.database.RssItemPreview;
+import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import okio.Okio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the streaming item parser of the sync with the previous parser, which built a
+ * JsonObject for every item and read the fields back from it, on a large items response.
+ * Reports the time and the bytes allocated by both parsers (run manually).
+ */
+@Ignore("Benchmark with a large fixture, run manually")
+public class ItemParserBenchmarkTest {
+
+    private static final int ITEM_COUNT = 50000;
+    private static byte[] fixture;
+
+    @BeforeClass
+    public static void createFixture() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"items\":[");
+        for (int i = 1; i <= ITEM_COUNT; i++) {
+            if (i > 1) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i)
+                    .append(",\"guid\":\"http://example.com/?p=").append(i).append('"')
+                    .append(",\"guidHash\":\"3059047a572cd9cd5d0bf645faffd0").append(i % 100).append('"')
+                    .append(",\"url\":\"http://example.com/2013/04/29/article-").append(i).append('"')
+                    .append(",\"title\":\"Article ").append(i).append('"')
+                    .append(",\"author\":\"Jan Grulich (grulja)\"")
+                    .append(",\"pubDate\":").append(1367270544 + i)
+                    .append(",\"body\":\"<p>Lorem ipsum dolor sit amet, consetetur sadipscing elitr, sed diam nonumy eirmod tempor invidunt ut labore et dolore magna aliquyam erat. <img src=\\\"http://example.com/").append(i).append(".png\\\"/></p>\"")
+                    .append(",\"enclosureMime\":null")
+                    .append(",\"enclosureLink\":null")
+                    .append(",\"mediaThumbnail\":null")
+                    .append(",\"feedId\":").append(i % 20)
+                    .append(",\"unread\":").append(i % 3 != 0)
+                    .append(",\"starred\":").append(i % 50 == 0)
+                    .append(",\"rtl\":false")
+                    .append(",\"lastModified\":").append(1367273003 + i)
+                    .append(",\"fingerprint\":\"fp").append(i).append('"')
+                    .append('}');
+        }
+        sb.append("]}");
+        fixture = sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void compareStreamingParserWithJsonObjectParser() throws IOException {
+        // Warm up both code paths
+        parseWithJsonObjects();
+        parseStreaming();
+
+        long[] jsonObjectStats = startMeasurement();
+        List<RssItem> expected = parseWithJsonObjects();
+        stopMeasurement(jsonObjectStats);
+
+        long[] streamingStats = startMeasurement();
+        List<RssItem> actual = parseStreaming();
+        stopMeasurement(streamingStats);
+
+        System.out.println("Parsing " + ITEM_COUNT + " items"
+                + " - JsonObject: " + jsonObjectStats[0] + "ms, " + jsonObjectStats[1] / 1024 / 1024 + "MB allocated"
+                + " - streaming: " + streamingStats[0] + "ms, " + streamingStats[1] / 1024 / 1024 + "MB allocated");
+
+        assertTrue(streamingStats[1] < jsonObjectStats[1]);
+        assertEquals(ITEM_COUNT, actual.size());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            RssItem e = expected.get(i);
+            RssItem a = actual.get(i);
+            assertEquals(e.getId(), a.getId());
+            assertEquals(e.getFeedId(), a.getFeedId());
+            assertEquals(e.getGuid(), a.getGuid());
+            assertEquals(e.getGuidHash(), a.getGuidHash());
+            assertEquals(e.getFingerprint(), a.getFingerprint());
+            assertEquals(e.getTitle(), a.getTitle());
+            assertEquals(e.getAuthor(), a.getAuthor());
+            assertEquals(e.getLink(), a.getLink());
+            assertEquals(e.getBody(), a.getBody());
+            assertEquals(e.getPubDate(), a.getPubDate());
+            assertEquals(e.getLastModified(), a.getLastModified());
+            assertEquals(e.getRead(), a.getRead());
+            assertEquals(e.getRead_temp(), a.getRead_temp());
+            assertEquals(e.getStarred(), a.getStarred());
+            assertEquals(e.getStarred_temp(), a.getStarred_temp());
+            assertEquals(e.getEnclosureLink(), a.getEnclosureLink());
+            assertEquals(e.getEnclosureMime(), a.getEnclosureMime());
+            assertEquals(e.getPreviewText(), a.getPreviewText());
+        }
+    }
+
+    /**
+     * @return {start time in nanoseconds, allocated bytes of the current thread}
+     */
+    private static long[] startMeasurement() {
+        return new long[] { System.nanoTime(), getAllocatedBytes() };
+    }
+
+    /**
+     * Turns the values of {@link #startMeasurement()} into {milliseconds, allocated bytes}
+     */
+    private static void stopMeasurement(long[] stats) {
+        stats[0] = (System.nanoTime() - stats[0]) / 1000000;
+        stats[1] = getAllocatedBytes() - stats[1];
+    }
+
+    private static long getAllocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private List<RssItem> parseStreaming() {
+        // Emits synchronously on the current thread
+        return RssItemObservable.events(Okio.buffer(Okio.source(new ByteArrayInputStream(fixture))))
+                .toList()
+                .blockingGet();
+    }
+
+    /**
+     * The previous parser (RssItemObservable#events and InsertRssItemIntoDatabase#parseItem
+     * before the streaming parser), with the same post processing as the streaming parser
+     */
+    private List<RssItem> parseWithJsonObjects() throws IOException {
+        List<RssItem> items = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(fixture), StandardCharsets.UTF_8))) {
+            InsertRssItemIntoDatabase.beginItemsArray(reader);
+            while (reader.hasNext()) {
+                items.add(parseItem(getJsonObjectFromReader(reader)));
+            }
+            reader.endArray();
+        }
+        return items;
+    }
+
+    private static JsonObject getJsonObjectFromReader(JsonReader jsonReader) throws IOException {
+        JsonObject jObj = new JsonObject();
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String name = jsonReader.nextName();
+            JsonToken token = jsonReader.peek();
+            switch (token) {
+                case NUMBER:
+                    jObj.addProperty(name, jsonReader.nextLong());
+                    break;
+                case NULL:
+                case BEGIN_ARRAY:
+                    jsonReader.skipValue();
+                    break;
+                case BOOLEAN:
+                    jObj.addProperty(name, jsonReader.nextBoolean());
+                    break;
+                case BEGIN_OBJECT:
+                    jObj.add(name, getJsonObjectFromReader(jsonReader));
+                    break;
+                default:
+                    jObj.addProperty(name, jsonReader.nextString());
+            }
+        }
+        jsonReader.endObject();
+        return jObj;
+    }
+
+    private static RssItem parseItem(JsonObject e) {
+        String url = getStringOrDefault("url", "about:blank", e);
+        String enclosureLink = getStringOrDefault("enclosureLink", "", e);
+        String enclosureMime = getStringOrDefault("enclosureMime", "", e);
+        if (enclosureLink.trim().equals("") && url.matches("^https?://(www.)?youtube.com/.*")) {
+            enclosureLink = url;
+            enclosureMime = "youtube";
+        }
+
+        RssItem rssItem = new RssItem();
+        rssItem.setId(e.get("id").getAsLong());
+        rssItem.setFeedId(e.get("feedId").getAsLong());
+        rssItem.setGuid(e.get("guid").getAsString());
+        rssItem.setGuidHash(e.get("guidHash").getAsString());
+        rssItem.setFingerprint(getStringOrDefault("fingerprint", null, e));
+        rssItem.setBody(e.get("body").getAsString());
+        rssItem.setLastModified(new Date(e.get("lastModified").getAsLong()));
+        rssItem.setRead(!e.get("unread").getAsBoolean());
+        rssItem.setRead_temp(rssItem.getRead());
+        rssItem.setStarred(e.get("starred").getAsBoolean());
+        rssItem.setStarred_temp(rssItem.getStarred());
+        rssItem.setPubDate(new Date(e.get("pubDate").getAsLong() * 1000));
+        rssItem.setTitle(e.get("title").getAsString());
+        rssItem.setAuthor(e.get("author").getAsString());
+        rssItem.setLink(url);
+        rssItem.setEnclosureLink(enclosureLink);
+        rssItem.setEnclosureMime(enclosureMime);
+        RssItemPreview.update(rssItem);
+        return rssItem;
+    }
+
+    private static String getStringOrDefault(String key, String defaultValue, JsonObject jObj) {
+        if (jObj.has(key) && !jObj.get(key).isJsonNull()) {
+            return jObj.get(key).getAsString();
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,141 @@
+package de.luhmer.owncloudnewsreader.reader.nextcloud;
+
+import com.google.gson.JsonParser;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.luhmer.owncloudnewsreader.NewsReaderListActivity;
+import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
+import de.luhmer.owncloudnewsreader.database.model.RssItem;
+import de.luhmer.owncloudnewsreader.helper.GsonConfig;
+import de.luhmer.owncloudnewsreader.junit_tests.TestDatabase;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class ItemStateSyncTest {
+
+    private static final int ITEM_COUNT = 1200; // three chunks (500, 500, 200)
+
+    private MockWebServer server;
+    private DatabaseConnectionOrm dbConn;
+    private API api;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        NewsReaderListActivity activity = Robolectric.buildActivity(NewsReaderListActivity.class).create().get();
+        dbConn = new DatabaseConnectionOrm(activity);
+        dbConn.resetDatabase();
+
+        // Marked as read locally, but not synced yet
+        List<RssItem> items = new ArrayList<>();
+        for (long id = 1; id <= ITEM_COUNT; id++) {
+            RssItem item = TestDatabase.item(id, 1);
+            item.setRead_temp(true);
+            items.add(item);
+        }
+        dbConn.insertNewItems(items);
+
+        // Retries are done by ItemStateSync only
+        OkHttpClient client = new OkHttpClient.Builder()
+                .retryOnConnectionFailure(false)
+                .build();
+        api = new Retrofit.Builder()
+                .client(client)
+                .addConverterFactory(GsonConverterFactory.create(GsonConfig.GetGson()))
+                .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
+                .baseUrl(server.url(API.mApiEndpoint))
+                .build()
+                .create(API.class);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void testOnlyTransientErrorsAreRetried() {
+        assertTrue(ItemStateSync.isTransientError(new SocketTimeoutException()));
+        assertTrue(ItemStateSync.isTransientError(new IOException("Connection reset")));
+        assertTrue(ItemStateSync.isTransientError(new ItemStateSync.HttpStatusException("Syncing", 500)));
+        assertTrue(ItemStateSync.isTransientError(new ItemStateSync.HttpStatusException("Syncing", 503)));
+
+        assertFalse(ItemStateSync.isTransientError(new ItemStateSync.HttpStatusException("Syncing", 400)));
+        assertFalse(ItemStateSync.isTransientError(new ItemStateSync.HttpStatusException("Syncing", 401)));
+        assertFalse(ItemStateSync.isTransientError(new ItemStateSync.HttpStatusException("Syncing", 404)));
+        assertFalse(ItemStateSync.isTransientError(new NullPointerException()));
+    }
+
+    @Test
+    public void testRejectedChunkDoesNotStopTheOtherChunks() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(200)); // first chunk, second attempt
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(400)); // second chunk is rejected
+        server.enqueue(new MockResponse().setResponseCode(200));
+
+        assertFalse(ItemStateSync.PerformItemStateSync(api, dbConn));
+
+        assertEquals(5, server.getRequestCount());
+        assertChunk(server.takeRequest(), 500);
+        assertChunk(server.takeRequest(), 500);
+        assertChunk(server.takeRequest(), 500);
+        assertChunk(server.takeRequest(), 500);
+        assertChunk(server.takeRequest(), 200);
+
+        // Only the items of the rejected chunk have to be synced again
+        assertEquals(500, dbConn.getIdsOfAllNewReadRssItems().size());
+    }
+
+    @Test
+    public void testNetworkErrorIsPropagated() throws Exception {
+        // Initial attempt and all retries of the first chunk fail
+        for (int i = 0; i <= ItemStateSync.MAX_RETRIES_PER_CHUNK; i++) {
+            server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        }
+        server.enqueue(new MockResponse().setResponseCode(200));
+        server.enqueue(new MockResponse().setResponseCode(200));
+
+        try {
+            ItemStateSync.PerformItemStateSync(api, dbConn);
+            fail("The sync should have failed");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // The following chunks were sent anyway
+        assertEquals(ItemStateSync.MAX_RETRIES_PER_CHUNK + 3, server.getRequestCount());
+        assertEquals(500, dbConn.getIdsOfAllNewReadRssItems().size());
+    }
+
+    private static void assertChunk(RecordedRequest request, int size) {
+        assertEquals("PUT", request.getMethod());
+        assertEquals(size, JsonParser.parseString(request.getBody().readUtf8())
+                .getAsJsonObject().getAsJsonArray("items").size());
+    }
+}
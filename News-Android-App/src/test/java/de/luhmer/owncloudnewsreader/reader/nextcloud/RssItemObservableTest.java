@@ -0,0 +1,186 @@
+package de.luhmer.owncloudnewsreader.reader.nextcloud;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+
+import de.luhmer.owncloudnewsreader.Constants;
+import de.luhmer.owncloudnewsreader.NewsReaderListActivity;
+import de.luhmer.owncloudnewsreader.database.DatabaseConnectionOrm;
+import de.luhmer.owncloudnewsreader.helper.GsonConfig;
+import io.reactivex.subscribers.TestSubscriber;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Retrofit;
+import retrofit2.adapter.rxjava2.RxJava2CallAdapterFactory;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+public class RssItemObservableTest {
+
+    private static final int PAGE_SIZE = 300;
+
+    private MockWebServer server;
+    private DatabaseConnectionOrm dbConn;
+    private SharedPreferences prefs;
+    private API api;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+
+        NewsReaderListActivity activity = Robolectric.buildActivity(NewsReaderListActivity.class).create().get();
+        dbConn = new DatabaseConnectionOrm(activity);
+        dbConn.resetDatabase();
+        prefs = activity.getSharedPreferences("RssItemObservableTest", Context.MODE_PRIVATE);
+        prefs.edit().clear().commit();
+
+        api = new Retrofit.Builder()
+                .addConverterFactory(GsonConverterFactory.create(GsonConfig.GetGson()))
+                .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
+                .baseUrl(server.url(API.mApiEndpoint))
+                .build()
+                .create(API.class);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Test
+    public void testInterruptedFirstSyncIsResumed() throws Exception {
+        server.enqueue(page(1, PAGE_SIZE));
+        server.enqueue(new MockResponse().setResponseCode(500));
+
+        try {
+            sync();
+            fail("The sync should have failed");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // The items of the first page are kept and the first sync isn't finished yet
+        SyncCheckpoint checkpoint = SyncCheckpoint.load(prefs);
+        assertNotNull(checkpoint);
+        assertEquals(SyncCheckpoint.Phase.UNREAD_ITEMS, checkpoint.phase);
+        assertEquals(PAGE_SIZE, checkpoint.offset);
+        assertEquals(PAGE_SIZE, dbConn.getHighestItemId());
+        assertTrue(dbConn.getLastModified() > 0);
+        assertRequest(server.takeRequest(), FeedItemTags.ALL, 0);
+        assertRequest(server.takeRequest(), FeedItemTags.ALL, PAGE_SIZE);
+
+        server.enqueue(page(PAGE_SIZE + 1, 50));
+        server.enqueue(page(1, 0)); // no starred items
+        sync();
+
+        // Continued with the page which failed instead of switching to the incremental sync
+        assertRequest(server.takeRequest(), FeedItemTags.ALL, PAGE_SIZE);
+        assertRequest(server.takeRequest(), FeedItemTags.ALL_STARRED, 0);
+        assertNull(SyncCheckpoint.load(prefs));
+        assertEquals(PAGE_SIZE + 50, dbConn.getHighestItemId());
+        assertEquals(PAGE_SIZE + 50, prefs.getInt(Constants.LAST_UPDATE_NEW_ITEMS_COUNT_STRING, 0));
+    }
+
+    @Test
+    public void testInconsistentCheckpointIsDiscarded() throws Exception {
+        SyncCheckpoint checkpoint = new SyncCheckpoint("@");
+        checkpoint.addPage(PAGE_SIZE, PAGE_SIZE, 1000);
+        checkpoint.save(prefs);
+
+        // The database doesn't contain the items of the checkpoint (e.g. it has been reset)
+        server.enqueue(page(1, 10));
+        server.enqueue(page(1, 0));
+        sync();
+
+        assertRequest(server.takeRequest(), FeedItemTags.ALL, 0);
+        assertNull(SyncCheckpoint.load(prefs));
+        assertEquals(10, prefs.getInt(Constants.LAST_UPDATE_NEW_ITEMS_COUNT_STRING, 0));
+    }
+
+    @Test
+    public void testFailedIncrementalSyncIsRepeated() throws Exception {
+        server.enqueue(page(1, 10));
+        server.enqueue(page(1, 0));
+        sync();
+        server.takeRequest();
+        server.takeRequest();
+        long lastModified = dbConn.getLastModified();
+
+        // The stream ends with an item without id
+        server.enqueue(new MockResponse().setBody("{\"items\":[" + items(11, 2) + ",{\"guid\":\"broken\"}]}"));
+        try {
+            sync();
+            fail("The sync should have failed");
+        } catch (IOException e) {
+            // expected
+        }
+        assertEquals(String.valueOf(lastModified + 1), server.takeRequest().getRequestUrl().queryParameter("lastModified"));
+        // The items received before the error are kept
+        assertEquals(12, dbConn.getHighestItemId());
+        assertTrue(dbConn.getLastModified() > lastModified);
+
+        // But everything since the failed sync is requested again
+        server.enqueue(page(11, 3));
+        sync();
+        assertEquals(String.valueOf(lastModified + 1), server.takeRequest().getRequestUrl().queryParameter("lastModified"));
+        assertEquals(13, dbConn.getHighestItemId());
+
+        server.enqueue(page(1, 0));
+        sync();
+        assertEquals(String.valueOf(dbConn.getLastModified() + 1), server.takeRequest().getRequestUrl().queryParameter("lastModified"));
+    }
+
+    private void sync() throws IOException {
+        new RssItemObservable(dbConn, api, prefs).sync(new TestSubscriber<Integer>());
+    }
+
+    private static void assertRequest(RecordedRequest request, FeedItemTags type, long offset) {
+        assertEquals(type.toString(), request.getRequestUrl().queryParameter("type"));
+        assertEquals(String.valueOf(offset), request.getRequestUrl().queryParameter("offset"));
+    }
+
+    private static MockResponse page(long firstId, int count) {
+        return new MockResponse().setBody("{\"items\":[" + items(firstId, count) + "]}");
+    }
+
+    private static String items(long firstId, int count) {
+        StringBuilder sb = new StringBuilder();
+        for (long id = firstId; id < firstId + count; id++) {
+            if (id > firstId) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(id)
+                    .append(",\"guid\":\"http://example.com/?p=").append(id).append('"')
+                    .append(",\"guidHash\":\"hash").append(id).append('"')
+                    .append(",\"url\":\"http://example.com/").append(id).append('"')
+                    .append(",\"title\":\"Article ").append(id).append('"')
+                    .append(",\"author\":\"Author\"")
+                    .append(",\"pubDate\":").append(1367270544 + id)
+                    .append(",\"body\":\"<p>Article ").append(id).append("</p>\"")
+                    .append(",\"feedId\":1")
+                    .append(",\"unread\":true")
+                    .append(",\"starred\":false")
+                    .append(",\"lastModified\":").append(1367273003000L + id)
+                    .append(",\"fingerprint\":\"fp").append(id).append('"')
+                    .append('}');
+        }
+        return sb.toString();
+    }
+}